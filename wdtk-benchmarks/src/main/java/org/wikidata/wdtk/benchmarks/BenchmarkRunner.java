@@ -0,0 +1,80 @@
+package org.wikidata.wdtk.benchmarks;
+
+/*
+ * #%L
+ * Wikidata Toolkit Benchmarks
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Entry point of the benchmark jar. All arguments are passed to JMH, so that
+ * the usual JMH options can be used to select benchmarks or change the number
+ * of iterations (use "-h" for a list). Unless a result format is given, the
+ * results are written in JSON to a file that contains the WDTK version, so
+ * that the throughput of different releases can be compared.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws Exception {
+		Main.main(getArguments(args));
+	}
+
+	/**
+	 * Adds the default options for the result file to the given JMH
+	 * arguments, unless they already specify a result format.
+	 *
+	 * @param args
+	 *            command line arguments
+	 * @return arguments for JMH
+	 */
+	static String[] getArguments(String[] args) {
+		List<String> result = new ArrayList<>(Arrays.asList(args));
+		if (!result.contains("-rf") && !result.contains("-h")
+				&& !result.contains("-l")) {
+			result.add("-rf");
+			result.add("json");
+			result.add("-rff");
+			result.add(getResultFileName());
+		}
+		return result.toArray(new String[result.size()]);
+	}
+
+	/**
+	 * Returns the default name of the result file.
+	 *
+	 * @return file name
+	 */
+	static String getResultFileName() {
+		String version = BenchmarkRunner.class.getPackage()
+				.getImplementationVersion();
+		if (version == null) {
+			version = "unknown";
+		}
+		return "wdtk-benchmarks-" + version + ".json";
+	}
+
+}
@@ -0,0 +1,178 @@
+package org.wikidata.wdtk.benchmarks;
+
+/*
+ * #%L
+ * Wikidata Toolkit Benchmarks
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.datamodel.helpers.DatamodelConverter;
+import org.wikidata.wdtk.datamodel.implementation.DataObjectFactoryImpl;
+import org.wikidata.wdtk.datamodel.interfaces.DocumentDataFilter;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocument;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessorFilter;
+import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyIdValue;
+import org.wikidata.wdtk.datamodel.interfaces.StatementDocument;
+import org.wikidata.wdtk.datamodel.interfaces.StatementGroup;
+import org.wikidata.wdtk.datamodel.interfaces.TermedDocument;
+
+/**
+ * Measures operations on the objects of the data model: filtering documents
+ * with {@link EntityDocumentProcessorFilter} and {@link DatamodelConverter},
+ * and computing hash codes and equality of documents. All benchmarks work on
+ * all sample entities in each operation.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DatamodelBenchmark {
+
+	SampleData sampleData;
+	DocumentDataFilter filter;
+	/**
+	 * Deep copies of the sample documents, which are equal to but not
+	 * identical with the original documents.
+	 */
+	List<EntityDocument> copies;
+
+	@Setup
+	public void setup() {
+		this.sampleData = SampleData.getInstance();
+
+		this.filter = new DocumentDataFilter();
+		this.filter.setLanguageFilter(new HashSet<>(Arrays.asList("en",
+				"de")));
+		this.filter.setPropertyFilter(new HashSet<PropertyIdValue>(Arrays
+				.asList(Datamodel.makeWikidataPropertyIdValue("P31"),
+						Datamodel.makeWikidataPropertyIdValue("P279"),
+						Datamodel.makeWikidataPropertyIdValue("P569"))));
+
+		DatamodelConverter converter = new DatamodelConverter(
+				new DataObjectFactoryImpl());
+		this.copies = new ArrayList<>();
+		for (EntityDocument document : this.sampleData.documents) {
+			this.copies.add(copy(converter, document));
+		}
+	}
+
+	@Benchmark
+	public void filterDocuments(final Blackhole blackhole) {
+		this.sampleData.processDocuments(new EntityDocumentProcessorFilter(
+				new EntityDocumentProcessor() {
+					@Override
+					public void processItemDocument(ItemDocument itemDocument) {
+						consumeFilteredData(itemDocument, blackhole);
+					}
+
+					@Override
+					public void processPropertyDocument(
+							PropertyDocument propertyDocument) {
+						consumeFilteredData(propertyDocument, blackhole);
+					}
+				}, this.filter));
+	}
+
+	@Benchmark
+	public void convertDocuments(Blackhole blackhole) {
+		DatamodelConverter converter = new DatamodelConverter(
+				new DataObjectFactoryImpl());
+		converter.setOptionFilter(this.filter);
+		for (EntityDocument document : this.sampleData.documents) {
+			blackhole.consume(copy(converter, document));
+		}
+	}
+
+	@Benchmark
+	public int hashDocuments() {
+		int result = 0;
+		for (EntityDocument document : this.copies) {
+			result += document.hashCode();
+		}
+		return result;
+	}
+
+	@Benchmark
+	public int compareDocuments() {
+		int result = 0;
+		for (int i = 0; i < this.copies.size(); i++) {
+			if (this.sampleData.documents.get(i).equals(this.copies.get(i))) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Reads the parts of a document that are affected by filtering. Filtered
+	 * documents are views that only do work when their data is accessed.
+	 *
+	 * @param document
+	 *            the filtered document
+	 * @param blackhole
+	 *            sink for the data
+	 */
+	static void consumeFilteredData(TermedDocument document,
+			Blackhole blackhole) {
+		blackhole.consume(document.getLabels().size());
+		blackhole.consume(document.getDescriptions().size());
+		blackhole.consume(document.getAliases().size());
+		if (document instanceof StatementDocument) {
+			for (StatementGroup statementGroup : ((StatementDocument) document)
+					.getStatementGroups()) {
+				blackhole.consume(statementGroup);
+			}
+		}
+	}
+
+	static EntityDocument copy(DatamodelConverter converter,
+			EntityDocument document) {
+		if (document instanceof ItemDocument) {
+			return converter.copy((ItemDocument) document);
+		} else {
+			return converter.copy((PropertyDocument) document);
+		}
+	}
+
+}
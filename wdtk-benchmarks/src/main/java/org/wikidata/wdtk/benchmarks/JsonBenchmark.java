@@ -0,0 +1,146 @@
+package org.wikidata.wdtk.benchmarks;
+
+/*
+ * #%L
+ * Wikidata Toolkit Benchmarks
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.wikidata.wdtk.benchmarks.SampleData.CountingNullOutputStream;
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
+import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
+import org.wikidata.wdtk.datamodel.json.jackson.JacksonTermedStatementDocument;
+import org.wikidata.wdtk.datamodel.json.jackson.JsonSerializer;
+import org.wikidata.wdtk.dumpfiles.JsonDumpFileProcessor;
+import org.wikidata.wdtk.dumpfiles.MwLocalDumpFile;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Measures reading and writing entities in the JSON format of Wikidata. The
+ * dump benchmark processes all sample entities as one JSON dump, the way
+ * {@link JsonDumpFileProcessor} is used on real dumps, and the serialization
+ * benchmark writes all sample entities with {@link JsonSerializer}. The
+ * remaining benchmark deserializes one entity per operation.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+	/**
+	 * State of the dump benchmark, which is the only one that depends on the
+	 * number of threads.
+	 *
+	 * @author Markus Kroetzsch
+	 *
+	 */
+	@State(Scope.Benchmark)
+	public static class DumpState {
+
+		/**
+		 * Number of threads used by {@link JsonDumpFileProcessor}.
+		 */
+		@Param({ "1", "4" })
+		int parallelism;
+
+		MwLocalDumpFile dumpFile;
+
+		@Setup
+		public void setup() {
+			// a file that does not exist, so that no memory mapping is used:
+			this.dumpFile = new MwLocalDumpFile("benchmark-sample-dump.json");
+		}
+	}
+
+	SampleData sampleData;
+	ObjectReader documentReader;
+	int entity = 0;
+
+	@Setup
+	public void setup() {
+		this.sampleData = SampleData.getInstance();
+		this.documentReader = SampleData.mapper
+				.reader(JacksonTermedStatementDocument.class);
+	}
+
+	@Benchmark
+	public void processDump(DumpState state, final Blackhole blackhole) {
+		JsonDumpFileProcessor processor = new JsonDumpFileProcessor(
+				new EntityDocumentProcessor() {
+					@Override
+					public void processItemDocument(ItemDocument itemDocument) {
+						blackhole.consume(itemDocument);
+					}
+
+					@Override
+					public void processPropertyDocument(
+							PropertyDocument propertyDocument) {
+						blackhole.consume(propertyDocument);
+					}
+				}, Datamodel.SITE_WIKIDATA, state.parallelism);
+		processor.processDumpFileContents(new ByteArrayInputStream(
+				this.sampleData.dump), state.dumpFile);
+	}
+
+	@Benchmark
+	public Object readEntity() throws IOException {
+		return SampleData.readDocument(this.documentReader,
+				this.sampleData.jsonLines.get(nextEntity()));
+	}
+
+	@Benchmark
+	public long writeEntities() {
+		CountingNullOutputStream out = new CountingNullOutputStream();
+		JsonSerializer serializer = new JsonSerializer(out);
+		serializer.open();
+		this.sampleData.processDocuments(serializer);
+		serializer.close();
+		return out.count;
+	}
+
+	int nextEntity() {
+		this.entity = (this.entity + 1) % this.sampleData.jsonLines.size();
+		return this.entity;
+	}
+
+}
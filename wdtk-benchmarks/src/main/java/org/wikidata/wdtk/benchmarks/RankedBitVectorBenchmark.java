@@ -0,0 +1,176 @@
+package org.wikidata.wdtk.benchmarks;
+
+/*
+ * #%L
+ * Wikidata Toolkit Benchmarks
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wikidata.wdtk.storage.datastructures.MappedBitVectorImpl;
+import org.wikidata.wdtk.storage.datastructures.PopcountRankedBitVectorImpl;
+import org.wikidata.wdtk.storage.datastructures.RankedBitVector;
+import org.wikidata.wdtk.storage.datastructures.RankedBitVectorImpl;
+
+/**
+ * Compares the rank and select performance of the implementations of
+ * {@link RankedBitVector}. The queries use random positions in a random
+ * vector. The append benchmark measures the cost of keeping the index up to
+ * date when bits are added between queries, which is how dense id sets are
+ * built while processing a dump. Memory-mapped vectors are stored in
+ * temporary files.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RankedBitVectorBenchmark {
+
+	static final int QUERY_COUNT = 1 << 12;
+
+	@Param({ "RankedBitVectorImpl", "PopcountRankedBitVectorImpl",
+			"MappedBitVectorImpl" })
+	String implementation;
+
+	@Param({ "1000000", "100000000" })
+	int size;
+
+	RankedBitVector bitVector;
+	long[] positions;
+	long[] occurrences;
+	int query = 0;
+
+	RankedBitVector appendVector;
+
+	@Setup
+	public void setup() throws IOException {
+		Random random = new Random(42);
+		this.bitVector = createBitVector();
+		long trueValues = 0;
+		for (int i = 0; i < this.size; i++) {
+			boolean bit = random.nextBoolean();
+			this.bitVector.addBit(bit);
+			if (bit) {
+				trueValues++;
+			}
+		}
+
+		this.positions = new long[QUERY_COUNT];
+		this.occurrences = new long[QUERY_COUNT];
+		for (int i = 0; i < QUERY_COUNT; i++) {
+			this.positions[i] = (long) (random.nextDouble() * this.size);
+			this.occurrences[i] = 1 + (long) (random.nextDouble() * trueValues);
+		}
+		// build internal indexes before measuring:
+		this.bitVector.countBits(true, this.size - 1);
+		this.bitVector.findPosition(true, 1);
+
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		closeBitVector(this.bitVector);
+	}
+
+	@Setup(Level.Iteration)
+	public void setupAppendVector() throws IOException {
+		this.appendVector = createBitVector();
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDownAppendVector() throws IOException {
+		closeBitVector(this.appendVector);
+	}
+
+	@Benchmark
+	public long countBits() {
+		this.query = (this.query + 1) & (QUERY_COUNT - 1);
+		return this.bitVector.countBits(true, this.positions[this.query]);
+	}
+
+	@Benchmark
+	public long findPosition() {
+		this.query = (this.query + 1) & (QUERY_COUNT - 1);
+		return this.bitVector.findPosition(true, this.occurrences[this.query]);
+	}
+
+	@Benchmark
+	public long addBitAndCount() {
+		this.query = (this.query + 1) & (QUERY_COUNT - 1);
+		this.appendVector.addBit((this.positions[this.query] & 1) == 0);
+		return this.appendVector.countBits(true, this.appendVector.size() - 1);
+	}
+
+	RankedBitVector createBitVector() throws IOException {
+		switch (this.implementation) {
+		case "RankedBitVectorImpl":
+			return new RankedBitVectorImpl();
+		case "PopcountRankedBitVectorImpl":
+			return new PopcountRankedBitVectorImpl();
+		case "MappedBitVectorImpl":
+			File file = File.createTempFile("wdtk-benchmark-", ".bits");
+			file.deleteOnExit();
+			return new MappedBitVectorImpl(file.toPath());
+		default:
+			throw new IllegalArgumentException("Unknown implementation "
+					+ this.implementation);
+		}
+	}
+
+	/**
+	 * Closes the given bit vector and deletes its file if it is
+	 * memory-mapped, so that files and mappings do not pile up over the
+	 * iterations.
+	 *
+	 * @param bitVector
+	 *            the bit vector to close
+	 * @throws IOException
+	 *             if the file could not be closed or deleted
+	 */
+	static void closeBitVector(RankedBitVector bitVector) throws IOException {
+		if (bitVector instanceof MappedBitVectorImpl) {
+			MappedBitVectorImpl mappedBitVector = (MappedBitVectorImpl) bitVector;
+			mappedBitVector.close();
+			Files.deleteIfExists(mappedBitVector.getPath());
+		}
+	}
+
+}
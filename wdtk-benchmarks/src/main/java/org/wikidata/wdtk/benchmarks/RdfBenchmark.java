@@ -0,0 +1,132 @@
+package org.wikidata.wdtk.benchmarks;
+
+/*
+ * #%L
+ * Wikidata Toolkit Benchmarks
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openrdf.rio.RDFFormat;
+import org.wikidata.wdtk.benchmarks.SampleData.CountingNullOutputStream;
+import org.wikidata.wdtk.datamodel.implementation.SitesImpl;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocument;
+import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
+import org.wikidata.wdtk.rdf.BinaryRdfWriter;
+import org.wikidata.wdtk.rdf.PropertyRegister;
+import org.wikidata.wdtk.rdf.RdfSerializer;
+
+/**
+ * Measures the conversion of entities to RDF with {@link RdfSerializer}. Each
+ * operation converts one sample entity and writes it to a stream that
+ * discards all data. The serializer is kept open for a whole iteration, as it
+ * would be for a dump.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RdfBenchmark {
+
+	@Param({ "ntriples", "turtle", "binary" })
+	String format;
+
+	SampleData sampleData;
+	PropertyRegister propertyRegister;
+	SitesImpl sites;
+
+	RdfSerializer serializer;
+	int entity = 0;
+
+	@Setup
+	public void setup() {
+		this.sampleData = SampleData.getInstance();
+
+		this.propertyRegister = PropertyRegister.getWikidataPropertyRegister();
+		this.propertyRegister.setOfflineMode(true);
+		this.sites = new SitesImpl();
+		this.sites.setSiteInformation("enwiki", "wikipedia", "en",
+				"mediawiki", "http://en.wikipedia.org/w/$1",
+				"http://en.wikipedia.org/wiki/$1");
+		this.sites.setSiteInformation("dewiki", "wikipedia", "de",
+				"mediawiki", "http://de.wikipedia.org/w/$1",
+				"http://de.wikipedia.org/wiki/$1");
+	}
+
+	@Setup(Level.Iteration)
+	public void openSerializer() {
+		this.serializer = new RdfSerializer(getRdfFormat(),
+				new CountingNullOutputStream(), this.sites,
+				this.propertyRegister);
+		this.serializer.setTasks(RdfSerializer.TASK_ALL_ENTITIES
+				| RdfSerializer.TASK_ALL_EXACT_DATA);
+		this.serializer.open();
+	}
+
+	@TearDown(Level.Iteration)
+	public void closeSerializer() {
+		this.serializer.close();
+	}
+
+	@Benchmark
+	public long convertEntity() {
+		this.entity = (this.entity + 1) % this.sampleData.documents.size();
+		EntityDocument document = this.sampleData.documents.get(this.entity);
+		if (document instanceof ItemDocument) {
+			this.serializer.processItemDocument((ItemDocument) document);
+		} else {
+			this.serializer.processPropertyDocument((PropertyDocument) document);
+		}
+		return this.serializer.getTripleCount();
+	}
+
+	RDFFormat getRdfFormat() {
+		switch (this.format) {
+		case "ntriples":
+			return RDFFormat.NTRIPLES;
+		case "turtle":
+			return RDFFormat.TURTLE;
+		case "binary":
+			return BinaryRdfWriter.BINARY_RDF;
+		default:
+			throw new IllegalArgumentException("Unknown RDF format "
+					+ this.format);
+		}
+	}
+
+}
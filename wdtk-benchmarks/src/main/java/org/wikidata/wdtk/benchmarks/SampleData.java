@@ -0,0 +1,209 @@
+package org.wikidata.wdtk.benchmarks;
+
+/*
+ * #%L
+ * Wikidata Toolkit Benchmarks
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocument;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
+import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
+import org.wikidata.wdtk.datamodel.json.jackson.JacksonTermedStatementDocument;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Sample entities that are shared by all benchmarks. The data is taken from
+ * the test resources of the other modules, which are bundled into the
+ * benchmark jar: the entities of the mock JSON dump of wdtk-dumpfiles, which
+ * are small and mostly consist of statements, and the Wikidata item of
+ * Douglas Adams (Q42) as returned by the Web API, which has many labels, site
+ * links and references.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+class SampleData {
+
+	/**
+	 * Resource with a JSON dump that has one entity per line.
+	 */
+	static final String DUMP_RESOURCE = "/mock-dump-for-long-testing.json";
+	/**
+	 * Resource with the wbgetentities response for Q42.
+	 */
+	static final String API_RESOURCE = "/wbgetentities-Douglas-Adams.json";
+
+	static final ObjectMapper mapper = new ObjectMapper();
+
+	/**
+	 * JSON serializations of all sample entities, one entity per string.
+	 */
+	final List<String> jsonLines;
+	/**
+	 * The sample entities as a JSON dump in the format used by Wikidata.
+	 */
+	final byte[] dump;
+	/**
+	 * The deserialized sample entities.
+	 */
+	final List<EntityDocument> documents;
+
+	static SampleData instance = null;
+
+	/**
+	 * Returns the sample data, loading it when this method is called for the
+	 * first time.
+	 *
+	 * @return the sample data
+	 */
+	static synchronized SampleData getInstance() {
+		if (instance == null) {
+			try {
+				instance = new SampleData();
+			} catch (IOException e) {
+				throw new RuntimeException("Could not load sample data: "
+						+ e.toString(), e);
+			}
+		}
+		return instance;
+	}
+
+	SampleData() throws IOException {
+		List<String> lines = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				getResource(DUMP_RESOURCE), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.endsWith(",")) {
+					line = line.substring(0, line.length() - 1);
+				}
+				if (line.startsWith("{")) {
+					lines.add(line);
+				}
+			}
+		}
+		try (InputStream in = getResource(API_RESOURCE)) {
+			JsonNode entity = mapper.readTree(in).path("entities").path("Q42");
+			lines.add(mapper.writeValueAsString(entity));
+		}
+		this.jsonLines = Collections.unmodifiableList(lines);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write("[\n".getBytes(StandardCharsets.UTF_8));
+		for (int i = 0; i < lines.size(); i++) {
+			out.write(lines.get(i).getBytes(StandardCharsets.UTF_8));
+			out.write(i < lines.size() - 1 ? ",\n".getBytes(StandardCharsets.UTF_8)
+					: "\n]\n".getBytes(StandardCharsets.UTF_8));
+		}
+		this.dump = out.toByteArray();
+
+		ObjectReader documentReader = mapper
+				.reader(JacksonTermedStatementDocument.class);
+		List<EntityDocument> result = new ArrayList<>();
+		for (String line : lines) {
+			result.add(readDocument(documentReader, line));
+		}
+		this.documents = Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * Deserializes a single entity document.
+	 *
+	 * @param documentReader
+	 *            reader for {@link JacksonTermedStatementDocument}
+	 * @param json
+	 *            the JSON serialization of the entity
+	 * @return the document
+	 * @throws IOException
+	 *             if the JSON could not be read
+	 */
+	static EntityDocument readDocument(ObjectReader documentReader,
+			String json) throws IOException {
+		JacksonTermedStatementDocument document = documentReader
+				.readValue(json);
+		document.setSiteIri(Datamodel.SITE_WIKIDATA);
+		return document;
+	}
+
+	/**
+	 * Passes all sample documents to the given processor.
+	 *
+	 * @param entityDocumentProcessor
+	 *            the processor to call
+	 */
+	void processDocuments(EntityDocumentProcessor entityDocumentProcessor) {
+		for (EntityDocument document : this.documents) {
+			if (document instanceof ItemDocument) {
+				entityDocumentProcessor
+						.processItemDocument((ItemDocument) document);
+			} else {
+				entityDocumentProcessor
+						.processPropertyDocument((PropertyDocument) document);
+			}
+		}
+	}
+
+	static InputStream getResource(String name) throws IOException {
+		InputStream in = SampleData.class.getResourceAsStream(name);
+		if (in == null) {
+			throw new IOException("Resource " + name + " not found");
+		}
+		return in;
+	}
+
+	/**
+	 * Output stream that discards all data but counts the bytes, so that
+	 * benchmarks have a result that cannot be optimized away.
+	 *
+	 * @author Markus Kroetzsch
+	 *
+	 */
+	static class CountingNullOutputStream extends OutputStream {
+
+		long count = 0;
+
+		@Override
+		public void write(int b) {
+			this.count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			this.count += len;
+		}
+	}
+
+}
@@ -25,6 +25,9 @@ import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.cli.ParseException;
 import org.apache.log4j.ConsoleAppender;
@@ -33,11 +36,17 @@ import org.apache.log4j.PatternLayout;
 import org.apache.log4j.varia.LevelRangeFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.wikidata.wdtk.datamodel.interfaces.DocumentDataFilter;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessorFilter;
 import org.wikidata.wdtk.datamodel.interfaces.Sites;
+import org.wikidata.wdtk.datamodel.json.jackson.JacksonTermedStatementDocument;
 import org.wikidata.wdtk.dumpfiles.DumpContentType;
 import org.wikidata.wdtk.dumpfiles.DumpProcessingController;
+import org.wikidata.wdtk.dumpfiles.EntityIdRangePrefilter;
 import org.wikidata.wdtk.dumpfiles.EntityTimerProcessor;
 import org.wikidata.wdtk.dumpfiles.MwDumpFile;
+import org.wikidata.wdtk.rdf.PropertyRegister;
 import org.wikidata.wdtk.util.DirectoryManager;
 import org.wikidata.wdtk.util.DirectoryManagerFactory;
 
@@ -113,13 +122,6 @@ public class Client {
 			}
 		}
 
-		dumpProcessingController.setLanguageFilter(this.clientConfiguration
-				.getFilterLanguages());
-		dumpProcessingController.setSiteLinkFilter(this.clientConfiguration
-				.getFilterSiteKeys());
-		dumpProcessingController.setPropertyFilter(this.clientConfiguration
-				.getFilterProperties());
-
 		MwDumpFile dumpFile = this.clientConfiguration.getLocalDumpFile();
 
 		if (dumpFile == null) {
@@ -137,6 +139,9 @@ public class Client {
 		this.clientConfiguration.setDateStamp(dumpFile.getDateStamp());
 
 		boolean hasReadyProcessor = false;
+		boolean needsPropertyRegister = false;
+		List<DumpProcessingAction> registeredActions = new ArrayList<>();
+		List<EntityDocumentProcessor> processors = new ArrayList<>();
 		for (DumpProcessingAction props : this.clientConfiguration.getActions()) {
 
 			if (!props.isReady()) {
@@ -152,9 +157,22 @@ public class Client {
 			}
 			props.setDumpInformation(dumpFile.getProjectName(),
 					dumpFile.getDateStamp());
-			this.dumpProcessingController.registerEntityDocumentProcessor(
-					props, null, true);
 			hasReadyProcessor = true;
+			if (props instanceof RdfSerializationAction) {
+				needsPropertyRegister = true;
+			}
+
+			if (shareOutput(registeredActions, props)) {
+				continue;
+			}
+			EntityDocumentProcessor processor = props;
+			if (props.getFilter() != null
+					&& !isImpliedByGlobalFilters(props.getFilter())) {
+				processor = new EntityDocumentProcessorFilter(props,
+						props.getFilter());
+			}
+			processors.add(processor);
+			registeredActions.add(props);
 		}
 
 		if (!hasReadyProcessor) {
@@ -162,6 +180,22 @@ public class Client {
 					// directly
 		}
 
+		if (needsPropertyRegister) {
+			preparePropertyRegister(dumpFile);
+		}
+
+		for (EntityDocumentProcessor processor : processors) {
+			this.dumpProcessingController.registerEntityDocumentProcessor(
+					processor, null, true);
+		}
+
+		dumpProcessingController.setLanguageFilter(this.clientConfiguration
+				.getFilterLanguages());
+		dumpProcessingController.setSiteLinkFilter(this.clientConfiguration
+				.getFilterSiteKeys());
+		dumpProcessingController.setPropertyFilter(this.clientConfiguration
+				.getFilterProperties());
+
 		if (!this.clientConfiguration.isQuiet()) {
 			EntityTimerProcessor entityTimerProcessor = new EntityTimerProcessor(
 					0);
@@ -172,6 +206,10 @@ public class Client {
 		this.dumpProcessingController.processDump(dumpFile);
 		closeActions();
 
+		if (needsPropertyRegister) {
+			storePropertyRegister();
+		}
+
 		try {
 			writeReport();
 		} catch (IOException e) {
@@ -180,6 +218,42 @@ public class Client {
 
 	}
 
+	/**
+	 * Returns true if the given filter of an action keeps all data that the
+	 * global filters keep. The global filters are already applied when the
+	 * dump is parsed, so documents need not be filtered again for the action
+	 * in this case.
+	 *
+	 * @param filter
+	 *            the filter of an action
+	 * @return true if the filter would not remove any further data
+	 */
+	boolean isImpliedByGlobalFilters(DocumentDataFilter filter) {
+		return includesAll(filter.getLanguageFilter(),
+				this.clientConfiguration.getFilterLanguages())
+				&& includesAll(filter.getSiteLinkFilter(),
+						this.clientConfiguration.getFilterSiteKeys())
+				&& includesAll(filter.getPropertyFilter(),
+						this.clientConfiguration.getFilterProperties());
+	}
+
+	/**
+	 * Returns true if a filter with the given set of allowed elements keeps
+	 * everything that is kept by a filter with the other set. A null set
+	 * keeps everything.
+	 *
+	 * @param filterSet
+	 *            the elements allowed by the first filter, or null
+	 * @param otherFilterSet
+	 *            the elements allowed by the other filter, or null
+	 * @return true if the first filter keeps all that the other one keeps
+	 */
+	static <T> boolean includesAll(Set<T> filterSet, Set<T> otherFilterSet) {
+		return filterSet == null
+				|| (otherFilterSet != null && filterSet
+						.containsAll(otherFilterSet));
+	}
+
 	private void prepareSites() {
 		if (this.sites == null) {
 			try {
@@ -191,6 +265,99 @@ public class Client {
 		}
 	}
 
+	/**
+	 * Prepares the property register that is used for RDF serialization.
+	 * Information that has been stored in the download directory by earlier
+	 * runs is loaded. If there is no such information in offline mode, the
+	 * register is filled by processing the property documents of the dump
+	 * first, since it cannot fetch any data from the Web. This must happen
+	 * before the actions are registered and before the global filters are set,
+	 * since they could remove statements that the register needs.
+	 *
+	 * @param dumpFile
+	 *            the dump that will be processed
+	 */
+	private void preparePropertyRegister(MwDumpFile dumpFile) {
+		PropertyRegister propertyRegister = PropertyRegister
+				.getWikidataPropertyRegister();
+		propertyRegister.setOfflineMode(this.clientConfiguration
+				.getOfflineMode());
+
+		DirectoryManager directoryManager = this.dumpProcessingController
+				.getDownloadDirectoryManager();
+		if (directoryManager == null) {
+			return;
+		}
+
+		boolean loaded = false;
+		try {
+			loaded = propertyRegister.loadFromDirectory(directoryManager);
+		} catch (IOException e) {
+			logger.error("Could not load property information: "
+					+ e.getMessage());
+		}
+
+		if (!loaded && this.clientConfiguration.getOfflineMode()) {
+			logger.info("Reading property information from the dump.");
+			// The register remains registered for the main pass. This is
+			// harmless since it only ever adds information.
+			this.dumpProcessingController
+					.registerEntityDocumentProcessor(propertyRegister, null,
+							true);
+			this.dumpProcessingController
+					.setEntityPrefilter(new EntityIdRangePrefilter(
+							JacksonTermedStatementDocument.JSON_TYPE_PROPERTY,
+							0, Long.MAX_VALUE));
+			this.dumpProcessingController.processDump(dumpFile);
+			this.dumpProcessingController.setEntityPrefilter(null);
+		}
+	}
+
+	/**
+	 * Stores the information of the property register in the download
+	 * directory, so that later runs do not need to fetch it again.
+	 */
+	private void storePropertyRegister() {
+		DirectoryManager directoryManager = this.dumpProcessingController
+				.getDownloadDirectoryManager();
+		if (directoryManager == null) {
+			return;
+		}
+
+		try {
+			PropertyRegister.getWikidataPropertyRegister().storeToDirectory(
+					directoryManager);
+		} catch (IOException e) {
+			logger.error("Could not store property information: "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * Tries to find an action that can produce the output of the given action
+	 * in addition to its own output, so that the documents do not have to be
+	 * serialized again for the given action.
+	 *
+	 * @param registeredActions
+	 *            the actions that have been registered for processing
+	 * @param action
+	 *            the action to find a sharing action for
+	 * @return true if the output of the action will be produced by another
+	 *         action
+	 */
+	private boolean shareOutput(List<DumpProcessingAction> registeredActions,
+			DumpProcessingAction action) {
+		for (DumpProcessingAction registeredAction : registeredActions) {
+			if (registeredAction.shareOutput(action)) {
+				logger.info("Action " + action.getActionName()
+						+ " shares the output of action "
+						+ registeredAction.getActionName() + ".");
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Sets up Log4J to write log messages to the console. Low-priority messages
 	 * are logged to stdout while high-priority messages go to stderr.
@@ -171,11 +171,26 @@ public class ClientConfiguration {
 	 * directing output to stdout.
 	 */
 	public static final String OPTION_OUTPUT_STDOUT = DumpProcessingOutputAction.OPTION_USE_STDOUT;
+	/**
+	 * Name of the long command line option and configuration file field for
+	 * specifying the number of threads used to compress the output.
+	 */
+	public static final String OPTION_OUTPUT_COMPRESSION_THREADS = DumpProcessingOutputAction.OPTION_COMPRESSION_THREADS;
 	/**
 	 * Name of the long command line option and configuration file field for
 	 * specifying the tasks for RDF serialization.
 	 */
 	public static final String OPTION_OUTPUT_RDF_TYPE = "rdftasks";
+	/**
+	 * Name of the long command line option and configuration file field for
+	 * specifying the format of RDF serialization.
+	 */
+	public static final String OPTION_OUTPUT_RDF_FORMAT = RdfSerializationAction.OPTION_RDF_FORMAT;
+	/**
+	 * Name of the long command line option and configuration file field for
+	 * specifying the memory used to avoid duplicates in RDF serialization.
+	 */
+	public static final String OPTION_OUTPUT_RDF_MEMORY = RdfSerializationAction.OPTION_RDF_MEMORY;
 	/**
 	 * Name of the long command line option and configuration file field for
 	 * defining the path to a local dump file.
@@ -729,10 +744,7 @@ public class ClientConfiguration {
 	 *            languages
 	 */
 	private void setLanguageFilters(String filters) {
-		this.filterLanguages = new HashSet<>();
-		if (!"-".equals(filters)) {
-			Collections.addAll(this.filterLanguages, filters.split(","));
-		}
+		this.filterLanguages = parseStringFilter(filters);
 	}
 
 	/**
@@ -743,10 +755,7 @@ public class ClientConfiguration {
 	 *            links
 	 */
 	private void setSiteFilters(String filters) {
-		this.filterSites = new HashSet<>();
-		if (!"-".equals(filters)) {
-			Collections.addAll(this.filterSites, filters.split(","));
-		}
+		this.filterSites = parseStringFilter(filters);
 	}
 
 	/**
@@ -757,13 +766,40 @@ public class ClientConfiguration {
 	 *            statements
 	 */
 	private void setPropertyFilters(String filters) {
-		this.filterProperties = new HashSet<>();
+		this.filterProperties = parsePropertyFilter(filters);
+	}
+
+	/**
+	 * Parses a filter of language codes or site keys.
+	 *
+	 * @param filters
+	 *            comma-separates list of strings, or "-" for the empty list
+	 * @return the set of strings
+	 */
+	static Set<String> parseStringFilter(String filters) {
+		Set<String> result = new HashSet<>();
+		if (!"-".equals(filters)) {
+			Collections.addAll(result, filters.split(","));
+		}
+		return result;
+	}
+
+	/**
+	 * Parses a filter of property ids.
+	 *
+	 * @param filters
+	 *            comma-separates list of property ids, or "-" for the empty
+	 *            list
+	 * @return the set of property ids
+	 */
+	static Set<PropertyIdValue> parsePropertyFilter(String filters) {
+		Set<PropertyIdValue> result = new HashSet<>();
 		if (!"-".equals(filters)) {
 			for (String pid : filters.split(",")) {
-				this.filterProperties.add(Datamodel
-						.makeWikidataPropertyIdValue(pid));
+				result.add(Datamodel.makeWikidataPropertyIdValue(pid));
 			}
 		}
+		return result;
 	}
 
 	/**
@@ -809,6 +845,24 @@ public class ClientConfiguration {
 						"specify which data to include in RDF dump (use with action \"rdf\"); run with options \"-a rdf -n\" for help")
 				.withLongOpt(OPTION_OUTPUT_RDF_TYPE).create();
 
+		List<String> rdfFormats = new ArrayList<>(
+				RdfSerializationAction.KNOWN_FORMATS.keySet());
+		Collections.sort(rdfFormats);
+		Option rdfFormat = OptionBuilder
+				.hasArg()
+				.withArgName("format")
+				.withDescription(
+						"specify the format of the RDF dump (use with action \"rdf\"); possible values: "
+								+ rdfFormats + "; default is ntriples")
+				.withLongOpt(OPTION_OUTPUT_RDF_FORMAT).create();
+
+		Option rdfMemory = OptionBuilder
+				.hasArg()
+				.withArgName("megabytes")
+				.withDescription(
+						"specify the memory used to avoid writing the same triples more than once in the RDF dump (use with action \"rdf\"); by default, this is 256 or a quarter of the available direct memory if this is less")
+				.withLongOpt(OPTION_OUTPUT_RDF_MEMORY).create();
+
 		Option filterLanguages = OptionBuilder
 				.hasArgs()
 				.withArgName("languages")
@@ -841,6 +895,13 @@ public class ClientConfiguration {
 				.withLongOpt(OPTION_OUTPUT_COMPRESSION)
 				.create(CMD_OPTION_OUTPUT_COMPRESSION);
 
+		Option compressionThreads = OptionBuilder
+				.hasArg()
+				.withArgName("number")
+				.withDescription(
+						"define the number of threads used for compressing the output; default is 1")
+				.withLongOpt(OPTION_OUTPUT_COMPRESSION_THREADS).create();
+
 		Option report = OptionBuilder
 				.hasArg()
 				.withArgName("path")
@@ -870,9 +931,12 @@ public class ClientConfiguration {
 		options.addOption(filterSites);
 		options.addOption(filterProperties);
 		options.addOption(compressionExtention);
+		options.addOption(compressionThreads);
 		options.addOption(report);
 		options.addOption(localDump);
 		options.addOption(rdfdump);
+		options.addOption(rdfFormat);
+		options.addOption(rdfMemory);
 		options.addOption(CMD_OPTION_OFFLINE_MODE, OPTION_OFFLINE_MODE, false,
 				"execute all operations in offline mode, especially do not download new dumps");
 		options.addOption(CMD_OPTION_HELP, OPTION_HELP, false,
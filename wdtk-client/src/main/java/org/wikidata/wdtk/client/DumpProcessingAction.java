@@ -20,6 +20,7 @@ package org.wikidata.wdtk.client;
  * #L%
  */
 
+import org.wikidata.wdtk.datamodel.interfaces.DocumentDataFilter;
 import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentDumpProcessor;
 import org.wikidata.wdtk.datamodel.interfaces.Sites;
 
@@ -109,6 +110,29 @@ public interface DumpProcessingAction extends EntityDocumentDumpProcessor {
 	 */
 	String getReport();
 
+	/**
+	 * Returns the filter that should be applied to all documents before they
+	 * are given to this action, or null if the action should see all data.
+	 * This filter is applied in addition to the global filter settings.
+	 * 
+	 * @return the filter of this action, or null
+	 */
+	DocumentDataFilter getFilter();
+
+	/**
+	 * Asks this action to also produce the output of the given action, so that
+	 * the work of creating the output is only done once for both. This is
+	 * possible if the actions produce the same output for each document and
+	 * only differ in where the output goes to. If the method returns true,
+	 * the given action must no longer receive any documents, but it still has
+	 * to be opened and closed together with all other actions.
+	 * 
+	 * @param action
+	 *            the action whose output should be produced by this action
+	 * @return true if this action will produce the output of the given action
+	 */
+	boolean shareOutput(DumpProcessingAction action);
+
 	/**
 	 * Sets the name of the action. If this is not set, a default name will be
 	 * used.
@@ -24,11 +24,11 @@ import java.io.BufferedOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
@@ -36,15 +36,20 @@ import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
 import org.apache.commons.compress.compressors.gzip.GzipParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.wikidata.wdtk.datamodel.interfaces.DocumentDataFilter;
 import org.wikidata.wdtk.datamodel.interfaces.Sites;
+import org.wikidata.wdtk.util.AsynchronousOutputStream;
 import org.wikidata.wdtk.util.DirectoryManager;
 import org.wikidata.wdtk.util.DirectoryManagerFactory;
+import org.wikidata.wdtk.util.ParallelBZip2OutputStream;
+import org.wikidata.wdtk.util.ParallelGzipOutputStream;
 
 /**
  * Abstract implementation of {@link DumpProcessingAction} that represents
  * actions which generate outputs (in the form of files). It supports options
- * {@link #OPTION_DESTINATION}, {@link #OPTION_COMPRESSION}, and
- * {@link #OPTION_USE_STDOUT}. Moreover, it provides some static helper
+ * {@link #OPTION_DESTINATION}, {@link #OPTION_COMPRESSION},
+ * {@link #OPTION_COMPRESSION_THREADS}, and {@link #OPTION_USE_STDOUT}.
+ * Moreover, it provides some static helper
  * functions for opening files for writing.
  *
  * @author Michael Günther
@@ -74,6 +79,31 @@ public abstract class DumpProcessingOutputAction implements
 	 * setting the value to the string "true". Other values are ignored.
 	 */
 	public static final String OPTION_USE_STDOUT = "stdout";
+	/**
+	 * Name of the option to set the number of threads used for compressing
+	 * the output. By default, a single thread is used, which compresses the
+	 * output in a thread of its own, separate from the thread that creates
+	 * the output. Larger values compress blocks of the output in parallel.
+	 */
+	public static final String OPTION_COMPRESSION_THREADS = "compressionthreads";
+	/**
+	 * Name of the option to set a language filter for this action only. The
+	 * value is a comma-separated list of language codes, or "-" to filter all
+	 * languages. The name agrees with the global filter option of
+	 * {@link ClientConfiguration}, but is in lower case since options of
+	 * actions are not case sensitive.
+	 */
+	public static final String OPTION_FILTER_LANGUAGES = "flang";
+	/**
+	 * Name of the option to set a site link filter for this action only. See
+	 * {@link #OPTION_FILTER_LANGUAGES}.
+	 */
+	public static final String OPTION_FILTER_SITES = "fsite";
+	/**
+	 * Name of the option to set a property filter for this action only. See
+	 * {@link #OPTION_FILTER_LANGUAGES}.
+	 */
+	public static final String OPTION_FILTER_PROPERTIES = "fprop";
 
 	public static final String COMPRESS_BZ2 = "bz2";
 	public static final String COMPRESS_GZIP = "gz";
@@ -86,6 +116,27 @@ public abstract class DumpProcessingOutputAction implements
 	 */
 	protected Set<Closeable> outputStreams = new HashSet<>();
 
+	/**
+	 * Other actions whose output is written by this action.
+	 *
+	 * @see #shareOutput(DumpProcessingAction)
+	 */
+	protected final List<DumpProcessingOutputAction> sharedOutputActions = new ArrayList<>();
+
+	/**
+	 * The action that writes the output of this action, or null if this action
+	 * writes its own output.
+	 *
+	 * @see #shareOutput(DumpProcessingAction)
+	 */
+	protected DumpProcessingOutputAction primaryOutputAction = null;
+
+	/**
+	 * Filter that is applied to the documents of this action only, or null if
+	 * no such filter has been set.
+	 */
+	protected DocumentDataFilter filter = null;
+
 	/**
 	 * The name of the action.
 	 */
@@ -115,6 +166,11 @@ public abstract class DumpProcessingOutputAction implements
 	 */
 	protected String compressionType = COMPRESS_NONE;
 
+	/**
+	 * Number of threads to use for compressing the output.
+	 */
+	protected int compressionThreads = 1;
+
 	/**
 	 * Date stamp of the dump to be processed.
 	 */
@@ -141,11 +197,100 @@ public abstract class DumpProcessingOutputAction implements
 		case OPTION_USE_STDOUT:
 			this.useStdOut = (value == null) || "true".equals(value);
 			return true;
+		case OPTION_COMPRESSION_THREADS:
+			try {
+				int threads = Integer.parseInt(value);
+				if (threads > 0) {
+					this.compressionThreads = threads;
+				} else {
+					logger.warn("Number of compression threads must be "
+							+ "positive, but was " + value);
+				}
+			} catch (NumberFormatException e) {
+				logger.warn("Invalid number of compression threads: " + value);
+			}
+			return true;
+		case OPTION_FILTER_LANGUAGES:
+			getOrCreateFilter().setLanguageFilter(
+					ClientConfiguration.parseStringFilter(value));
+			return true;
+		case OPTION_FILTER_SITES:
+			getOrCreateFilter().setSiteLinkFilter(
+					ClientConfiguration.parseStringFilter(value));
+			return true;
+		case OPTION_FILTER_PROPERTIES:
+			getOrCreateFilter().setPropertyFilter(
+					ClientConfiguration.parsePropertyFilter(value));
+			return true;
 		default:
 			return false;
 		}
 	}
 
+	@Override
+	public DocumentDataFilter getFilter() {
+		return this.filter;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Actions can only share their output once: an action that writes the
+	 * output of other actions cannot give its own output to another action.
+	 * Subclasses that support shared output need to override
+	 * {@link #canShareOutput(DumpProcessingOutputAction)}, and should create
+	 * their output stream with {@link #getSharedOutputStream()}.
+	 */
+	@Override
+	public boolean shareOutput(DumpProcessingAction action) {
+		if (action == this || !(action instanceof DumpProcessingOutputAction)
+				|| this.primaryOutputAction != null) {
+			return false;
+		}
+		DumpProcessingOutputAction other = (DumpProcessingOutputAction) action;
+		if (other.primaryOutputAction != null
+				|| !other.sharedOutputActions.isEmpty()
+				|| !canShareOutput(other)) {
+			return false;
+		}
+		this.sharedOutputActions.add(other);
+		other.primaryOutputAction = this;
+		return true;
+	}
+
+	/**
+	 * Returns true if this action would produce exactly the same output as the
+	 * given action for any input, apart from the destination and compression
+	 * of the output. The default implementation returns false.
+	 *
+	 * @param action
+	 *            the action to compare with
+	 * @return true if this action can write the output of the given action
+	 */
+	protected boolean canShareOutput(DumpProcessingOutputAction action) {
+		return false;
+	}
+
+	/**
+	 * Returns true if this action uses the same filter settings as the given
+	 * action.
+	 *
+	 * @param action
+	 *            the action to compare with
+	 * @return true if both actions filter documents in the same way
+	 */
+	protected boolean hasSameFilter(DumpProcessingOutputAction action) {
+		if (this.filter == null || action.filter == null) {
+			return this.filter == action.filter;
+		}
+		return equalOrNull(this.filter.getLanguageFilter(),
+				action.filter.getLanguageFilter())
+				&& equalOrNull(this.filter.getSiteLinkFilter(),
+						action.filter.getSiteLinkFilter())
+				&& equalOrNull(this.filter.getPropertyFilter(),
+						action.filter.getPropertyFilter());
+	}
+
 	@Override
 	public boolean useStdOut() {
 		return this.useStdOut;
@@ -191,6 +336,64 @@ public abstract class DumpProcessingOutputAction implements
 		}
 	}
 
+	/**
+	 * Returns the filter of this action, creating a new one if needed.
+	 *
+	 * @return the filter
+	 */
+	DocumentDataFilter getOrCreateFilter() {
+		if (this.filter == null) {
+			this.filter = new DocumentDataFilter();
+		}
+		return this.filter;
+	}
+
+	/**
+	 * Creates the output stream for this action and all actions whose output
+	 * is written by this action, using the output options of each action. If
+	 * there are such other actions, the result writes the same data to all of
+	 * their streams, so that the data only needs to be created once. The
+	 * result is owned by the caller, as in
+	 * {@link #getOutputStream(boolean, String, String)}. Additional resources
+	 * are freed in {@link #close()} of this action.
+	 *
+	 * @return the output stream for this action and all actions that share
+	 *         its output
+	 * @throws IOException
+	 *             if there were problems opening the required streams
+	 */
+	protected OutputStream getSharedOutputStream() throws IOException {
+		OutputStream outputStream = getOutputStream(this.useStdOut,
+				getOutputFilename(), this.compressionType);
+		if (this.sharedOutputActions.isEmpty()) {
+			return outputStream;
+		}
+
+		List<OutputStream> outputStreams = new ArrayList<>();
+		outputStreams.add(outputStream);
+		for (DumpProcessingOutputAction action : this.sharedOutputActions) {
+			outputStreams.add(action.getOutputStream(action.useStdOut,
+					action.getOutputFilename(), action.compressionType));
+			// the other action is not necessarily closed after this one:
+			this.outputStreams.addAll(action.outputStreams);
+			action.outputStreams.clear();
+		}
+		return new FanOutOutputStream(outputStreams);
+	}
+
+	/**
+	 * Compares two objects that may be null.
+	 *
+	 * @param o1
+	 *            first object or null
+	 * @param o2
+	 *            second object or null
+	 * @return true if both objects are null or equal
+	 */
+	static boolean equalOrNull(Object o1, Object o2) {
+		return o1 == null ? o2 == null : o1.equals(o2);
+	}
+
 	/**
 	 * Creates an compressing {@link OutputStream}. The result is owned by the
 	 * caller and should be closed later. Neverhteless, the {@link #close()}
@@ -237,9 +440,17 @@ public abstract class DumpProcessingOutputAction implements
 
 		switch (compressionType) {
 		case COMPRESS_BZ2:
+			if (this.compressionThreads > 1) {
+				return new ParallelBZip2OutputStream(bufferedFileOutputStream,
+						this.compressionThreads);
+			}
 			return getAsynchronousOutputStream(new BZip2CompressorOutputStream(
 					bufferedFileOutputStream));
 		case COMPRESS_GZIP:
+			if (this.compressionThreads > 1) {
+				return new ParallelGzipOutputStream(bufferedFileOutputStream,
+						this.compressionThreads);
+			}
 			GzipParameters gzipParameters = new GzipParameters();
 			gzipParameters.setCompressionLevel(7);
 			return getAsynchronousOutputStream(new GzipCompressorOutputStream(
@@ -253,89 +464,36 @@ public abstract class DumpProcessingOutputAction implements
 		}
 	}
 
-	/**
-	 * Simple interface for a Runnable that can be stopped gracefully by calling
-	 * a method {@link FinishableRunnable#finish()}.
-	 *
-	 * @author Markus Kroetzsch
-	 *
-	 */
-	protected interface FinishableRunnable extends Runnable {
-
-		/**
-		 * Finishes the current operation gracefully. The method will wait until
-		 * the thread has really finished.
-		 */
-		void finish();
-	}
-
 	/**
 	 * Creates a separate thread for writing into the given output stream and
-	 * returns a pipe output stream that can be used to pass data to this
-	 * thread.
-	 * <p>
-	 * This code is inspired by
-	 * http://stackoverflow.com/questions/12532073/gzipoutputstream
-	 * -that-does-its-compression-in-a-separate-thread
+	 * returns an {@link AsynchronousOutputStream} that can be used to pass
+	 * data to this thread. Data is handed over in large chunks through a
+	 * bounded ring of buffers, so that the producer only blocks when the
+	 * writing thread has fallen behind by the whole ring. The time that either
+	 * side spent waiting is logged when the stream is closed, which shows
+	 * whether producing or writing the output is the bottleneck.
 	 *
 	 * @param outputStream
 	 *            the stream to write to in the thread
 	 * @return a new stream that data should be written to
-	 * @throws IOException
-	 *             if the pipes could not be created for some reason
 	 */
 	protected OutputStream getAsynchronousOutputStream(
-			final OutputStream outputStream) throws IOException {
-		final int SIZE = 1024 * 1024 * 10;
-		final PipedOutputStream pos = new PipedOutputStream();
-		final PipedInputStream pis = new PipedInputStream(pos, SIZE);
-
-		final FinishableRunnable run = new FinishableRunnable() {
-
-			volatile boolean finish = false;
-			volatile boolean hasFinished = false;
-
-			@Override
-			public void finish() {
-				this.finish = true;
-				while (!this.hasFinished) {
-					// loop until thread is really finished
-				}
-			}
-
-			@Override
-			public void run() {
-				try {
-					byte[] bytes = new byte[SIZE];
-					// Note that we finish really gently here, writing all data
-					// that is still in the input first (in theory, new data
-					// could arrive asynchronously, so that the thread never
-					// finishes, but this is not the intended mode of
-					// operation).
-					for (int len; (!this.finish || pis.available() > 0)
-							&& (len = pis.read(bytes)) > 0;) {
-						outputStream.write(bytes, 0, len);
-					}
-				} catch (IOException e) {
-					e.printStackTrace();
-				} finally {
-					close(pis);
-					close(outputStream);
-					this.hasFinished = true;
-				}
-			}
-		};
-
-		new Thread(run, "async-output-stream").start();
+			final OutputStream outputStream) {
+		final AsynchronousOutputStream result = new AsynchronousOutputStream(
+				outputStream);
 
 		this.outputStreams.add(new Closeable() {
 			@Override
 			public void close() throws IOException {
-				run.finish();
+				result.close();
+				logger.info("Asynchronous output finished: producer waited "
+						+ (result.getProducerWaitTime() / 1000000)
+						+ " ms, writer waited "
+						+ (result.getConsumerWaitTime() / 1000000) + " ms.");
 			}
 		});
 
-		return pos;
+		return result;
 	}
 
 	/**
@@ -0,0 +1,91 @@
+package org.wikidata.wdtk.client;
+
+/*
+ * #%L
+ * Wikidata Toolkit Command-line Tool
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Output stream that writes all data to several other streams. This is used
+ * to write the output of one action to the destinations of several actions.
+ * All operations are applied to all streams in order. When closing the
+ * stream, all underlying streams are closed, even if some of them fail; the
+ * first exception is rethrown afterwards.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+class FanOutOutputStream extends OutputStream {
+
+	final OutputStream[] outputStreams;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param outputStreams
+	 *            the streams to write to
+	 */
+	FanOutOutputStream(List<OutputStream> outputStreams) {
+		this.outputStreams = outputStreams
+				.toArray(new OutputStream[outputStreams.size()]);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		for (OutputStream outputStream : this.outputStreams) {
+			outputStream.write(b);
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		for (OutputStream outputStream : this.outputStreams) {
+			outputStream.write(b, off, len);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		for (OutputStream outputStream : this.outputStreams) {
+			outputStream.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		IOException exception = null;
+		for (OutputStream outputStream : this.outputStreams) {
+			try {
+				outputStream.close();
+			} catch (IOException e) {
+				if (exception == null) {
+					exception = e;
+				}
+			}
+		}
+		if (exception != null) {
+			throw exception;
+		}
+	}
+
+}
@@ -29,7 +29,9 @@ import org.wikidata.wdtk.datamodel.json.jackson.JsonSerializer;
 
 /**
  * This class represents an action of generating a JSON dump from data. It has
- * no specific options.
+ * no specific options. Several JSON actions with the same filter settings can
+ * share their output, so that each document is serialized only once and then
+ * written to the destinations of all of these actions.
  * 
  * @author Markus Kroetzsch
  * 
@@ -74,10 +76,13 @@ public class JsonSerializationAction extends DumpProcessingOutputAction {
 
 	@Override
 	public void open() {
+		if (this.primaryOutputAction != null) {
+			return; // output is written by the other action
+		}
+
 		OutputStream outputStream;
 		try {
-			outputStream = getOutputStream(this.useStdOut, getOutputFilename(),
-					this.compressionType);
+			outputStream = getSharedOutputStream();
 			this.serializer = new JsonSerializer(outputStream);
 			this.serializer.open();
 		} catch (IOException e) {
@@ -98,14 +103,18 @@ public class JsonSerializationAction extends DumpProcessingOutputAction {
 
 	@Override
 	public void close() {
-		this.serializer.close();
+		if (this.serializer != null) {
+			this.serializer.close();
+		}
 		super.close();
 	}
 
 	@Override
 	public String getReport() {
+		JsonSerializer usedSerializer = this.primaryOutputAction == null ? this.serializer
+				: ((JsonSerializationAction) this.primaryOutputAction).serializer;
 		String message = "Finished serialization of "
-				+ this.serializer.getEntityDocumentCount()
+				+ usedSerializer.getEntityDocumentCount()
 				+ " EntityDocuments in file " + getOutputFilename();
 		if (!this.compressionType.equals(COMPRESS_NONE)) {
 			message += "." + this.compressionType;
@@ -113,6 +122,12 @@ public class JsonSerializationAction extends DumpProcessingOutputAction {
 		return message;
 	}
 
+	@Override
+	protected boolean canShareOutput(DumpProcessingOutputAction action) {
+		return action instanceof JsonSerializationAction
+				&& hasSameFilter(action);
+	}
+
 	@Override
 	public String getDefaultActionName() {
 		return DEFAULT_ACTION_NAME;
@@ -34,14 +34,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
 import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
+import org.wikidata.wdtk.rdf.BinaryRdfWriter;
 import org.wikidata.wdtk.rdf.PropertyRegister;
 import org.wikidata.wdtk.rdf.RdfSerializer;
+import org.wikidata.wdtk.rdf.ResourceHashSet;
 
 /**
  * This class represents an action of generating an RDF dump from data. It
  * provides the additional option
  * {@link RdfSerializationAction#OPTION_RDF_TASKS}, which is required for
- * generating any output.
+ * generating any output, and the option
+ * {@link RdfSerializationAction#OPTION_RDF_FORMAT} for selecting the output
+ * format.
  *
  * @author Markus Kroetzsch
  *
@@ -63,6 +67,27 @@ public class RdfSerializationAction extends DumpProcessingOutputAction {
 	 */
 	public static final String OPTION_RDF_TASKS = "rdftasks";
 
+	/**
+	 * Name of the option that defines the output format of the RDF
+	 * serializer. The value should be one of the keys of
+	 * {@link #KNOWN_FORMATS}. The default is N-Triples.
+	 */
+	public static final String OPTION_RDF_FORMAT = "rdfformat";
+
+	/**
+	 * Name of the option that defines how many megabytes of memory the RDF
+	 * serializer uses to remember which values and references have been
+	 * written already. This memory is allocated outside of the Java heap. The
+	 * default is given by {@link ResourceHashSet#getDefaultMemory()}.
+	 */
+	public static final String OPTION_RDF_MEMORY = "rdfmemory";
+
+	public static final Map<String, RDFFormat> KNOWN_FORMATS = new HashMap<>();
+	static {
+		KNOWN_FORMATS.put("ntriples", RDFFormat.NTRIPLES);
+		KNOWN_FORMATS.put("binary", BinaryRdfWriter.BINARY_RDF);
+	}
+
 	public static final Map<String, Integer> KNOWN_TASKS = new HashMap<>();
 	static {
 		KNOWN_TASKS.put("items", RdfSerializer.TASK_ITEMS);
@@ -148,6 +173,17 @@ public class RdfSerializationAction extends DumpProcessingOutputAction {
 	 */
 	int tasks = 0;
 
+	/**
+	 * The RDF format to write.
+	 */
+	RDFFormat format = RDFFormat.NTRIPLES;
+
+	/**
+	 * The number of bytes used for avoiding duplicate triples, or 0 to use
+	 * the default.
+	 */
+	long deduplicationMemory = 0;
+
 	public RdfSerializationAction() {
 		this.outputDestination = DEFAULT_FILE_NAME;
 	}
@@ -162,6 +198,22 @@ public class RdfSerializationAction extends DumpProcessingOutputAction {
 		case OPTION_RDF_TASKS:
 			setTasks(value);
 			return true;
+		case OPTION_RDF_FORMAT:
+			setFormat(value);
+			return true;
+		case OPTION_RDF_MEMORY:
+			try {
+				long megabytes = Long.parseLong(value);
+				if (megabytes > 0) {
+					this.deduplicationMemory = megabytes * 1024 * 1024;
+				} else {
+					logger.warn("Memory for RDF serialization must be "
+							+ "positive, but was " + value);
+				}
+			} catch (NumberFormatException e) {
+				logger.warn("Invalid memory for RDF serialization: " + value);
+			}
+			return true;
 		default:
 			return false;
 		}
@@ -184,6 +236,10 @@ public class RdfSerializationAction extends DumpProcessingOutputAction {
 
 	@Override
 	public void open() {
+		if (this.primaryOutputAction != null) {
+			return; // output is written by the other action
+		}
+
 		try {
 			this.serializer = createRdfSerializer();
 			this.serializer.open();
@@ -205,7 +261,9 @@ public class RdfSerializationAction extends DumpProcessingOutputAction {
 
 	@Override
 	public void close() {
-		this.serializer.close();
+		if (this.serializer != null) {
+			this.serializer.close();
+		}
 		super.close();
 	}
 
@@ -218,27 +276,49 @@ public class RdfSerializationAction extends DumpProcessingOutputAction {
 	 *             if there were problems opening the output files
 	 */
 	protected RdfSerializer createRdfSerializer() throws IOException {
+		OutputStream exportOutputStream = getSharedOutputStream();
 
-		String outputDestinationFinal;
-		if (this.outputDestination != null) {
-			outputDestinationFinal = this.outputDestination;
-		} else {
-			outputDestinationFinal = "{PROJECT}" + this.taskName + "{DATE}"
-					+ ".nt";
-		}
-
-		OutputStream exportOutputStream = getOutputStream(this.useStdOut,
-				insertDumpInformation(outputDestinationFinal),
-				this.compressionType);
-
-		RdfSerializer serializer = new RdfSerializer(RDFFormat.NTRIPLES,
+		RdfSerializer serializer = new RdfSerializer(this.format,
 				exportOutputStream, this.sites,
 				PropertyRegister.getWikidataPropertyRegister());
 		serializer.setTasks(this.tasks);
+		if (this.deduplicationMemory > 0) {
+			serializer.setDeduplicationMemory(this.deduplicationMemory);
+		}
+		// output to stdout is usually piped to another program:
+		serializer.setStreaming(this.useStdOut);
 
 		return serializer;
 	}
 
+	@Override
+	public String getOutputFilename() {
+		if (this.outputDestination != null) {
+			return insertDumpInformation(this.outputDestination);
+		} else {
+			return insertDumpInformation("{PROJECT}" + this.taskName
+					+ "{DATE}" + "." + this.format.getDefaultFileExtension());
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * RDF actions can share their output if they use the same format, tasks,
+	 * and filters. Output to stdout is streamed and therefore ordered
+	 * differently, so it can only be shared among actions that all write to
+	 * stdout, or all to files.
+	 */
+	@Override
+	protected boolean canShareOutput(DumpProcessingOutputAction action) {
+		if (!(action instanceof RdfSerializationAction)) {
+			return false;
+		}
+		RdfSerializationAction other = (RdfSerializationAction) action;
+		return this.tasks == other.tasks && this.format.equals(other.format)
+				&& this.useStdOut == other.useStdOut && hasSameFilter(other);
+	}
+
 	/**
 	 * Sets the RDF serialization tasks based on the given string value.
 	 *
@@ -257,6 +337,22 @@ public class RdfSerializationAction extends DumpProcessingOutputAction {
 		}
 	}
 
+	/**
+	 * Sets the RDF output format based on the given string value.
+	 *
+	 * @param format
+	 *            the name of the format, as used in {@link #KNOWN_FORMATS}
+	 */
+	private void setFormat(String format) {
+		RDFFormat rdfFormat = KNOWN_FORMATS.get(format);
+		if (rdfFormat != null) {
+			this.format = rdfFormat;
+		} else {
+			logger.warn("Unsupported RDF format \"" + format
+					+ "\". Supported formats are: " + KNOWN_FORMATS.keySet());
+		}
+	}
+
 	private void printHelp() {
 		List<String> rdfTasks = new ArrayList<>(KNOWN_TASKS.keySet());
 		Collections.sort(rdfTasks);
@@ -278,9 +374,11 @@ public class RdfSerializationAction extends DumpProcessingOutputAction {
 
 	@Override
 	public String getReport() {
-		if (this.serializer != null) {
+		RdfSerializer usedSerializer = this.primaryOutputAction == null ? this.serializer
+				: ((RdfSerializationAction) this.primaryOutputAction).serializer;
+		if (usedSerializer != null) {
 			String message = "Finished serialization of "
-					+ this.serializer.getTripleCount()
+					+ usedSerializer.getTripleCount()
 					+ " RDF triples in file "
 					+ this.insertDumpInformation(this.outputDestination);
 			if (!this.compressionType.equals(COMPRESS_NONE)) {
@@ -21,10 +21,14 @@ package org.wikidata.wdtk.client;
  */
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.io.IOUtils;
@@ -32,10 +36,16 @@ import org.apache.log4j.Level;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.datamodel.interfaces.DocumentDataFilter;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyIdValue;
 import org.wikidata.wdtk.datamodel.interfaces.Sites;
 import org.wikidata.wdtk.dumpfiles.DumpContentType;
 import org.wikidata.wdtk.dumpfiles.DumpProcessingController;
+import org.wikidata.wdtk.dumpfiles.EntityIdRangePrefilter;
+import org.wikidata.wdtk.dumpfiles.EntityPrefilter;
 import org.wikidata.wdtk.dumpfiles.MwDumpFile;
+import org.wikidata.wdtk.rdf.PropertyRegister;
 import org.wikidata.wdtk.testing.MockDirectoryManager;
 import org.wikidata.wdtk.util.CompressionType;
 import org.wikidata.wdtk.util.DirectoryManagerFactory;
@@ -177,6 +187,24 @@ public class ClientTest {
 		Mockito.verify(mockDpc, Mockito.never()).getSitesInformation();
 	}
 
+	@Test
+	public void testActionFilterImpliedByGlobalFilters() {
+		String[] args = new String[] { "-a", "json", "--fLang", "en,de" };
+		Client client = new Client(mockDpc, args);
+
+		DocumentDataFilter filter = new DocumentDataFilter();
+		assertTrue(client.isImpliedByGlobalFilters(filter));
+		filter.setLanguageFilter(new HashSet<>(Arrays.asList("en", "de",
+				"fr")));
+		assertTrue(client.isImpliedByGlobalFilters(filter));
+		filter.setLanguageFilter(Collections.singleton("en"));
+		assertFalse(client.isImpliedByGlobalFilters(filter));
+		filter.setLanguageFilter(null);
+		filter.setPropertyFilter(Collections.<PropertyIdValue> singleton(Datamodel
+				.makeWikidataPropertyIdValue("P31")));
+		assertFalse(client.isImpliedByGlobalFilters(filter));
+	}
+
 	@Test
 	public void testWriteReport() throws IOException {
 		DirectoryManagerFactory
@@ -221,6 +249,47 @@ public class ClientTest {
 				+ client.clientConfiguration.getDateStamp() + ".txt"));
 	}
 
+	@Test
+	public void testOfflinePropertyRegisterPreloading() throws IOException {
+		DirectoryManagerFactory
+				.setDirectoryManagerClass(MockDirectoryManager.class);
+		MockDirectoryManager mdm = new MockDirectoryManager(
+				Paths.get("/dumps/"), false);
+		Mockito.when(mockDpc.getDownloadDirectoryManager()).thenReturn(mdm);
+
+		String[] args = { "-n", "-a", "rdf", "--rdftasks", "items,labels",
+				"-o", "/output/wikidata.rdf" };
+		Client client = new Client(mockDpc, args);
+		client.performActions();
+
+		// one pass for the property register, one for the actual export
+		Mockito.verify(mockDpc, Mockito.times(2)).processDump(
+				Mockito.<MwDumpFile> any());
+		Mockito.verify(mockDpc).setEntityPrefilter(
+				Mockito.isA(EntityIdRangePrefilter.class));
+		Mockito.verify(mockDpc).setEntityPrefilter(null);
+		assertTrue(mdm.hasFile(PropertyRegister.REGISTER_FILE_NAME));
+	}
+
+	@Test
+	public void testOfflinePropertyRegisterLoading() throws IOException {
+		DirectoryManagerFactory
+				.setDirectoryManagerClass(MockDirectoryManager.class);
+		MockDirectoryManager mdm = new MockDirectoryManager(
+				Paths.get("/dumps/"), false);
+		PropertyRegister.getWikidataPropertyRegister().storeToDirectory(mdm);
+		Mockito.when(mockDpc.getDownloadDirectoryManager()).thenReturn(mdm);
+
+		String[] args = { "-n", "-a", "rdf", "--rdftasks", "items,labels",
+				"-o", "/output/wikidata.rdf" };
+		Client client = new Client(mockDpc, args);
+		client.performActions();
+
+		Mockito.verify(mockDpc).processDump(Mockito.<MwDumpFile> any());
+		Mockito.verify(mockDpc, Mockito.never()).setEntityPrefilter(
+				Mockito.<EntityPrefilter> any());
+	}
+
 	@Test
 	public void testNonExistingLocalDump() {
 		String[] args = { "-f", "./asfjl.json" };
@@ -22,9 +22,16 @@ package org.wikidata.wdtk.client;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
 import org.junit.Test;
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.datamodel.interfaces.DocumentDataFilter;
 
 /**
  * Test for general functionality of the abstract class
@@ -69,6 +76,41 @@ public class DumpProcessingOutputActionTest {
 				DumpProcessingOutputAction.COMPRESS_GZIP);
 	}
 
+	@Test
+	public void testCompressionThreadsArgument() {
+		String[] args = new String[] { "-a", "json", "--compressionthreads",
+				"3" };
+		DumpProcessingOutputAction action = getActionFromArgs(args);
+
+		assertEquals(3, action.compressionThreads);
+		action.setOption(DumpProcessingOutputAction.OPTION_COMPRESSION_THREADS,
+				"0");
+		assertEquals(3, action.compressionThreads);
+	}
+
+	@Test
+	public void testFilterOptions() {
+		DumpProcessingOutputAction action = new JsonSerializationAction();
+		assertNull(action.getFilter());
+
+		assertTrue(action.setOption(
+				DumpProcessingOutputAction.OPTION_FILTER_LANGUAGES, "en,de"));
+		assertTrue(action.setOption(
+				DumpProcessingOutputAction.OPTION_FILTER_SITES, "-"));
+		assertTrue(action.setOption(
+				DumpProcessingOutputAction.OPTION_FILTER_PROPERTIES, "P31"));
+
+		DocumentDataFilter filter = action.getFilter();
+		assertEquals(new HashSet<>(Arrays.asList("en", "de")),
+				filter.getLanguageFilter());
+		assertEquals(Collections.<String> emptySet(),
+				filter.getSiteLinkFilter());
+		assertEquals(
+				Collections.singleton(Datamodel
+						.makeWikidataPropertyIdValue("P31")),
+				filter.getPropertyFilter());
+	}
+
 	@Test
 	public void testStdOutOutputArgumentsShort() {
 		String[] args = new String[] { "-a", "json", "-s" };
@@ -238,4 +238,84 @@ public class JsonSerializationActionTest {
 		assertEquals(1, results.size());
 		assertEquals(id1, results.get(0));
 	}
+
+	@Test
+	public void testSharedOutput() throws IOException {
+		DirectoryManagerFactory
+				.setDirectoryManagerClass(MockDirectoryManager.class);
+
+		JsonSerializationAction jsa1 = new JsonSerializationAction();
+		jsa1.setOption(DumpProcessingOutputAction.OPTION_DESTINATION,
+				"/path/to/shared1.json");
+		JsonSerializationAction jsa2 = new JsonSerializationAction();
+		jsa2.setOption(DumpProcessingOutputAction.OPTION_DESTINATION,
+				"/path/to/shared2.json");
+		jsa2.setOption(DumpProcessingOutputAction.OPTION_COMPRESSION, "gz");
+
+		assertTrue(jsa1.shareOutput(jsa2));
+		assertFalse(jsa2.shareOutput(jsa1));
+		assertFalse(jsa1.shareOutput(jsa1));
+
+		ItemDocument id1 = Datamodel.makeItemDocument(
+				Datamodel.makeWikidataItemIdValue("Q42"),
+				Arrays.asList(Datamodel.makeMonolingualTextValue("Test1", "en")),
+				Collections.<MonolingualTextValue> emptyList(),
+				Collections.<MonolingualTextValue> emptyList(),
+				Collections.<StatementGroup> emptyList(),
+				Collections.<String, SiteLink> emptyMap());
+
+		jsa1.open();
+		jsa2.open();
+		jsa1.processItemDocument(id1);
+		// the order of closing must not matter:
+		jsa2.close();
+		jsa1.close();
+
+		MockDirectoryManager mdm = new MockDirectoryManager(
+				Paths.get("/path/to/"), false);
+		assertEquals(Collections.singletonList(id1),
+				readDocuments(mdm, "shared1.json", CompressionType.NONE));
+		assertEquals(Collections.singletonList(id1),
+				readDocuments(mdm, "shared2.json.gz", CompressionType.GZIP));
+		assertEquals(jsa1.getReport().replace("shared1.json", ""), jsa2
+				.getReport().replace("shared2.json.gz", ""));
+	}
+
+	@Test
+	public void testNoSharedOutputForDifferentFilters() {
+		JsonSerializationAction jsa1 = new JsonSerializationAction();
+		JsonSerializationAction jsa2 = new JsonSerializationAction();
+		jsa2.setOption(DumpProcessingOutputAction.OPTION_FILTER_LANGUAGES,
+				"en,de");
+		RdfSerializationAction rsa = new RdfSerializationAction();
+
+		assertFalse(jsa1.shareOutput(jsa2));
+		assertFalse(jsa1.shareOutput(rsa));
+
+		jsa1.setOption(DumpProcessingOutputAction.OPTION_FILTER_LANGUAGES,
+				"de,en");
+		assertTrue(jsa1.shareOutput(jsa2));
+	}
+
+	static List<EntityDocument> readDocuments(MockDirectoryManager mdm,
+			String fileName, CompressionType compressionType)
+			throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		ObjectReader documentReader = mapper
+				.reader(JacksonTermedStatementDocument.class);
+		MappingIterator<JacksonTermedStatementDocument> documentIterator = documentReader
+				.readValues(mdm.getInputStreamForFile(fileName,
+						compressionType));
+
+		List<EntityDocument> results = new ArrayList<>();
+		while (documentIterator.hasNextValue()) {
+			JacksonTermedStatementDocument document = documentIterator
+					.nextValue();
+			document.setSiteIri(Datamodel.SITE_WIKIDATA);
+			results.add(document);
+		}
+		documentIterator.close();
+		return results;
+	}
+
 }
@@ -25,6 +25,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
+import org.wikidata.wdtk.rdf.BinaryRdfWriter;
 import org.wikidata.wdtk.rdf.RdfSerializer;
 
 public class RdfSerializationActionTest {
@@ -66,6 +67,53 @@ public class RdfSerializationActionTest {
 		assertTrue(action.needsSites());
 		assertEquals(action.serializer.getTasks(),
 				RdfSerializer.TASK_PROPERTIES | RdfSerializer.TASK_LABELS);
+		assertTrue(action.serializer.isStreaming());
 
 	}
+
+	@Test
+	public void testFormat() {
+		String[] args = new String[] { "-a", "rdf", "--rdftasks", "items",
+				"--rdfformat", "binary" };
+		RdfSerializationAction action = (RdfSerializationAction) DumpProcessingOutputActionTest
+				.getActionFromArgs(args);
+
+		assertEquals(BinaryRdfWriter.BINARY_RDF, action.format);
+		action.setOption(RdfSerializationAction.OPTION_RDF_FORMAT, "unknown");
+		assertEquals(BinaryRdfWriter.BINARY_RDF, action.format);
+	}
+
+	@Test
+	public void testMemory() {
+		String[] args = new String[] { "-a", "rdf", "--rdftasks", "items",
+				"--rdfmemory", "16" };
+		RdfSerializationAction action = (RdfSerializationAction) DumpProcessingOutputActionTest
+				.getActionFromArgs(args);
+
+		assertEquals(16L * 1024 * 1024, action.deduplicationMemory);
+		action.setOption(RdfSerializationAction.OPTION_RDF_MEMORY, "0");
+		assertEquals(16L * 1024 * 1024, action.deduplicationMemory);
+		action.setOption(RdfSerializationAction.OPTION_RDF_MEMORY, "lots");
+		assertEquals(16L * 1024 * 1024, action.deduplicationMemory);
+	}
+
+	@Test
+	public void testShareOutput() {
+		RdfSerializationAction rsa1 = new RdfSerializationAction();
+		rsa1.setOption(RdfSerializationAction.OPTION_RDF_TASKS, "items,labels");
+		RdfSerializationAction rsa2 = new RdfSerializationAction();
+		rsa2.setOption(RdfSerializationAction.OPTION_RDF_TASKS, "items,labels");
+		rsa2.setOption(DumpProcessingOutputAction.OPTION_COMPRESSION, "bz2");
+		RdfSerializationAction rsa3 = new RdfSerializationAction();
+		rsa3.setOption(RdfSerializationAction.OPTION_RDF_TASKS, "items");
+		RdfSerializationAction rsa4 = new RdfSerializationAction();
+		rsa4.setOption(RdfSerializationAction.OPTION_RDF_TASKS, "items,labels");
+		rsa4.setOption(RdfSerializationAction.OPTION_RDF_FORMAT, "binary");
+
+		assertFalse(rsa1.shareOutput(rsa3));
+		assertFalse(rsa1.shareOutput(rsa4));
+		assertTrue(rsa1.shareOutput(rsa2));
+		assertFalse(rsa3.shareOutput(rsa2));
+	}
+
 }
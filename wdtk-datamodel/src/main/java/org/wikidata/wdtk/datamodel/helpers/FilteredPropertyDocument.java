@@ -0,0 +1,84 @@
+package org.wikidata.wdtk.datamodel.helpers;
+
+/*
+ * #%L
+ * Wikidata Toolkit Data Model
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import org.wikidata.wdtk.datamodel.interfaces.DatatypeIdValue;
+import org.wikidata.wdtk.datamodel.interfaces.DocumentDataFilter;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyIdValue;
+
+/**
+ * View on a {@link PropertyDocument} that hides all data not admitted by a
+ * {@link DocumentDataFilter}, without copying the data. See
+ * {@link FilteredTermedStatementDocument} for details.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+public class FilteredPropertyDocument extends
+		FilteredTermedStatementDocument<PropertyDocument> implements
+		PropertyDocument {
+
+	/**
+	 * Constructor.
+	 *
+	 * @param propertyDocument
+	 *            the document to filter
+	 * @param filter
+	 *            the filter settings to apply
+	 */
+	public FilteredPropertyDocument(PropertyDocument propertyDocument,
+			DocumentDataFilter filter) {
+		super(propertyDocument, filter);
+	}
+
+	@Override
+	public PropertyIdValue getPropertyId() {
+		return this.document.getPropertyId();
+	}
+
+	@Override
+	public PropertyIdValue getEntityId() {
+		return this.document.getPropertyId();
+	}
+
+	@Override
+	public DatatypeIdValue getDatatype() {
+		return this.document.getDatatype();
+	}
+
+	@Override
+	public int hashCode() {
+		return Hash.hashCode(this);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return Equality.equalsPropertyDocument(this, obj);
+	}
+
+	@Override
+	public String toString() {
+		return ToString.toString(this);
+	}
+
+}
@@ -0,0 +1,197 @@
+package org.wikidata.wdtk.datamodel.helpers;
+
+/*
+ * #%L
+ * Wikidata Toolkit Data Model
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.wikidata.wdtk.datamodel.interfaces.DocumentDataFilter;
+import org.wikidata.wdtk.datamodel.interfaces.EntityIdValue;
+import org.wikidata.wdtk.datamodel.interfaces.MonolingualTextValue;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyIdValue;
+import org.wikidata.wdtk.datamodel.interfaces.StatementDocument;
+import org.wikidata.wdtk.datamodel.interfaces.StatementGroup;
+import org.wikidata.wdtk.datamodel.interfaces.TermedDocument;
+
+/**
+ * Abstract base class for views on {@link TermedDocument} and
+ * {@link StatementDocument} objects that hide all data not admitted by a
+ * {@link DocumentDataFilter}. In contrast to filtering with the
+ * {@link DatamodelConverter}, no data is copied: labels, descriptions, and
+ * aliases are filtered views of the original maps, and the list of statement
+ * groups is only computed when it is first requested. Components for which the
+ * filter does not make any restrictions are returned unchanged.
+ * <p>
+ * The filter settings are read when the view is created. Later changes to the
+ * filter do not affect existing views. Views can be shared among threads,
+ * e.g., by a {@code ConcurrentEntityDocumentProcessorBroker}, as long as the
+ * original document is not modified.
+ *
+ * @author Markus Kroetzsch
+ *
+ * @param <D>
+ *            the type of the filtered document
+ */
+public abstract class FilteredTermedStatementDocument<D extends TermedDocument & StatementDocument>
+		extends AbstractTermedStatementDocument {
+
+	final D document;
+	final Set<String> languageFilter;
+	final Set<PropertyIdValue> propertyFilter;
+
+	final Map<String, MonolingualTextValue> labels;
+	final Map<String, MonolingualTextValue> descriptions;
+	final Map<String, List<MonolingualTextValue>> aliases;
+
+	/**
+	 * Filtered list of statement groups, or null if it has not been computed
+	 * yet. The field is volatile so that threads that share this view only
+	 * see the complete list. Threads that find it unset may each compute it,
+	 * which leads to equal results.
+	 */
+	volatile List<StatementGroup> statementGroups = null;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param document
+	 *            the document to filter
+	 * @param filter
+	 *            the filter settings to apply
+	 */
+	public FilteredTermedStatementDocument(D document, DocumentDataFilter filter) {
+		this.document = document;
+		this.languageFilter = filter.getLanguageFilter();
+		this.propertyFilter = filter.getPropertyFilter();
+		this.labels = filterLanguages(document.getLabels());
+		this.descriptions = filterLanguages(document.getDescriptions());
+		this.aliases = filterLanguages(document.getAliases());
+	}
+
+	@Override
+	public EntityIdValue getEntityId() {
+		return this.document.getEntityId();
+	}
+
+	@Override
+	public long getRevisionId() {
+		return this.document.getRevisionId();
+	}
+
+	@Override
+	public Map<String, MonolingualTextValue> getLabels() {
+		return this.labels;
+	}
+
+	@Override
+	public Map<String, MonolingualTextValue> getDescriptions() {
+		return this.descriptions;
+	}
+
+	@Override
+	public Map<String, List<MonolingualTextValue>> getAliases() {
+		return this.aliases;
+	}
+
+	@Override
+	public List<StatementGroup> getStatementGroups() {
+		if (this.propertyFilter == null) {
+			return this.document.getStatementGroups();
+		} else if (this.propertyFilter.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		List<StatementGroup> result = this.statementGroups;
+		if (result == null) {
+			List<StatementGroup> filtered = new ArrayList<>();
+			for (StatementGroup statementGroup : this.document
+					.getStatementGroups()) {
+				if (this.propertyFilter.contains(statementGroup.getProperty())) {
+					filtered.add(statementGroup);
+				}
+			}
+			result = Collections.unmodifiableList(filtered);
+			this.statementGroups = result;
+		}
+		return result;
+	}
+
+	@Override
+	public StatementGroup findStatementGroup(PropertyIdValue propertyIdValue) {
+		if (this.propertyFilter == null
+				|| this.propertyFilter.contains(propertyIdValue)) {
+			return this.document.findStatementGroup(propertyIdValue);
+		} else {
+			return null;
+		}
+	}
+
+	@Override
+	public StatementGroup findStatementGroup(String propertyId) {
+		if (this.propertyFilter == null) {
+			return this.document.findStatementGroup(propertyId);
+		}
+		StatementGroup statementGroup = this.document
+				.findStatementGroup(propertyId);
+		if (statementGroup != null
+				&& this.propertyFilter.contains(statementGroup.getProperty())) {
+			return statementGroup;
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns a view on the given map that only contains the languages
+	 * admitted by the filter.
+	 *
+	 * @param map
+	 *            map from language codes to some values
+	 * @return the filtered map
+	 */
+	<V> Map<String, V> filterLanguages(Map<String, V> map) {
+		return filterKeys(map, this.languageFilter);
+	}
+
+	/**
+	 * Returns a view on the given map that only contains the given keys. If
+	 * the set of keys is null, the map is returned unchanged.
+	 *
+	 * @param map
+	 *            map to filter
+	 * @param keys
+	 *            set of keys to keep, or null to keep all keys
+	 * @return the filtered map
+	 */
+	static <V> Map<String, V> filterKeys(Map<String, V> map, Set<String> keys) {
+		if (keys == null) {
+			return map;
+		} else if (keys.isEmpty()) {
+			return Collections.emptyMap();
+		} else {
+			return new KeyFilteredMap<>(map, keys);
+		}
+	}
+
+}
@@ -0,0 +1,186 @@
+package org.wikidata.wdtk.datamodel.helpers;
+
+/*
+ * #%L
+ * Wikidata Toolkit Data Model
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Unmodifiable view on a map that only contains the entries whose keys are in
+ * a given set. No data is copied; all operations are answered by looking at
+ * the underlying map and key set. Iteration uses whichever of the two is
+ * smaller, so that a small filter on a large map remains cheap. The order of
+ * iteration therefore depends on the sizes: if the key set is smaller than
+ * the map, entries are returned in the order of the key set; otherwise they
+ * are returned in the order of the map. Users must not rely on the order of
+ * the map being kept. The view assumes that neither the map nor the key set
+ * change while it is used.
+ *
+ * @author Markus Kroetzsch
+ *
+ * @param <V>
+ *            the type of values in the map
+ */
+class KeyFilteredMap<V> extends AbstractMap<String, V> {
+
+	final Map<String, V> map;
+	final Set<String> keys;
+
+	/**
+	 * Number of entries in this view, or -1 if it has not been computed yet.
+	 * Threads that share this view may each compute it, which leads to equal
+	 * results.
+	 */
+	volatile int size = -1;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param map
+	 *            the map to filter
+	 * @param keys
+	 *            the keys of the entries that should be visible
+	 */
+	KeyFilteredMap(Map<String, V> map, Set<String> keys) {
+		this.map = map;
+		this.keys = keys;
+	}
+
+	@Override
+	public V get(Object key) {
+		if (this.keys.contains(key)) {
+			return this.map.get(key);
+		} else {
+			return null;
+		}
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return this.keys.contains(key) && this.map.containsKey(key);
+	}
+
+	@Override
+	public int size() {
+		int result = this.size;
+		if (result < 0) {
+			result = 0;
+			Iterator<Entry<String, V>> iterator = new EntryIterator();
+			while (iterator.hasNext()) {
+				iterator.next();
+				result++;
+			}
+			this.size = result;
+		}
+		return result;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		int size = this.size;
+		return size >= 0 ? size == 0 : !new EntryIterator().hasNext();
+	}
+
+	@Override
+	public Set<Entry<String, V>> entrySet() {
+		return new AbstractSet<Entry<String, V>>() {
+			@Override
+			public Iterator<Entry<String, V>> iterator() {
+				return new EntryIterator();
+			}
+
+			@Override
+			public int size() {
+				return KeyFilteredMap.this.size();
+			}
+		};
+	}
+
+	/**
+	 * Iterator over the visible entries of the map.
+	 *
+	 * @author Markus Kroetzsch
+	 *
+	 */
+	class EntryIterator implements Iterator<Entry<String, V>> {
+
+		final Iterator<String> keyIterator;
+		final Iterator<Entry<String, V>> entryIterator;
+
+		Entry<String, V> next = null;
+
+		EntryIterator() {
+			if (keys.size() < map.size()) {
+				this.keyIterator = keys.iterator();
+				this.entryIterator = null;
+			} else {
+				this.keyIterator = null;
+				this.entryIterator = map.entrySet().iterator();
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (this.next != null) {
+				return true;
+			}
+			if (this.keyIterator != null) {
+				while (this.keyIterator.hasNext()) {
+					String key = this.keyIterator.next();
+					V value = map.get(key);
+					if (value != null) {
+						this.next = new SimpleImmutableEntry<>(key, value);
+						return true;
+					}
+				}
+			} else {
+				while (this.entryIterator.hasNext()) {
+					Entry<String, V> entry = this.entryIterator.next();
+					if (keys.contains(entry.getKey())) {
+						this.next = entry;
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public Entry<String, V> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Entry<String, V> result = this.next;
+			this.next = null;
+			return result;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+}
@@ -0,0 +1,397 @@
+package org.wikidata.wdtk.datamodel.interfaces;
+
+/*
+ * #%L
+ * Wikidata Toolkit Data Model
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.wikidata.wdtk.util.DaemonThreadFactory;
+
+/**
+ * Broker implementation of {@link EntityDocumentProcessor} which distributes
+ * entity documents to multiple registered listeners that run in their own
+ * threads. Every registered processor has a bounded queue of documents that
+ * are waiting to be processed. If a queue is full, the thread that delivers
+ * new documents blocks until there is space again. This way, a slow processor
+ * does not stall the other processors until it has fallen behind by more than
+ * the queue size.
+ * <p>
+ * By default, each processor is called from a single thread and receives the
+ * documents in the order in which they were given to the broker. Processors
+ * that are thread-safe can be registered with several threads using
+ * {@link #registerEntityDocumentProcessor(EntityDocumentProcessor, int)}, in
+ * which case the order of documents is not preserved.
+ * <p>
+ * Threads are started when the first document arrives (or when calling
+ * {@link #open()}). The method {@link #close()} must be called after the last
+ * document to wait for all processors to finish. The broker can be used again
+ * after this. If any processor throws an exception, all processing stops and
+ * the exception is rethrown in the thread that delivers documents, either
+ * when delivering the next document or when calling {@link #close()}.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+public class ConcurrentEntityDocumentProcessorBroker extends
+		EntityDocumentProcessorBroker implements EntityDocumentDumpProcessor {
+
+	/**
+	 * Default number of documents that can wait for each processor.
+	 */
+	public static final int DEFAULT_QUEUE_SIZE = 1000;
+
+	/**
+	 * Marker that tells a thread that no more documents will follow.
+	 */
+	static final Object END_OF_DOCUMENTS = new Object();
+
+	/**
+	 * Holds the queue and threads of one registered processor.
+	 *
+	 * @author Markus Kroetzsch
+	 *
+	 */
+	class ProcessorWorker implements Runnable {
+
+		final EntityDocumentProcessor entityDocumentProcessor;
+		final int threadCount;
+		final BlockingQueue<Object> queue;
+		final List<Thread> threads = new ArrayList<>();
+
+		/**
+		 * Number of documents that have been put into the queue. Only
+		 * changed by the thread that delivers documents.
+		 */
+		long submittedCount = 0;
+		/**
+		 * Number of documents that have been taken from the queue and
+		 * processed (or discarded after a failure).
+		 */
+		long processedCount = 0;
+
+		ProcessorWorker(EntityDocumentProcessor entityDocumentProcessor,
+				int threadCount) {
+			this.entityDocumentProcessor = entityDocumentProcessor;
+			this.threadCount = threadCount;
+			this.queue = new ArrayBlockingQueue<>(queueSize);
+		}
+
+		void start() {
+			DaemonThreadFactory threadFactory = new DaemonThreadFactory(
+					"entity-processor-"
+							+ this.entityDocumentProcessor.getClass()
+									.getSimpleName());
+			for (int i = 0; i < this.threadCount; i++) {
+				Thread thread = threadFactory.newThread(this);
+				thread.start();
+				this.threads.add(thread);
+			}
+		}
+
+		void finish() throws InterruptedException {
+			for (int i = 0; i < this.threads.size(); i++) {
+				this.queue.put(END_OF_DOCUMENTS);
+			}
+			for (Thread thread : this.threads) {
+				thread.join();
+			}
+			this.threads.clear();
+		}
+
+		void submit(Object document) throws InterruptedException {
+			synchronized (this) {
+				this.submittedCount++;
+			}
+			this.queue.put(document);
+		}
+
+		/**
+		 * Waits until all documents that have been submitted so far have been
+		 * processed.
+		 */
+		synchronized void awaitProcessed() throws InterruptedException {
+			while (this.processedCount < this.submittedCount) {
+				wait();
+			}
+		}
+
+		synchronized void documentProcessed() {
+			this.processedCount++;
+			if (this.processedCount == this.submittedCount) {
+				notifyAll();
+			}
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				Object document;
+				try {
+					document = this.queue.take();
+				} catch (InterruptedException e) {
+					return;
+				}
+
+				if (document == END_OF_DOCUMENTS) {
+					return;
+				}
+				// after a failure, remaining documents are discarded:
+				if (failure.get() == null) {
+					try {
+						if (document instanceof ItemDocument) {
+							this.entityDocumentProcessor
+									.processItemDocument((ItemDocument) document);
+						} else {
+							this.entityDocumentProcessor
+									.processPropertyDocument((PropertyDocument) document);
+						}
+					} catch (Throwable t) {
+						reportFailure(t);
+					}
+				}
+				documentProcessed();
+			}
+		}
+	}
+
+	final int queueSize;
+	final List<ProcessorWorker> workers = new ArrayList<>();
+
+	boolean started = false;
+
+	/**
+	 * The first exception thrown by any processor, or null if there was no
+	 * problem.
+	 */
+	final AtomicReference<Throwable> failure = new AtomicReference<>();
+	/**
+	 * True if {@link #failure} has already been rethrown.
+	 */
+	boolean failureReported = false;
+
+	/**
+	 * Constructor. Creates a broker with queues of size
+	 * {@link #DEFAULT_QUEUE_SIZE}.
+	 */
+	public ConcurrentEntityDocumentProcessorBroker() {
+		this(DEFAULT_QUEUE_SIZE);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param queueSize
+	 *            the maximal number of documents that can wait for each
+	 *            registered processor
+	 */
+	public ConcurrentEntityDocumentProcessorBroker(int queueSize) {
+		if (queueSize <= 0) {
+			throw new IllegalArgumentException(
+					"The queue size must be a positive number.");
+		}
+		this.queueSize = queueSize;
+	}
+
+	/**
+	 * Registers a listener which will be called for all entity documents that
+	 * are processed. The listener is called from one thread of its own, in the
+	 * order in which documents are processed by the broker.
+	 *
+	 * @param entityDocumentProcessor
+	 *            the listener to register
+	 */
+	@Override
+	public void registerEntityDocumentProcessor(
+			EntityDocumentProcessor entityDocumentProcessor) {
+		registerEntityDocumentProcessor(entityDocumentProcessor, 1);
+	}
+
+	/**
+	 * Registers a listener which will be called for all entity documents that
+	 * are processed, using the given number of threads. If more than one
+	 * thread is used, the listener must be thread-safe, and documents will not
+	 * necessarily be processed in their original order. The method avoids
+	 * duplicates in the sense that the exact same object cannot be registered
+	 * twice.
+	 *
+	 * @param entityDocumentProcessor
+	 *            the listener to register
+	 * @param threadCount
+	 *            the number of threads that call the listener
+	 */
+	public synchronized void registerEntityDocumentProcessor(
+			EntityDocumentProcessor entityDocumentProcessor, int threadCount) {
+		if (threadCount <= 0) {
+			throw new IllegalArgumentException(
+					"The number of threads must be a positive number.");
+		}
+		if (!this.entityDocumentProcessorRegistry
+				.contains(entityDocumentProcessor)) {
+			this.entityDocumentProcessors.add(entityDocumentProcessor);
+			this.entityDocumentProcessorRegistry.add(entityDocumentProcessor);
+			ProcessorWorker worker = new ProcessorWorker(
+					entityDocumentProcessor, threadCount);
+			this.workers.add(worker);
+			if (this.started) {
+				worker.start();
+			}
+		}
+	}
+
+	@Override
+	public void processItemDocument(ItemDocument itemDocument) {
+		distributeDocument(itemDocument);
+	}
+
+	@Override
+	public void processPropertyDocument(PropertyDocument propertyDocument) {
+		distributeDocument(propertyDocument);
+	}
+
+	/**
+	 * Starts the threads of all registered processors. Calling this method is
+	 * optional, since threads are started automatically when needed.
+	 */
+	@Override
+	public synchronized void open() {
+		if (this.started) {
+			return;
+		}
+		for (ProcessorWorker worker : this.workers) {
+			worker.start();
+		}
+		this.started = true;
+	}
+
+	/**
+	 * Waits until all registered processors have processed all documents that
+	 * have been delivered so far. In contrast to {@link #close()}, the threads
+	 * of the processors keep running, so that this can be called often. If a
+	 * processor threw an exception that has not been reported yet, it is
+	 * rethrown here.
+	 */
+	public synchronized void flush() {
+		if (this.started) {
+			try {
+				for (ProcessorWorker worker : this.workers) {
+					worker.awaitProcessed();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(
+						"Interrupted while waiting for processors to finish", e);
+			}
+		}
+		checkFailure();
+	}
+
+	/**
+	 * Waits until all registered processors have processed all documents and
+	 * stops their threads. If a processor threw an exception that has not
+	 * been reported yet, it is rethrown here.
+	 */
+	@Override
+	public synchronized void close() {
+		if (this.started) {
+			try {
+				for (ProcessorWorker worker : this.workers) {
+					worker.finish();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(
+						"Interrupted while waiting for processors to finish", e);
+			}
+			this.started = false;
+		}
+
+		Throwable lastFailure = this.failure.getAndSet(null);
+		boolean reported = this.failureReported;
+		this.failureReported = false;
+		if (lastFailure != null && !reported) {
+			throwUnchecked(lastFailure);
+		}
+	}
+
+	/**
+	 * Puts the document into the queues of all registered processors.
+	 *
+	 * @param document
+	 *            the document to distribute
+	 */
+	void distributeDocument(EntityDocument document) {
+		checkFailure();
+		if (!this.started) {
+			open();
+		}
+		try {
+			for (ProcessorWorker worker : this.workers) {
+				worker.submit(document);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(
+					"Interrupted while waiting for processors", e);
+		}
+	}
+
+	/**
+	 * Records an exception that occurred in the thread of a processor.
+	 *
+	 * @param t
+	 *            the exception
+	 */
+	void reportFailure(Throwable t) {
+		this.failure.compareAndSet(null, t);
+	}
+
+	/**
+	 * Rethrows the exception of a processor in the current thread, if any.
+	 */
+	void checkFailure() {
+		Throwable currentFailure = this.failure.get();
+		if (currentFailure != null && !this.failureReported) {
+			this.failureReported = true;
+			throwUnchecked(currentFailure);
+		}
+	}
+
+	/**
+	 * Throws the given exception without wrapping it, unless it is a checked
+	 * exception.
+	 *
+	 * @param t
+	 *            the exception to throw
+	 */
+	static void throwUnchecked(Throwable t) {
+		if (t instanceof RuntimeException) {
+			throw (RuntimeException) t;
+		} else if (t instanceof Error) {
+			throw (Error) t;
+		} else {
+			throw new RuntimeException(t.toString(), t);
+		}
+	}
+
+}
@@ -20,6 +20,7 @@ package org.wikidata.wdtk.datamodel.interfaces;
  * #L%
  */
 
+import java.util.HashSet;
 import java.util.Set;
 
 /**
@@ -43,6 +44,13 @@ public class DocumentDataFilter {
 	 */
 	private Set<PropertyIdValue> propertyFilter = null;
 
+	/**
+	 * Set of the string ids of the properties in {@link #propertyFilter}, or
+	 * null if statements are not restricted. This is used to check ids
+	 * without creating {@link PropertyIdValue} objects.
+	 */
+	private Set<String> propertyIdFilter = null;
+
 	/**
 	 * Set of site keys to restrict site keys. If set to null, site links will
 	 * not be restricted.
@@ -101,6 +109,14 @@ public class DocumentDataFilter {
 	 */
 	public void setPropertyFilter(Set<PropertyIdValue> propertyFilter) {
 		this.propertyFilter = propertyFilter;
+		if (propertyFilter == null) {
+			this.propertyIdFilter = null;
+		} else {
+			this.propertyIdFilter = new HashSet<>();
+			for (PropertyIdValue propertyIdValue : propertyFilter) {
+				this.propertyIdFilter.add(propertyIdValue.getId());
+			}
+		}
 	}
 
 	/**
@@ -154,6 +170,24 @@ public class DocumentDataFilter {
 				|| this.propertyFilter.contains(propertyIdValue);
 	}
 
+	/**
+	 * Returns true if statements for the property with the given id should be
+	 * included. In contrast to {@link #includePropertyId(PropertyIdValue)},
+	 * this method only compares the id strings and ignores the site IRI of the
+	 * properties in the filter. It can therefore be used in situations where
+	 * the site IRI is not known yet. The ids are looked up in a set that is
+	 * computed when the filter is set, so later changes to the set of
+	 * properties that was given are not taken into account here.
+	 *
+	 * @param propertyId
+	 *            the string id of the property, e.g., "P31"
+	 * @return true if statements for this property should be included
+	 */
+	public boolean includePropertyId(String propertyId) {
+		return this.propertyIdFilter == null
+				|| this.propertyIdFilter.contains(propertyId);
+	}
+
 	/**
 	 * Returns true if the given site link is included (not filtered).
 	 *
@@ -20,23 +20,23 @@ package org.wikidata.wdtk.datamodel.interfaces;
  * #L%
  */
 
-import org.wikidata.wdtk.datamodel.helpers.DatamodelConverter;
-import org.wikidata.wdtk.datamodel.implementation.DataObjectFactoryImpl;
+import org.wikidata.wdtk.datamodel.helpers.FilteredItemDocument;
+import org.wikidata.wdtk.datamodel.helpers.FilteredPropertyDocument;
 
 /**
  * Implementation of {@link EntityDocumentProcessor} that acts as a filter,
  * removing some of the data from {@link EntityDocument} objects before passing
- * them on to another processor. There is an overhead involved in using this,
- * even if no filters are set, since a deep copy of the data is created to
- * filter it.
- *
+ * them on to another processor. The data is not copied; the processor receives
+ * views on the original documents that hide the filtered parts (see
+ * {@link FilteredItemDocument} and {@link FilteredPropertyDocument}). The
+ * overhead is therefore small if most of the data is kept.
  *
  * @author Markus Kroetzsch
  *
  */
 public class EntityDocumentProcessorFilter implements EntityDocumentProcessor {
 
-	final DatamodelConverter converter;
+	final DocumentDataFilter filter;
 	final EntityDocumentProcessor entityDocumentProcessor;
 
 	/**
@@ -50,20 +50,20 @@ public class EntityDocumentProcessorFilter implements EntityDocumentProcessor {
 	public EntityDocumentProcessorFilter(
 			EntityDocumentProcessor entityDocumentProcessor,
 			DocumentDataFilter filter) {
-		this.converter = new DatamodelConverter(new DataObjectFactoryImpl());
-		this.converter.setOptionFilter(filter);
+		this.filter = filter;
 		this.entityDocumentProcessor = entityDocumentProcessor;
 	}
 
 	@Override
 	public void processItemDocument(ItemDocument itemDocument) {
-		itemDocument = this.converter.copy(itemDocument);
+		itemDocument = new FilteredItemDocument(itemDocument, this.filter);
 		this.entityDocumentProcessor.processItemDocument(itemDocument);
 	}
 
 	@Override
 	public void processPropertyDocument(PropertyDocument propertyDocument) {
-		propertyDocument = this.converter.copy(propertyDocument);
+		propertyDocument = new FilteredPropertyDocument(propertyDocument,
+				this.filter);
 		this.entityDocumentProcessor.processPropertyDocument(propertyDocument);
 	}
 
@@ -20,23 +20,21 @@ package org.wikidata.wdtk.datamodel.json.jackson;
  * #L%
  */
 
+
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+
+import org.wikidata.wdtk.datamodel.interfaces.DocumentDataFilter;
 
 import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationContext;
-import com.fasterxml.jackson.databind.JsonDeserializer;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JavaType;
 
 /**
  * A deserializer implementation for the aliases in an
- * {@link JacksonTermedStatementDocument}.
+ * {@link JacksonTermedStatementDocument}, which skips all languages that are
+ * not admitted by the current {@link DocumentDataFilter}.
  * <p>
  * It implements a workaround to cope with empty aliases being represented as
  * <code>"aliases":[]</code> despite its declaration as map and not as list or
@@ -44,45 +42,25 @@ import com.fasterxml.jackson.databind.JsonNode;
  * possible.
  *
  * @see JacksonTermedStatementDocument#setAliases(Map)
+ * @see FilteringMapDeserializer
  *
  * @author Fredo Erxleben
  *
  */
 public class AliasesDeserializer extends
-		JsonDeserializer<Map<String, List<JacksonMonolingualTextValue>>> {
+		FilteringMapDeserializer<List<JacksonMonolingualTextValue>> {
 
 	@Override
-	public Map<String, List<JacksonMonolingualTextValue>> deserialize(
-			JsonParser jp, DeserializationContext ctxt) throws IOException {
-
-		Map<String, List<JacksonMonolingualTextValue>> contents = new HashMap<>();
-
-		try {
-			JsonNode node = jp.getCodec().readTree(jp);
-			if (!node.isArray()) {
-				Iterator<Entry<String, JsonNode>> nodeIterator = node.fields();
-				while (nodeIterator.hasNext()) {
-					List<JacksonMonolingualTextValue> mltvList = new ArrayList<>();
-					Entry<String, JsonNode> currentNode = nodeIterator.next();
-					// get the list of MLTVs
-					for (JsonNode mltvEntry : currentNode.getValue()) {
-						String language = mltvEntry.get("language").asText();
-						String value = mltvEntry.get("value").asText();
-						mltvList.add(new JacksonMonolingualTextValue(language,value));
-					}
-
-					contents.put(currentNode.getKey(), mltvList);
-				}
-			}
-
-		} catch (JsonProcessingException e) {
-			e.printStackTrace();
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
-
-		return contents;
+	protected boolean includeKey(String key, DocumentDataFilter filter) {
+		return filter.includeLanguage(key);
+	}
 
+	@Override
+	protected List<JacksonMonolingualTextValue> readValue(JsonParser jp,
+			DeserializationContext ctxt) throws IOException {
+		JavaType type = ctxt.getTypeFactory().constructCollectionType(
+				List.class, JacksonMonolingualTextValue.class);
+		return ctxt.readValue(jp, type);
 	}
 
 }
@@ -46,7 +46,11 @@ public class ClaimFromJson implements Claim {
 
 	private final JacksonStatement statement;
 
-	private List<SnakGroup> qualifiers = null;
+	/**
+	 * Cached list of qualifiers. The field is volatile so that threads that
+	 * share the claim only see complete lists.
+	 */
+	private volatile List<SnakGroup> qualifiers = null;
 
 	public ClaimFromJson(JacksonStatement statement) {
 		this.statement = statement;
@@ -67,12 +71,14 @@ public class ClaimFromJson implements Claim {
 		// Note: caching this is not 100% safe since the data is not immutable
 		// and we won't know of changes. But when this is called, no further
 		// changes should happen.
-		if (this.qualifiers == null) {
-			this.qualifiers = SnakGroupFromJson.makeSnakGroups(
+		List<SnakGroup> result = this.qualifiers;
+		if (result == null) {
+			result = SnakGroupFromJson.makeSnakGroups(
 					this.statement.getQualifiers(),
 					this.statement.getPropertyOrder());
+			this.qualifiers = result;
 		}
-		return this.qualifiers;
+		return result;
 	}
 
 	@Override
@@ -0,0 +1,111 @@
+package org.wikidata.wdtk.datamodel.json.jackson;
+
+/*
+ * #%L
+ * Wikidata Toolkit Data Model
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.wikidata.wdtk.datamodel.interfaces.DocumentDataFilter;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+
+/**
+ * Abstract base class for deserializers of the JSON maps in entity documents
+ * (labels, descriptions, aliases, claims, and site links) that can skip some
+ * of the entries while parsing. If the deserialization context has an
+ * attribute {@link JacksonTermedStatementDocument#FILTER_ATTRIBUTE} that holds
+ * a {@link DocumentDataFilter}, then the JSON of all entries that are not
+ * admitted by this filter is skipped on the token level without creating any
+ * objects for it. Without such an attribute, all entries are deserialized.
+ * <p>
+ * Empty maps are sometimes serialized as empty arrays <code>[]</code> in the
+ * JSON. Such arrays are read as empty maps.
+ *
+ * @author Markus Kroetzsch
+ *
+ * @param <V>
+ *            the type of the values of the map
+ */
+public abstract class FilteringMapDeserializer<V> extends
+		JsonDeserializer<Map<String, V>> {
+
+	@Override
+	public Map<String, V> deserialize(JsonParser jp,
+			DeserializationContext ctxt) throws IOException {
+		Map<String, V> result = new HashMap<>();
+
+		if (jp.getCurrentToken() == JsonToken.START_ARRAY) {
+			jp.skipChildren();
+			return result;
+		} else if (jp.getCurrentToken() != JsonToken.START_OBJECT) {
+			throw new JsonMappingException("Expected a JSON object but found "
+					+ jp.getCurrentToken(), jp.getCurrentLocation());
+		}
+
+		DocumentDataFilter filter = (DocumentDataFilter) ctxt
+				.getAttribute(JacksonTermedStatementDocument.FILTER_ATTRIBUTE);
+		while (jp.nextToken() == JsonToken.FIELD_NAME) {
+			String key = jp.getCurrentName();
+			jp.nextToken();
+			if (filter == null || includeKey(key, filter)) {
+				result.put(key, readValue(jp, ctxt));
+			} else {
+				jp.skipChildren();
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns true if the entry with the given key is admitted by the filter
+	 * and should be deserialized.
+	 *
+	 * @param key
+	 *            the key of the map entry
+	 * @param filter
+	 *            the filter to use
+	 * @return true if the entry should be kept
+	 */
+	protected abstract boolean includeKey(String key, DocumentDataFilter filter);
+
+	/**
+	 * Reads the value of the current map entry. The parser is positioned at
+	 * the first token of the value.
+	 *
+	 * @param jp
+	 *            the parser to read from
+	 * @param ctxt
+	 *            the current deserialization context
+	 * @return the value
+	 * @throws IOException
+	 *             if the value could not be read
+	 */
+	protected abstract V readValue(JsonParser jp, DeserializationContext ctxt)
+			throws IOException;
+
+}
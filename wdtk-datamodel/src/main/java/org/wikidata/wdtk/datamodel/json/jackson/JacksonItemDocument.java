@@ -36,6 +36,7 @@ import org.wikidata.wdtk.datamodel.interfaces.SiteLink;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 /**
  * Jackson implementation of {@link ItemDocument}. Like all Jackson objects, it
@@ -53,6 +54,7 @@ public class JacksonItemDocument extends JacksonTermedStatementDocument
 	/**
 	 * Map to store site links.
 	 */
+	@JsonDeserialize(using = SiteLinksDeserializer.class)
 	private Map<String, JacksonSiteLink> sitelinks = new HashMap<>();
 
 	/**
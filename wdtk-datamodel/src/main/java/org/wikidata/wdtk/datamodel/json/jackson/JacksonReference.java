@@ -46,7 +46,11 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class JacksonReference implements Reference {
 
-	private List<SnakGroup> snakGroups = null;
+	/**
+	 * Cached list of snak groups. The field is volatile so that threads that
+	 * share the reference only see complete lists.
+	 */
+	private volatile List<SnakGroup> snakGroups = null;
 
 	/**
 	 * Map of property id strings to snaks, as used to encode snaks in JSON.
@@ -62,11 +66,13 @@ public class JacksonReference implements Reference {
 	@JsonIgnore
 	@Override
 	public List<SnakGroup> getSnakGroups() {
-		if (this.snakGroups == null) {
-			this.snakGroups = SnakGroupFromJson.makeSnakGroups(this.snaks,
+		List<SnakGroup> result = this.snakGroups;
+		if (result == null) {
+			result = SnakGroupFromJson.makeSnakGroups(this.snaks,
 					this.propertyOrder);
+			this.snakGroups = result;
 		}
-		return this.snakGroups;
+		return result;
 	}
 
 	/**
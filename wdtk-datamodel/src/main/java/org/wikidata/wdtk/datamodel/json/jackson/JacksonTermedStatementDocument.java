@@ -28,6 +28,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 
 import org.wikidata.wdtk.datamodel.helpers.AbstractTermedStatementDocument;
+import org.wikidata.wdtk.datamodel.interfaces.DocumentDataFilter;
 import org.wikidata.wdtk.datamodel.interfaces.EntityDocument;
 import org.wikidata.wdtk.datamodel.interfaces.EntityIdValue;
 import org.wikidata.wdtk.datamodel.interfaces.MonolingualTextValue;
@@ -41,6 +42,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonSubTypes.Type;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 /**
@@ -67,23 +69,36 @@ public abstract class JacksonTermedStatementDocument extends
 	 * String used to refer to properties in JSON.
 	 */
 	public static final String JSON_TYPE_PROPERTY = "property";
+	/**
+	 * Name of the deserialization attribute that can hold a
+	 * {@link DocumentDataFilter}. If such a filter is given, e.g., using
+	 * {@link ObjectReader#withAttribute(Object, Object)}, then all labels,
+	 * descriptions, aliases, statements, and site links that are not admitted
+	 * by the filter are skipped during deserialization.
+	 */
+	public static final String FILTER_ATTRIBUTE = "wdtk.documentDataFilter";
 
 	@JsonDeserialize(using = AliasesDeserializer.class)
 	protected Map<String, List<JacksonMonolingualTextValue>> aliases = new HashMap<>();
+	@JsonDeserialize(using = TermMapDeserializer.class)
 	protected Map<String, JacksonMonolingualTextValue> labels = new HashMap<>();
+	@JsonDeserialize(using = TermMapDeserializer.class)
 	protected Map<String, JacksonMonolingualTextValue> descriptions = new HashMap<>();
 
 	/**
 	 * This is what is called <i>claim</i> in the JSON model. It corresponds to
 	 * the statement group in the WDTK model.
 	 */
+	@JsonDeserialize(using = ClaimsDeserializer.class)
 	private Map<String, List<JacksonStatement>> claims = new HashMap<>();
 
 	/**
 	 * Statement groups. This member is initialized when statements are
-	 * accessed.
+	 * accessed. The list is complete before it is stored, and the field is
+	 * volatile, so that threads that share the document only see complete
+	 * lists.
 	 */
-	private List<StatementGroup> statementGroups = null;
+	private volatile List<StatementGroup> statementGroups = null;
 
 	/**
 	 * The id of the entity that the document refers to. This is not mapped to
@@ -243,14 +258,15 @@ public abstract class JacksonTermedStatementDocument extends
 	@JsonIgnore
 	@Override
 	public List<StatementGroup> getStatementGroups() {
-		if (this.statementGroups == null) {
-			this.statementGroups = new ArrayList<>(this.claims.size());
+		List<StatementGroup> result = this.statementGroups;
+		if (result == null) {
+			result = new ArrayList<>(this.claims.size());
 			for (List<JacksonStatement> statements : this.claims.values()) {
-				this.statementGroups
-						.add(new StatementGroupFromJson(statements));
+				result.add(new StatementGroupFromJson(statements));
 			}
+			this.statementGroups = result;
 		}
-		return this.statementGroups;
+		return result;
 	}
 
 	/**
@@ -20,6 +20,7 @@ package org.wikidata.wdtk.datamodel.json.jackson;
  * #L%
  */
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -85,6 +86,15 @@ public class JsonSerializer implements EntityDocumentDumpProcessor {
 		mapper.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
 	}
 
+	/**
+	 * Buffer that each document is serialized to before it is written to the
+	 * output. The buffer is reused for all documents, and the output receives
+	 * each document in a single write, which is cheap even if the output
+	 * passes the data on to several destinations.
+	 */
+	protected final ByteArrayOutputStream buffer = new ByteArrayOutputStream(
+			64 * 1024);
+
 	/**
 	 * Counter for the number of documents serialized so far.
 	 */
@@ -170,10 +180,12 @@ public class JsonSerializer implements EntityDocumentDumpProcessor {
 	 */
 	protected void serializeEntityDocument(EntityDocument entityDocument) {
 		try {
+			this.buffer.reset();
 			if (this.entityDocumentCount > 0) {
-				this.outputStream.write(JSON_SEP);
+				this.buffer.write(JSON_SEP);
 			}
-			mapper.writeValue(this.outputStream, entityDocument);
+			mapper.writeValue(this.buffer, entityDocument);
+			this.buffer.writeTo(this.outputStream);
 		} catch (IOException e) {
 			reportException(e);
 		}
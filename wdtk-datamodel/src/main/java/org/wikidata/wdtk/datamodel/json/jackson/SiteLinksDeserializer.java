@@ -0,0 +1,55 @@
+package org.wikidata.wdtk.datamodel.json.jackson;
+
+/*
+ * #%L
+ * Wikidata Toolkit Data Model
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.io.IOException;
+
+import org.wikidata.wdtk.datamodel.interfaces.DocumentDataFilter;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+
+/**
+ * A deserializer implementation for the site links in a
+ * {@link JacksonItemDocument}, which skips all sites that are not admitted by
+ * the current {@link DocumentDataFilter}.
+ *
+ * @see FilteringMapDeserializer
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+public class SiteLinksDeserializer extends
+		FilteringMapDeserializer<JacksonSiteLink> {
+
+	@Override
+	protected boolean includeKey(String key, DocumentDataFilter filter) {
+		return filter.includeSiteLink(key);
+	}
+
+	@Override
+	protected JacksonSiteLink readValue(JsonParser jp,
+			DeserializationContext ctxt) throws IOException {
+		return ctxt.readValue(jp, JacksonSiteLink.class);
+	}
+
+}
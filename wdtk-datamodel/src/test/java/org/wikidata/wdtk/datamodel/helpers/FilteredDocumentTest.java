@@ -0,0 +1,263 @@
+package org.wikidata.wdtk.datamodel.helpers;
+
+/*
+ * #%L
+ * Wikidata Toolkit Data Model
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.wikidata.wdtk.datamodel.implementation.DataObjectFactoryImpl;
+import org.wikidata.wdtk.datamodel.interfaces.DatatypeIdValue;
+import org.wikidata.wdtk.datamodel.interfaces.DocumentDataFilter;
+import org.wikidata.wdtk.datamodel.interfaces.EntityIdValue;
+import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
+import org.wikidata.wdtk.datamodel.interfaces.MonolingualTextValue;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyIdValue;
+import org.wikidata.wdtk.datamodel.interfaces.SiteLink;
+import org.wikidata.wdtk.datamodel.interfaces.StatementGroup;
+
+public class FilteredDocumentTest {
+
+	final PropertyIdValue p1 = Datamodel.makeWikidataPropertyIdValue("P1");
+	final PropertyIdValue p2 = Datamodel.makeWikidataPropertyIdValue("P2");
+	final PropertyIdValue p3 = Datamodel.makeWikidataPropertyIdValue("P3");
+
+	ItemDocument itemDocument;
+	PropertyDocument propertyDocument;
+
+	@Before
+	public void setUp() {
+		FilterCopyTest filterCopyTest = new FilterCopyTest();
+
+		List<MonolingualTextValue> labels = new ArrayList<>();
+		labels.add(Datamodel.makeMonolingualTextValue("Label de", "de"));
+		labels.add(Datamodel.makeMonolingualTextValue("Label en", "en"));
+		labels.add(Datamodel.makeMonolingualTextValue("Label he", "he"));
+		List<MonolingualTextValue> descriptions = new ArrayList<>();
+		descriptions.add(Datamodel.makeMonolingualTextValue("Desc en", "en"));
+		descriptions.add(Datamodel.makeMonolingualTextValue("Desc he", "he"));
+		List<MonolingualTextValue> aliases = new ArrayList<>();
+		aliases.add(Datamodel.makeMonolingualTextValue("Alias en", "en"));
+		aliases.add(Datamodel.makeMonolingualTextValue("Alias de1", "de"));
+		aliases.add(Datamodel.makeMonolingualTextValue("Alias de2", "de"));
+
+		List<StatementGroup> statementGroups = new ArrayList<>();
+		statementGroups.add(filterCopyTest.makeTestStatementGroup(p1));
+		statementGroups.add(filterCopyTest.makeTestStatementGroup(p2));
+		statementGroups.add(filterCopyTest.makeTestStatementGroup(p3));
+		PropertyIdValue p42 = Datamodel.makeWikidataPropertyIdValue("P42");
+		List<StatementGroup> propertyStatementGroups = new ArrayList<>();
+		propertyStatementGroups.add(makeStatementGroup(p42, p1));
+		propertyStatementGroups.add(makeStatementGroup(p42, p2));
+
+		Map<String, SiteLink> siteLinks = new HashMap<>();
+		for (int i = 1; i <= 3; i++) {
+			SiteLink siteLink = Datamodel.makeSiteLink("Title " + i, "site"
+					+ i, Collections.<String> emptyList());
+			siteLinks.put(siteLink.getSiteKey(), siteLink);
+		}
+
+		this.itemDocument = Datamodel.makeItemDocument(
+				Datamodel.makeWikidataItemIdValue("Q42"), labels,
+				descriptions, aliases, statementGroups, siteLinks, 1234);
+		this.propertyDocument = Datamodel.makePropertyDocument(
+				p42, labels, descriptions, aliases, propertyStatementGroups,
+				Datamodel.makeDatatypeIdValue(DatatypeIdValue.DT_ITEM), 1235);
+	}
+
+	StatementGroup makeStatementGroup(EntityIdValue subject,
+			PropertyIdValue propertyIdValue) {
+		return Datamodel.makeStatementGroup(Collections
+				.singletonList(StatementBuilder
+						.forSubjectAndProperty(subject, propertyIdValue)
+						.withSomeValue().build()));
+	}
+
+	/**
+	 * Checks that the filtered views are equal to the filtered copies made
+	 * with a {@link DatamodelConverter}.
+	 *
+	 * @param filter
+	 *            the filter to check
+	 */
+	void assertSameAsCopy(DocumentDataFilter filter) {
+		DatamodelConverter datamodelConverter = new DatamodelConverter(
+				new DataObjectFactoryImpl());
+		datamodelConverter.setOptionFilter(filter);
+
+		ItemDocument filteredItem = new FilteredItemDocument(
+				this.itemDocument, filter);
+		ItemDocument copiedItem = datamodelConverter.copy(this.itemDocument);
+		assertEquals(copiedItem, filteredItem);
+		assertEquals(filteredItem, copiedItem);
+		assertEquals(copiedItem.hashCode(), filteredItem.hashCode());
+		assertEquals(copiedItem.toString(), filteredItem.toString());
+
+		PropertyDocument filteredProperty = new FilteredPropertyDocument(
+				this.propertyDocument, filter);
+		PropertyDocument copiedProperty = datamodelConverter
+				.copy(this.propertyDocument);
+		assertEquals(copiedProperty, filteredProperty);
+		assertEquals(filteredProperty, copiedProperty);
+		assertEquals(copiedProperty.hashCode(), filteredProperty.hashCode());
+	}
+
+	@Test
+	public void testNoFilter() {
+		DocumentDataFilter filter = new DocumentDataFilter();
+		assertSameAsCopy(filter);
+
+		ItemDocument filteredItem = new FilteredItemDocument(
+				this.itemDocument, filter);
+		assertEquals(this.itemDocument.getLabels(), filteredItem.getLabels());
+		assertEquals(this.itemDocument.getStatementGroups(),
+				filteredItem.getStatementGroups());
+		assertEquals(this.itemDocument.getSiteLinks(),
+				filteredItem.getSiteLinks());
+	}
+
+	@Test
+	public void testLanguageFilter() {
+		DocumentDataFilter filter = new DocumentDataFilter();
+		Set<String> languageFilter = new HashSet<>();
+		languageFilter.add("de");
+		languageFilter.add("he");
+		languageFilter.add("fr");
+		filter.setLanguageFilter(languageFilter);
+		assertSameAsCopy(filter);
+
+		ItemDocument filteredItem = new FilteredItemDocument(
+				this.itemDocument, filter);
+		assertEquals("Label de", filteredItem.findLabel("de"));
+		assertNull(filteredItem.findLabel("en"));
+		assertNull(filteredItem.findLabel("fr"));
+		assertEquals(2, filteredItem.getLabels().size());
+		assertTrue(filteredItem.getAliases().containsKey("de"));
+		assertFalse(filteredItem.getAliases().containsKey("en"));
+		assertFalse(filteredItem.getDescriptions().isEmpty());
+
+		filter.setLanguageFilter(Collections.singleton("de"));
+		assertSameAsCopy(filter);
+		filter.setLanguageFilter(Collections.singleton("fr"));
+		assertSameAsCopy(filter);
+		assertTrue(new FilteredItemDocument(this.itemDocument, filter)
+				.getLabels().isEmpty());
+	}
+
+	@Test
+	public void testEmptyLanguageFilter() {
+		DocumentDataFilter filter = new DocumentDataFilter();
+		filter.setLanguageFilter(Collections.<String> emptySet());
+		assertSameAsCopy(filter);
+	}
+
+	@Test
+	public void testPropertyFilter() {
+		DocumentDataFilter filter = new DocumentDataFilter();
+		Set<PropertyIdValue> propertyFilter = new HashSet<>();
+		propertyFilter.add(p1);
+		propertyFilter.add(p3);
+		filter.setPropertyFilter(propertyFilter);
+		assertSameAsCopy(filter);
+
+		ItemDocument filteredItem = new FilteredItemDocument(
+				this.itemDocument, filter);
+		assertEquals(2, filteredItem.getStatementGroups().size());
+		assertTrue(filteredItem.hasStatement(p1));
+		assertTrue(filteredItem.hasStatement("P3"));
+		assertFalse(filteredItem.hasStatement(p2));
+		assertFalse(filteredItem.hasStatement("P2"));
+		assertNull(filteredItem.findStatementGroup("P4"));
+	}
+
+	@Test
+	public void testEmptyPropertyFilter() {
+		DocumentDataFilter filter = new DocumentDataFilter();
+		filter.setPropertyFilter(Collections.<PropertyIdValue> emptySet());
+		assertSameAsCopy(filter);
+		assertFalse(new FilteredItemDocument(this.itemDocument, filter)
+				.getAllStatements().hasNext());
+	}
+
+	@Test
+	public void testSiteLinkFilter() {
+		DocumentDataFilter filter = new DocumentDataFilter();
+		filter.setSiteLinkFilter(Collections.singleton("site2"));
+		assertSameAsCopy(filter);
+
+		ItemDocument filteredItem = new FilteredItemDocument(
+				this.itemDocument, filter);
+		assertEquals(Collections.singleton("site2"), filteredItem
+				.getSiteLinks().keySet());
+
+		filter.setSiteLinkFilter(Collections.<String> emptySet());
+		assertSameAsCopy(filter);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testUnmodifiableView() {
+		DocumentDataFilter filter = new DocumentDataFilter();
+		filter.setLanguageFilter(Collections.singleton("de"));
+		new FilteredItemDocument(this.itemDocument, filter).getLabels().put(
+				"en", Datamodel.makeMonolingualTextValue("Label", "en"));
+	}
+
+	@Test
+	public void testKeyFilteredMapOrder() {
+		Map<String, String> map = new LinkedHashMap<>();
+		for (String key : new String[] { "a", "b", "c", "d" }) {
+			map.put(key, key.toUpperCase());
+		}
+
+		// smaller key set: order of the key set
+		Set<String> keys = new LinkedHashSet<>();
+		Collections.addAll(keys, "c", "x", "a");
+		KeyFilteredMap<String> filteredMap = new KeyFilteredMap<>(map, keys);
+		assertEquals(new ArrayList<>(Arrays.asList("c", "a")),
+				new ArrayList<>(filteredMap.keySet()));
+		assertEquals(2, filteredMap.size());
+
+		// larger key set: order of the map
+		keys = new LinkedHashSet<>();
+		Collections.addAll(keys, "d", "x", "c", "y", "a");
+		filteredMap = new KeyFilteredMap<>(map, keys);
+		assertEquals(new ArrayList<>(Arrays.asList("a", "c", "d")),
+				new ArrayList<>(filteredMap.keySet()));
+		assertEquals(3, filteredMap.size());
+	}
+
+}
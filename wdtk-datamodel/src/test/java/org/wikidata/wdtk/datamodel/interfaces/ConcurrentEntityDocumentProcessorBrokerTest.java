@@ -0,0 +1,204 @@
+package org.wikidata.wdtk.datamodel.interfaces;
+
+/*
+ * #%L
+ * Wikidata Toolkit Data Model
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.datamodel.helpers.ItemDocumentBuilder;
+import org.wikidata.wdtk.datamodel.helpers.PropertyDocumentBuilder;
+
+public class ConcurrentEntityDocumentProcessorBrokerTest {
+
+	static class RecordingProcessor implements EntityDocumentProcessor {
+
+		final List<String> ids = Collections
+				.synchronizedList(new ArrayList<String>());
+		final Thread callerThread = Thread.currentThread();
+		boolean calledFromOtherThread = true;
+
+		@Override
+		public void processItemDocument(ItemDocument itemDocument) {
+			record(itemDocument);
+		}
+
+		@Override
+		public void processPropertyDocument(PropertyDocument propertyDocument) {
+			record(propertyDocument);
+		}
+
+		void record(EntityDocument document) {
+			if (Thread.currentThread() == this.callerThread) {
+				this.calledFromOtherThread = false;
+			}
+			this.ids.add(document.getEntityId().getId());
+		}
+	}
+
+	static class FailingProcessor implements EntityDocumentProcessor {
+
+		@Override
+		public void processItemDocument(ItemDocument itemDocument) {
+			throw new IllegalStateException("Failure");
+		}
+
+		@Override
+		public void processPropertyDocument(PropertyDocument propertyDocument) {
+			throw new IllegalStateException("Failure");
+		}
+	}
+
+	static ItemDocument getItemDocument(int i) {
+		return ItemDocumentBuilder.forItemId(
+				Datamodel.makeWikidataItemIdValue("Q" + i)).build();
+	}
+
+	@Test
+	public void testOrderedProcessing() {
+		ConcurrentEntityDocumentProcessorBroker broker = new ConcurrentEntityDocumentProcessorBroker(
+				3);
+		RecordingProcessor processor1 = new RecordingProcessor();
+		RecordingProcessor processor2 = new RecordingProcessor();
+		broker.registerEntityDocumentProcessor(processor1);
+		broker.registerEntityDocumentProcessor(processor2);
+		broker.registerEntityDocumentProcessor(processor1);
+
+		List<String> expected = new ArrayList<>();
+		for (int i = 1; i <= 100; i++) {
+			broker.processItemDocument(getItemDocument(i));
+			expected.add("Q" + i);
+		}
+		broker.processPropertyDocument(PropertyDocumentBuilder
+				.forPropertyIdAndDatatype(
+						Datamodel.makeWikidataPropertyIdValue("P1"),
+						DatatypeIdValue.DT_ITEM).build());
+		expected.add("P1");
+		broker.close();
+
+		assertEquals(expected, processor1.ids);
+		assertEquals(expected, processor2.ids);
+		assertEquals(true, processor1.calledFromOtherThread);
+	}
+
+	@Test
+	public void testMultipleThreads() {
+		ConcurrentEntityDocumentProcessorBroker broker = new ConcurrentEntityDocumentProcessorBroker();
+		RecordingProcessor processor = new RecordingProcessor();
+		broker.registerEntityDocumentProcessor(processor, 4);
+
+		broker.open();
+		for (int i = 1; i <= 100; i++) {
+			broker.processItemDocument(getItemDocument(i));
+		}
+		broker.close();
+
+		assertEquals(100, processor.ids.size());
+	}
+
+	@Test
+	public void testFlush() {
+		ConcurrentEntityDocumentProcessorBroker broker = new ConcurrentEntityDocumentProcessorBroker(
+				5);
+		RecordingProcessor processor = new RecordingProcessor();
+		broker.registerEntityDocumentProcessor(processor, 2);
+
+		for (int i = 1; i <= 100; i++) {
+			broker.processItemDocument(getItemDocument(i));
+			if (i % 10 == 0) {
+				broker.flush();
+				assertEquals(i, processor.ids.size());
+			}
+		}
+		assertEquals(true, broker.started);
+		broker.close();
+		assertEquals(100, processor.ids.size());
+	}
+
+	@Test
+	public void testFailureOnFlush() {
+		ConcurrentEntityDocumentProcessorBroker broker = new ConcurrentEntityDocumentProcessorBroker(
+				1);
+		broker.registerEntityDocumentProcessor(new FailingProcessor());
+
+		broker.processItemDocument(getItemDocument(1));
+		try {
+			broker.flush();
+			fail("Expected exception");
+		} catch (IllegalStateException e) {
+			assertEquals("Failure", e.getMessage());
+		}
+		broker.close();
+	}
+
+	@Test
+	public void testReuseAfterClose() {
+		ConcurrentEntityDocumentProcessorBroker broker = new ConcurrentEntityDocumentProcessorBroker();
+		RecordingProcessor processor = new RecordingProcessor();
+		broker.registerEntityDocumentProcessor(processor);
+
+		broker.processItemDocument(getItemDocument(1));
+		broker.close();
+		broker.processItemDocument(getItemDocument(2));
+		broker.close();
+		broker.close();
+
+		assertEquals(2, processor.ids.size());
+	}
+
+	@Test
+	public void testFailure() {
+		ConcurrentEntityDocumentProcessorBroker broker = new ConcurrentEntityDocumentProcessorBroker(
+				1);
+		RecordingProcessor processor = new RecordingProcessor();
+		broker.registerEntityDocumentProcessor(processor);
+		broker.registerEntityDocumentProcessor(new FailingProcessor());
+
+		try {
+			for (int i = 1; i <= 100; i++) {
+				broker.processItemDocument(getItemDocument(i));
+			}
+			broker.close();
+			fail("Expected exception");
+		} catch (IllegalStateException e) {
+			assertEquals("Failure", e.getMessage());
+		}
+		// The failure is reported only once:
+		broker.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidQueueSize() {
+		new ConcurrentEntityDocumentProcessorBroker(0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidThreadCount() {
+		new ConcurrentEntityDocumentProcessorBroker()
+				.registerEntityDocumentProcessor(new RecordingProcessor(), 0);
+	}
+
+}
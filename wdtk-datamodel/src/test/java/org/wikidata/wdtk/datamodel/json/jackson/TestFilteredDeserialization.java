@@ -0,0 +1,191 @@
+package org.wikidata.wdtk.datamodel.json.jackson;
+
+/*
+ * #%L
+ * Wikidata Toolkit Data Model
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.datamodel.helpers.FilteredItemDocument;
+import org.wikidata.wdtk.datamodel.interfaces.DocumentDataFilter;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyIdValue;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+public class TestFilteredDeserialization {
+
+	static final String JSON_ITEM = "{\"type\":\"item\",\"id\":\"Q42\","
+			+ "\"labels\":{" + term("en", "Label en") + ","
+			+ term("de", "Label de") + "," + term("fr", "Label fr") + "},"
+			+ "\"descriptions\":{" + term("en", "Desc en") + ","
+			+ term("fr", "Desc fr") + "}," + "\"aliases\":{\"en\":["
+			+ mltv("en", "Alias en") + "],\"de\":[" + mltv("de", "Alias de1")
+			+ "," + mltv("de", "Alias de2") + "]}," + "\"claims\":{"
+			+ claim("P1") + "," + claim("P2") + "," + claim("P3") + "},"
+			+ "\"sitelinks\":{" + siteLink("enwiki") + ","
+			+ siteLink("dewiki") + "}}";
+
+	final ObjectMapper mapper = new ObjectMapper();
+
+	static String mltv(String language, String value) {
+		return "{\"language\":\"" + language + "\",\"value\":\"" + value
+				+ "\"}";
+	}
+
+	static String term(String language, String value) {
+		return "\"" + language + "\":" + mltv(language, value);
+	}
+
+	static String claim(String propertyId) {
+		return "\"" + propertyId + "\":[{\"type\":\"statement\",\"id\":\"Q42$"
+				+ propertyId + "\",\"rank\":\"normal\",\"mainsnak\":"
+				+ "{\"snaktype\":\"novalue\",\"property\":\"" + propertyId
+				+ "\"}}]";
+	}
+
+	static String siteLink(String site) {
+		return "\"" + site + "\":{\"site\":\"" + site
+				+ "\",\"title\":\"Title\",\"badges\":[]}";
+	}
+
+	JacksonItemDocument read(String json, DocumentDataFilter filter)
+			throws IOException {
+		ObjectReader reader = this.mapper.reader(JacksonItemDocument.class);
+		if (filter != null) {
+			reader = reader.withAttribute(
+					JacksonTermedStatementDocument.FILTER_ATTRIBUTE, filter);
+		}
+		JacksonItemDocument result = reader.readValue(json);
+		result.setSiteIri(Datamodel.SITE_WIKIDATA);
+		return result;
+	}
+
+	/**
+	 * Checks that deserializing with the given filter yields the same result
+	 * as filtering the completely deserialized document.
+	 *
+	 * @param filter
+	 *            the filter to check
+	 * @return the filtered document
+	 * @throws IOException
+	 */
+	JacksonItemDocument assertFilteredDeserialization(DocumentDataFilter filter)
+			throws IOException {
+		JacksonItemDocument document = read(JSON_ITEM, null);
+		JacksonItemDocument filteredDocument = read(JSON_ITEM, filter);
+		assertEquals(new FilteredItemDocument(document, filter),
+				filteredDocument);
+		return filteredDocument;
+	}
+
+	@Test
+	public void testNoFilter() throws IOException {
+		JacksonItemDocument document = read(JSON_ITEM, null);
+		assertEquals(3, document.getLabels().size());
+		assertEquals(2, document.getDescriptions().size());
+		assertEquals(2, document.getAliases().get("de").size());
+		assertEquals(3, document.getStatementGroups().size());
+		assertEquals(2, document.getSiteLinks().size());
+
+		assertEquals(document,
+				assertFilteredDeserialization(new DocumentDataFilter()));
+	}
+
+	@Test
+	public void testLanguageFilter() throws IOException {
+		DocumentDataFilter filter = new DocumentDataFilter();
+		Set<String> languages = new HashSet<>();
+		languages.add("de");
+		languages.add("fr");
+		filter.setLanguageFilter(languages);
+
+		JacksonItemDocument document = assertFilteredDeserialization(filter);
+		assertEquals(2, document.getLabels().size());
+		assertEquals("Desc fr", document.findDescription("fr"));
+		assertFalse(document.getAliases().containsKey("en"));
+		assertEquals(3, document.getStatementGroups().size());
+
+		filter.setLanguageFilter(Collections.<String> emptySet());
+		document = assertFilteredDeserialization(filter);
+		assertTrue(document.getLabels().isEmpty());
+		assertTrue(document.getAliases().isEmpty());
+	}
+
+	@Test
+	public void testPropertyFilter() throws IOException {
+		DocumentDataFilter filter = new DocumentDataFilter();
+		Set<PropertyIdValue> properties = new HashSet<>();
+		properties.add(Datamodel.makeWikidataPropertyIdValue("P2"));
+		properties.add(Datamodel.makeWikidataPropertyIdValue("P4"));
+		filter.setPropertyFilter(properties);
+
+		JacksonItemDocument document = assertFilteredDeserialization(filter);
+		assertEquals(1, document.getStatementGroups().size());
+		assertTrue(document.hasStatement("P2"));
+		assertEquals(3, document.getLabels().size());
+
+		filter.setPropertyFilter(Collections.<PropertyIdValue> emptySet());
+		document = assertFilteredDeserialization(filter);
+		assertTrue(document.getStatementGroups().isEmpty());
+	}
+
+	@Test
+	public void testSiteLinkFilter() throws IOException {
+		DocumentDataFilter filter = new DocumentDataFilter();
+		filter.setSiteLinkFilter(Collections.singleton("dewiki"));
+
+		JacksonItemDocument document = assertFilteredDeserialization(filter);
+		assertEquals(Collections.singleton("dewiki"), document.getSiteLinks()
+				.keySet());
+	}
+
+	@Test
+	public void testEmptyArraysAsMaps() throws IOException {
+		DocumentDataFilter filter = new DocumentDataFilter();
+		filter.setLanguageFilter(Collections.singleton("en"));
+		String json = "{\"type\":\"item\",\"id\":\"Q42\",\"labels\":[],"
+				+ "\"descriptions\":[],\"aliases\":[],\"claims\":[],"
+				+ "\"sitelinks\":[]}";
+
+		JacksonItemDocument document = read(json, filter);
+		assertTrue(document.getLabels().isEmpty());
+		assertTrue(document.getAliases().isEmpty());
+		assertTrue(document.getStatementGroups().isEmpty());
+		assertTrue(document.getSiteLinks().isEmpty());
+	}
+
+	@Test(expected = JsonMappingException.class)
+	public void testInvalidMap() throws IOException {
+		read("{\"type\":\"item\",\"id\":\"Q42\",\"labels\":\"en\"}",
+				null);
+	}
+
+}
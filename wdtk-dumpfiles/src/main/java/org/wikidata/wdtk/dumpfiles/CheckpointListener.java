@@ -0,0 +1,48 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+/**
+ * Interface for processors that want to save their own state whenever the
+ * processing of a dump file reaches a checkpoint. When processing is resumed
+ * from the checkpoint later on, the processor can then continue from the
+ * saved state. Registered entity document processors and revision processors
+ * that implement this interface are notified automatically.
+ *
+ * @see DumpProcessingController#setCheckpointFile(String)
+ * @author Markus Kroetzsch
+ *
+ */
+public interface CheckpointListener {
+
+	/**
+	 * Called when a checkpoint is reached, before it is stored. At this time,
+	 * the processor has received all entities up to and including the last
+	 * entity of the checkpoint, and no later entities. Processors that run in
+	 * their own threads have finished processing these entities.
+	 *
+	 * @param checkpoint
+	 *            the checkpoint that is about to be stored
+	 */
+	void checkpointReached(DumpProcessingCheckpoint checkpoint);
+
+}
@@ -0,0 +1,357 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wikidata.wdtk.datamodel.interfaces.ConcurrentEntityDocumentProcessorBroker;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocument;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
+import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
+import org.wikidata.wdtk.util.ParallelBZip2InputStream;
+
+/**
+ * Records checkpoints while a dump file is processed. The recorder wraps the
+ * master processor of a {@link DumpProcessingController}, counts the
+ * entities that pass through it, and stores a
+ * {@link DumpProcessingCheckpoint} after every given number of entities. For
+ * revision dumps, pages are counted instead of entities, and the page title is
+ * used as an entity id. Before a checkpoint is stored, concurrent processors
+ * are given time to finish their work, and all {@link CheckpointListener}
+ * objects are notified.
+ * <p>
+ * If the dump is read with a {@link ParallelBZip2InputStream}, the checkpoint
+ * also records a compressed block offset. Since parsers read ahead of the
+ * entities that are being processed, the block that is being read when a
+ * checkpoint is recorded might already be past the last processed entity.
+ * The recorder therefore remembers the blocks that were read at earlier
+ * checkpoints, and stores the most recent one that was read at least as many
+ * entities ago as parsers can read ahead. If there is no such block, no
+ * offset is stored, and processing is resumed by reading the dump from its
+ * start.
+ * <p>
+ * If processing is resumed from a checkpoint, but the last entity of the
+ * checkpoint does not occur in the dump, an exception is thrown at the end of
+ * the dump and the checkpoint file is kept.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+class DumpCheckpointRecorder {
+
+	static final Logger logger = LoggerFactory
+			.getLogger(DumpCheckpointRecorder.class);
+
+	final Path checkpointFile;
+	final int checkpointInterval;
+	/**
+	 * Upper bound for the number of entities that parsers may have read from
+	 * the input before they are processed.
+	 */
+	final int maxReadAhead;
+	final List<CheckpointListener> checkpointListeners;
+	final List<ConcurrentEntityDocumentProcessorBroker> concurrentBrokers;
+	final List<WikibaseRevisionProcessor> revisionParsers;
+
+	MwDumpFile dumpFile = null;
+	InputStream inputStream = null;
+
+	long entityCount = 0;
+	String lastEntityId = null;
+	/**
+	 * Block offsets that were read at earlier checkpoints, each stored
+	 * together with the number of entities processed at that time, ordered
+	 * from old to new.
+	 */
+	final Deque<long[]> blockOffsets = new ArrayDeque<>();
+
+	/**
+	 * Prefilter used to skip revisions that have been processed before a
+	 * checkpoint, or null if no revisions are skipped.
+	 */
+	ResumingPrefilter resumingPrefilter = null;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param checkpointFile
+	 *            the file to store checkpoints in
+	 * @param checkpointInterval
+	 *            the number of entities between two checkpoints
+	 * @param maxReadAhead
+	 *            the largest number of entities that parsers may read from the
+	 *            input before they are processed
+	 * @param checkpointListeners
+	 *            the listeners to notify of each checkpoint
+	 * @param concurrentBrokers
+	 *            brokers whose processors should finish their work before a
+	 *            checkpoint is recorded
+	 * @param revisionParsers
+	 *            revision processors whose pending revisions should be parsed
+	 *            and delivered before a checkpoint is recorded
+	 */
+	DumpCheckpointRecorder(Path checkpointFile, int checkpointInterval,
+			int maxReadAhead, List<CheckpointListener> checkpointListeners,
+			List<ConcurrentEntityDocumentProcessorBroker> concurrentBrokers,
+			List<WikibaseRevisionProcessor> revisionParsers) {
+		this.checkpointFile = checkpointFile;
+		this.checkpointInterval = checkpointInterval;
+		this.maxReadAhead = maxReadAhead;
+		this.checkpointListeners = checkpointListeners;
+		this.concurrentBrokers = concurrentBrokers;
+		this.revisionParsers = revisionParsers;
+	}
+
+	/**
+	 * Prepares the recorder for processing the given dump file.
+	 *
+	 * @param dumpFile
+	 *            the dump file that is processed
+	 * @param inputStream
+	 *            the stream that the dump file is read from
+	 * @param checkpoint
+	 *            the checkpoint at which processing is resumed, or null if
+	 *            processing starts at the beginning of the dump
+	 */
+	void startDump(MwDumpFile dumpFile, InputStream inputStream,
+			DumpProcessingCheckpoint checkpoint) {
+		this.dumpFile = dumpFile;
+		this.inputStream = inputStream;
+		this.blockOffsets.clear();
+		if (checkpoint == null) {
+			this.entityCount = 0;
+			this.lastEntityId = null;
+			this.resumingPrefilter = null;
+		} else {
+			this.entityCount = checkpoint.getEntityCount();
+			this.lastEntityId = checkpoint.getLastEntityId();
+			this.resumingPrefilter = new ResumingPrefilter(
+					checkpoint.getLastEntityId(), null);
+			if (checkpoint.getBlockOffset() >= 0) {
+				// All entities that are still to come follow this block, so
+				// it can be used right away:
+				this.blockOffsets.add(new long[] {
+						this.entityCount - this.maxReadAhead,
+						checkpoint.getBlockOffset() });
+			}
+		}
+	}
+
+	/**
+	 * Returns the prefilter that skips the entities up to the checkpoint
+	 * that processing is resumed from.
+	 *
+	 * @return the prefilter, or null if processing starts at the beginning
+	 *         of the dump
+	 */
+	ResumingPrefilter getResumingPrefilter() {
+		return this.resumingPrefilter;
+	}
+
+	/**
+	 * Finishes the processing of the current dump. Since the dump has been
+	 * processed completely, the checkpoint file is deleted. If processing was
+	 * resumed from a checkpoint whose last entity was never found, then no
+	 * entity has been processed, and the checkpoint file is kept.
+	 *
+	 * @throws IOException
+	 *             if the checkpoint file could not be deleted
+	 * @throws IllegalStateException
+	 *             if the last entity of the checkpoint was not found
+	 */
+	void finishDump() throws IOException {
+		if (this.resumingPrefilter != null
+				&& !this.resumingPrefilter.isLastEntityFound()) {
+			this.dumpFile = null;
+			this.inputStream = null;
+			throw new IllegalStateException("Could not resume processing: "
+					+ this.resumingPrefilter.lastEntityId
+					+ " was not found in the dump. Delete the checkpoint file "
+					+ this.checkpointFile + " to process the whole dump.");
+		}
+		this.dumpFile = null;
+		this.inputStream = null;
+		Files.deleteIfExists(this.checkpointFile);
+	}
+
+	/**
+	 * Counts an entity that has been processed, and records a checkpoint if
+	 * needed.
+	 *
+	 * @param entityId
+	 *            the id of the entity
+	 */
+	void entityProcessed(String entityId) {
+		this.entityCount++;
+		this.lastEntityId = entityId;
+		if (this.dumpFile != null
+				&& this.entityCount % this.checkpointInterval == 0) {
+			recordCheckpoint();
+		}
+	}
+
+	/**
+	 * Records a checkpoint after the last entity that has been processed.
+	 */
+	void recordCheckpoint() {
+		for (WikibaseRevisionProcessor revisionParser : this.revisionParsers) {
+			revisionParser.flush();
+		}
+		for (ConcurrentEntityDocumentProcessorBroker broker : this.concurrentBrokers) {
+			broker.flush();
+		}
+
+		DumpProcessingCheckpoint checkpoint = new DumpProcessingCheckpoint(
+				this.dumpFile, this.lastEntityId, this.entityCount,
+				getSafeBlockOffset());
+		if (this.inputStream instanceof ParallelBZip2InputStream) {
+			this.blockOffsets.add(new long[] {
+					this.entityCount,
+					((ParallelBZip2InputStream) this.inputStream)
+							.getCurrentBlockOffset() });
+		}
+
+		for (CheckpointListener checkpointListener : this.checkpointListeners) {
+			checkpointListener.checkpointReached(checkpoint);
+		}
+		try {
+			checkpoint.store(this.checkpointFile);
+			logger.info("Stored checkpoint after " + this.entityCount
+					+ " entities (last entity " + this.lastEntityId + ").");
+		} catch (IOException e) {
+			logger.error("Could not store checkpoint: " + e.toString());
+		}
+	}
+
+	/**
+	 * Returns the offset of the most recent compressed block that was read
+	 * before all entities that have not been processed yet. Older blocks are
+	 * forgotten.
+	 *
+	 * @return the block offset, or -1 if no such block is known
+	 */
+	long getSafeBlockOffset() {
+		long[] safeBlock = null;
+		while (!this.blockOffsets.isEmpty()
+				&& this.blockOffsets.peekFirst()[0] + this.maxReadAhead <= this.entityCount) {
+			safeBlock = this.blockOffsets.pollFirst();
+		}
+		if (safeBlock == null) {
+			return -1;
+		}
+		// Keep the block for the next checkpoint:
+		this.blockOffsets.addFirst(safeBlock);
+		return safeBlock[1];
+	}
+
+	/**
+	 * Returns a processor that forwards all documents to the given processor
+	 * and records checkpoints.
+	 *
+	 * @param entityDocumentProcessor
+	 *            the processor to wrap
+	 * @return the wrapped processor
+	 */
+	EntityDocumentProcessor wrap(
+			final EntityDocumentProcessor entityDocumentProcessor) {
+		return new EntityDocumentProcessor() {
+			@Override
+			public void processItemDocument(ItemDocument itemDocument) {
+				entityDocumentProcessor.processItemDocument(itemDocument);
+				documentProcessed(itemDocument);
+			}
+
+			@Override
+			public void processPropertyDocument(
+					PropertyDocument propertyDocument) {
+				entityDocumentProcessor
+						.processPropertyDocument(propertyDocument);
+				documentProcessed(propertyDocument);
+			}
+
+			void documentProcessed(EntityDocument document) {
+				entityProcessed(document.getEntityId().getId());
+			}
+		};
+	}
+
+	/**
+	 * Returns a revision processor that forwards all revisions to the given
+	 * broker and records checkpoints. Checkpoints are only recorded between
+	 * two pages, after the broker has delivered all revisions of the previous
+	 * page. When resuming from a checkpoint, all revisions up to and including
+	 * those of the last page of the checkpoint are skipped.
+	 *
+	 * @param broker
+	 *            the broker to wrap
+	 * @return the wrapped processor
+	 */
+	MwRevisionProcessor wrap(final MwRevisionProcessorBroker broker) {
+		return new MwRevisionProcessor() {
+
+			int currentPageId = -1;
+			String currentTitle = null;
+
+			@Override
+			public void startRevisionProcessing(String siteName,
+					String baseUrl, Map<Integer, String> namespaces) {
+				broker.startRevisionProcessing(siteName, baseUrl, namespaces);
+			}
+
+			@Override
+			public void processRevision(MwRevision mwRevision) {
+				if (resumingPrefilter != null
+						&& !resumingPrefilter.includeEntity(null,
+								mwRevision.getTitle())) {
+					return;
+				}
+				if (mwRevision.getPageId() != this.currentPageId) {
+					if (this.currentTitle != null) {
+						broker.flushMostCurrentRevision();
+						entityProcessed(this.currentTitle);
+					}
+					this.currentPageId = mwRevision.getPageId();
+					this.currentTitle = mwRevision.getTitle();
+				}
+				broker.processRevision(mwRevision);
+			}
+
+			@Override
+			public void finishRevisionProcessing() {
+				broker.finishRevisionProcessing();
+				this.currentPageId = -1;
+				this.currentTitle = null;
+			}
+		};
+	}
+
+}
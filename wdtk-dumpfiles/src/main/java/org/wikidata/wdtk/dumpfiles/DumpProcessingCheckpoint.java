@@ -0,0 +1,224 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Records how far the processing of a dump file has progressed, so that
+ * processing can be resumed after an interruption. A checkpoint identifies the
+ * dump file by its project name, content type, and date stamp, and it stores
+ * the id of the last entity that has been processed. If the dump is
+ * compressed with bzip2, the checkpoint may also store the bit offset of a
+ * compressed block that starts before this entity, so that a resumed run can
+ * skip the data before this block without decompressing it.
+ * <p>
+ * Checkpoints are stored in simple properties files.
+ *
+ * @see DumpProcessingController#setCheckpointFile(String)
+ * @author Markus Kroetzsch
+ *
+ */
+public class DumpProcessingCheckpoint {
+
+	static final String KEY_PROJECT_NAME = "projectName";
+	static final String KEY_DUMP_CONTENT_TYPE = "dumpContentType";
+	static final String KEY_DATE_STAMP = "dateStamp";
+	static final String KEY_LAST_ENTITY_ID = "lastEntityId";
+	static final String KEY_ENTITY_COUNT = "entityCount";
+	static final String KEY_BLOCK_OFFSET = "blockOffset";
+
+	final String projectName;
+	final DumpContentType dumpContentType;
+	final String dateStamp;
+	final String lastEntityId;
+	final long entityCount;
+	final long blockOffset;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param dumpFile
+	 *            the dump file that is processed
+	 * @param lastEntityId
+	 *            the id of the last entity that has been processed
+	 * @param entityCount
+	 *            the number of entities that have been processed so far
+	 * @param blockOffset
+	 *            the bit offset of a compressed bzip2 block that starts before
+	 *            the last entity, or -1 if not known
+	 */
+	public DumpProcessingCheckpoint(MwDumpFile dumpFile, String lastEntityId,
+			long entityCount, long blockOffset) {
+		this(dumpFile.getProjectName(), dumpFile.getDumpContentType(),
+				dumpFile.getDateStamp(), lastEntityId, entityCount, blockOffset);
+	}
+
+	DumpProcessingCheckpoint(String projectName,
+			DumpContentType dumpContentType, String dateStamp,
+			String lastEntityId, long entityCount, long blockOffset) {
+		this.projectName = projectName;
+		this.dumpContentType = dumpContentType;
+		this.dateStamp = dateStamp;
+		this.lastEntityId = lastEntityId;
+		this.entityCount = entityCount;
+		this.blockOffset = blockOffset;
+	}
+
+	/**
+	 * Returns the id of the last entity that has been processed.
+	 *
+	 * @return entity id, e.g., "Q42"
+	 */
+	public String getLastEntityId() {
+		return this.lastEntityId;
+	}
+
+	/**
+	 * Returns the number of entities that have been processed so far,
+	 * including those of earlier runs that have been resumed.
+	 *
+	 * @return number of entities
+	 */
+	public long getEntityCount() {
+		return this.entityCount;
+	}
+
+	/**
+	 * Returns the bit offset of a compressed bzip2 block that starts before
+	 * the last entity, or -1 if no such block is known.
+	 *
+	 * @return bit offset in the compressed file, or -1
+	 */
+	public long getBlockOffset() {
+		return this.blockOffset;
+	}
+
+	/**
+	 * Checks if this checkpoint belongs to the given dump file.
+	 *
+	 * @param dumpFile
+	 *            the dump file to compare with
+	 * @return true if project name, content type, and date stamp match
+	 */
+	public boolean isCheckpointOf(MwDumpFile dumpFile) {
+		return this.projectName.equals(dumpFile.getProjectName())
+				&& this.dumpContentType == dumpFile.getDumpContentType()
+				&& this.dateStamp.equals(dumpFile.getDateStamp());
+	}
+
+	/**
+	 * Writes the checkpoint to the given file. The data is first written to
+	 * a temporary file that then replaces the given file, so that an
+	 * interruption while writing does not destroy the previous checkpoint.
+	 *
+	 * @param file
+	 *            the file to write to
+	 * @throws IOException
+	 *             if the file could not be written
+	 */
+	public void store(Path file) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(KEY_PROJECT_NAME, this.projectName);
+		properties.setProperty(KEY_DUMP_CONTENT_TYPE,
+				this.dumpContentType.toString());
+		properties.setProperty(KEY_DATE_STAMP, this.dateStamp);
+		properties.setProperty(KEY_LAST_ENTITY_ID, this.lastEntityId);
+		properties.setProperty(KEY_ENTITY_COUNT,
+				Long.toString(this.entityCount));
+		properties.setProperty(KEY_BLOCK_OFFSET,
+				Long.toString(this.blockOffset));
+
+		Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+		try (OutputStream out = Files.newOutputStream(tempFile)) {
+			properties.store(out, "Wikidata Toolkit dump processing checkpoint");
+		}
+		Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Reads a checkpoint from the given file.
+	 *
+	 * @param file
+	 *            the file to read from
+	 * @return the checkpoint, or null if the file does not exist
+	 * @throws IOException
+	 *             if the file could not be read or does not contain a valid
+	 *             checkpoint
+	 */
+	public static DumpProcessingCheckpoint load(Path file) throws IOException {
+		if (!Files.exists(file)) {
+			return null;
+		}
+		Properties properties = new Properties();
+		try (InputStream in = Files.newInputStream(file)) {
+			properties.load(in);
+		}
+		try {
+			return new DumpProcessingCheckpoint(
+					getProperty(properties, KEY_PROJECT_NAME),
+					DumpContentType.valueOf(getProperty(properties,
+							KEY_DUMP_CONTENT_TYPE)), getProperty(properties,
+							KEY_DATE_STAMP), getProperty(properties,
+							KEY_LAST_ENTITY_ID), Long.parseLong(getProperty(
+							properties, KEY_ENTITY_COUNT)),
+					Long.parseLong(getProperty(properties, KEY_BLOCK_OFFSET)));
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Invalid checkpoint file " + file + ": "
+					+ e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Returns the value of a property that must be set.
+	 *
+	 * @param properties
+	 *            the properties to read from
+	 * @param key
+	 *            the key of the property
+	 * @return the value
+	 * @throws IllegalArgumentException
+	 *             if the property is not set
+	 */
+	static String getProperty(Properties properties, String key) {
+		String value = properties.getProperty(key);
+		if (value == null) {
+			throw new IllegalArgumentException("Missing value for " + key);
+		}
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return "Checkpoint of " + this.projectName + "-"
+				+ this.dumpContentType.toString().toLowerCase() + "-"
+				+ this.dateStamp + " after " + this.entityCount
+				+ " entities (last entity " + this.lastEntityId + ")";
+	}
+
+}
@@ -23,26 +23,35 @@ package org.wikidata.wdtk.dumpfiles;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wikidata.wdtk.datamodel.helpers.Datamodel;
 import org.wikidata.wdtk.datamodel.helpers.DatamodelConverter;
+import org.wikidata.wdtk.datamodel.interfaces.ConcurrentEntityDocumentProcessorBroker;
 import org.wikidata.wdtk.datamodel.interfaces.DocumentDataFilter;
 import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
 import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessorBroker;
-import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessorFilter;
 import org.wikidata.wdtk.datamodel.interfaces.PropertyIdValue;
 import org.wikidata.wdtk.datamodel.interfaces.Sites;
 import org.wikidata.wdtk.dumpfiles.wmf.WmfDumpFileManager;
+import org.wikidata.wdtk.util.CompressionType;
+import org.wikidata.wdtk.util.DaemonThreadFactory;
 import org.wikidata.wdtk.util.DirectoryManager;
 import org.wikidata.wdtk.util.DirectoryManagerFactory;
+import org.wikidata.wdtk.util.DirectoryManagerImpl;
 import org.wikidata.wdtk.util.WebResourceFetcher;
 import org.wikidata.wdtk.util.WebResourceFetcherImpl;
 
@@ -95,6 +104,11 @@ public class DumpProcessingController {
 	static final Logger logger = LoggerFactory
 			.getLogger(DumpProcessingController.class);
 
+	/**
+	 * Default number of entities between two checkpoints.
+	 */
+	public static final int DEFAULT_CHECKPOINT_INTERVAL = 100000;
+
 	/**
 	 * Helper value class to store the registration settings of one listener.
 	 *
@@ -183,6 +197,66 @@ public class DumpProcessingController {
 
 	DocumentDataFilter filter = new DocumentDataFilter();
 
+	/**
+	 * Prefilter that decides which entities are processed at all, or null if
+	 * all entities should be processed.
+	 */
+	EntityPrefilter entityPrefilter = null;
+
+	/**
+	 * Number of threads used for decompressing dump files in the download
+	 * directory.
+	 */
+	int decompressionThreads = 1;
+
+	/**
+	 * Number of threads used for parsing entity documents, where supported.
+	 */
+	int parallelism = 1;
+
+	/**
+	 * Should registered {@link EntityDocumentProcessor} objects run in
+	 * threads of their own?
+	 */
+	boolean concurrentEntityDocumentProcessors = false;
+
+	/**
+	 * List of all concurrent brokers used by the current dump processors.
+	 * They need to be closed when processing has finished.
+	 */
+	final List<ConcurrentEntityDocumentProcessorBroker> concurrentBrokers = new ArrayList<>();
+
+	/**
+	 * List of all revision processors that parse entity documents for the
+	 * current dump processors. Pending documents need to be delivered before
+	 * recording a checkpoint.
+	 */
+	final List<WikibaseRevisionProcessor> wikibaseRevisionProcessors = new ArrayList<>();
+
+	/**
+	 * Threads that parse revisions for all {@link WikibaseRevisionProcessor}
+	 * objects of this controller, or null if they are not needed yet. Idle
+	 * threads terminate after a while, so the pool need not be shut down.
+	 */
+	ThreadPoolExecutor revisionWorkerPool = null;
+
+	/**
+	 * File where checkpoints are stored, or null if no checkpoints should be
+	 * recorded.
+	 */
+	Path checkpointFile = null;
+
+	/**
+	 * Number of entities between two checkpoints.
+	 */
+	int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
+	/**
+	 * Recorder for checkpoints of the current dump processors, or null if
+	 * checkpoints are disabled.
+	 */
+	DumpCheckpointRecorder checkpointRecorder = null;
+
 	/**
 	 * Creates a new DumpFileProcessingController for the project of the given
 	 * name. By default, the dump file directory will be assumed to be in the
@@ -222,6 +296,44 @@ public class DumpProcessingController {
 			throws IOException {
 		this.downloadDirectoryManager = DirectoryManagerFactory
 				.createDirectoryManager(downloadDirectory, false);
+		if (this.downloadDirectoryManager instanceof DirectoryManagerImpl) {
+			((DirectoryManagerImpl) this.downloadDirectoryManager)
+					.setDecompressionThreads(this.decompressionThreads);
+		}
+	}
+
+	/**
+	 * Sets the number of threads that should be used for decompressing the
+	 * dump files in the download directory. The default is 1; see
+	 * {@link DirectoryManagerImpl#setDecompressionThreads(int)} for details.
+	 * Dump files that are given as {@link MwLocalDumpFile} objects use their
+	 * own setting instead (see
+	 * {@link MwLocalDumpFile#setDecompressionThreads(int)}).
+	 *
+	 * @param threadCount
+	 *            the number of threads to use for decompression
+	 */
+	public void setDecompressionThreads(int threadCount) {
+		if (threadCount <= 0) {
+			throw new IllegalArgumentException(
+					"The number of threads must be a positive number.");
+		}
+		this.decompressionThreads = threadCount;
+		if (this.downloadDirectoryManager instanceof DirectoryManagerImpl) {
+			((DirectoryManagerImpl) this.downloadDirectoryManager)
+					.setDecompressionThreads(threadCount);
+		}
+	}
+
+	/**
+	 * Returns the directory manager for the download base directory. This can
+	 * be used to keep further local information together with the dump
+	 * files.
+	 *
+	 * @return the directory manager of the download directory
+	 */
+	public DirectoryManager getDownloadDirectoryManager() {
+		return this.downloadDirectoryManager;
 	}
 
 	/**
@@ -275,6 +387,119 @@ public class DumpProcessingController {
 		this.filter.setLanguageFilter(languageFilter);
 	}
 
+	/**
+	 * Sets a prefilter that decides which entities should be processed at all,
+	 * based only on their type and id. In contrast to the other filters, which
+	 * remove parts of the data of each entity, the prefilter removes whole
+	 * entities. It is applied before the data of an entity is parsed, so that
+	 * unwanted entities cause almost no effort. For example,
+	 * {@link EntityIdRangePrefilter} can be used to process only properties,
+	 * or only items in some range of ids.
+	 *
+	 * @param entityPrefilter
+	 *            the prefilter to use, or null to process all entities
+	 *            (default)
+	 */
+	public void setEntityPrefilter(EntityPrefilter entityPrefilter) {
+		this.entityPrefilter = entityPrefilter;
+	}
+
+	/**
+	 * Sets the number of threads that should be used to parse entity documents
+	 * from JSON dumps and from the revisions of XML dumps. The default is 1,
+	 * meaning that all processing happens in the current thread. For larger
+	 * values, one thread reads the dump while the given number of worker
+	 * threads deserialize the entity documents. Registered
+	 * {@link EntityDocumentProcessor} objects are still called from a single
+	 * thread and in the order of the dump, so they do not need to be
+	 * thread-safe. Registered {@link MwRevisionProcessor} objects are not
+	 * affected by this setting.
+	 *
+	 * @param parallelism
+	 *            the number of threads to use for parsing; must be positive
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException(
+					"The number of threads must be a positive number.");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Enables or disables concurrent processing of entity documents. If
+	 * enabled, and if more than one {@link EntityDocumentProcessor} is
+	 * registered, then every processor is run in a thread of its own, so that
+	 * slow processors do not delay others. Each processor still receives the
+	 * documents from a single thread and in the order of the dump. Processors
+	 * that share data with each other or with other code must then be
+	 * thread-safe. Disabled by default.
+	 *
+	 * @see ConcurrentEntityDocumentProcessorBroker
+	 * @param concurrentEntityDocumentProcessors
+	 *            true if processors should run in their own threads
+	 */
+	public void setConcurrentEntityDocumentProcessors(
+			boolean concurrentEntityDocumentProcessors) {
+		this.concurrentEntityDocumentProcessors = concurrentEntityDocumentProcessors;
+	}
+
+	/**
+	 * Enables checkpoints, so that long processing runs can be resumed after
+	 * an interruption. While a dump is processed, a
+	 * {@link DumpProcessingCheckpoint} is written to the given file after
+	 * every few entities (see {@link #setCheckpointInterval(int)}). When the
+	 * same dump is processed again later, all entities up to the last
+	 * checkpoint are skipped without parsing them, and processing resumes with
+	 * the next entity. The checkpoint file is deleted when the dump has been
+	 * processed completely. If the file holds a checkpoint of another dump,
+	 * it is ignored and overwritten.
+	 * <p>
+	 * Registered processors that implement {@link CheckpointListener} are
+	 * notified of each checkpoint, so that they can store their own state. For
+	 * local bzip2-compressed JSON dumps, processing resumes at a compressed
+	 * block near the checkpoint, so that the data before it need not be
+	 * decompressed again (see
+	 * {@link MwLocalDumpFile#setDecompressionThreads(int)}). In all
+	 * other cases, the data is decompressed from the beginning. For revision
+	 * dumps, the last page title is stored instead of an entity id.
+	 * Checkpoints are not supported when memory-mapping uncompressed files
+	 * (see {@link MwLocalDumpFile#setSplitCount(int)}), which can be resumed
+	 * with a start offset instead.
+	 *
+	 * @param checkpointFile
+	 *            the file to store checkpoints in, or null to disable
+	 *            checkpoints (default)
+	 */
+	public void setCheckpointFile(String checkpointFile) {
+		if (checkpointFile == null) {
+			this.checkpointFile = null;
+		} else {
+			this.checkpointFile = Paths.get(checkpointFile).toAbsolutePath();
+		}
+	}
+
+	/**
+	 * Sets the number of entities (or pages, for revision dumps) that are
+	 * processed between two checkpoints. The compressed block that is stored
+	 * in a checkpoint is one that was read at an earlier checkpoint, before
+	 * any of the entities that parsers may have buffered. If the interval is
+	 * smaller than this number of entities (several thousand when parsing in
+	 * parallel), checkpoints may therefore store an older block, or none at
+	 * all. The default is {@link #DEFAULT_CHECKPOINT_INTERVAL}.
+	 *
+	 * @see #setCheckpointFile(String)
+	 * @param checkpointInterval
+	 *            the number of entities between checkpoints; must be positive
+	 */
+	public void setCheckpointInterval(int checkpointInterval) {
+		if (checkpointInterval <= 0) {
+			throw new IllegalArgumentException(
+					"The checkpoint interval must be a positive number.");
+		}
+		this.checkpointInterval = checkpointInterval;
+	}
+
 	/**
 	 * Registers an MwRevisionProcessor, which will henceforth be notified of
 	 * all revisions that are encountered in the dump.
@@ -542,8 +767,37 @@ public class DumpProcessingController {
 	 */
 	void processDumpFile(MwDumpFile dumpFile,
 			MwDumpFileProcessor dumpFileProcessor) {
-		try (InputStream inputStream = dumpFile.getDumpFileStream()) {
+		DumpCheckpointRecorder recorder = this.checkpointRecorder;
+		boolean memoryMapped = dumpFile instanceof MwLocalDumpFile
+				&& ((MwLocalDumpFile) dumpFile).useMemoryMapping();
+		if (recorder != null && memoryMapped) {
+			logger.warn("Checkpoints are not supported for memory-mapped processing and will not be recorded.");
+			recorder = null;
+		}
+		// JSON processors map the file themselves and do not use a stream:
+		boolean openStream = !memoryMapped
+				|| !(dumpFileProcessor instanceof JsonDumpFileProcessor);
+
+		DumpProcessingCheckpoint checkpoint = null;
+		if (recorder != null) {
+			checkpoint = loadCheckpoint(dumpFile);
+		}
+
+		try (InputStream inputStream = openStream ? getDumpFileStream(
+				dumpFile, checkpoint) : null) {
+			if (recorder != null) {
+				recorder.startDump(dumpFile, inputStream, checkpoint);
+				if (dumpFileProcessor instanceof JsonDumpFileProcessor) {
+					((JsonDumpFileProcessor) dumpFileProcessor)
+							.setResumingPrefilter(recorder
+									.getResumingPrefilter());
+				}
+			}
 			dumpFileProcessor.processDumpFileContents(inputStream, dumpFile);
+			if (recorder != null) {
+				closeConcurrentBrokers();
+				recorder.finishDump();
+			}
 		} catch (FileAlreadyExistsException e) {
 			logger.error("Dump file "
 					+ dumpFile.toString()
@@ -553,6 +807,76 @@ public class DumpProcessingController {
 		} catch (IOException e) {
 			logger.error("Dump file " + dumpFile.toString()
 					+ " could not be processed: " + e.toString());
+		} finally {
+			closeConcurrentBrokers();
+		}
+	}
+
+	/**
+	 * Reads the checkpoint file and returns the checkpoint if it belongs to
+	 * the given dump.
+	 *
+	 * @param dumpFile
+	 *            the dump that is about to be processed
+	 * @return the checkpoint to resume from, or null if processing should
+	 *         start at the beginning of the dump
+	 */
+	DumpProcessingCheckpoint loadCheckpoint(MwDumpFile dumpFile) {
+		DumpProcessingCheckpoint checkpoint;
+		try {
+			checkpoint = DumpProcessingCheckpoint.load(this.checkpointFile);
+		} catch (IOException e) {
+			logger.error("Could not read checkpoint: " + e.toString());
+			return null;
+		}
+		if (checkpoint == null) {
+			return null;
+		} else if (!checkpoint.isCheckpointOf(dumpFile)) {
+			logger.warn("Ignoring checkpoint of another dump file: "
+					+ checkpoint);
+			return null;
+		} else {
+			logger.info("Resuming processing from " + checkpoint);
+			return checkpoint;
+		}
+	}
+
+	/**
+	 * Opens the given dump file for reading. If processing resumes from a
+	 * checkpoint with a known compressed block, and the dump is a local
+	 * bzip2-compressed JSON dump, then the stream starts at this block.
+	 * Otherwise, it starts at the beginning of the dump.
+	 *
+	 * @param dumpFile
+	 *            the dump file to open
+	 * @param checkpoint
+	 *            the checkpoint to resume from, or null
+	 * @return the stream to read from
+	 * @throws IOException
+	 *             if the dump file contents could not be accessed
+	 */
+	InputStream getDumpFileStream(MwDumpFile dumpFile,
+			DumpProcessingCheckpoint checkpoint) throws IOException {
+		if (checkpoint != null
+				&& checkpoint.getBlockOffset() >= 0
+				&& dumpFile.getDumpContentType() == DumpContentType.JSON
+				&& dumpFile instanceof MwLocalDumpFile
+				&& ((MwLocalDumpFile) dumpFile).getCompressionType() == CompressionType.BZ2) {
+			logger.info("Skipping compressed data up to bit offset "
+					+ checkpoint.getBlockOffset() + ".");
+			return ((MwLocalDumpFile) dumpFile).getDumpFileStream(checkpoint
+					.getBlockOffset());
+		}
+		return dumpFile.getDumpFileStream();
+	}
+
+	/**
+	 * Waits for all concurrent brokers that are used by the current dump
+	 * processors to finish processing their documents.
+	 */
+	void closeConcurrentBrokers() {
+		for (ConcurrentEntityDocumentProcessorBroker broker : this.concurrentBrokers) {
+			broker.close();
 		}
 	}
 
@@ -586,7 +910,16 @@ public class DumpProcessingController {
 	 * @return the main MwDumpFileProcessor for revisions
 	 */
 	MwDumpFileProcessor getRevisionDumpFileProcessor() {
-		return new MwRevisionDumpFileProcessor(getMasterMwRevisionProcessor());
+		this.concurrentBrokers.clear();
+		this.wikibaseRevisionProcessors.clear();
+		createCheckpointRecorder();
+		MwRevisionProcessorBroker broker = getMasterMwRevisionProcessor();
+		if (this.checkpointRecorder == null) {
+			return new MwRevisionDumpFileProcessor(broker);
+		} else {
+			return new MwRevisionDumpFileProcessor(
+					this.checkpointRecorder.wrap(broker));
+		}
 	}
 
 	/**
@@ -596,8 +929,54 @@ public class DumpProcessingController {
 	 * @return the main MwDumpFileProcessor for JSON
 	 */
 	MwDumpFileProcessor getJsonDumpFileProcessor() {
-		return new JsonDumpFileProcessor(getMasterEntityDocumentProcessor(),
-				Datamodel.SITE_WIKIDATA);
+		this.concurrentBrokers.clear();
+		this.wikibaseRevisionProcessors.clear();
+		createCheckpointRecorder();
+		EntityDocumentProcessor master = getMasterEntityDocumentProcessor();
+		if (this.checkpointRecorder != null && master != null) {
+			master = this.checkpointRecorder.wrap(master);
+		}
+		JsonDumpFileProcessor result = new JsonDumpFileProcessor(master,
+				Datamodel.SITE_WIKIDATA, this.parallelism, getActiveFilter());
+		result.setEntityPrefilter(this.entityPrefilter);
+		return result;
+	}
+
+	/**
+	 * Creates a new {@link DumpCheckpointRecorder} for the current processors
+	 * if checkpoints are enabled.
+	 */
+	void createCheckpointRecorder() {
+		if (this.checkpointFile == null) {
+			this.checkpointRecorder = null;
+			return;
+		}
+
+		List<CheckpointListener> checkpointListeners = new ArrayList<>();
+		List<Object> processors = new ArrayList<>();
+		for (List<EntityDocumentProcessor> edps : this.entityDocumentProcessors
+				.values()) {
+			processors.addAll(edps);
+		}
+		for (List<MwRevisionProcessor> mrps : this.mwRevisionProcessors
+				.values()) {
+			processors.addAll(mrps);
+		}
+		for (Object processor : processors) {
+			if (processor instanceof CheckpointListener
+					&& !checkpointListeners.contains(processor)) {
+				checkpointListeners.add((CheckpointListener) processor);
+			}
+		}
+
+		int maxReadAhead = Math.max(
+				JsonDumpFileProcessor.getMaxReadAhead(this.parallelism),
+				WikibaseRevisionProcessor.PENDING_REVISIONS_PER_THREAD
+						* this.parallelism);
+		this.checkpointRecorder = new DumpCheckpointRecorder(
+				this.checkpointFile, this.checkpointInterval, maxReadAhead,
+				checkpointListeners, this.concurrentBrokers,
+				this.wikibaseRevisionProcessors);
 	}
 
 	/**
@@ -649,7 +1028,7 @@ public class DumpProcessingController {
 					result = edp;
 				} else {
 					if (broker == null) {
-						broker = new EntityDocumentProcessorBroker();
+						broker = createEntityDocumentProcessorBroker();
 						broker.registerEntityDocumentProcessor(result);
 						result = broker;
 					}
@@ -658,37 +1037,73 @@ public class DumpProcessingController {
 			}
 		}
 
-		return filterEntityDocumentProcessor(result);
+		// The global filter is applied by the JSON processor when parsing:
+		return result;
+	}
+
+	/**
+	 * Creates a new broker for distributing entity documents to several
+	 * processors, taking the setting for concurrent processing into account.
+	 *
+	 * @return the new broker
+	 */
+	private EntityDocumentProcessorBroker createEntityDocumentProcessorBroker() {
+		if (this.concurrentEntityDocumentProcessors) {
+			ConcurrentEntityDocumentProcessorBroker result = new ConcurrentEntityDocumentProcessorBroker();
+			this.concurrentBrokers.add(result);
+			return result;
+		} else {
+			return new EntityDocumentProcessorBroker();
+		}
 	}
 
 	/**
-	 * Wraps the given processor into a {@link EntityDocumentProcessorFilter} if
-	 * global filters are configured; otherwise just returns the processor
-	 * unchanged.
+	 * Returns the global filter if any filters are configured, and null
+	 * otherwise. The filter is used to skip unwanted data already when
+	 * deserializing JSON, so that the documents that processors receive do
+	 * not need to be filtered again.
 	 *
-	 * @param processor
-	 *            the processor to wrap
-	 * @return
+	 * @return the filter or null
 	 */
-	private EntityDocumentProcessor filterEntityDocumentProcessor(
-			EntityDocumentProcessor processor) {
+	private DocumentDataFilter getActiveFilter() {
 		if (this.filter.getPropertyFilter() == null
 				&& this.filter.getSiteLinkFilter() == null
 				&& this.filter.getLanguageFilter() == null) {
-			return processor;
+			return null;
 		} else {
-			return new EntityDocumentProcessorFilter(
-					processor, this.filter);
+			return this.filter;
 		}
 	}
 
+	/**
+	 * Returns the pool of threads that is shared by all
+	 * {@link WikibaseRevisionProcessor} objects for parsing revisions. A new
+	 * pool is created if the parallelism has changed.
+	 *
+	 * @return the pool of threads
+	 */
+	ExecutorService getRevisionWorkerPool() {
+		if (this.revisionWorkerPool == null
+				|| this.revisionWorkerPool.getMaximumPoolSize() != this.parallelism) {
+			if (this.revisionWorkerPool != null) {
+				this.revisionWorkerPool.shutdown();
+			}
+			this.revisionWorkerPool = new ThreadPoolExecutor(this.parallelism,
+					this.parallelism, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(),
+					new DaemonThreadFactory("revision-parser"));
+			this.revisionWorkerPool.allowCoreThreadTimeOut(true);
+		}
+		return this.revisionWorkerPool;
+	}
+
 	/**
 	 * Returns an {@link MwRevisionProcessor} object that calls all registered
 	 * processors and that takes filters into account if needed.
 	 *
 	 * @return the master processor
 	 */
-	private MwRevisionProcessor getMasterMwRevisionProcessor() {
+	private MwRevisionProcessorBroker getMasterMwRevisionProcessor() {
 		MwRevisionProcessorBroker result = new MwRevisionProcessorBroker();
 
 		for (Entry<ListenerRegistration, List<MwRevisionProcessor>> entry : this.mwRevisionProcessors
@@ -705,16 +1120,23 @@ public class DumpProcessingController {
 			if (edpEntry.getValue().size() == 1) {
 				resultEdp = edpEntry.getValue().get(0);
 			} else {
-				EntityDocumentProcessorBroker edpb = new EntityDocumentProcessorBroker();
+				EntityDocumentProcessorBroker edpb = createEntityDocumentProcessorBroker();
 				for (EntityDocumentProcessor edp : edpEntry.getValue()) {
 					edpb.registerEntityDocumentProcessor(edp);
 				}
 				resultEdp = edpb;
 			}
 
-			result.registerMwRevisionProcessor(new WikibaseRevisionProcessor(
-					filterEntityDocumentProcessor(resultEdp),
-					Datamodel.SITE_WIKIDATA), edpEntry.getKey().model, edpEntry
+			WikibaseRevisionProcessor wikibaseRevisionProcessor = new WikibaseRevisionProcessor(
+					resultEdp, Datamodel.SITE_WIKIDATA, getActiveFilter(),
+					this.parallelism);
+			wikibaseRevisionProcessor.setEntityPrefilter(this.entityPrefilter);
+			if (this.parallelism > 1) {
+				wikibaseRevisionProcessor
+						.setWorkerPool(getRevisionWorkerPool());
+			}
+			this.wikibaseRevisionProcessors.add(wikibaseRevisionProcessor);
+			result.registerMwRevisionProcessor(wikibaseRevisionProcessor, edpEntry.getKey().model, edpEntry
 					.getKey().onlyCurrentRevisions);
 		}
 
@@ -0,0 +1,122 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import org.wikidata.wdtk.datamodel.json.jackson.JacksonTermedStatementDocument;
+
+/**
+ * Simple {@link EntityPrefilter} that accepts entities of a given type whose
+ * numeric id lies in a given range. The range can further be restricted to
+ * one shard out of several, where entities are assigned to shards by their
+ * numeric id modulo the number of shards.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+public class EntityIdRangePrefilter implements EntityPrefilter {
+
+	final String entityType;
+	final long minId;
+	final long maxId;
+	final int shardCount;
+	final int shardIndex;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param entityType
+	 *            the type of entities to accept, such as
+	 *            {@link JacksonTermedStatementDocument#JSON_TYPE_ITEM}, or null
+	 *            to accept all types
+	 * @param minId
+	 *            the smallest numeric id to accept
+	 * @param maxId
+	 *            the largest numeric id to accept
+	 */
+	public EntityIdRangePrefilter(String entityType, long minId, long maxId) {
+		this(entityType, minId, maxId, 1, 0);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param entityType
+	 *            the type of entities to accept, such as
+	 *            {@link JacksonTermedStatementDocument#JSON_TYPE_ITEM}, or null
+	 *            to accept all types
+	 * @param minId
+	 *            the smallest numeric id to accept
+	 * @param maxId
+	 *            the largest numeric id to accept
+	 * @param shardCount
+	 *            the number of shards
+	 * @param shardIndex
+	 *            the shard to accept, between 0 and shardCount-1
+	 */
+	public EntityIdRangePrefilter(String entityType, long minId, long maxId,
+			int shardCount, int shardIndex) {
+		if (shardCount <= 0 || shardIndex < 0 || shardIndex >= shardCount) {
+			throw new IllegalArgumentException("Invalid shard " + shardIndex
+					+ " of " + shardCount);
+		}
+		this.entityType = entityType;
+		this.minId = minId;
+		this.maxId = maxId;
+		this.shardCount = shardCount;
+		this.shardIndex = shardIndex;
+	}
+
+	@Override
+	public boolean includeEntity(String entityType, String entityId) {
+		if (this.entityType != null && !this.entityType.equals(entityType)) {
+			return false;
+		}
+		long numericId = getNumericId(entityId);
+		return numericId >= 0 && numericId >= this.minId
+				&& numericId <= this.maxId
+				&& numericId % this.shardCount == this.shardIndex;
+	}
+
+	/**
+	 * Returns the numeric part of an entity id such as "Q42", or -1 if the id
+	 * does not have this form.
+	 *
+	 * @param entityId
+	 *            the id string
+	 * @return the numeric id
+	 */
+	static long getNumericId(String entityId) {
+		if (entityId == null || entityId.length() < 2) {
+			return -1;
+		}
+		long result = 0;
+		for (int i = 1; i < entityId.length(); i++) {
+			char c = entityId.charAt(i);
+			if (c < '0' || c > '9' || result > Long.MAX_VALUE / 10 - 1) {
+				return -1;
+			}
+			result = 10 * result + (c - '0');
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,50 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+/**
+ * Interface for classes that decide which entities should be processed at
+ * all, based only on their type and id. Prefilters are applied before the
+ * data of an entity is deserialized, so that the effort for parsing unwanted
+ * entities is avoided.
+ *
+ * @see DumpProcessingController#setEntityPrefilter(EntityPrefilter)
+ * @author Markus Kroetzsch
+ *
+ */
+public interface EntityPrefilter {
+
+	/**
+	 * Returns true if the entity of the given type and id should be
+	 * processed.
+	 *
+	 * @param entityType
+	 *            the type of the entity as used in JSON, e.g., "item" or
+	 *            "property", or null if it could not be determined
+	 * @param entityId
+	 *            the string id of the entity, e.g., "Q42", or null if it could
+	 *            not be determined
+	 * @return true if the entity should be processed
+	 */
+	boolean includeEntity(String entityType, String entityId);
+
+}
@@ -24,16 +24,32 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.wikidata.wdtk.datamodel.interfaces.DocumentDataFilter;
 import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
 import org.wikidata.wdtk.datamodel.json.jackson.JacksonItemDocument;
 import org.wikidata.wdtk.datamodel.json.jackson.JacksonPropertyDocument;
 import org.wikidata.wdtk.datamodel.json.jackson.JacksonTermedStatementDocument;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonParser.Feature;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
@@ -50,16 +66,153 @@ public class JsonDumpFileProcessor implements MwDumpFileProcessor {
 			.getLogger(JsonDumpFileProcessor.class);
 
 	private final ObjectMapper mapper = new ObjectMapper();
-	private final ObjectReader documentReader = this.mapper
-			.reader(JacksonTermedStatementDocument.class);
+	private final ObjectReader documentReader;
+
+	/**
+	 * Number of dump lines that are handed to a worker thread at once when
+	 * processing in parallel.
+	 */
+	static final int BATCH_SIZE = 256;
+
+	/**
+	 * Largest number of lines that can be held in the buffers of the readers
+	 * and parsers that read the input. These buffers hold at most 16 KiB, and
+	 * no line with an entity is shorter than 26 bytes.
+	 */
+	static final int MAX_BUFFERED_LINES = 640;
 
 	private final EntityDocumentProcessor entityDocumentProcessor;
 	private final String siteIri;
+	private final int parallelism;
+
+	/**
+	 * Prefilter that decides which lines of the dump should be deserialized,
+	 * or null if all lines should be deserialized.
+	 */
+	private EntityPrefilter prefilter = null;
+
+	/**
+	 * Prefilter that skips the entities before a checkpoint, or null if
+	 * processing starts at the beginning of the dump.
+	 */
+	private ResumingPrefilter resumingPrefilter = null;
 
 	public JsonDumpFileProcessor(
 			EntityDocumentProcessor entityDocumentProcessor, String siteIri) {
+		this(entityDocumentProcessor, siteIri, 1);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param entityDocumentProcessor
+	 *            the processor to notify of all entity documents
+	 * @param siteIri
+	 *            the IRI of the site that the dump belongs to
+	 * @param parallelism
+	 *            the number of worker threads used to deserialize entities;
+	 *            if this is 1 or less, the dump is processed in a single
+	 *            thread
+	 */
+	public JsonDumpFileProcessor(
+			EntityDocumentProcessor entityDocumentProcessor, String siteIri,
+			int parallelism) {
+		this(entityDocumentProcessor, siteIri, parallelism, null);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param entityDocumentProcessor
+	 *            the processor to notify of all entity documents
+	 * @param siteIri
+	 *            the IRI of the site that the dump belongs to
+	 * @param parallelism
+	 *            the number of worker threads used to deserialize entities;
+	 *            if this is 1 or less, the dump is processed in a single
+	 *            thread
+	 * @param filter
+	 *            filter that specifies which terms, statements, and site
+	 *            links should be deserialized, or null to deserialize all data;
+	 *            the JSON of other data is skipped without creating objects
+	 */
+	public JsonDumpFileProcessor(
+			EntityDocumentProcessor entityDocumentProcessor, String siteIri,
+			int parallelism, DocumentDataFilter filter) {
 		this.entityDocumentProcessor = entityDocumentProcessor;
 		this.siteIri = siteIri;
+		this.parallelism = parallelism;
+		ObjectReader reader = this.mapper
+				.reader(JacksonTermedStatementDocument.class);
+		if (filter != null) {
+			reader = reader.withAttribute(
+					JacksonTermedStatementDocument.FILTER_ATTRIBUTE, filter);
+		}
+		this.documentReader = reader;
+	}
+
+	/**
+	 * Sets a prefilter that is used to decide which entities should be
+	 * deserialized at all. Only the "type" and "id" fields of each line are
+	 * read to make this decision. Since this requires the dump to be processed
+	 * line by line, setting a prefilter disables the use of a
+	 * {@link MappingIterator} for reading the dump.
+	 *
+	 * @param prefilter
+	 *            the prefilter, or null to deserialize all entities
+	 */
+	public void setEntityPrefilter(EntityPrefilter prefilter) {
+		this.prefilter = prefilter;
+	}
+
+	/**
+	 * Resumes processing after the entity with the given id. All entities up
+	 * to and including this entity are skipped without deserializing them.
+	 * The dump is read line by line in this case, as for prefilters. Resuming
+	 * is not supported for memory-mapped processing, where the start offset
+	 * of the {@link MwLocalDumpFile} should be used instead. If the entity
+	 * does not occur in the dump, an {@link IllegalStateException} is thrown
+	 * after reading the whole dump.
+	 *
+	 * @param entityId
+	 *            the id of the last entity that has already been processed,
+	 *            or null to process all entities
+	 */
+	public void setResumeAfterEntity(String entityId) {
+		if (entityId == null) {
+			this.resumingPrefilter = null;
+		} else {
+			this.resumingPrefilter = new ResumingPrefilter(entityId, null);
+		}
+	}
+
+	/**
+	 * Sets the prefilter that skips the entities that have been processed
+	 * before. Like {@link #setResumeAfterEntity(String)}, but the caller can
+	 * later check if the prefilter has found the last entity.
+	 *
+	 * @param resumingPrefilter
+	 *            the prefilter, or null to process all entities
+	 */
+	void setResumingPrefilter(ResumingPrefilter resumingPrefilter) {
+		this.resumingPrefilter = resumingPrefilter;
+	}
+
+	/**
+	 * Returns an upper bound for the number of entities that may have been
+	 * read from the input while they have not been processed yet.
+	 *
+	 * @param parallelism
+	 *            the number of threads used for parsing
+	 * @return the number of entities
+	 */
+	static int getMaxReadAhead(int parallelism) {
+		if (parallelism <= 1) {
+			return MAX_BUFFERED_LINES;
+		}
+		// Batches in the queue, one that is being read, one that waits to be
+		// put into the queue, and one that is being processed:
+		return (4 * parallelism + 3) * BATCH_SIZE + MAX_BUFFERED_LINES;
 	}
 
 	/**
@@ -68,6 +221,11 @@ public class JsonDumpFileProcessor implements MwDumpFileProcessor {
 	 * recover from processing errors. If an error occurs in one entity, the
 	 * (presumably) less efficient processing method
 	 * {@link #processDumpFileContentsRecovery(InputStream)} is used instead.
+	 * <p>
+	 * If the dump file is a {@link MwLocalDumpFile} that should be
+	 * memory-mapped, the file is read directly and the given input stream is
+	 * not used; it may then be null. The stream is never closed by this
+	 * method.
 	 *
 	 * @see MwDumpFileProcessor#processDumpFileContents(InputStream, MwDumpFile)
 	 */
@@ -77,6 +235,27 @@ public class JsonDumpFileProcessor implements MwDumpFileProcessor {
 
 		logger.info("Processing JSON dump file " + dumpFile.toString());
 
+		if (dumpFile instanceof MwLocalDumpFile
+				&& ((MwLocalDumpFile) dumpFile).useMemoryMapping()) {
+			MwLocalDumpFile localDumpFile = (MwLocalDumpFile) dumpFile;
+			if (this.resumingPrefilter != null) {
+				logger.warn("Cannot resume after an entity when processing memory-mapped ranges. Processing the whole file.");
+				this.resumingPrefilter = null;
+			}
+			processDumpFileRanges(localDumpFile.getPath(),
+					localDumpFile.getSplitCount(),
+					localDumpFile.getStartOffset());
+			return;
+		} else if (this.parallelism > 1) {
+			processDumpFileContentsParallel(inputStream);
+			checkResumed();
+			return;
+		} else if (this.prefilter != null || this.resumingPrefilter != null) {
+			processDumpFileContentsByLine(inputStream);
+			checkResumed();
+			return;
+		}
+
 		try {
 			try {
 				MappingIterator<JacksonTermedStatementDocument> documentIterator = documentReader
@@ -100,6 +279,45 @@ public class JsonDumpFileProcessor implements MwDumpFileProcessor {
 
 	}
 
+	/**
+	 * Fails if processing should have been resumed after an entity that did
+	 * not occur in the dump, since all entities of the dump have been skipped
+	 * in this case.
+	 *
+	 * @throws IllegalStateException
+	 *             if the last entity was not found
+	 */
+	private void checkResumed() {
+		if (this.resumingPrefilter != null
+				&& !this.resumingPrefilter.isLastEntityFound()) {
+			throw new IllegalStateException("Could not resume processing: "
+					+ this.resumingPrefilter.lastEntityId
+					+ " was not found in the dump.");
+		}
+	}
+
+	/**
+	 * Checks if the given line should be skipped since it comes before the
+	 * entity after which processing is resumed. This must be called for all
+	 * lines in the order of the dump. Lines that cannot be read are skipped,
+	 * too, since the first line of a dump that is read from the middle of a
+	 * compressed file is usually incomplete.
+	 *
+	 * @param line
+	 *            the line to check
+	 * @return true if the line should be skipped
+	 * @throws IOException
+	 *             if there was a low-level problem when reading the string
+	 */
+	private boolean skipLine(String line) throws IOException {
+		if (this.resumingPrefilter == null
+				|| this.resumingPrefilter.isLastEntityFound()) {
+			return false;
+		}
+		return !includeEntity(this.mapper.getFactory().createParser(line),
+				this.resumingPrefilter, false);
+	}
+
 	/**
 	 * Reports the error of a JSON processing exception that was caught when
 	 * trying to read an entity.
@@ -166,23 +384,452 @@ public class JsonDumpFileProcessor implements MwDumpFileProcessor {
 
 		line = br.readLine();
 		while (line != null && line.length() > 1) {
-			try {
-				JacksonTermedStatementDocument document;
-				if (line.charAt(line.length() - 1) == ',') {
-					document = documentReader.readValue(line.substring(0,
-							line.length() - 1));
-				} else {
-					document = documentReader.readValue(line);
-				}
+			JacksonTermedStatementDocument document = parseLine(line);
+			if (document != null) {
 				handleDocument(document);
-			} catch (JsonProcessingException e) {
-				logJsonProcessingException(e);
-				JsonDumpFileProcessor.logger.error("Problematic line was: "
-						+ line.substring(0, Math.min(50, line.length()))
-						+ "...");
 			}
-
 			line = br.readLine();
 		}
 	}
+
+	/**
+	 * Process dump file data from the given input stream line by line, in the
+	 * current thread. This is used instead of the {@link MappingIterator} when
+	 * a prefilter needs to look at each line before it is deserialized, or when
+	 * entities before a checkpoint need to be skipped. Lines
+	 * that cannot be parsed are logged and skipped.
+	 *
+	 * @param inputStream
+	 *            the stream to read from
+	 */
+	private void processDumpFileContentsByLine(InputStream inputStream) {
+		BufferedReader br = new BufferedReader(new InputStreamReader(
+				inputStream, StandardCharsets.UTF_8));
+		try {
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (line.length() <= 1 // "[", "]", or empty
+						|| skipLine(line)) {
+					continue;
+				}
+				JacksonTermedStatementDocument document = parseLine(line);
+				if (document != null) {
+					handleDocument(document);
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot read JSON input: "
+					+ e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Process dump file data from the given input stream using several
+	 * threads. One reader thread splits the input into batches of lines, each
+	 * of which is assumed to contain the JSON serialization of one entity.
+	 * These batches are deserialized by a pool of worker threads. The
+	 * resulting documents are handed to the entity document processor in the
+	 * current thread and in the order of the input, so that processors need
+	 * not be thread-safe. Lines that cannot be parsed are logged and skipped.
+	 *
+	 * @param inputStream
+	 *            the stream to read from
+	 */
+	private void processDumpFileContentsParallel(final InputStream inputStream) {
+		logger.info("Using " + this.parallelism
+				+ " threads for parsing JSON entities.");
+
+		final ExecutorService workerPool = Executors
+				.newFixedThreadPool(this.parallelism);
+		ExecutorService readerThread = Executors.newSingleThreadExecutor();
+		// Bounded so that the reader cannot run far ahead of the processors:
+		final BlockingQueue<Future<List<JacksonTermedStatementDocument>>> batches = new ArrayBlockingQueue<>(
+				4 * this.parallelism);
+
+		try {
+			Future<Void> readerResult = readerThread
+					.submit(new Callable<Void>() {
+						@Override
+						public Void call() throws IOException,
+								InterruptedException {
+							try {
+								readBatches(inputStream, workerPool, batches);
+							} finally {
+								batches.put(getEndOfBatches());
+							}
+							return null;
+						}
+					});
+
+			while (true) {
+				List<JacksonTermedStatementDocument> documents = batches.take()
+						.get();
+				if (documents == null) {
+					break;
+				}
+				for (JacksonTermedStatementDocument document : documents) {
+					handleDocument(document);
+				}
+			}
+
+			readerResult.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while processing JSON input",
+					e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Cannot read JSON input: "
+					+ e.getCause().getMessage(), e.getCause());
+		} finally {
+			readerThread.shutdownNow();
+			workerPool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Process an uncompressed JSON dump file by memory-mapping it. The file is
+	 * split into the given number of byte ranges at line boundaries, and each
+	 * range is read and parsed by a thread of its own using a
+	 * {@link MappedFileLineReader}. Lines are parsed directly from bytes,
+	 * without decoding them into strings first. The resulting documents are
+	 * handed to the entity document processor in the current thread, so that
+	 * processors need not be thread-safe. However, documents of different
+	 * ranges are interleaved, so the order of the dump is not preserved. Lines
+	 * that cannot be parsed are logged and skipped.
+	 *
+	 * @param path
+	 *            the file to read
+	 * @param splitCount
+	 *            the number of ranges to split the file into
+	 * @param startOffset
+	 *            the offset at which processing should start
+	 */
+	private void processDumpFileRanges(final Path path, int splitCount,
+			long startOffset) {
+		long[] offsets;
+		try {
+			offsets = MappedFileLineReader.getSplitOffsets(path, splitCount,
+					startOffset);
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot read JSON input: "
+					+ e.getMessage(), e);
+		}
+		logger.info("Using " + splitCount
+				+ " threads for reading memory-mapped JSON ranges, starting at offset "
+				+ offsets[0] + ".");
+
+		ExecutorService rangeReaders = Executors
+				.newFixedThreadPool(splitCount);
+		final BlockingQueue<List<JacksonTermedStatementDocument>> batches = new ArrayBlockingQueue<>(
+				4 * splitCount);
+		final List<JacksonTermedStatementDocument> endOfRange = Collections
+				.emptyList();
+
+		List<Future<Void>> results = new ArrayList<>(splitCount);
+		try {
+			for (int i = 0; i < splitCount; i++) {
+				final long start = offsets[i];
+				final long end = offsets[i + 1];
+				results.add(rangeReaders.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException, InterruptedException {
+						try {
+							readRange(path, start, end, batches);
+						} finally {
+							batches.put(endOfRange);
+						}
+						return null;
+					}
+				}));
+			}
+
+			int finishedRanges = 0;
+			while (finishedRanges < splitCount) {
+				List<JacksonTermedStatementDocument> documents = batches.take();
+				if (documents == endOfRange) {
+					finishedRanges++;
+				}
+				for (JacksonTermedStatementDocument document : documents) {
+					handleDocument(document);
+				}
+			}
+
+			for (Future<Void> result : results) {
+				result.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while processing JSON input",
+					e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Cannot read JSON input: "
+					+ e.getCause().getMessage(), e.getCause());
+		} finally {
+			rangeReaders.shutdownNow();
+		}
+	}
+
+	/**
+	 * Reads and parses the lines in the given byte range of a file, and puts
+	 * the resulting documents into the given queue in batches.
+	 *
+	 * @param path
+	 *            the file to read
+	 * @param start
+	 *            the offset of the first line of the range
+	 * @param end
+	 *            the offset after the last line of the range
+	 * @param batches
+	 *            the queue to put parsed documents into
+	 * @throws IOException
+	 *             if there is a problem reading the file
+	 * @throws InterruptedException
+	 *             if the thread was interrupted while waiting for space in
+	 *             the queue
+	 */
+	private void readRange(Path path, long start, long end,
+			BlockingQueue<List<JacksonTermedStatementDocument>> batches)
+			throws IOException, InterruptedException {
+		List<JacksonTermedStatementDocument> batch = new ArrayList<>(
+				BATCH_SIZE);
+		try (MappedFileLineReader reader = new MappedFileLineReader(path,
+				start, end)) {
+			while (reader.nextLine()) {
+				JacksonTermedStatementDocument document = parseLine(
+						reader.getLineBuffer(), reader.getLineLength());
+				if (document == null) {
+					continue;
+				}
+				batch.add(document);
+				if (batch.size() == BATCH_SIZE) {
+					batches.put(batch);
+					batch = new ArrayList<>(BATCH_SIZE);
+				}
+			}
+		}
+		if (!batch.isEmpty()) {
+			batches.put(batch);
+		}
+	}
+
+	/**
+	 * Reads the lines of the given input stream and submits them in batches
+	 * to the given worker pool for parsing. The pending results are put into
+	 * the given queue in the order of the input. Lines that contain no
+	 * entities (such as the opening and closing brackets of the JSON array)
+	 * are skipped.
+	 *
+	 * @param inputStream
+	 *            the stream to read from
+	 * @param workerPool
+	 *            the executor used to parse batches
+	 * @param batches
+	 *            the queue to put pending parsing results into
+	 * @throws IOException
+	 *             if there is a problem reading the stream
+	 * @throws InterruptedException
+	 *             if the thread was interrupted while waiting for space in
+	 *             the queue
+	 */
+	private void readBatches(InputStream inputStream,
+			ExecutorService workerPool,
+			BlockingQueue<Future<List<JacksonTermedStatementDocument>>> batches)
+			throws IOException, InterruptedException {
+		BufferedReader br = new BufferedReader(new InputStreamReader(
+				inputStream, StandardCharsets.UTF_8));
+
+		List<String> batch = new ArrayList<>(BATCH_SIZE);
+		String line;
+		while ((line = br.readLine()) != null) {
+			if (line.length() <= 1 // "[", "]", or empty
+					|| skipLine(line)) {
+				continue;
+			}
+			batch.add(line);
+			if (batch.size() == BATCH_SIZE) {
+				batches.put(workerPool.submit(getBatchParser(batch)));
+				batch = new ArrayList<>(BATCH_SIZE);
+			}
+		}
+		if (!batch.isEmpty()) {
+			batches.put(workerPool.submit(getBatchParser(batch)));
+		}
+	}
+
+	/**
+	 * Returns a task that parses the given lines into entity documents.
+	 *
+	 * @param lines
+	 *            the lines to parse, each holding the serialization of one
+	 *            entity (optionally followed by a comma)
+	 * @return the parsing task
+	 */
+	private Callable<List<JacksonTermedStatementDocument>> getBatchParser(
+			final List<String> lines) {
+		return new Callable<List<JacksonTermedStatementDocument>>() {
+			@Override
+			public List<JacksonTermedStatementDocument> call()
+					throws IOException {
+				List<JacksonTermedStatementDocument> result = new ArrayList<>(
+						lines.size());
+				for (String line : lines) {
+					JacksonTermedStatementDocument document = parseLine(line);
+					if (document != null) {
+						result.add(document);
+					}
+				}
+				return result;
+			}
+		};
+	}
+
+	/**
+	 * Parses a single line of a JSON dump. Errors are logged, and null is
+	 * returned in this case. Null is also returned if the line is rejected by
+	 * the prefilter.
+	 *
+	 * @param line
+	 *            the line to parse
+	 * @return the document, or null if the line could not be parsed
+	 * @throws IOException
+	 *             if there was a low-level problem when reading the string
+	 */
+	private JacksonTermedStatementDocument parseLine(String line)
+			throws IOException {
+		if (this.prefilter != null && !includeLine(line)) {
+			return null;
+		}
+		try {
+			if (line.charAt(line.length() - 1) == ',') {
+				return documentReader.readValue(line.substring(0,
+						line.length() - 1));
+			} else {
+				return documentReader.readValue(line);
+			}
+		} catch (JsonProcessingException e) {
+			logJsonProcessingException(e);
+			JsonDumpFileProcessor.logger.error("Problematic line was: "
+					+ line.substring(0, Math.min(50, line.length())) + "...");
+			return null;
+		}
+	}
+
+	/**
+	 * Parses a single line of a JSON dump that is given as UTF-8 bytes.
+	 * Trailing commas and whitespace are ignored, and lines without content
+	 * (such as the opening and closing brackets of the JSON array) are
+	 * skipped. Errors are logged, and null is returned in this case. Null is
+	 * also returned if the line is rejected by the prefilter.
+	 *
+	 * @param buffer
+	 *            the array that holds the line, starting at index 0
+	 * @param length
+	 *            the number of bytes in the line
+	 * @return the document, or null if the line could not be parsed
+	 * @throws IOException
+	 *             if there was a low-level problem when reading the bytes
+	 */
+	private JacksonTermedStatementDocument parseLine(byte[] buffer, int length)
+			throws IOException {
+		while (length > 0
+				&& (buffer[length - 1] == ',' || buffer[length - 1] <= ' ')) {
+			length--;
+		}
+		if (length <= 1) { // "[", "]", or empty
+			return null;
+		}
+		if (this.prefilter != null
+				&& !includeEntity(this.mapper.getFactory().createParser(
+						buffer, 0, length), this.prefilter, true)) {
+			return null;
+		}
+		try {
+			return documentReader.readValue(buffer, 0, length);
+		} catch (JsonProcessingException e) {
+			logJsonProcessingException(e);
+			JsonDumpFileProcessor.logger.error("Problematic line was: "
+					+ new String(buffer, 0, Math.min(50, length),
+							StandardCharsets.UTF_8) + "...");
+			return null;
+		}
+	}
+
+	/**
+	 * Checks if the entity in the given line is accepted by the prefilter. Only
+	 * the top-level "type" and "id" fields are read; the contents of all other
+	 * fields are skipped on the token level. Lines that are not valid JSON are
+	 * accepted, so that the error is reported when deserializing them.
+	 *
+	 * @param line
+	 *            the line to check
+	 * @return true if the line should be deserialized
+	 * @throws IOException
+	 *             if there was a low-level problem when reading the string
+	 */
+	private boolean includeLine(String line) throws IOException {
+		return includeEntity(this.mapper.getFactory().createParser(line),
+				this.prefilter, true);
+	}
+
+	/**
+	 * Checks if the entity that is read by the given parser is accepted by the
+	 * given prefilter, as explained in {@link #includeLine(String)}. The
+	 * parser is closed afterwards.
+	 *
+	 * @param parser
+	 *            the parser for the serialization of the entity
+	 * @param entityPrefilter
+	 *            the prefilter to ask
+	 * @param includeInvalid
+	 *            the result for inputs that are not JSON objects
+	 * @return true if the entity should be deserialized
+	 * @throws IOException
+	 *             if there was a low-level problem when reading the input
+	 */
+	private boolean includeEntity(JsonParser parser,
+			EntityPrefilter entityPrefilter, boolean includeInvalid)
+			throws IOException {
+		String entityType = null;
+		String entityId = null;
+		try {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				return includeInvalid;
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME
+					&& (entityType == null || entityId == null)) {
+				String fieldName = parser.getCurrentName();
+				parser.nextToken();
+				if ("type".equals(fieldName)) {
+					entityType = parser.getValueAsString();
+				} else if ("id".equals(fieldName)) {
+					entityId = parser.getValueAsString();
+				} else {
+					parser.skipChildren();
+				}
+			}
+		} catch (JsonProcessingException e) {
+			return includeInvalid;
+		} finally {
+			parser.close();
+		}
+		return entityPrefilter.includeEntity(entityType, entityId);
+	}
+
+	/**
+	 * Returns a completed future with a null result, which is used to mark the
+	 * end of the input in the queue of parsed batches.
+	 *
+	 * @return the end marker
+	 */
+	private static Future<List<JacksonTermedStatementDocument>> getEndOfBatches() {
+		FutureTask<List<JacksonTermedStatementDocument>> result = new FutureTask<>(
+				new Callable<List<JacksonTermedStatementDocument>>() {
+					@Override
+					public List<JacksonTermedStatementDocument> call() {
+						return null;
+					}
+				});
+		result.run();
+		return result;
+	}
 }
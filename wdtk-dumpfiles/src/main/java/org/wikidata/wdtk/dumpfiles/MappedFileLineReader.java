@@ -0,0 +1,323 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads the lines of a byte range of a file by memory-mapping it. The range is
+ * mapped in windows of limited size, so that arbitrarily large files can be
+ * read. Each line is copied into a reusable byte array, which can be passed to
+ * parsers directly without decoding it into a string first.
+ * <p>
+ * The static method {@link #getSplitOffsets(Path, int, long)} can be used to
+ * split a file into ranges that start at the beginning of a line, so that each
+ * range can be read independently.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+public class MappedFileLineReader implements Closeable {
+
+	/**
+	 * Default size of the part of the file that is mapped at once.
+	 */
+	public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	/**
+	 * Largest size of a window, which is also the largest size of a line.
+	 * Some JVMs cannot allocate arrays of exactly
+	 * {@link Integer#MAX_VALUE} elements.
+	 */
+	static final int MAX_WINDOW_SIZE = Integer.MAX_VALUE - 8;
+
+	final FileChannel channel;
+	final long end;
+	final int windowSize;
+
+	MappedByteBuffer window = null;
+	long windowStart = 0;
+	long windowEnd = 0;
+
+	long position;
+	long lineOffset = -1;
+	byte[] lineBuffer = new byte[4096];
+	int lineLength = 0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param path
+	 *            the file to read
+	 * @param start
+	 *            the offset of the first byte to read; should be the start of
+	 *            a line
+	 * @param end
+	 *            the offset after the last byte to read; should be the start
+	 *            of a line or the end of the file
+	 * @throws IOException
+	 *             if the file could not be opened
+	 */
+	public MappedFileLineReader(Path path, long start, long end)
+			throws IOException {
+		this(path, start, end, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param path
+	 *            the file to read
+	 * @param start
+	 *            the offset of the first byte to read; should be the start of
+	 *            a line
+	 * @param end
+	 *            the offset after the last byte to read; should be the start
+	 *            of a line or the end of the file
+	 * @param windowSize
+	 *            the number of bytes to map at once; longer lines are
+	 *            supported but require larger mappings
+	 * @throws IOException
+	 *             if the file could not be opened
+	 */
+	public MappedFileLineReader(Path path, long start, long end,
+			int windowSize) throws IOException {
+		if (windowSize <= 0) {
+			throw new IllegalArgumentException(
+					"The window size must be a positive number.");
+		}
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		this.position = start;
+		this.end = Math.min(end, this.channel.size());
+		this.windowSize = windowSize;
+	}
+
+	/**
+	 * Reads the next line. Its contents can then be accessed using
+	 * {@link #getLineBuffer()} and {@link #getLineLength()}. The line break
+	 * is not included.
+	 *
+	 * @return false if the end of the range has been reached
+	 * @throws IOException
+	 *             if the file could not be read
+	 */
+	public boolean nextLine() throws IOException {
+		if (this.position >= this.end) {
+			return false;
+		}
+
+		int size = this.windowSize;
+		if (this.window == null || this.position < this.windowStart
+				|| this.position >= this.windowEnd) {
+			mapWindow(this.position, size);
+		}
+		while (true) {
+			int start = (int) (this.position - this.windowStart);
+			int limit = (int) (this.windowEnd - this.windowStart);
+			int i = start;
+			while (i < limit && this.window.get(i) != '\n') {
+				i++;
+			}
+
+			if (i < limit || this.windowEnd >= this.end) {
+				copyLine(start, i - start);
+				this.lineOffset = this.position;
+				this.position = Math.min(this.windowStart + i + 1, this.end);
+				return true;
+			}
+
+			// The line does not end in this window; map a larger window:
+			if (limit - start >= MAX_WINDOW_SIZE) {
+				throw new IOException("Line at offset " + this.position
+						+ " is too long to be read.");
+			}
+			size = (int) Math.min(2L * Math.max(size, limit - start),
+					MAX_WINDOW_SIZE);
+			mapWindow(this.position, size);
+		}
+	}
+
+	/**
+	 * Returns the array that holds the bytes of the current line, starting at
+	 * index 0. The array is reused for the next line.
+	 *
+	 * @return the line buffer
+	 */
+	public byte[] getLineBuffer() {
+		return this.lineBuffer;
+	}
+
+	/**
+	 * Returns the number of bytes in the current line.
+	 *
+	 * @return length of the line
+	 */
+	public int getLineLength() {
+		return this.lineLength;
+	}
+
+	/**
+	 * Returns the offset in the file where the current line starts.
+	 *
+	 * @return file offset of the current line, or -1 if no line has been read
+	 */
+	public long getLineOffset() {
+		return this.lineOffset;
+	}
+
+	/**
+	 * Returns the offset in the file where the next line starts.
+	 *
+	 * @return file offset of the next line
+	 */
+	public long getPosition() {
+		return this.position;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.window = null;
+		this.channel.close();
+	}
+
+	/**
+	 * Maps the part of the file that starts at the given offset.
+	 *
+	 * @param offset
+	 *            the first byte to map
+	 * @param size
+	 *            the preferred number of bytes to map; less is mapped at the
+	 *            end of the range
+	 * @throws IOException
+	 *             if the file could not be mapped
+	 */
+	void mapWindow(long offset, int size) throws IOException {
+		long length = Math.min(size, this.end - offset);
+		this.window = this.channel.map(MapMode.READ_ONLY, offset, length);
+		this.windowStart = offset;
+		this.windowEnd = offset + length;
+	}
+
+	/**
+	 * Copies bytes of the current window into the line buffer.
+	 *
+	 * @param start
+	 *            index of the first byte in the window
+	 * @param length
+	 *            number of bytes to copy
+	 */
+	void copyLine(int start, int length) {
+		if (length > this.lineBuffer.length) {
+			this.lineBuffer = Arrays.copyOf(this.lineBuffer,
+					(int) Math.max(length, Math.min(
+							2L * this.lineBuffer.length, MAX_WINDOW_SIZE)));
+		}
+		this.window.position(start);
+		this.window.get(this.lineBuffer, 0, length);
+		this.lineLength = length;
+	}
+
+	/**
+	 * Splits the given file into the given number of ranges of similar size,
+	 * such that each range starts at the beginning of a line. The result is
+	 * an array of count+1 offsets, where range i starts at offset i
+	 * (inclusive) and ends at offset i+1 (exclusive). Some ranges may be empty
+	 * if the file has few lines.
+	 *
+	 * @param path
+	 *            the file to split
+	 * @param count
+	 *            the number of ranges
+	 * @param start
+	 *            the offset where the first range should start; if this is
+	 *            not the start of a line, the first range begins with the next
+	 *            line
+	 * @return array of offsets
+	 * @throws IOException
+	 *             if the file could not be read
+	 */
+	public static long[] getSplitOffsets(Path path, int count, long start)
+			throws IOException {
+		if (count <= 0) {
+			throw new IllegalArgumentException(
+					"The number of ranges must be a positive number.");
+		}
+		try (FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.READ)) {
+			long size = channel.size();
+			long[] result = new long[count + 1];
+			result[0] = getLineStart(channel, Math.max(0, start));
+			result[count] = Math.max(result[0], size);
+			for (int i = 1; i < count; i++) {
+				long offset = result[0] + (size - result[0]) * i / count;
+				result[i] = Math.max(result[i - 1],
+						getLineStart(channel, offset));
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Finds the first line that starts at or after the given offset.
+	 *
+	 * @param channel
+	 *            the file to search
+	 * @param offset
+	 *            the offset to start searching from
+	 * @return the offset of the start of the line, or the size of the file if
+	 *         there is no further line
+	 * @throws IOException
+	 *             if the file could not be read
+	 */
+	static long getLineStart(FileChannel channel, long offset)
+			throws IOException {
+		if (offset == 0) {
+			return 0;
+		}
+		long size = channel.size();
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		long position = offset - 1; // start of line if preceded by '\n'
+		while (position < size) {
+			buffer.clear();
+			int count = channel.read(buffer, position);
+			if (count <= 0) {
+				break;
+			}
+			for (int i = 0; i < count; i++) {
+				if (buffer.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += count;
+		}
+		return size;
+	}
+
+}
@@ -37,6 +37,8 @@ import org.slf4j.LoggerFactory;
 import org.wikidata.wdtk.util.CompressionType;
 import org.wikidata.wdtk.util.DirectoryManager;
 import org.wikidata.wdtk.util.DirectoryManagerFactory;
+import org.wikidata.wdtk.util.DirectoryManagerImpl;
+import org.wikidata.wdtk.util.ParallelBZip2InputStream;
 
 /**
  * Class for representing dump files that are found at arbitrary (local) file
@@ -72,6 +74,28 @@ public class MwLocalDumpFile implements MwDumpFile {
 	 */
 	final DumpContentType dumpContentType;
 
+	/**
+	 * Compression type of this dumpfile
+	 */
+	final CompressionType compressionType;
+
+	/**
+	 * Number of byte ranges that the file is split into for memory-mapped
+	 * processing, or 0 if the file should be read as a stream.
+	 */
+	int splitCount = 0;
+
+	/**
+	 * Offset of the first byte that should be processed in memory-mapped
+	 * processing.
+	 */
+	long startOffset = 0;
+
+	/**
+	 * Number of threads used for decompressing the file.
+	 */
+	int decompressionThreads = 1;
+
 	/**
 	 * DirectoryManager for accessing the dumpfile
 	 */
@@ -146,6 +170,9 @@ public class MwLocalDumpFile implements MwDumpFile {
 			this.dumpContentType = dumpContentType;
 		}
 
+		this.compressionType = guessCompressionType(this.dumpFileName,
+				this.dumpContentType);
+
 		if (dateStamp == null) {
 			this.dateStamp = guessDumpDate(this.dumpFileName);
 		} else {
@@ -199,7 +226,148 @@ public class MwLocalDumpFile implements MwDumpFile {
 					+ "\" is not available for reading.");
 		}
 		return this.directoryManager.getInputStreamForFile(this.dumpFileName,
-				MwLocalDumpFile.COMPRESSION_TYPE.get(this.dumpContentType));
+				this.compressionType);
+	}
+
+	/**
+	 * Returns an input stream that provides access to the (uncompressed) text
+	 * content of the dump file, starting at the compressed bzip2 block at the
+	 * given bit offset. The data before this block is skipped without
+	 * decompressing it. This is used to resume processing from a
+	 * {@link DumpProcessingCheckpoint}. Note that the stream usually starts in
+	 * the middle of a line.
+	 *
+	 * @see ParallelBZip2InputStream#getCurrentBlockOffset()
+	 * @param blockOffset
+	 *            the bit offset of the block in the compressed file
+	 * @return an input stream to read the dump file
+	 * @throws IOException
+	 *             if the dump file contents could not be accessed
+	 * @throws IllegalStateException
+	 *             if the dump file is not compressed with bzip2
+	 */
+	public InputStream getDumpFileStream(long blockOffset) throws IOException {
+		if (this.compressionType != CompressionType.BZ2) {
+			throw new IllegalStateException(
+					"Only bzip2 files can be read from a block offset.");
+		}
+		if (!isAvailable()) {
+			throw new IOException("Local dump file \""
+					+ this.dumpFilePath.toString()
+					+ "\" is not available for reading.");
+		}
+		return new ParallelBZip2InputStream(
+				this.directoryManager.getInputStreamForFile(this.dumpFileName,
+						CompressionType.NONE),
+				this.decompressionThreads, blockOffset);
+	}
+
+	/**
+	 * Sets the number of threads that should be used for decompressing the
+	 * dump file. The default is 1. Larger values speed up the processing of
+	 * compressed files and allow bzip2 files to be resumed at a compressed
+	 * block; see {@link DirectoryManagerImpl#setDecompressionThreads(int)}.
+	 *
+	 * @param threadCount
+	 *            the number of threads to use for decompression
+	 */
+	public void setDecompressionThreads(int threadCount) {
+		if (threadCount <= 0) {
+			throw new IllegalArgumentException(
+					"The number of threads must be a positive number.");
+		}
+		this.decompressionThreads = threadCount;
+		if (this.directoryManager instanceof DirectoryManagerImpl) {
+			((DirectoryManagerImpl) this.directoryManager)
+					.setDecompressionThreads(threadCount);
+		}
+	}
+
+	/**
+	 * Returns the compression type of this dump file. Files that end in
+	 * ".json" are considered uncompressed, and files that end in ".bz2" or
+	 * ".gz" are compressed accordingly; otherwise the compression type is the
+	 * one used for dumps of this content type.
+	 *
+	 * @return compression type
+	 */
+	public CompressionType getCompressionType() {
+		return this.compressionType;
+	}
+
+	/**
+	 * Enables memory-mapped processing of an uncompressed JSON dump. The file
+	 * is split into the given number of byte ranges at line boundaries, and
+	 * each range is parsed by a thread of its own. Entity documents are still
+	 * passed to processors from a single thread, but they are no longer
+	 * delivered in the order of the dump file. Setting the number to 0
+	 * (default) disables this mode, so that the file is read as a stream.
+	 * Memory mapping is only used for uncompressed files; for other files,
+	 * this setting is ignored.
+	 *
+	 * @param splitCount
+	 *            the number of ranges to split the file into, or 0 to read the
+	 *            file as a stream
+	 */
+	public void setSplitCount(int splitCount) {
+		if (splitCount < 0) {
+			throw new IllegalArgumentException(
+					"The number of ranges must not be negative.");
+		}
+		this.splitCount = splitCount;
+	}
+
+	/**
+	 * Returns the number of byte ranges that the file is split into for
+	 * memory-mapped processing.
+	 *
+	 * @see #setSplitCount(int)
+	 * @return number of ranges, or 0 if the file is read as a stream
+	 */
+	public int getSplitCount() {
+		return this.splitCount;
+	}
+
+	/**
+	 * Sets the byte offset at which memory-mapped processing should start.
+	 * This can be used to resume processing at a known position, e.g., the
+	 * offset of the last line that was processed before an interruption. If
+	 * the offset is not the start of a line, processing starts with the next
+	 * line. The offset is only used if memory-mapped processing is enabled.
+	 *
+	 * @see #setSplitCount(int)
+	 * @param startOffset
+	 *            the offset of the first byte to process
+	 */
+	public void setStartOffset(long startOffset) {
+		if (startOffset < 0) {
+			throw new IllegalArgumentException(
+					"The start offset must not be negative.");
+		}
+		this.startOffset = startOffset;
+	}
+
+	/**
+	 * Returns the byte offset at which memory-mapped processing starts.
+	 *
+	 * @see #setStartOffset(long)
+	 * @return start offset
+	 */
+	public long getStartOffset() {
+		return this.startOffset;
+	}
+
+	/**
+	 * Returns true if this file should be processed by memory-mapping it, as
+	 * configured by {@link #setSplitCount(int)}. This is only possible for
+	 * uncompressed files.
+	 *
+	 * @return true if memory-mapped processing should be used
+	 */
+	public boolean useMemoryMapping() {
+		return this.splitCount > 0
+				&& this.compressionType == CompressionType.NONE
+				&& isAvailable();
 	}
 
 	@Override
@@ -228,7 +396,8 @@ public class MwLocalDumpFile implements MwDumpFile {
 	 */
 	private static DumpContentType guessDumpContentType(String fileName) {
 		String lcDumpName = fileName.toLowerCase();
-		if (lcDumpName.contains(".json.gz")) {
+		if (lcDumpName.contains(".json.gz") || lcDumpName.contains(".json.bz2")
+				|| lcDumpName.endsWith(".json")) {
 			return DumpContentType.JSON;
 		} else if (lcDumpName.contains(".sql.gz")) {
 			return DumpContentType.SITES;
@@ -247,6 +416,29 @@ public class MwLocalDumpFile implements MwDumpFile {
 		}
 	}
 
+	/**
+	 * Guess the compression type of the given dump from its filename.
+	 *
+	 * @param fileName
+	 * @param dumpContentType
+	 *            the content type of the dump
+	 * @return compression type, defaulting to the usual compression of the
+	 *         content type
+	 */
+	private static CompressionType guessCompressionType(String fileName,
+			DumpContentType dumpContentType) {
+		String lcDumpName = fileName.toLowerCase();
+		if (lcDumpName.endsWith(".json")) {
+			return CompressionType.NONE;
+		} else if (lcDumpName.endsWith(".bz2")) {
+			return CompressionType.BZ2;
+		} else if (lcDumpName.endsWith(".gz")) {
+			return CompressionType.GZIP;
+		} else {
+			return MwLocalDumpFile.COMPRESSION_TYPE.get(dumpContentType);
+		}
+	}
+
 	/**
 	 * Guess the date of the dump from the given dump file name.
 	 *
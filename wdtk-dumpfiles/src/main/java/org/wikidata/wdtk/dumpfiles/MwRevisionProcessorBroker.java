@@ -25,7 +25,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.wikidata.wdtk.storage.datastructures.BitVector;
-import org.wikidata.wdtk.storage.datastructures.BitVectorImpl;
+import org.wikidata.wdtk.storage.datastructures.CompressedBitVectorImpl;
 
 /**
  * This MwRevisionPRocessor distributes revisions to subscribers that register
@@ -86,9 +86,9 @@ public class MwRevisionProcessorBroker implements MwRevisionProcessor {
 		this.revisionSubscriptions = new ArrayList<MwRevisionProcessorBroker.RevisionSubscription>();
 		this.mostCurrentRevision = null;
 		this.currentPageId = -1;
-		// TODO these initial sizes need to be configurable
-		encounteredPages = new BitVectorImpl(20000000);
-		encounteredRevisions = new BitVectorImpl(200000000);
+		// Compressed vectors only use memory for ranges of ids that occur:
+		encounteredPages = new CompressedBitVectorImpl();
+		encounteredRevisions = new CompressedBitVectorImpl();
 	}
 
 	/**
@@ -164,6 +164,18 @@ public class MwRevisionProcessorBroker implements MwRevisionProcessor {
 		notifyMwRevisionProcessors(mwRevision, false);
 	}
 
+	/**
+	 * Notifies subscribers of the most current revision of the page that is
+	 * being processed, if any. This must only be called when all revisions of
+	 * this page have been processed, e.g., before the first revision of the
+	 * next page. It is used to make sure that subscribers have seen all
+	 * revisions of a page when a checkpoint is recorded.
+	 */
+	void flushMostCurrentRevision() {
+		notifyMwRevisionProcessors(this.mostCurrentRevision, true);
+		this.mostCurrentRevision = null;
+	}
+
 	/**
 	 * Notifies all interested subscribers of the given revision.
 	 * 
@@ -0,0 +1,90 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+/**
+ * Prefilter that skips all entities up to and including a given entity, and
+ * accepts the following entities if they are accepted by another prefilter.
+ * This is used to resume the processing of a dump after a checkpoint.
+ * Consecutive occurrences of the last entity (as in dumps that contain
+ * several revisions of each entity) are all skipped.
+ * <p>
+ * The result depends on the order of calls, so the prefilter must be called
+ * for all entities in the order of the dump, and from one thread only.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+class ResumingPrefilter implements EntityPrefilter {
+
+	final String lastEntityId;
+	final EntityPrefilter prefilter;
+
+	/**
+	 * True if the last entity has been found.
+	 */
+	boolean lastEntityFound = false;
+	/**
+	 * True if all entities following the last entity have been found.
+	 */
+	boolean resumed = false;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param lastEntityId
+	 *            the id of the last entity to skip
+	 * @param prefilter
+	 *            the prefilter to apply to later entities, or null to accept
+	 *            all of them
+	 */
+	ResumingPrefilter(String lastEntityId, EntityPrefilter prefilter) {
+		this.lastEntityId = lastEntityId;
+		this.prefilter = prefilter;
+	}
+
+	@Override
+	public boolean includeEntity(String entityType, String entityId) {
+		if (!this.resumed) {
+			if (this.lastEntityId.equals(entityId)) {
+				this.lastEntityFound = true;
+				return false;
+			} else if (!this.lastEntityFound) {
+				return false;
+			}
+			this.resumed = true;
+		}
+		return this.prefilter == null
+				|| this.prefilter.includeEntity(entityType, entityId);
+	}
+
+	/**
+	 * Returns true if the last entity has been found, so that later entities
+	 * are processed again.
+	 *
+	 * @return true if later entities are no longer skipped
+	 */
+	boolean isLastEntityFound() {
+		return this.lastEntityFound;
+	}
+
+}
@@ -21,22 +21,40 @@ package org.wikidata.wdtk.dumpfiles;
  */
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.wikidata.wdtk.datamodel.interfaces.DocumentDataFilter;
 import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
 import org.wikidata.wdtk.datamodel.interfaces.ItemIdValue;
 import org.wikidata.wdtk.datamodel.json.jackson.JacksonItemDocument;
 import org.wikidata.wdtk.datamodel.json.jackson.JacksonPropertyDocument;
+import org.wikidata.wdtk.datamodel.json.jackson.JacksonTermedStatementDocument;
+import org.wikidata.wdtk.util.DaemonThreadFactory;
 
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 
 /**
  * A revision processor that processes Wikibase entity content from a dump file.
  * Revisions are parsed to obtain EntityDocument objects.
+ * <p>
+ * Parsing the JSON content of revisions can be done by a pool of worker
+ * threads. Revisions are then handed to the workers as they arrive, while the
+ * resulting documents are still passed on to the entity document processor
+ * in the thread that calls this processor, and in the order of the revisions.
+ * The number of revisions that are waiting to be parsed is bounded, so that
+ * the dump is not read far ahead of the entity document processor.
  *
  * @author Markus Kroetzsch
  *
@@ -46,16 +64,49 @@ public class WikibaseRevisionProcessor implements MwRevisionProcessor {
 	static final Logger logger = LoggerFactory
 			.getLogger(WikibaseRevisionProcessor.class);
 
+	/**
+	 * Number of revisions per worker thread that may wait to be parsed or
+	 * delivered.
+	 */
+	static final int PENDING_REVISIONS_PER_THREAD = 16;
+
 	/**
 	 * The IRI of the site that this data comes from. This cannot be extracted
 	 * from individual revisions.
 	 */
 	final String siteIri;
 	final ObjectMapper mapper = new ObjectMapper();
+	final ObjectReader itemReader;
+	final ObjectReader propertyReader;
 	// JsonConverter jsonConverter;
 	// final DataObjectFactory dataObjectFactory;
 	final EntityDocumentProcessor entityDocumentProcessor;
 
+	/**
+	 * Number of threads used to parse revisions.
+	 */
+	final int parallelism;
+	/**
+	 * Threads that parse revisions, or null if they have not been started.
+	 */
+	ExecutorService workerPool = null;
+	/**
+	 * True if {@link #workerPool} was created by this object and should be
+	 * shut down when processing is finished.
+	 */
+	boolean ownsWorkerPool = false;
+	/**
+	 * Results of revisions that are being parsed, in the order of the
+	 * revisions.
+	 */
+	final Deque<Future<JacksonTermedStatementDocument>> pendingDocuments = new ArrayDeque<>();
+
+	/**
+	 * Prefilter that decides which entities should be parsed, or null if all
+	 * entities should be parsed.
+	 */
+	EntityPrefilter prefilter = null;
+
 	/**
 	 * Constructor.
 	 *
@@ -67,9 +118,90 @@ public class WikibaseRevisionProcessor implements MwRevisionProcessor {
 	 */
 	public WikibaseRevisionProcessor(
 			EntityDocumentProcessor entityDocumentProcessor, String siteIri) {
+		this(entityDocumentProcessor, siteIri, null);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param entityDocumentProcessor
+	 *            the object that entity documents will be forwarded to
+	 * @param siteIri
+	 *            the IRI of the site that the data comes from, as used in
+	 *            {@link ItemIdValue#getSiteIri()}
+	 * @param filter
+	 *            filter that specifies which terms, statements, and site
+	 *            links should be deserialized, or null to deserialize all data
+	 */
+	public WikibaseRevisionProcessor(
+			EntityDocumentProcessor entityDocumentProcessor, String siteIri,
+			DocumentDataFilter filter) {
+		this(entityDocumentProcessor, siteIri, filter, 1);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param entityDocumentProcessor
+	 *            the object that entity documents will be forwarded to
+	 * @param siteIri
+	 *            the IRI of the site that the data comes from, as used in
+	 *            {@link ItemIdValue#getSiteIri()}
+	 * @param filter
+	 *            filter that specifies which terms, statements, and site
+	 *            links should be deserialized, or null to deserialize all data
+	 * @param parallelism
+	 *            the number of threads to use for parsing revisions; if this
+	 *            is 1, revisions are parsed in the current thread
+	 */
+	public WikibaseRevisionProcessor(
+			EntityDocumentProcessor entityDocumentProcessor, String siteIri,
+			DocumentDataFilter filter, int parallelism) {
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException(
+					"The number of threads must be a positive number.");
+		}
 		// this.dataObjectFactory = new DataObjectFactoryImpl();
 		this.entityDocumentProcessor = entityDocumentProcessor;
 		this.siteIri = siteIri;
+		this.parallelism = parallelism;
+		ObjectReader reader = this.mapper.reader();
+		if (filter != null) {
+			reader = reader.withAttribute(
+					JacksonTermedStatementDocument.FILTER_ATTRIBUTE, filter);
+		}
+		this.itemReader = reader.withType(JacksonItemDocument.class);
+		this.propertyReader = reader.withType(JacksonPropertyDocument.class);
+	}
+
+	/**
+	 * Sets a prefilter that is used to decide which entities should be parsed
+	 * at all, based on the title of their page (see
+	 * {@link #getEntityId(MwRevision)}).
+	 *
+	 * @param prefilter
+	 *            the prefilter, or null to parse all entities
+	 */
+	public void setEntityPrefilter(EntityPrefilter prefilter) {
+		this.prefilter = prefilter;
+	}
+
+	/**
+	 * Sets the pool of threads that revisions are parsed by if the
+	 * parallelism is larger than 1. The pool can be shared by several
+	 * processors, so that the number of threads does not grow with the
+	 * number of processors. It is not shut down by this object. If no pool
+	 * is set, a pool of its own is created when needed.
+	 *
+	 * @param workerPool
+	 *            the pool of threads to use, or null to create a new pool
+	 */
+	public void setWorkerPool(ExecutorService workerPool) {
+		if (this.ownsWorkerPool) {
+			this.workerPool.shutdownNow();
+		}
+		this.workerPool = workerPool;
+		this.ownsWorkerPool = false;
 	}
 
 	@Override
@@ -92,22 +224,13 @@ public class WikibaseRevisionProcessor implements MwRevisionProcessor {
 	}
 
 	public void processItemRevision(MwRevision mwRevision) {
-		try {
-			JacksonItemDocument document = mapper.readValue(
-					mwRevision.getText(), JacksonItemDocument.class);
-			document.setSiteIri(this.siteIri);
-			this.entityDocumentProcessor.processItemDocument(document);
-		} catch (JsonParseException e1) {
-			logger.error("Failed to parse JSON for item "
-					+ mwRevision.getPrefixedTitle() + ": " + e1.getMessage());
-		} catch (JsonMappingException e1) {
-			logger.error("Failed to map JSON for item "
-					+ mwRevision.getPrefixedTitle() + ": " + e1.getMessage());
-			e1.printStackTrace();
-			System.out.print(mwRevision.getText());
-		} catch (IOException e1) {
-			logger.error("Failed to read revision: " + e1.getMessage());
+		if (this.prefilter != null
+				&& !this.prefilter.includeEntity(
+						JacksonTermedStatementDocument.JSON_TYPE_ITEM,
+						getEntityId(mwRevision))) {
+			return;
 		}
+		processDocument(this.itemReader, mwRevision, "item");
 
 		// try {
 		// JSONObject jsonObject = new JSONObject(mwRevision.getText());
@@ -123,22 +246,13 @@ public class WikibaseRevisionProcessor implements MwRevisionProcessor {
 	}
 
 	public void processPropertyRevision(MwRevision mwRevision) {
-		try {
-			JacksonPropertyDocument document = mapper.readValue(
-					mwRevision.getText(), JacksonPropertyDocument.class);
-			document.setSiteIri(this.siteIri);
-			this.entityDocumentProcessor.processPropertyDocument(document);
-		} catch (JsonParseException e1) {
-			logger.error("Failed to parse JSON for property "
-					+ mwRevision.getPrefixedTitle() + ": " + e1.getMessage());
-		} catch (JsonMappingException e1) {
-			logger.error("Failed to map JSON for property "
-					+ mwRevision.getPrefixedTitle() + ": " + e1.getMessage());
-			e1.printStackTrace();
-			System.out.print(mwRevision.getText());
-		} catch (IOException e1) {
-			logger.error("Failed to read revision: " + e1.getMessage());
+		if (this.prefilter != null
+				&& !this.prefilter.includeEntity(
+						JacksonTermedStatementDocument.JSON_TYPE_PROPERTY,
+						getEntityId(mwRevision))) {
+			return;
 		}
+		processDocument(this.propertyReader, mwRevision, "property");
 
 		// try {
 		// JSONObject jsonObject = new JSONObject(mwRevision.getText());
@@ -155,9 +269,161 @@ public class WikibaseRevisionProcessor implements MwRevisionProcessor {
 
 	}
 
+	/**
+	 * Returns the id of the entity of the given revision. This is the title
+	 * of its page without the namespace prefix, which is "Property:" for
+	 * properties and may be "Item:" for items, depending on the configuration
+	 * of the site. The namespace id of the revision is not used, since the
+	 * main namespace is not the same on all sites.
+	 *
+	 * @param mwRevision
+	 *            the revision of an entity page
+	 * @return the entity id
+	 */
+	static String getEntityId(MwRevision mwRevision) {
+		String title = mwRevision.getPrefixedTitle();
+		return title.substring(title.indexOf(':') + 1);
+	}
+
+	/**
+	 * Waits until all revisions that have been given to this processor have
+	 * been parsed, and passes the resulting documents on to the entity
+	 * document processor.
+	 */
+	public void flush() {
+		while (!this.pendingDocuments.isEmpty()) {
+			deliverDocument(getParsedDocument(this.pendingDocuments.poll()));
+		}
+	}
+
 	@Override
 	public void finishRevisionProcessing() {
-		// nothing to do
+		try {
+			flush();
+		} finally {
+			this.pendingDocuments.clear();
+			if (this.ownsWorkerPool) {
+				this.workerPool.shutdownNow();
+				this.workerPool = null;
+				this.ownsWorkerPool = false;
+			}
+		}
+	}
+
+	/**
+	 * Parses the content of the given revision and passes the result on to
+	 * the entity document processor. If several threads are used, the
+	 * revision is only queued for parsing, and the documents of earlier
+	 * revisions are passed on when they are ready.
+	 *
+	 * @param reader
+	 *            the object reader for the expected type of document
+	 * @param mwRevision
+	 *            the revision to process
+	 * @param entityTypeName
+	 *            name of the type of entity, used in error messages
+	 */
+	void processDocument(final ObjectReader reader, MwRevision mwRevision,
+			final String entityTypeName) {
+		if (this.parallelism == 1) {
+			deliverDocument(parseDocument(reader, mwRevision.getText(),
+					mwRevision.getPrefixedTitle(), entityTypeName));
+			return;
+		}
+
+		if (this.workerPool == null) {
+			this.workerPool = Executors.newFixedThreadPool(this.parallelism,
+					new DaemonThreadFactory());
+			this.ownsWorkerPool = true;
+		}
+		// The revision object is reused by the caller, so keep its data:
+		final String text = mwRevision.getText();
+		final String prefixedTitle = mwRevision.getPrefixedTitle();
+		this.pendingDocuments.add(this.workerPool
+				.submit(new Callable<JacksonTermedStatementDocument>() {
+					@Override
+					public JacksonTermedStatementDocument call() {
+						return parseDocument(reader, text, prefixedTitle,
+								entityTypeName);
+					}
+				}));
+
+		while (!this.pendingDocuments.isEmpty()
+				&& (this.pendingDocuments.size() > PENDING_REVISIONS_PER_THREAD
+						* this.parallelism || this.pendingDocuments.peek()
+						.isDone())) {
+			deliverDocument(getParsedDocument(this.pendingDocuments.poll()));
+		}
+	}
+
+	/**
+	 * Parses the JSON content of a revision. Errors are logged, and null is
+	 * returned in this case.
+	 *
+	 * @param reader
+	 *            the object reader for the expected type of document
+	 * @param text
+	 *            the text of the revision
+	 * @param prefixedTitle
+	 *            the title of the page of the revision, used in error
+	 *            messages
+	 * @param entityTypeName
+	 *            name of the type of entity, used in error messages
+	 * @return the document or null if it could not be parsed
+	 */
+	JacksonTermedStatementDocument parseDocument(ObjectReader reader,
+			String text, String prefixedTitle, String entityTypeName) {
+		try {
+			JacksonTermedStatementDocument document = reader.readValue(text);
+			document.setSiteIri(this.siteIri);
+			return document;
+		} catch (JsonParseException e1) {
+			logger.error("Failed to parse JSON for " + entityTypeName + " "
+					+ prefixedTitle + ": " + e1.getMessage());
+		} catch (JsonMappingException e1) {
+			logger.error("Failed to map JSON for " + entityTypeName + " "
+					+ prefixedTitle + ": " + e1.getMessage(), e1);
+		} catch (IOException e1) {
+			logger.error("Failed to read revision: " + e1.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * Passes the given document on to the entity document processor.
+	 *
+	 * @param document
+	 *            the document, or null if nothing should be done
+	 */
+	void deliverDocument(JacksonTermedStatementDocument document) {
+		if (document instanceof JacksonItemDocument) {
+			this.entityDocumentProcessor
+					.processItemDocument((JacksonItemDocument) document);
+		} else if (document instanceof JacksonPropertyDocument) {
+			this.entityDocumentProcessor
+					.processPropertyDocument((JacksonPropertyDocument) document);
+		}
+	}
+
+	/**
+	 * Waits for the result of a parsing task.
+	 *
+	 * @param future
+	 *            the pending result
+	 * @return the document or null if it could not be parsed
+	 */
+	JacksonTermedStatementDocument getParsedDocument(
+			Future<JacksonTermedStatementDocument> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while parsing revisions",
+					e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Cannot parse revision: "
+					+ e.getCause().getMessage(), e.getCause());
+		}
 	}
 
 }
@@ -0,0 +1,94 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wikidata.wdtk.testing.MockDirectoryManager;
+import org.wikidata.wdtk.util.DirectoryManagerFactory;
+
+public class DumpProcessingCheckpointTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Before
+	public void setUp() throws Exception {
+		DirectoryManagerFactory
+				.setDirectoryManagerClass(MockDirectoryManager.class);
+	}
+
+	@Test
+	public void testStoreAndLoad() throws IOException {
+		MwLocalDumpFile dumpFile = new MwLocalDumpFile(
+				"/wikidatawiki-20150512-all.json.bz2");
+		DumpProcessingCheckpoint checkpoint = new DumpProcessingCheckpoint(
+				dumpFile, "Q42", 1234, 5678);
+		Path file = this.folder.getRoot().toPath().resolve("checkpoint");
+		checkpoint.store(file);
+		checkpoint.store(file);
+
+		DumpProcessingCheckpoint loaded = DumpProcessingCheckpoint.load(file);
+		assertEquals("Q42", loaded.getLastEntityId());
+		assertEquals(1234, loaded.getEntityCount());
+		assertEquals(5678, loaded.getBlockOffset());
+		assertTrue(loaded.isCheckpointOf(dumpFile));
+		assertEquals(checkpoint.toString(), loaded.toString());
+	}
+
+	@Test
+	public void testOtherDumpFile() throws IOException {
+		DumpProcessingCheckpoint checkpoint = new DumpProcessingCheckpoint(
+				new MwLocalDumpFile("/wikidatawiki-20150512-all.json.bz2"),
+				"Q42", 1, -1);
+		assertFalse(checkpoint.isCheckpointOf(new MwLocalDumpFile(
+				"/wikidatawiki-20150519-all.json.bz2")));
+		assertFalse(checkpoint.isCheckpointOf(new MwLocalDumpFile(
+				"/wikidatawiki-20150512-all.xml.bz2")));
+	}
+
+	@Test
+	public void testMissingFile() throws IOException {
+		assertNull(DumpProcessingCheckpoint.load(this.folder.getRoot()
+				.toPath().resolve("no-checkpoint")));
+	}
+
+	@Test(expected = IOException.class)
+	public void testInvalidFile() throws IOException {
+		Path file = this.folder.newFile().toPath();
+		Files.write(file, "lastEntityId=Q42\n".getBytes(StandardCharsets.UTF_8));
+		DumpProcessingCheckpoint.load(file);
+	}
+
+}
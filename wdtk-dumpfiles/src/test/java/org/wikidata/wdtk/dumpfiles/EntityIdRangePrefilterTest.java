@@ -0,0 +1,75 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class EntityIdRangePrefilterTest {
+
+	@Test
+	public void testTypeAndRange() {
+		EntityPrefilter prefilter = new EntityIdRangePrefilter("item", 10, 20);
+		assertTrue(prefilter.includeEntity("item", "Q10"));
+		assertTrue(prefilter.includeEntity("item", "Q20"));
+		assertFalse(prefilter.includeEntity("item", "Q9"));
+		assertFalse(prefilter.includeEntity("item", "Q21"));
+		assertFalse(prefilter.includeEntity("property", "P15"));
+		assertFalse(prefilter.includeEntity(null, "Q15"));
+		assertFalse(prefilter.includeEntity("item", null));
+	}
+
+	@Test
+	public void testAnyType() {
+		EntityPrefilter prefilter = new EntityIdRangePrefilter(null, 0,
+				Long.MAX_VALUE);
+		assertTrue(prefilter.includeEntity("item", "Q1"));
+		assertTrue(prefilter.includeEntity("property", "P1"));
+	}
+
+	@Test
+	public void testShards() {
+		EntityPrefilter prefilter = new EntityIdRangePrefilter(null, 0,
+				Long.MAX_VALUE, 3, 1);
+		assertTrue(prefilter.includeEntity("item", "Q1"));
+		assertTrue(prefilter.includeEntity("item", "Q4"));
+		assertFalse(prefilter.includeEntity("item", "Q5"));
+	}
+
+	@Test
+	public void testNumericId() {
+		assertEquals(42, EntityIdRangePrefilter.getNumericId("Q42"));
+		assertEquals(-1, EntityIdRangePrefilter.getNumericId("Q"));
+		assertEquals(-1, EntityIdRangePrefilter.getNumericId("Q4x"));
+		assertEquals(-1,
+				EntityIdRangePrefilter.getNumericId("Q99999999999999999999"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidShard() {
+		new EntityIdRangePrefilter(null, 0, 10, 2, 2);
+	}
+
+}
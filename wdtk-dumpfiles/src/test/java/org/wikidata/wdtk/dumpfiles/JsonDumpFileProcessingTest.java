@@ -21,24 +21,48 @@ package org.wikidata.wdtk.dumpfiles;
  */
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
 import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
 import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
 import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
+import org.wikidata.wdtk.datamodel.interfaces.StatementDocument;
+import org.wikidata.wdtk.datamodel.interfaces.StatementGroup;
+import org.wikidata.wdtk.datamodel.json.jackson.JacksonTermedStatementDocument;
 import org.wikidata.wdtk.dumpfiles.wmf.WmfDumpFile;
 import org.wikidata.wdtk.testing.MockDirectoryManager;
 import org.wikidata.wdtk.testing.MockStringContentFactory;
+import org.wikidata.wdtk.util.DirectoryManagerFactory;
+import org.wikidata.wdtk.util.DirectoryManagerImpl;
 import org.wikidata.wdtk.util.Timer;
 
 public class JsonDumpFileProcessingTest {
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	/**
 	 * Test class that delays processing to provoke a timeout.
 	 *
@@ -73,6 +97,38 @@ public class JsonDumpFileProcessingTest {
 
 	}
 
+	/**
+	 * Test class that records the ids of all documents in the order in which
+	 * they are processed.
+	 *
+	 * @author Markus Kroetzsch
+	 *
+	 */
+	private class IdRecordingProcessor implements EntityDocumentProcessor {
+
+		final List<String> ids = new ArrayList<>();
+		final Set<String> properties = new HashSet<>();
+
+		@Override
+		public void processItemDocument(ItemDocument itemDocument) {
+			ids.add(itemDocument.getEntityId().getId());
+			recordProperties(itemDocument);
+		}
+
+		@Override
+		public void processPropertyDocument(PropertyDocument propertyDocument) {
+			ids.add(propertyDocument.getEntityId().getId());
+			recordProperties(propertyDocument);
+		}
+
+		void recordProperties(StatementDocument statementDocument) {
+			for (StatementGroup sg : statementDocument.getStatementGroups()) {
+				properties.add(sg.getProperty().getId());
+			}
+		}
+
+	}
+
 	@Test
 	public void testRegularJsonProcessing() throws IOException {
 		Path dmPath = Paths.get(System.getProperty("user.dir"));
@@ -160,6 +216,461 @@ public class JsonDumpFileProcessingTest {
 		assertEquals(101, timer.entityCount);
 	}
 
+	@Test
+	public void testParallelJsonProcessing() throws IOException {
+		Path dmPath = Paths.get(System.getProperty("user.dir"));
+		MockDirectoryManager dm = new MockDirectoryManager(dmPath, true, true);
+		setLocalJsonDumpFile("mock-dump-for-testing.json", "20150223", dm);
+
+		DumpProcessingController dpc = new DumpProcessingController(
+				"wikidatawiki");
+		dpc.downloadDirectoryManager = dm;
+		dpc.setOfflineMode(true);
+		dpc.setParallelism(4);
+
+		EntityTimerProcessor timer = new EntityTimerProcessor(0);
+		dpc.registerEntityDocumentProcessor(timer, null, true);
+
+		timer.open();
+		dpc.processMostRecentJsonDump();
+		timer.close();
+
+		assertEquals(3, timer.entityCount);
+	}
+
+	@Test
+	public void testParallelBuggyJsonProcessing() throws IOException {
+		Path dmPath = Paths.get(System.getProperty("user.dir"));
+		MockDirectoryManager dm = new MockDirectoryManager(dmPath, true, true);
+		setLocalJsonDumpFile("mock-dump-with-bugs.json", "20150223", dm);
+
+		DumpProcessingController dpc = new DumpProcessingController(
+				"wikidatawiki");
+		dpc.downloadDirectoryManager = dm;
+		dpc.setOfflineMode(true);
+		dpc.setParallelism(2);
+
+		EntityTimerProcessor timer = new EntityTimerProcessor(0);
+		dpc.registerEntityDocumentProcessor(timer, null, true);
+
+		timer.open();
+		dpc.processMostRecentJsonDump();
+		timer.close();
+
+		assertTrue(timer.entityCount >= 3);
+	}
+
+	@Test
+	public void testParallelJsonProcessingPreservesOrder() throws IOException {
+		Path dmPath = Paths.get(System.getProperty("user.dir"));
+		MockDirectoryManager dm = new MockDirectoryManager(dmPath, true, true);
+		setLocalJsonDumpFile("mock-dump-for-long-testing.json", "20150223", dm);
+
+		DumpProcessingController dpc = new DumpProcessingController(
+				"wikidatawiki");
+		dpc.downloadDirectoryManager = dm;
+		dpc.setOfflineMode(true);
+
+		IdRecordingProcessor sequential = new IdRecordingProcessor();
+		dpc.registerEntityDocumentProcessor(sequential, null, true);
+		dpc.processMostRecentJsonDump();
+
+		dpc = new DumpProcessingController("wikidatawiki");
+		dpc.downloadDirectoryManager = dm;
+		dpc.setOfflineMode(true);
+		dpc.setParallelism(3);
+
+		IdRecordingProcessor parallel = new IdRecordingProcessor();
+		dpc.registerEntityDocumentProcessor(parallel, null, true);
+		dpc.processMostRecentJsonDump();
+
+		assertEquals(101, parallel.ids.size());
+		assertEquals(sequential.ids, parallel.ids);
+	}
+
+	@Test
+	public void testFilteredJsonProcessing() throws IOException {
+		Path dmPath = Paths.get(System.getProperty("user.dir"));
+		MockDirectoryManager dm = new MockDirectoryManager(dmPath, true, true);
+		setLocalJsonDumpFile("mock-dump-for-long-testing.json", "20150223", dm);
+
+		DumpProcessingController dpc = new DumpProcessingController(
+				"wikidatawiki");
+		dpc.downloadDirectoryManager = dm;
+		dpc.setOfflineMode(true);
+
+		IdRecordingProcessor unfiltered = new IdRecordingProcessor();
+		dpc.registerEntityDocumentProcessor(unfiltered, null, true);
+		dpc.processMostRecentJsonDump();
+
+		dpc = new DumpProcessingController("wikidatawiki");
+		dpc.downloadDirectoryManager = dm;
+		dpc.setOfflineMode(true);
+		dpc.setPropertyFilter(Collections.singleton(Datamodel
+				.makeWikidataPropertyIdValue("P279")));
+		dpc.setLanguageFilter(Collections.<String> emptySet());
+
+		IdRecordingProcessor filtered = new IdRecordingProcessor();
+		dpc.registerEntityDocumentProcessor(filtered, null, true);
+		dpc.processMostRecentJsonDump();
+
+		assertEquals(Collections.singleton("P31"), unfiltered.properties);
+		assertEquals(unfiltered.ids, filtered.ids);
+		assertTrue(filtered.properties.isEmpty());
+	}
+
+	@Test
+	public void testPrefilteredJsonProcessing() throws IOException {
+		Path dmPath = Paths.get(System.getProperty("user.dir"));
+		MockDirectoryManager dm = new MockDirectoryManager(dmPath, true, true);
+		setLocalJsonDumpFile("mock-dump-for-long-testing.json", "20150223", dm);
+
+		DumpProcessingController dpc = new DumpProcessingController(
+				"wikidatawiki");
+		dpc.downloadDirectoryManager = dm;
+		dpc.setOfflineMode(true);
+
+		IdRecordingProcessor unfiltered = new IdRecordingProcessor();
+		dpc.registerEntityDocumentProcessor(unfiltered, null, true);
+		dpc.processMostRecentJsonDump();
+
+		List<String> expected = new ArrayList<>();
+		for (String id : unfiltered.ids) {
+			int numericId = Integer.parseInt(id.substring(1));
+			if (id.startsWith("Q") && numericId >= 50 && numericId <= 150) {
+				expected.add(id);
+			}
+		}
+
+		for (int parallelism = 1; parallelism <= 2; parallelism++) {
+			dpc = new DumpProcessingController("wikidatawiki");
+			dpc.downloadDirectoryManager = dm;
+			dpc.setOfflineMode(true);
+			dpc.setParallelism(parallelism);
+			dpc.setEntityPrefilter(new EntityIdRangePrefilter(
+					JacksonTermedStatementDocument.JSON_TYPE_ITEM, 50, 150));
+
+			IdRecordingProcessor filtered = new IdRecordingProcessor();
+			dpc.registerEntityDocumentProcessor(filtered, null, true);
+			dpc.processMostRecentJsonDump();
+
+			assertEquals(expected, filtered.ids);
+		}
+	}
+
+	@Test
+	public void testConcurrentProcessors() throws IOException {
+		Path dmPath = Paths.get(System.getProperty("user.dir"));
+		MockDirectoryManager dm = new MockDirectoryManager(dmPath, true, true);
+		setLocalJsonDumpFile("mock-dump-for-long-testing.json", "20150223", dm);
+
+		DumpProcessingController dpc = new DumpProcessingController(
+				"wikidatawiki");
+		dpc.downloadDirectoryManager = dm;
+		dpc.setOfflineMode(true);
+		dpc.setConcurrentEntityDocumentProcessors(true);
+
+		EntityTimerProcessor timer = new EntityTimerProcessor(0);
+		IdRecordingProcessor recorder = new IdRecordingProcessor();
+		dpc.registerEntityDocumentProcessor(timer, null, true);
+		dpc.registerEntityDocumentProcessor(recorder, null, true);
+
+		timer.open();
+		dpc.processMostRecentJsonDump();
+		timer.close();
+
+		assertEquals(101, timer.entityCount);
+		assertEquals(101, recorder.ids.size());
+		assertEquals("Q1", recorder.ids.get(0));
+	}
+
+	@Test(expected = EntityTimerProcessor.TimeoutException.class)
+	public void testConcurrentProcessorsTimeout() throws IOException {
+		Path dmPath = Paths.get(System.getProperty("user.dir"));
+		MockDirectoryManager dm = new MockDirectoryManager(dmPath, true, true);
+		setLocalJsonDumpFile("mock-dump-for-long-testing.json", "20150223", dm);
+
+		DumpProcessingController dpc = new DumpProcessingController(
+				"wikidatawiki");
+		dpc.downloadDirectoryManager = dm;
+		dpc.setOfflineMode(true);
+		dpc.setConcurrentEntityDocumentProcessors(true);
+
+		EntityTimerProcessor timer = new EntityTimerProcessor(1);
+		timer.setReportInterval(1);
+		dpc.registerEntityDocumentProcessor(timer, null, true);
+		dpc.registerEntityDocumentProcessor(new SlowDocumentProcessor(), null,
+				true);
+
+		timer.open();
+		dpc.processMostRecentJsonDump();
+		timer.close();
+	}
+
+	@Test
+	public void testMemoryMappedJsonProcessing() throws IOException {
+		DirectoryManagerFactory
+				.setDirectoryManagerClass(DirectoryManagerImpl.class);
+		Path dumpFilePath = this.folder.getRoot().toPath()
+				.resolve("mock-dump-20150223.json");
+		try (InputStream in = JsonDumpFileProcessingTest.class
+				.getResourceAsStream("/mock-dump-for-long-testing.json")) {
+			Files.copy(in, dumpFilePath);
+		}
+
+		MwLocalDumpFile dumpFile = new MwLocalDumpFile(dumpFilePath.toString());
+		DumpProcessingController dpc = new DumpProcessingController(
+				"wikidatawiki");
+		IdRecordingProcessor streamed = new IdRecordingProcessor();
+		dpc.registerEntityDocumentProcessor(streamed, null, true);
+		dpc.processDump(dumpFile);
+		assertEquals(101, streamed.ids.size());
+
+		dumpFile.setSplitCount(3);
+		dpc = new DumpProcessingController("wikidatawiki");
+		IdRecordingProcessor mapped = new IdRecordingProcessor();
+		dpc.registerEntityDocumentProcessor(mapped, null, true);
+		dpc.processDump(dumpFile);
+
+		List<String> expected = new ArrayList<>(streamed.ids);
+		Collections.sort(expected);
+		Collections.sort(mapped.ids);
+		assertEquals(expected, mapped.ids);
+
+		// Resume with the entity in the 11th line of the file:
+		List<String> lines = Files.readAllLines(dumpFilePath,
+				StandardCharsets.UTF_8);
+		long offset = 0;
+		for (int i = 0; i < 10; i++) {
+			offset += lines.get(i).getBytes(StandardCharsets.UTF_8).length + 1;
+		}
+		dumpFile.setStartOffset(offset);
+		dpc = new DumpProcessingController("wikidatawiki");
+		IdRecordingProcessor resumed = new IdRecordingProcessor();
+		dpc.registerEntityDocumentProcessor(resumed, null, true);
+		dpc.processDump(dumpFile);
+
+		expected = new ArrayList<>(streamed.ids.subList(9,
+				streamed.ids.size()));
+		Collections.sort(expected);
+		Collections.sort(resumed.ids);
+		assertEquals(expected, resumed.ids);
+	}
+
+	/**
+	 * Processor that fails after a given number of entities, and that
+	 * records the checkpoints it is notified of.
+	 *
+	 * @author Markus Kroetzsch
+	 *
+	 */
+	private class FailingCheckpointProcessor extends IdRecordingProcessor
+			implements CheckpointListener {
+
+		final int maxEntities;
+		final List<String> checkpoints = new ArrayList<>();
+
+		FailingCheckpointProcessor(int maxEntities) {
+			this.maxEntities = maxEntities;
+		}
+
+		@Override
+		public void processItemDocument(ItemDocument itemDocument) {
+			checkCrash();
+			super.processItemDocument(itemDocument);
+		}
+
+		@Override
+		public void processPropertyDocument(PropertyDocument propertyDocument) {
+			checkCrash();
+			super.processPropertyDocument(propertyDocument);
+		}
+
+		void checkCrash() {
+			if (ids.size() == this.maxEntities) {
+				throw new IllegalStateException("Simulated crash");
+			}
+		}
+
+		@Override
+		public void checkpointReached(DumpProcessingCheckpoint checkpoint) {
+			assertEquals(checkpoint.getEntityCount(), ids.size());
+			checkpoints.add(checkpoint.getLastEntityId());
+		}
+	}
+
+	@Test
+	public void testCheckpointResume() throws IOException {
+		Path dmPath = Paths.get(System.getProperty("user.dir"));
+		MockDirectoryManager dm = new MockDirectoryManager(dmPath, true, true);
+		setLocalJsonDumpFile("mock-dump-for-long-testing.json", "20150223", dm);
+		Path checkpointFile = this.folder.getRoot().toPath()
+				.resolve("checkpoint");
+
+		IdRecordingProcessor complete = new IdRecordingProcessor();
+		DumpProcessingController dpc = new DumpProcessingController(
+				"wikidatawiki");
+		dpc.downloadDirectoryManager = dm;
+		dpc.setOfflineMode(true);
+		dpc.registerEntityDocumentProcessor(complete, null, true);
+		dpc.processMostRecentJsonDump();
+
+		for (int parallelism = 1; parallelism <= 2; parallelism++) {
+			FailingCheckpointProcessor failing = new FailingCheckpointProcessor(
+					35);
+			dpc = new DumpProcessingController("wikidatawiki");
+			dpc.downloadDirectoryManager = dm;
+			dpc.setOfflineMode(true);
+			dpc.setParallelism(parallelism);
+			dpc.setCheckpointFile(checkpointFile.toString());
+			dpc.setCheckpointInterval(10);
+			dpc.registerEntityDocumentProcessor(failing, null, true);
+			try {
+				dpc.processMostRecentJsonDump();
+				fail("Expected simulated crash");
+			} catch (IllegalStateException e) {
+				// expected
+			}
+			assertEquals(Arrays.asList(complete.ids.get(9),
+					complete.ids.get(19), complete.ids.get(29)),
+					failing.checkpoints);
+			assertTrue(Files.exists(checkpointFile));
+
+			IdRecordingProcessor resumed = new IdRecordingProcessor();
+			dpc = new DumpProcessingController("wikidatawiki");
+			dpc.downloadDirectoryManager = dm;
+			dpc.setOfflineMode(true);
+			dpc.setParallelism(parallelism);
+			dpc.setCheckpointFile(checkpointFile.toString());
+			dpc.setCheckpointInterval(10);
+			dpc.registerEntityDocumentProcessor(resumed, null, true);
+			dpc.processMostRecentJsonDump();
+
+			assertEquals(complete.ids.subList(30, complete.ids.size()),
+					resumed.ids);
+			assertFalse(Files.exists(checkpointFile));
+		}
+	}
+
+	@Test
+	public void testCheckpointEntityNotFound() throws IOException {
+		Path dmPath = Paths.get(System.getProperty("user.dir"));
+		MockDirectoryManager dm = new MockDirectoryManager(dmPath, true, true);
+		setLocalJsonDumpFile("mock-dump-for-long-testing.json", "20150223", dm);
+		Path checkpointFile = this.folder.getRoot().toPath()
+				.resolve("checkpoint");
+
+		for (int parallelism = 1; parallelism <= 2; parallelism++) {
+			DumpProcessingController dpc = new DumpProcessingController(
+					"wikidatawiki");
+			dpc.downloadDirectoryManager = dm;
+			dpc.setOfflineMode(true);
+			dpc.setParallelism(parallelism);
+			dpc.setCheckpointFile(checkpointFile.toString());
+			new DumpProcessingCheckpoint(
+					dpc.getMostRecentDump(DumpContentType.JSON), "Q999999",
+					10, -1).store(checkpointFile);
+			IdRecordingProcessor resumed = new IdRecordingProcessor();
+			dpc.registerEntityDocumentProcessor(resumed, null, true);
+			try {
+				dpc.processMostRecentJsonDump();
+				fail("Expected exception");
+			} catch (IllegalStateException e) {
+				assertTrue(e.getMessage().contains("Q999999"));
+			}
+			assertTrue(resumed.ids.isEmpty());
+			assertTrue(Files.exists(checkpointFile));
+		}
+	}
+
+	@Test
+	public void testCheckpointResumeAtBzip2Block() throws IOException {
+		DirectoryManagerFactory
+				.setDirectoryManagerClass(DirectoryManagerImpl.class);
+		Path dumpFilePath = this.folder.getRoot().toPath()
+				.resolve("wikidatawiki-20150223-all.json.bz2");
+		List<String> expectedIds = writeLargeBzip2Dump(dumpFilePath);
+		Path checkpointFile = this.folder.getRoot().toPath()
+				.resolve("checkpoint");
+
+		FailingCheckpointProcessor failing = new FailingCheckpointProcessor(
+				1900);
+		DumpProcessingController dpc = new DumpProcessingController(
+				"wikidatawiki");
+		dpc.setCheckpointFile(checkpointFile.toString());
+		dpc.setCheckpointInterval(500);
+		dpc.registerEntityDocumentProcessor(failing, null, true);
+		MwLocalDumpFile dumpFile = new MwLocalDumpFile(dumpFilePath.toString());
+		dumpFile.setDecompressionThreads(2);
+		try {
+			dpc.processDump(dumpFile);
+			fail("Expected simulated crash");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertEquals(expectedIds.subList(0, 1900), failing.ids);
+		DumpProcessingCheckpoint checkpoint = DumpProcessingCheckpoint
+				.load(checkpointFile);
+		assertEquals(1500, checkpoint.getEntityCount());
+		assertTrue(checkpoint.getBlockOffset() > 32);
+
+		IdRecordingProcessor resumed = new IdRecordingProcessor();
+		dpc = new DumpProcessingController("wikidatawiki");
+		dpc.setCheckpointFile(checkpointFile.toString());
+		dpc.registerEntityDocumentProcessor(resumed, null, true);
+		dumpFile = new MwLocalDumpFile(dumpFilePath.toString());
+		dumpFile.setDecompressionThreads(2);
+		dpc.processDump(dumpFile);
+
+		assertEquals(expectedIds.subList(1500, expectedIds.size()),
+				resumed.ids);
+	}
+
+	/**
+	 * Writes a bzip2-compressed JSON dump of several compressed blocks, which
+	 * consists of copies of the entities of a mock dump with new ids.
+	 *
+	 * @param path
+	 *            the file to write to
+	 * @return the ids of all entities in the dump
+	 * @throws IOException
+	 */
+	private List<String> writeLargeBzip2Dump(Path path) throws IOException {
+		List<String> lines = Files.readAllLines(
+				Paths.get(JsonDumpFileProcessingTest.class.getResource(
+						"/mock-dump-for-testing.json").getPath()),
+				StandardCharsets.UTF_8);
+		String itemLine = null;
+		for (String line : lines) {
+			if (line.contains("\"id\":\"Q1\"")) {
+				itemLine = line.endsWith(",") ? line.substring(0,
+						line.length() - 1) : line;
+			}
+		}
+
+		List<String> ids = new ArrayList<>();
+		try (OutputStream out = new BZip2CompressorOutputStream(
+				Files.newOutputStream(path), 1)) {
+			out.write("[\n".getBytes(StandardCharsets.UTF_8));
+			for (int i = 1; i <= 3000; i++) {
+				String id = "Q" + (1000 + i);
+				ids.add(id);
+				out.write(itemLine.replace("\"Q1\"", "\"" + id + "\"")
+						.getBytes(StandardCharsets.UTF_8));
+				out.write((i < 3000 ? ",\n" : "\n]\n")
+						.getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		return ids;
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidParallelism() {
+		DumpProcessingController dpc = new DumpProcessingController(
+				"wikidatawiki");
+		dpc.setParallelism(0);
+	}
+
 	private void setLocalJsonDumpFile(String fileName, String dateStamp,
 			MockDirectoryManager dm) throws IOException {
 
@@ -0,0 +1,137 @@
+package org.wikidata.wdtk.dumpfiles;
+
+/*
+ * #%L
+ * Wikidata Toolkit Dump File Handling
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedFileLineReaderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	Path createFile(String contents) throws IOException {
+		Path path = this.folder.newFile().toPath();
+		Files.write(path, contents.getBytes(StandardCharsets.UTF_8));
+		return path;
+	}
+
+	static List<String> readLines(MappedFileLineReader reader)
+			throws IOException {
+		List<String> result = new ArrayList<>();
+		while (reader.nextLine()) {
+			result.add(new String(reader.getLineBuffer(), 0, reader
+					.getLineLength(), StandardCharsets.UTF_8));
+		}
+		reader.close();
+		return result;
+	}
+
+	@Test
+	public void testReadLines() throws IOException {
+		Path path = createFile("[\nline one,\nline two,\n\nlast line\n]");
+		MappedFileLineReader reader = new MappedFileLineReader(path, 0,
+				Long.MAX_VALUE);
+		assertEquals(Arrays.asList("[", "line one,", "line two,", "",
+				"last line", "]"), readLines(reader));
+	}
+
+	@Test
+	public void testSmallWindow() throws IOException {
+		String longLine = "abcdefghijklmnopqrstuvwxyz0123456789";
+		Path path = createFile("ab\n" + longLine + "\nc\n");
+		MappedFileLineReader reader = new MappedFileLineReader(path, 0,
+				Long.MAX_VALUE, 4);
+		assertEquals(Arrays.asList("ab", longLine, "c"), readLines(reader));
+	}
+
+	@Test
+	public void testOffsets() throws IOException {
+		Path path = createFile("one\ntwo\nthree\n");
+		MappedFileLineReader reader = new MappedFileLineReader(path, 4, 14);
+		assertEquals(-1, reader.getLineOffset());
+		assertTrue(reader.nextLine());
+		assertEquals(4, reader.getLineOffset());
+		assertEquals(8, reader.getPosition());
+		assertTrue(reader.nextLine());
+		assertEquals(8, reader.getLineOffset());
+		assertEquals(14, reader.getPosition());
+		assertFalse(reader.nextLine());
+		reader.close();
+	}
+
+	@Test
+	public void testSplitOffsets() throws IOException {
+		StringBuilder contents = new StringBuilder();
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			String line = "line " + i;
+			expected.add(line);
+			contents.append(line).append('\n');
+		}
+		Path path = createFile(contents.toString());
+
+		long[] offsets = MappedFileLineReader.getSplitOffsets(path, 7, 0);
+		assertEquals(8, offsets.length);
+		assertEquals(0, offsets[0]);
+		assertEquals(Files.size(path), offsets[7]);
+
+		List<String> lines = new ArrayList<>();
+		for (int i = 0; i < 7; i++) {
+			assertTrue(offsets[i] <= offsets[i + 1]);
+			lines.addAll(readLines(new MappedFileLineReader(path, offsets[i],
+					offsets[i + 1], 16)));
+		}
+		assertEquals(expected, lines);
+	}
+
+	@Test
+	public void testSplitOffsetsWithStart() throws IOException {
+		Path path = createFile("one\ntwo\nthree");
+		assertArrayEquals(new long[] { 4, 8, 13 },
+				MappedFileLineReader.getSplitOffsets(path, 2, 2));
+		assertArrayEquals(new long[] { 4, 13 },
+				MappedFileLineReader.getSplitOffsets(path, 1, 4));
+		assertArrayEquals(new long[] { 13, 13, 13 },
+				MappedFileLineReader.getSplitOffsets(path, 2, 10));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSplitCount() throws IOException {
+		MappedFileLineReader.getSplitOffsets(createFile(""), 0, 0);
+	}
+
+}
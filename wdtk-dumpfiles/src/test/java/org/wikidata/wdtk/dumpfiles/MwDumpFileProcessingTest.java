@@ -21,6 +21,10 @@ package org.wikidata.wdtk.dumpfiles;
  */
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.net.URL;
@@ -29,6 +33,7 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -36,6 +41,7 @@ import org.mockito.Mockito;
 import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
 import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
 import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
+import org.wikidata.wdtk.datamodel.json.jackson.JacksonTermedStatementDocument;
 import org.wikidata.wdtk.dumpfiles.wmf.WmfDumpFile;
 import org.wikidata.wdtk.dumpfiles.wmf.WmfLocalDumpFile;
 import org.wikidata.wdtk.testing.MockDirectoryManager;
@@ -423,6 +429,130 @@ public class MwDumpFileProcessingTest {
 		assertEquals(1, edpCurrentCounter.propCount);
 	}
 
+	@Test
+	public void testMwDailyDumpFileProcessingWithPrefilter()
+			throws IOException {
+		Path dmPath = Paths.get(System.getProperty("user.dir"));
+		MockDirectoryManager dm = new MockDirectoryManager(dmPath, true);
+		setLocalDumpFile("20140420", DumpContentType.DAILY, dm);
+
+		DumpProcessingController dpc = new DumpProcessingController(
+				"wikidatawiki");
+		dpc.downloadDirectoryManager = dm;
+		dpc.setOfflineMode(true);
+		// accepts Q1 and P1, which are titled "Q1" and "Property:P1":
+		dpc.setEntityPrefilter(new EntityIdRangePrefilter(null, 1, 1));
+
+		TestEntityDocumentProcessor edpCounter = new TestEntityDocumentProcessor();
+		dpc.registerEntityDocumentProcessor(edpCounter,
+				MwRevision.MODEL_WIKIBASE_ITEM, false);
+		dpc.registerEntityDocumentProcessor(edpCounter,
+				MwRevision.MODEL_WIKIBASE_PROPERTY, false);
+		dpc.processDump(dpc.getMostRecentDump(DumpContentType.DAILY));
+
+		assertEquals(4, edpCounter.itemCount);
+		assertEquals(2, edpCounter.propCount);
+
+		dpc.setEntityPrefilter(new EntityIdRangePrefilter(
+				JacksonTermedStatementDocument.JSON_TYPE_PROPERTY, 1, 10));
+		TestEntityDocumentProcessor edpPropertyCounter = new TestEntityDocumentProcessor();
+		dpc.registerEntityDocumentProcessor(edpPropertyCounter,
+				MwRevision.MODEL_WIKIBASE_ITEM, false);
+		dpc.registerEntityDocumentProcessor(edpPropertyCounter,
+				MwRevision.MODEL_WIKIBASE_PROPERTY, false);
+		dpc.processDump(dpc.getMostRecentDump(DumpContentType.DAILY));
+
+		assertEquals(0, edpPropertyCounter.itemCount);
+		assertEquals(2, edpPropertyCounter.propCount);
+	}
+
+	@Test
+	public void testEntityIdOfRevision() {
+		assertEquals("Q1", WikibaseRevisionProcessor
+				.getEntityId(getItemRevision(1)));
+		assertEquals("P1", WikibaseRevisionProcessor
+				.getEntityId(getPropertyRevision(1)));
+		MwRevisionImpl revision = new MwRevisionImpl();
+		revision.prefixedTitle = "Item:Q42";
+		revision.namespace = 0;
+		assertEquals("Q42", WikibaseRevisionProcessor.getEntityId(revision));
+	}
+
+	@Test
+	public void testParallelRevisionParsing() {
+		final List<String> labels = new ArrayList<>();
+		EntityDocumentProcessor edp = new EntityDocumentProcessor() {
+			@Override
+			public void processItemDocument(ItemDocument itemDocument) {
+				labels.add(itemDocument.getLabels().get("en").getText());
+			}
+
+			@Override
+			public void processPropertyDocument(
+					PropertyDocument propertyDocument) {
+				labels.add(propertyDocument.getLabels().get("en").getText());
+			}
+		};
+		WikibaseRevisionProcessor wrp = new WikibaseRevisionProcessor(edp,
+				"http://www.wikidata.org/entity/", null, 4);
+
+		List<String> expected = new ArrayList<>();
+		// The same revision object is reused, as when reading dumps:
+		MwRevisionImpl revision = new MwRevisionImpl();
+		for (int i = 1; i <= 500; i++) {
+			MwRevision source = (i % 7 == 0) ? getPropertyRevision(i)
+					: getItemRevision(i);
+			revision.model = source.getModel();
+			revision.prefixedTitle = source.getPrefixedTitle();
+			revision.text = (i == 250) ? "{\"id\":" : source.getText();
+			wrp.processRevision(revision);
+			if (i != 250) {
+				expected.add("Revision " + source.getRevisionId());
+			}
+		}
+		wrp.finishRevisionProcessing();
+
+		assertEquals(expected, labels);
+	}
+
+	@Test
+	public void testSharedRevisionParsingPool() {
+		DumpProcessingController dpc = new DumpProcessingController(
+				"wikidatawiki");
+		dpc.setParallelism(3);
+		ExecutorService workerPool = dpc.getRevisionWorkerPool();
+		assertSame(workerPool, dpc.getRevisionWorkerPool());
+
+		TestEntityDocumentProcessor edp1 = new TestEntityDocumentProcessor();
+		TestEntityDocumentProcessor edp2 = new TestEntityDocumentProcessor();
+		WikibaseRevisionProcessor wrp1 = new WikibaseRevisionProcessor(edp1,
+				"http://www.wikidata.org/entity/", null, 3);
+		WikibaseRevisionProcessor wrp2 = new WikibaseRevisionProcessor(edp2,
+				"http://www.wikidata.org/entity/", null, 3);
+		wrp1.setWorkerPool(workerPool);
+		wrp2.setWorkerPool(workerPool);
+		for (int i = 1; i <= 50; i++) {
+			wrp1.processRevision(getItemRevision(i));
+			wrp2.processRevision(getItemRevision(i));
+		}
+		wrp1.finishRevisionProcessing();
+		wrp2.finishRevisionProcessing();
+
+		assertEquals(50, edp1.itemCount);
+		assertEquals(50, edp2.itemCount);
+		assertFalse(workerPool.isShutdown());
+
+		dpc.setParallelism(2);
+		assertNotSame(workerPool, dpc.getRevisionWorkerPool());
+		assertTrue(workerPool.isShutdown());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidRevisionParsingThreads() {
+		new WikibaseRevisionProcessor(new TestEntityDocumentProcessor(),
+				"http://www.wikidata.org/entity/", null, 0);
+	}
+
 	@Test
 	public void testMwRecentCurrentDumpFileProcessing() throws IOException {
 		Path dmPath = Paths.get(System.getProperty("user.dir"));
@@ -152,4 +152,49 @@ public class MwLocalDumpFileTest {
 		assertEquals(df.getDumpContentType(), DumpContentType.JSON);
 	}
 
+	@Test
+	public void testGuessUncompressedJsonDump() throws IOException {
+		this.dm.setFileContents(this.dmPath.resolve("testdump-20150512.json"),
+				"Test contents", CompressionType.NONE);
+		MwLocalDumpFile df = new MwLocalDumpFile("/testdump-20150512.json");
+		assertEquals(DumpContentType.JSON, df.getDumpContentType());
+		assertEquals(CompressionType.NONE, df.getCompressionType());
+		BufferedReader br = df.getDumpFileReader();
+		assertEquals("Test contents", br.readLine());
+
+		df.setSplitCount(4);
+		df.setStartOffset(100);
+		assertEquals(4, df.getSplitCount());
+		assertEquals(100, df.getStartOffset());
+		assertTrue(df.useMemoryMapping());
+	}
+
+	@Test
+	public void testGuessBzip2JsonDump() throws IOException {
+		this.dm.setFileContents(
+				this.dmPath.resolve("wikidata-20150512-all.json.bz2"),
+				"Test contents", CompressionType.BZ2);
+		MwLocalDumpFile df = new MwLocalDumpFile(
+				"/wikidata-20150512-all.json.bz2");
+		assertEquals(DumpContentType.JSON, df.getDumpContentType());
+		assertEquals(CompressionType.BZ2, df.getCompressionType());
+		BufferedReader br = df.getDumpFileReader();
+		assertEquals("Test contents", br.readLine());
+	}
+
+	@Test
+	public void testNoMemoryMappingForCompressedDump() throws IOException {
+		this.dm.setFileContents(
+				this.dmPath.resolve("testdump-20150512.json.gz"), "");
+		MwLocalDumpFile df = new MwLocalDumpFile("/testdump-20150512.json.gz");
+		assertEquals(CompressionType.GZIP, df.getCompressionType());
+		df.setSplitCount(4);
+		assertFalse(df.useMemoryMapping());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSplitCount() {
+		new MwLocalDumpFile("/testdump-20150512.json").setSplitCount(-1);
+	}
+
 }
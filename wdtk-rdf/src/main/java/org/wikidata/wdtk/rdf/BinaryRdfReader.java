@@ -0,0 +1,209 @@
+package org.wikidata.wdtk.rdf;
+
+/*
+ * #%L
+ * Wikidata Toolkit RDF
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+
+/**
+ * Reader for the binary RDF format written by {@link BinaryRdfWriter}. The
+ * triples and namespace declarations that are read are passed on to a Sesame
+ * {@link RDFHandler}, so that they can be collected in a model or written in
+ * another RDF format. The reader only keeps the current term dictionary in
+ * memory, no matter how large the input is.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+public class BinaryRdfReader {
+
+	static final ValueFactory factory = ValueFactoryImpl.getInstance();
+
+	final DataInputStream input;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param input
+	 *            the stream to read the binary RDF from
+	 */
+	public BinaryRdfReader(InputStream input) {
+		this.input = new DataInputStream(new BufferedInputStream(input));
+	}
+
+	/**
+	 * Reads all data from the input and passes it to the given handler.
+	 *
+	 * @param rdfHandler
+	 *            the handler that receives the triples
+	 * @throws IOException
+	 *             if the input could not be read or was not valid
+	 * @throws RDFHandlerException
+	 *             if the handler reported a problem
+	 */
+	public void parse(RDFHandler rdfHandler) throws IOException,
+			RDFHandlerException {
+		byte[] magicNumber = new byte[BinaryRdfWriter.MAGIC_NUMBER.length];
+		this.input.readFully(magicNumber);
+		if (!Arrays.equals(BinaryRdfWriter.MAGIC_NUMBER, magicNumber)) {
+			throw new IOException("Input is not in binary RDF format.");
+		}
+		int dictionarySize = readVarint();
+		if (dictionarySize < BinaryRdfWriter.MIN_DICTIONARY_SIZE
+				|| dictionarySize > BinaryRdfWriter.MAX_DICTIONARY_SIZE) {
+			throw new IOException("Invalid dictionary size " + dictionarySize);
+		}
+		Value[] dictionary = new Value[dictionarySize];
+
+		rdfHandler.startRDF();
+		while (true) {
+			byte recordType = this.input.readByte();
+			switch (recordType) {
+			case BinaryRdfWriter.RECORD_END:
+				rdfHandler.endRDF();
+				return;
+			case BinaryRdfWriter.RECORD_TRIPLE:
+				Value subject = getTerm(dictionary);
+				Value predicate = getTerm(dictionary);
+				Value object = getTerm(dictionary);
+				if (!(subject instanceof Resource)
+						|| !(predicate instanceof URI)) {
+					throw new IOException("Invalid triple " + subject + " "
+							+ predicate + " " + object);
+				}
+				rdfHandler.handleStatement(factory.createStatement(
+						(Resource) subject, (URI) predicate, object));
+				break;
+			case BinaryRdfWriter.RECORD_URI:
+				dictionary[readSlot(dictionary)] = factory
+						.createURI(readString());
+				break;
+			case BinaryRdfWriter.RECORD_BNODE:
+				dictionary[readSlot(dictionary)] = factory
+						.createBNode(readString());
+				break;
+			case BinaryRdfWriter.RECORD_PLAIN_LITERAL:
+				dictionary[readSlot(dictionary)] = factory
+						.createLiteral(readString());
+				break;
+			case BinaryRdfWriter.RECORD_LANGUAGE_LITERAL:
+				int slot = readSlot(dictionary);
+				String label = readString();
+				dictionary[slot] = factory.createLiteral(label, readString());
+				break;
+			case BinaryRdfWriter.RECORD_TYPED_LITERAL:
+				slot = readSlot(dictionary);
+				label = readString();
+				Value datatype = getTerm(dictionary);
+				if (!(datatype instanceof URI)) {
+					throw new IOException("Invalid datatype " + datatype);
+				}
+				dictionary[slot] = factory.createLiteral(label, (URI) datatype);
+				break;
+			case BinaryRdfWriter.RECORD_NAMESPACE:
+				String prefix = readString();
+				rdfHandler.handleNamespace(prefix, readString());
+				break;
+			default:
+				throw new IOException("Unknown record type " + recordType);
+			}
+		}
+	}
+
+	/**
+	 * Reads a slot number and checks that it is within the dictionary.
+	 *
+	 * @param dictionary
+	 *            the current dictionary
+	 * @return the slot
+	 * @throws IOException
+	 *             if the input could not be read or was not valid
+	 */
+	int readSlot(Value[] dictionary) throws IOException {
+		int slot = readVarint();
+		if (slot >= dictionary.length) {
+			throw new IOException("Invalid dictionary slot " + slot);
+		}
+		return slot;
+	}
+
+	/**
+	 * Reads a slot number and returns the term that is stored there.
+	 *
+	 * @param dictionary
+	 *            the current dictionary
+	 * @return the term
+	 * @throws IOException
+	 *             if the input could not be read or the slot was empty
+	 */
+	Value getTerm(Value[] dictionary) throws IOException {
+		int slot = readSlot(dictionary);
+		if (dictionary[slot] == null) {
+			throw new IOException("Undefined dictionary slot " + slot);
+		}
+		return dictionary[slot];
+	}
+
+	String readString() throws IOException {
+		byte[] bytes = new byte[readVarint()];
+		this.input.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads a non-negative integer that was written with seven bits per byte.
+	 *
+	 * @return the number
+	 * @throws IOException
+	 *             if the input could not be read or was not valid
+	 */
+	int readVarint() throws IOException {
+		int result = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = this.input.read();
+			if (b < 0) {
+				throw new EOFException();
+			}
+			result |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				if (result < 0) {
+					break;
+				}
+				return result;
+			}
+		}
+		throw new IOException("Invalid number in input");
+	}
+
+}
@@ -0,0 +1,481 @@
+package org.wikidata.wdtk.rdf;
+
+/*
+ * #%L
+ * Wikidata Toolkit RDF
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.BNodeImpl;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandlerException;
+
+/**
+ * {@link RdfWriter} that writes a compact, dictionary-encoded binary stream of
+ * triples. Every RDF term is written only once into a term dictionary, where
+ * it gets an integer id; triples are then written as three such ids. Since the
+ * dictionary is written incrementally along with the triples, the output can
+ * be produced in a single pass, and read back without first reading the
+ * whole stream. The format can be read with {@link BinaryRdfReader}.
+ * <p>
+ * To keep memory bounded, the dictionary has a fixed number of slots, and ids
+ * are slot numbers. When all slots are used, the least recently used term
+ * loses its slot, which is then reused for the new term; a term that is used
+ * again after this is simply written to the dictionary a second time. Readers
+ * only need to keep a table of the same number of terms.
+ * <p>
+ * The stream starts with the bytes of {@link #MAGIC_NUMBER}, followed by the
+ * number of slots. Then follows a sequence of records, each starting with a
+ * byte that tells its type, and finally the byte {@link #RECORD_END}.
+ * Numbers are written as variable-length integers with seven bits per byte
+ * (least significant bits first); strings are written as the number of their
+ * bytes in UTF-8, followed by these bytes.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+public class BinaryRdfWriter extends RdfWriter {
+
+	/**
+	 * The format written by this class. It can be passed to
+	 * {@link RdfWriter#createRdfWriter(RDFFormat, OutputStream)} and
+	 * {@link RdfSerializer}.
+	 */
+	public static final RDFFormat BINARY_RDF = new RDFFormat(
+			"WDTK Binary RDF", "application/x-wdtk-binary-rdf", null, "wbrdf",
+			true, false);
+
+	/**
+	 * Bytes at the start of every stream, the last of which is the version of
+	 * the format.
+	 */
+	static final byte[] MAGIC_NUMBER = { 'W', 'D', 'T', 'K', 'B', 'R', 'D', 1 };
+
+	/**
+	 * Default number of terms in the dictionary.
+	 */
+	public static final int DEFAULT_DICTIONARY_SIZE = 256 * 1024;
+
+	/**
+	 * Smallest number of terms in the dictionary. This must be large enough so
+	 * that none of the terms of a triple is evicted while writing it.
+	 */
+	static final int MIN_DICTIONARY_SIZE = 16;
+
+	/**
+	 * Largest number of terms in the dictionary. Readers reject streams with
+	 * larger dictionaries, so that corrupted input cannot make them allocate
+	 * arbitrary amounts of memory.
+	 */
+	static final int MAX_DICTIONARY_SIZE = 16 * 1024 * 1024;
+
+	static final byte RECORD_END = 0;
+	static final byte RECORD_TRIPLE = 1;
+	static final byte RECORD_URI = 2;
+	static final byte RECORD_BNODE = 3;
+	static final byte RECORD_PLAIN_LITERAL = 4;
+	static final byte RECORD_LANGUAGE_LITERAL = 5;
+	static final byte RECORD_TYPED_LITERAL = 6;
+	static final byte RECORD_NAMESPACE = 7;
+
+	/**
+	 * Size of the buffer in bytes.
+	 */
+	static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Maximal number of bytes of a variable-length integer.
+	 */
+	static final int MAX_VARINT_BYTES = 5;
+
+	/**
+	 * Counter used to give each writer its own prefix for blank node ids.
+	 */
+	static final AtomicInteger writerCounter = new AtomicInteger();
+
+	final OutputStream output;
+	final byte[] buffer;
+	int position = 0;
+
+	final int dictionarySize;
+	/**
+	 * Map from term keys to slots, ordered by last access.
+	 */
+	final LinkedHashMap<String, Integer> dictionary;
+
+	final String bnodePrefix;
+	long bnodeCounter = 0;
+
+	/**
+	 * Constructor. Creates a writer with a dictionary of
+	 * {@link #DEFAULT_DICTIONARY_SIZE} terms.
+	 *
+	 * @param output
+	 *            the output stream to write to
+	 */
+	public BinaryRdfWriter(OutputStream output) {
+		this(output, DEFAULT_DICTIONARY_SIZE);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param output
+	 *            the output stream to write to
+	 * @param dictionarySize
+	 *            the number of terms that the dictionary can hold, between
+	 *            16 and {@link #MAX_DICTIONARY_SIZE}; larger dictionaries
+	 *            need more memory for writing and reading, but lead to
+	 *            smaller output
+	 */
+	public BinaryRdfWriter(OutputStream output, int dictionarySize) {
+		if (dictionarySize < MIN_DICTIONARY_SIZE) {
+			throw new IllegalArgumentException(
+					"The dictionary must have at least " + MIN_DICTIONARY_SIZE
+							+ " terms.");
+		}
+		if (dictionarySize > MAX_DICTIONARY_SIZE) {
+			throw new IllegalArgumentException(
+					"The dictionary must have at most " + MAX_DICTIONARY_SIZE
+							+ " terms.");
+		}
+		this.output = output;
+		this.buffer = new byte[BUFFER_SIZE];
+		this.dictionarySize = dictionarySize;
+		this.dictionary = new LinkedHashMap<>(16, 0.75f, true);
+		this.bnodePrefix = "b" + writerCounter.incrementAndGet() + "x";
+	}
+
+	@Override
+	public void start() throws RDFHandlerException {
+		this.tripleCount = 0;
+		this.position = 0;
+		this.dictionary.clear();
+		appendBytes(MAGIC_NUMBER);
+		appendVarint(this.dictionarySize);
+	}
+
+	@Override
+	public void finish() throws RDFHandlerException {
+		appendByte(RECORD_END);
+		flush();
+	}
+
+	@Override
+	public void flush() throws RDFHandlerException {
+		try {
+			flushBuffer();
+			this.output.flush();
+		} catch (IOException e) {
+			throw new RDFHandlerException(e);
+		}
+	}
+
+	@Override
+	public BNode getFreshBNode() {
+		this.bnodeCounter++;
+		return new BNodeImpl(this.bnodePrefix + this.bnodeCounter);
+	}
+
+	@Override
+	public void writeNamespaceDeclaration(String prefix, String uri)
+			throws RDFHandlerException {
+		appendByte(RECORD_NAMESPACE);
+		appendString(prefix);
+		appendString(uri);
+	}
+
+	@Override
+	public void writeTripleUriObject(String subjectUri, URI predicate,
+			String objectUri) throws RDFHandlerException {
+		writeTriple(getUriSlot(subjectUri), getUriSlot(predicate.stringValue()),
+				getUriSlot(objectUri));
+	}
+
+	@Override
+	public void writeTripleUriObject(Resource subject, URI predicate,
+			String objectUri) throws RDFHandlerException {
+		writeTriple(getSlot(subject), getUriSlot(predicate.stringValue()),
+				getUriSlot(objectUri));
+	}
+
+	@Override
+	public void writeTripleValueObject(String subjectUri, URI predicate,
+			Value object) throws RDFHandlerException {
+		writeTriple(getUriSlot(subjectUri), getUriSlot(predicate.stringValue()),
+				getSlot(object));
+	}
+
+	@Override
+	public void writeTripleValueObject(Resource subject, URI predicate,
+			Value object) throws RDFHandlerException {
+		writeTriple(getSlot(subject), getUriSlot(predicate.stringValue()),
+				getSlot(object));
+	}
+
+	@Override
+	public void writeTripleStringObject(Resource subject, URI predicate,
+			String objectLiteral) throws RDFHandlerException {
+		writeTriple(getSlot(subject), getUriSlot(predicate.stringValue()),
+				getLiteralSlot(objectLiteral, null, null));
+	}
+
+	@Override
+	public void writeTripleLiteralObject(Resource subject, URI predicate,
+			String objectLexicalValue, URI datatype) throws RDFHandlerException {
+		writeTriple(getSlot(subject), getUriSlot(predicate.stringValue()),
+				getLiteralSlot(objectLexicalValue, null, datatype));
+	}
+
+	/**
+	 * Writes a triple record and counts the triple.
+	 *
+	 * @throws RDFHandlerException
+	 *             if the output could not be written
+	 */
+	void writeTriple(int subject, int predicate, int object)
+			throws RDFHandlerException {
+		appendByte(RECORD_TRIPLE);
+		appendVarint(subject);
+		appendVarint(predicate);
+		appendVarint(object);
+		this.tripleCount++;
+	}
+
+	/**
+	 * Returns the dictionary slot of the given value, writing it to the
+	 * dictionary if needed.
+	 *
+	 * @param value
+	 *            the value
+	 * @return the slot of the value
+	 * @throws RDFHandlerException
+	 *             if the output could not be written
+	 */
+	int getSlot(Value value) throws RDFHandlerException {
+		if (value instanceof URI) {
+			return getUriSlot(value.stringValue());
+		} else if (value instanceof Literal) {
+			Literal literal = (Literal) value;
+			return getLiteralSlot(literal.getLabel(), literal.getLanguage(),
+					literal.getDatatype());
+		} else if (value instanceof BNode) {
+			String id = ((BNode) value).getID();
+			String key = "_:" + id;
+			Integer slot = this.dictionary.get(key);
+			if (slot != null) {
+				return slot;
+			}
+			int newSlot = assignSlot(key);
+			appendByte(RECORD_BNODE);
+			appendVarint(newSlot);
+			appendString(id);
+			return newSlot;
+		} else {
+			throw new RDFHandlerException("Unsupported value " + value);
+		}
+	}
+
+	/**
+	 * Returns the dictionary slot of the given URI, writing it to the
+	 * dictionary if needed. URI strings are used as keys without changes,
+	 * since the keys of other terms never start like an absolute URI.
+	 *
+	 * @param uri
+	 *            the URI string
+	 * @return the slot of the URI
+	 * @throws RDFHandlerException
+	 *             if the output could not be written
+	 */
+	int getUriSlot(String uri) throws RDFHandlerException {
+		Integer slot = this.dictionary.get(uri);
+		if (slot != null) {
+			return slot;
+		}
+		int newSlot = assignSlot(uri);
+		appendByte(RECORD_URI);
+		appendVarint(newSlot);
+		appendString(uri);
+		return newSlot;
+	}
+
+	/**
+	 * Returns the dictionary slot of the given literal, writing it to the
+	 * dictionary if needed. The datatype of typed literals is written to the
+	 * dictionary before the literal itself, which refers to its slot.
+	 *
+	 * @param label
+	 *            the lexical value
+	 * @param language
+	 *            the language code, or null
+	 * @param datatype
+	 *            the datatype, or null
+	 * @return the slot of the literal
+	 * @throws RDFHandlerException
+	 *             if the output could not be written
+	 */
+	int getLiteralSlot(String label, String language, URI datatype)
+			throws RDFHandlerException {
+		// The last \u0000 separates the label, which might contain \u0000,
+		// from the language or datatype, which cannot:
+		String key;
+		if (language != null) {
+			key = "\"" + label + "\u0000@" + language;
+		} else if (datatype != null) {
+			key = "\"" + label + "\u0000^" + datatype.stringValue();
+		} else {
+			key = "\"" + label + "\u0000";
+		}
+
+		Integer slot = this.dictionary.get(key);
+		if (slot != null) {
+			return slot;
+		}
+
+		if (language != null) {
+			int newSlot = assignSlot(key);
+			appendByte(RECORD_LANGUAGE_LITERAL);
+			appendVarint(newSlot);
+			appendString(label);
+			appendString(language);
+			return newSlot;
+		} else if (datatype != null) {
+			int datatypeSlot = getUriSlot(datatype.stringValue());
+			int newSlot = assignSlot(key);
+			appendByte(RECORD_TYPED_LITERAL);
+			appendVarint(newSlot);
+			appendString(label);
+			appendVarint(datatypeSlot);
+			return newSlot;
+		} else {
+			int newSlot = assignSlot(key);
+			appendByte(RECORD_PLAIN_LITERAL);
+			appendVarint(newSlot);
+			appendString(label);
+			return newSlot;
+		}
+	}
+
+	/**
+	 * Assigns a slot to a term that is not in the dictionary yet. If the
+	 * dictionary is full, the slot of the least recently used term is reused.
+	 *
+	 * @param key
+	 *            the key of the term
+	 * @return the slot
+	 */
+	int assignSlot(String key) {
+		int slot;
+		if (this.dictionary.size() < this.dictionarySize) {
+			slot = this.dictionary.size();
+		} else {
+			Iterator<Entry<String, Integer>> iterator = this.dictionary
+					.entrySet().iterator();
+			slot = iterator.next().getValue();
+			iterator.remove();
+		}
+		this.dictionary.put(key, slot);
+		return slot;
+	}
+
+	/**
+	 * Appends a string as the length of its UTF-8 encoding, followed by the
+	 * encoded bytes.
+	 *
+	 * @param string
+	 *            the string to write
+	 * @throws RDFHandlerException
+	 *             if the output could not be written
+	 */
+	void appendString(String string) throws RDFHandlerException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		appendVarint(bytes.length);
+		appendBytes(bytes);
+	}
+
+	/**
+	 * Appends a non-negative integer using seven bits per byte, where the
+	 * highest bit of each byte tells if more bytes follow.
+	 *
+	 * @param value
+	 *            the number to write
+	 * @throws RDFHandlerException
+	 *             if the output could not be written
+	 */
+	void appendVarint(int value) throws RDFHandlerException {
+		if (this.position + MAX_VARINT_BYTES > this.buffer.length) {
+			flushBufferChecked();
+		}
+		while ((value & ~0x7F) != 0) {
+			this.buffer[this.position++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		this.buffer[this.position++] = (byte) value;
+	}
+
+	void appendByte(byte b) throws RDFHandlerException {
+		if (this.position == this.buffer.length) {
+			flushBufferChecked();
+		}
+		this.buffer[this.position++] = b;
+	}
+
+	void appendBytes(byte[] bytes) throws RDFHandlerException {
+		if (this.position + bytes.length > this.buffer.length) {
+			flushBufferChecked();
+			if (bytes.length > this.buffer.length) {
+				try {
+					this.output.write(bytes);
+				} catch (IOException e) {
+					throw new RDFHandlerException(e);
+				}
+				return;
+			}
+		}
+		System.arraycopy(bytes, 0, this.buffer, this.position, bytes.length);
+		this.position += bytes.length;
+	}
+
+	void flushBuffer() throws IOException {
+		if (this.position > 0) {
+			this.output.write(this.buffer, 0, this.position);
+			this.position = 0;
+		}
+	}
+
+	void flushBufferChecked() throws RDFHandlerException {
+		try {
+			flushBuffer();
+		} catch (IOException e) {
+			throw new RDFHandlerException(e);
+		}
+	}
+
+}
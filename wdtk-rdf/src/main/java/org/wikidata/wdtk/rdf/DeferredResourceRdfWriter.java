@@ -0,0 +1,206 @@
+package org.wikidata.wdtk.rdf;
+
+/*
+ * #%L
+ * Wikidata Toolkit RDF
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.rio.RDFHandlerException;
+
+/**
+ * {@link RdfWriter} that holds back the triples of auxiliary resources, such
+ * as complex values and references, and passes all other triples on to
+ * another writer. This is used when converting documents in parallel: whether
+ * the triples of an auxiliary resource are written is only decided when the
+ * converted documents are written in their final order, so that the triples
+ * of each resource are written together with the first document that uses
+ * it.
+ * <p>
+ * The triples that are held back are available in
+ * {@link #resourceTriples}, grouped by subject, until the caller clears
+ * them.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+class DeferredResourceRdfWriter extends RdfWriter {
+
+	final RdfWriter targetWriter;
+
+	/**
+	 * String values of the resources whose triples are held back.
+	 */
+	final Set<String> deferredResources;
+
+	/**
+	 * Map from held back resources to the list of predicates and objects of
+	 * their triples, each predicate followed by its object.
+	 */
+	final LinkedHashMap<Resource, List<Value>> resourceTriples = new LinkedHashMap<>();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param targetWriter
+	 *            the writer to write all other triples to
+	 * @param deferredResources
+	 *            the string values of the resources whose triples should be
+	 *            held back; the set may grow while the writer is used
+	 */
+	DeferredResourceRdfWriter(RdfWriter targetWriter,
+			Set<String> deferredResources) {
+		this.targetWriter = targetWriter;
+		this.deferredResources = deferredResources;
+	}
+
+	@Override
+	public long getTripleCount() {
+		return this.targetWriter.getTripleCount();
+	}
+
+	@Override
+	public void start() throws RDFHandlerException {
+		this.resourceTriples.clear();
+		this.targetWriter.start();
+	}
+
+	@Override
+	public void finish() throws RDFHandlerException {
+		this.targetWriter.finish();
+	}
+
+	@Override
+	public void flush() throws RDFHandlerException {
+		this.targetWriter.flush();
+	}
+
+	@Override
+	public BNode getFreshBNode() {
+		return this.targetWriter.getFreshBNode();
+	}
+
+	@Override
+	public void writeNamespaceDeclaration(String prefix, String uri)
+			throws RDFHandlerException {
+		this.targetWriter.writeNamespaceDeclaration(prefix, uri);
+	}
+
+	@Override
+	public void writeTripleStringObject(Resource subject, URI predicate,
+			String objectLiteral) throws RDFHandlerException {
+		if (isDeferred(subject)) {
+			addTriple(subject, predicate, factory.createLiteral(objectLiteral));
+		} else {
+			this.targetWriter.writeTripleStringObject(subject, predicate,
+					objectLiteral);
+		}
+	}
+
+	@Override
+	public void writeTripleIntegerObject(Resource subject, URI predicate,
+			int objectLiteral) throws RDFHandlerException {
+		if (isDeferred(subject)) {
+			addTriple(subject, predicate, factory.createLiteral(objectLiteral));
+		} else {
+			this.targetWriter.writeTripleIntegerObject(subject, predicate,
+					objectLiteral);
+		}
+	}
+
+	@Override
+	public void writeTripleUriObject(String subjectUri, URI predicate,
+			String objectUri) throws RDFHandlerException {
+		if (this.deferredResources.contains(subjectUri)) {
+			addTriple(factory.createURI(subjectUri), predicate,
+					factory.createURI(objectUri));
+		} else {
+			this.targetWriter.writeTripleUriObject(subjectUri, predicate,
+					objectUri);
+		}
+	}
+
+	@Override
+	public void writeTripleUriObject(Resource subject, URI predicate,
+			String objectUri) throws RDFHandlerException {
+		if (isDeferred(subject)) {
+			addTriple(subject, predicate, factory.createURI(objectUri));
+		} else {
+			this.targetWriter.writeTripleUriObject(subject, predicate,
+					objectUri);
+		}
+	}
+
+	@Override
+	public void writeTripleValueObject(String subjectUri, URI predicate,
+			Value object) throws RDFHandlerException {
+		if (this.deferredResources.contains(subjectUri)) {
+			addTriple(factory.createURI(subjectUri), predicate, object);
+		} else {
+			this.targetWriter.writeTripleValueObject(subjectUri, predicate,
+					object);
+		}
+	}
+
+	@Override
+	public void writeTripleValueObject(Resource subject, URI predicate,
+			Value object) throws RDFHandlerException {
+		if (isDeferred(subject)) {
+			addTriple(subject, predicate, object);
+		} else {
+			this.targetWriter.writeTripleValueObject(subject, predicate,
+					object);
+		}
+	}
+
+	@Override
+	public void writeTripleLiteralObject(Resource subject, URI predicate,
+			String objectLexicalValue, URI datatype) throws RDFHandlerException {
+		if (isDeferred(subject)) {
+			addTriple(subject, predicate,
+					factory.createLiteral(objectLexicalValue, datatype));
+		} else {
+			this.targetWriter.writeTripleLiteralObject(subject, predicate,
+					objectLexicalValue, datatype);
+		}
+	}
+
+	boolean isDeferred(Resource subject) {
+		return !this.deferredResources.isEmpty()
+				&& this.deferredResources.contains(subject.stringValue());
+	}
+
+	void addTriple(Resource subject, URI predicate, Value object) {
+		List<Value> predicatesAndObjects = this.resourceTriples.get(subject);
+		if (predicatesAndObjects == null) {
+			predicatesAndObjects = new ArrayList<>();
+			this.resourceTriples.put(subject, predicatesAndObjects);
+		}
+		predicatesAndObjects.add(predicate);
+		predicatesAndObjects.add(object);
+	}
+
+}
@@ -0,0 +1,495 @@
+package org.wikidata.wdtk.rdf;
+
+/*
+ * #%L
+ * Wikidata Toolkit RDF
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.BNodeImpl;
+import org.openrdf.rio.RDFHandlerException;
+
+/**
+ * {@link RdfWriter} that writes N-Triples directly to an output stream,
+ * without creating statement objects and without going through a Sesame
+ * {@link org.openrdf.rio.RDFWriter}. Triples are encoded into a reusable byte
+ * buffer, which is written to the output whenever it is full. The encodings of
+ * the URI constants of {@link RdfWriter} and of frequently used predicates are
+ * computed only once. Methods that take URIs as strings write them without
+ * creating URI objects at all. Note that {@link RdfConverter} and
+ * {@link SnakRdfConverter} still create Sesame URI and literal objects for
+ * most of the values that they write, so that only the encoding of the output
+ * is faster than with the Sesame writer.
+ * <p>
+ * Blank nodes are created without using the shared (synchronized) value
+ * factory. Their ids are unique among all writers of this type in one JVM,
+ * so that the output of several writers can be concatenated.
+ * <p>
+ * Namespace declarations are ignored, since N-Triples does not use them.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+public class NTriplesRdfWriter extends RdfWriter {
+
+	/**
+	 * Size of the buffer in bytes.
+	 */
+	static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Maximal number of bytes that a single character can take in the
+	 * output, which is the length of an escape sequence like \\uXXXX.
+	 */
+	static final int MAX_CHAR_BYTES = 6;
+
+	/**
+	 * Maximal number of predicates whose encoding is cached by one writer.
+	 */
+	static final int MAX_CACHED_PREDICATES = 10000;
+
+	static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes();
+
+	/**
+	 * Counter used to give each writer its own prefix for blank node ids.
+	 */
+	static final AtomicInteger writerCounter = new AtomicInteger();
+
+	/**
+	 * Encodings of the URI constants of {@link RdfWriter}. The map is only
+	 * read after its initialization, so it can be shared by all writers.
+	 */
+	static final Map<URI, byte[]> encodedConstants = new IdentityHashMap<>();
+	static {
+		for (Field field : RdfWriter.class.getFields()) {
+			if (Modifier.isStatic(field.getModifiers())
+					&& URI.class.isAssignableFrom(field.getType())) {
+				try {
+					URI uri = (URI) field.get(null);
+					encodedConstants.put(uri, encodeUri(uri.stringValue()));
+				} catch (IllegalAccessException e) {
+					throw new RuntimeException(e.toString(), e);
+				}
+			}
+		}
+	}
+
+	final OutputStream output;
+	final byte[] buffer;
+	int position = 0;
+
+	final Map<String, byte[]> encodedPredicates = new HashMap<>();
+
+	final String bnodePrefix;
+	long bnodeCounter = 0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param output
+	 *            the output stream to write to
+	 */
+	public NTriplesRdfWriter(OutputStream output) {
+		this(output, BUFFER_SIZE);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param output
+	 *            the output stream to write to
+	 * @param bufferSize
+	 *            the size of the buffer in bytes
+	 */
+	NTriplesRdfWriter(OutputStream output, int bufferSize) {
+		this.output = output;
+		this.buffer = new byte[bufferSize];
+		this.bnodePrefix = "n" + writerCounter.incrementAndGet() + "x";
+	}
+
+	@Override
+	public void start() throws RDFHandlerException {
+		this.tripleCount = 0;
+		this.position = 0;
+	}
+
+	@Override
+	public void finish() throws RDFHandlerException {
+		flush();
+	}
+
+	@Override
+	public void flush() throws RDFHandlerException {
+		try {
+			flushBuffer();
+			this.output.flush();
+		} catch (IOException e) {
+			throw new RDFHandlerException(e);
+		}
+	}
+
+	@Override
+	public BNode getFreshBNode() {
+		this.bnodeCounter++;
+		return new BNodeImpl(this.bnodePrefix + this.bnodeCounter);
+	}
+
+	@Override
+	public void writeNamespaceDeclaration(String prefix, String uri)
+			throws RDFHandlerException {
+		// N-Triples does not use namespaces
+	}
+
+	@Override
+	public void writeTripleUriObject(String subjectUri, URI predicate,
+			String objectUri) throws RDFHandlerException {
+		appendUri(subjectUri);
+		appendPredicate(predicate);
+		appendUri(objectUri);
+		endTriple();
+	}
+
+	@Override
+	public void writeTripleUriObject(Resource subject, URI predicate,
+			String objectUri) throws RDFHandlerException {
+		appendValue(subject);
+		appendPredicate(predicate);
+		appendUri(objectUri);
+		endTriple();
+	}
+
+	@Override
+	public void writeTripleValueObject(String subjectUri, URI predicate,
+			Value object) throws RDFHandlerException {
+		appendUri(subjectUri);
+		appendPredicate(predicate);
+		appendValue(object);
+		endTriple();
+	}
+
+	@Override
+	public void writeTripleValueObject(Resource subject, URI predicate,
+			Value object) throws RDFHandlerException {
+		appendValue(subject);
+		appendPredicate(predicate);
+		appendValue(object);
+		endTriple();
+	}
+
+	@Override
+	public void writeTripleStringObject(Resource subject, URI predicate,
+			String objectLiteral) throws RDFHandlerException {
+		appendValue(subject);
+		appendPredicate(predicate);
+		appendLiteral(objectLiteral, null, null);
+		endTriple();
+	}
+
+	@Override
+	public void writeTripleLiteralObject(Resource subject, URI predicate,
+			String objectLexicalValue, URI datatype) throws RDFHandlerException {
+		appendValue(subject);
+		appendPredicate(predicate);
+		appendLiteral(objectLexicalValue, null, datatype);
+		endTriple();
+	}
+
+	/**
+	 * Appends the encoding of a subject or object, without surrounding
+	 * spaces.
+	 *
+	 * @param value
+	 *            the value to write
+	 * @throws RDFHandlerException
+	 *             if the output could not be written
+	 */
+	void appendValue(Value value) throws RDFHandlerException {
+		if (value instanceof URI) {
+			byte[] encoded = encodedConstants.get(value);
+			if (encoded != null) {
+				appendBytes(encoded);
+			} else {
+				appendUri(value.stringValue());
+			}
+		} else if (value instanceof Literal) {
+			Literal literal = (Literal) value;
+			appendLiteral(literal.getLabel(), literal.getLanguage(),
+					literal.getDatatype());
+		} else if (value instanceof BNode) {
+			appendByte('_');
+			appendByte(':');
+			appendAscii(((BNode) value).getID());
+		} else {
+			throw new RDFHandlerException("Unsupported value " + value);
+		}
+	}
+
+	/**
+	 * Appends the encoding of a predicate, surrounded by spaces, using cached
+	 * encodings where possible.
+	 *
+	 * @param predicate
+	 *            the predicate to write
+	 * @throws RDFHandlerException
+	 *             if the output could not be written
+	 */
+	void appendPredicate(URI predicate) throws RDFHandlerException {
+		appendByte(' ');
+		byte[] encoded = encodedConstants.get(predicate);
+		if (encoded == null) {
+			String uri = predicate.stringValue();
+			encoded = this.encodedPredicates.get(uri);
+			if (encoded == null) {
+				if (this.encodedPredicates.size() >= MAX_CACHED_PREDICATES) {
+					appendUri(uri);
+					appendByte(' ');
+					return;
+				}
+				encoded = encodeUri(uri);
+				this.encodedPredicates.put(uri, encoded);
+			}
+		}
+		appendBytes(encoded);
+		appendByte(' ');
+	}
+
+	/**
+	 * Appends the encoding of a URI, without surrounding spaces.
+	 *
+	 * @param uri
+	 *            the URI string
+	 * @throws RDFHandlerException
+	 *             if the output could not be written
+	 */
+	void appendUri(String uri) throws RDFHandlerException {
+		appendByte('<');
+		for (int i = 0; i < uri.length(); i++) {
+			char c = uri.charAt(i);
+			if (c <= 0x20 || c == '<' || c == '>' || c == '"' || c == '{'
+					|| c == '}' || c == '|' || c == '^' || c == '`'
+					|| c == '\\') {
+				appendUnicodeEscape(c);
+			} else {
+				appendChar(c);
+			}
+		}
+		appendByte('>');
+	}
+
+	/**
+	 * Appends the encoding of a literal, without surrounding spaces.
+	 *
+	 * @param label
+	 *            the lexical value
+	 * @param language
+	 *            the language code, or null
+	 * @param datatype
+	 *            the datatype, or null
+	 * @throws RDFHandlerException
+	 *             if the output could not be written
+	 */
+	void appendLiteral(String label, String language, URI datatype)
+			throws RDFHandlerException {
+		appendByte('"');
+		for (int i = 0; i < label.length(); i++) {
+			char c = label.charAt(i);
+			switch (c) {
+			case '"':
+				appendByte('\\');
+				appendByte('"');
+				break;
+			case '\\':
+				appendByte('\\');
+				appendByte('\\');
+				break;
+			case '\n':
+				appendByte('\\');
+				appendByte('n');
+				break;
+			case '\r':
+				appendByte('\\');
+				appendByte('r');
+				break;
+			case '\t':
+				appendByte('\\');
+				appendByte('t');
+				break;
+			default:
+				if (c < 0x20) {
+					appendUnicodeEscape(c);
+				} else {
+					appendChar(c);
+				}
+			}
+		}
+		appendByte('"');
+
+		if (language != null) {
+			appendByte('@');
+			appendAscii(language);
+		} else if (datatype != null) {
+			appendByte('^');
+			appendByte('^');
+			byte[] encoded = encodedConstants.get(datatype);
+			if (encoded != null) {
+				appendBytes(encoded);
+			} else {
+				appendUri(datatype.stringValue());
+			}
+		}
+	}
+
+	/**
+	 * Ends the current triple and counts it.
+	 *
+	 * @throws RDFHandlerException
+	 *             if the output could not be written
+	 */
+	void endTriple() throws RDFHandlerException {
+		appendByte(' ');
+		appendByte('.');
+		appendByte('\n');
+		this.tripleCount++;
+	}
+
+	/**
+	 * Appends the given character. Non-ASCII characters and the control
+	 * character DEL (0x7F) are written as escape sequences of the form
+	 * \\uXXXX, so that the output is printable ASCII and the same as that of
+	 * the Sesame writer.
+	 *
+	 * @param c
+	 *            the character to write
+	 * @throws RDFHandlerException
+	 *             if the output could not be written
+	 */
+	void appendChar(char c) throws RDFHandlerException {
+		if (c < 0x7F) {
+			appendByte(c);
+		} else {
+			appendUnicodeEscape(c);
+		}
+	}
+
+	/**
+	 * Appends an escape sequence of the form \\uXXXX for the given character.
+	 *
+	 * @param c
+	 *            the character to escape
+	 * @throws RDFHandlerException
+	 *             if the output could not be written
+	 */
+	void appendUnicodeEscape(char c) throws RDFHandlerException {
+		if (this.position + MAX_CHAR_BYTES > this.buffer.length) {
+			flushBufferChecked();
+		}
+		this.buffer[this.position++] = '\\';
+		this.buffer[this.position++] = 'u';
+		this.buffer[this.position++] = HEX_DIGITS[(c >> 12) & 0xF];
+		this.buffer[this.position++] = HEX_DIGITS[(c >> 8) & 0xF];
+		this.buffer[this.position++] = HEX_DIGITS[(c >> 4) & 0xF];
+		this.buffer[this.position++] = HEX_DIGITS[c & 0xF];
+	}
+
+	/**
+	 * Appends a string that is known to consist of characters that need no
+	 * escaping, such as a language code or blank node id.
+	 *
+	 * @param string
+	 *            the string to write
+	 * @throws RDFHandlerException
+	 *             if the output could not be written
+	 */
+	void appendAscii(String string) throws RDFHandlerException {
+		for (int i = 0; i < string.length(); i++) {
+			appendChar(string.charAt(i));
+		}
+	}
+
+	void appendByte(char b) throws RDFHandlerException {
+		if (this.position == this.buffer.length) {
+			flushBufferChecked();
+		}
+		this.buffer[this.position++] = (byte) b;
+	}
+
+	void appendBytes(byte[] bytes) throws RDFHandlerException {
+		if (this.position + bytes.length > this.buffer.length) {
+			flushBufferChecked();
+			if (bytes.length > this.buffer.length) {
+				try {
+					this.output.write(bytes);
+				} catch (IOException e) {
+					throw new RDFHandlerException(e);
+				}
+				return;
+			}
+		}
+		System.arraycopy(bytes, 0, this.buffer, this.position, bytes.length);
+		this.position += bytes.length;
+	}
+
+	void flushBuffer() throws IOException {
+		if (this.position > 0) {
+			this.output.write(this.buffer, 0, this.position);
+			this.position = 0;
+		}
+	}
+
+	void flushBufferChecked() throws RDFHandlerException {
+		try {
+			flushBuffer();
+		} catch (IOException e) {
+			throw new RDFHandlerException(e);
+		}
+	}
+
+	/**
+	 * Returns the encoding of the given URI, including the angle brackets.
+	 *
+	 * @param uri
+	 *            the URI string
+	 * @return the encoded URI
+	 */
+	static byte[] encodeUri(String uri) {
+		NTriplesRdfWriter encoder = new NTriplesRdfWriter(null, uri.length()
+				* MAX_CHAR_BYTES + 2);
+		try {
+			encoder.appendUri(uri);
+		} catch (RDFHandlerException e) { // cannot happen without output
+			throw new RuntimeException(e.toString(), e);
+		}
+		byte[] result = new byte[encoder.position];
+		System.arraycopy(encoder.buffer, 0, result, 0, encoder.position);
+		return result;
+	}
+
+}
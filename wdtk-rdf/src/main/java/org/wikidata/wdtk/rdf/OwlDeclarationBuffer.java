@@ -21,9 +21,13 @@ package org.wikidata.wdtk.rdf;
  */
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.openrdf.model.Resource;
 import org.openrdf.model.URI;
 import org.openrdf.rio.RDFHandlerException;
 import org.wikidata.wdtk.datamodel.interfaces.EntityIdValue;
@@ -35,6 +39,23 @@ import org.wikidata.wdtk.datamodel.interfaces.PropertyIdValue;
  * are ordered by subject, (2) to avoid some duplicate triples for things that
  * are needed in many places. Due to memory constraints, this class does not
  * provide perfect duplicate elimination.
+ * <p>
+ * Besides OWL declarations, the buffer also records auxiliary resources, such
+ * as complex values and references, whose triples have already been written.
+ * Since there can be very many of them, they are recorded in a
+ * {@link ResourceHashSet} of bounded size. Declared properties and classes
+ * are recorded exactly. Several buffers can share these records, so that
+ * several converters that run in parallel do not write the same declarations
+ * twice. Each buffer has its own queues, so it should only be used by one
+ * thread at a time.
+ * <p>
+ * Buffers of converters that run in parallel can defer their declarations
+ * (see {@link #deferDeclarations}). The declarations are then handed over to
+ * another buffer with {@link #takeDeclarations(OwlDeclarationBuffer)} and
+ * written by a single thread in the order of the output, so that each
+ * declaration is written before the first triple that uses it. Auxiliary
+ * resources are not recorded in the shared records either in this case; see
+ * {@link #declareResource(Resource)}.
  *
  * @author Markus Kroetzsch
  *
@@ -45,20 +66,96 @@ public class OwlDeclarationBuffer {
 	final List<PropertyIdValue> datatypePropertyQueue;
 	final List<URI> objectPropertyUriQueue;
 	final List<URI> datatypePropertyUriQueue;
-	final HashSet<PropertyIdValue> declaredProperties;
-	final HashSet<URI> declaredPropertyUris;
+	final Set<PropertyIdValue> declaredProperties;
+	final Set<URI> declaredPropertyUris;
 	final List<EntityIdValue> classEntityQueue;
-	final HashSet<EntityIdValue> declaredClassEntities;
+	final Set<EntityIdValue> declaredClassEntities;
+	ResourceHashSet declaredResources;
+
+	/**
+	 * If true, declarations are only queued but not written, so that they can
+	 * be written later on by another buffer.
+	 */
+	boolean deferDeclarations = false;
+
+	/**
+	 * String values of the auxiliary resources whose triples have been
+	 * written since declarations are deferred, but which have not been
+	 * recorded in the shared records yet.
+	 */
+	final Set<String> deferredResources = new HashSet<>();
 
 	public OwlDeclarationBuffer() {
 		this.objectPropertyQueue = new ArrayList<PropertyIdValue>();
 		this.datatypePropertyQueue = new ArrayList<PropertyIdValue>();
 		this.objectPropertyUriQueue = new ArrayList<URI>();
 		this.datatypePropertyUriQueue = new ArrayList<URI>();
-		this.declaredProperties = new HashSet<PropertyIdValue>();
-		this.declaredPropertyUris = new HashSet<URI>();
+		this.declaredProperties = newConcurrentSet();
+		this.declaredPropertyUris = newConcurrentSet();
+		this.classEntityQueue = new ArrayList<EntityIdValue>();
+		this.declaredClassEntities = newConcurrentSet();
+		this.declaredResources = new ResourceHashSet();
+	}
+
+	/**
+	 * Creates a new buffer with empty queues that shares the records of
+	 * declared properties, classes, and auxiliary resources with the given
+	 * buffer. Declarations that have been written using one of the buffers
+	 * will not be written again by the other.
+	 *
+	 * @param sharedBuffer
+	 *            the buffer to share records with
+	 */
+	public OwlDeclarationBuffer(OwlDeclarationBuffer sharedBuffer) {
+		this.objectPropertyQueue = new ArrayList<PropertyIdValue>();
+		this.datatypePropertyQueue = new ArrayList<PropertyIdValue>();
+		this.objectPropertyUriQueue = new ArrayList<URI>();
+		this.datatypePropertyUriQueue = new ArrayList<URI>();
+		this.declaredProperties = sharedBuffer.declaredProperties;
+		this.declaredPropertyUris = sharedBuffer.declaredPropertyUris;
 		this.classEntityQueue = new ArrayList<EntityIdValue>();
-		this.declaredClassEntities = new HashSet<EntityIdValue>();
+		this.declaredClassEntities = sharedBuffer.declaredClassEntities;
+		this.declaredResources = sharedBuffer.declaredResources;
+	}
+
+	/**
+	 * Records that the triples for the given auxiliary resource, such as a
+	 * complex value or a reference, are written now.
+	 * <p>
+	 * If declarations are deferred, the resource is only recorded in
+	 * {@link #deferredResources}, and its triples are held back by a
+	 * {@link DeferredResourceRdfWriter}. The thread that writes the output in
+	 * its final order then records the resource in the shared records, and
+	 * only writes the triples if this is the first time.
+	 *
+	 * @param resource
+	 *            the resource
+	 * @return true if the resource had not been recorded before, so that its
+	 *         triples should be written
+	 */
+	public boolean declareResource(Resource resource) {
+		String resourceString = resource.stringValue();
+		if (this.deferDeclarations) {
+			return !this.declaredResources.contains(resourceString)
+					&& this.deferredResources.add(resourceString);
+		} else {
+			return this.declaredResources.add(resourceString);
+		}
+	}
+
+	/**
+	 * Sets the amount of memory used for recording auxiliary resources. By
+	 * default, {@link ResourceHashSet#getDefaultMemory()} bytes are used outside
+	 * of the Java heap. When this is not enough, some resources may be
+	 * written more than once. All records of auxiliary resources are
+	 * discarded. The method must be called before any other buffer shares
+	 * the records of this buffer.
+	 *
+	 * @param memory
+	 *            the number of bytes to use
+	 */
+	public void setResourceMemory(long memory) {
+		this.declaredResources = new ResourceHashSet(memory);
 	}
 
 	/**
@@ -126,10 +223,40 @@ public class OwlDeclarationBuffer {
 		}
 	}
 
+	/**
+	 * Adds the declarations that have been queued in the given buffer to the
+	 * queues of this buffer, and clears the queues of the given buffer.
+	 *
+	 * @param buffer
+	 *            the buffer to take the declarations from
+	 */
+	public void takeDeclarations(OwlDeclarationBuffer buffer) {
+		for (PropertyIdValue propertyIdValue : buffer.objectPropertyQueue) {
+			addObjectProperty(propertyIdValue);
+		}
+		buffer.objectPropertyQueue.clear();
+		for (PropertyIdValue propertyIdValue : buffer.datatypePropertyQueue) {
+			addDatatypeProperty(propertyIdValue);
+		}
+		buffer.datatypePropertyQueue.clear();
+		for (URI propertyUri : buffer.objectPropertyUriQueue) {
+			addObjectProperty(propertyUri);
+		}
+		buffer.objectPropertyUriQueue.clear();
+		for (URI propertyUri : buffer.datatypePropertyUriQueue) {
+			addDatatypeProperty(propertyUri);
+		}
+		buffer.datatypePropertyUriQueue.clear();
+		for (EntityIdValue entityIdValue : buffer.classEntityQueue) {
+			addClass(entityIdValue);
+		}
+		buffer.classEntityQueue.clear();
+	}
+
 	/**
 	 * Writes OWL declarations for properties that have been added recently.
 	 * Declared properties are stored so that duplicate declarations are
-	 * avoided.
+	 * avoided. Nothing is written if declarations are deferred.
 	 *
 	 * @param rdfWriter
 	 *            the writer to write the declarations to
@@ -145,6 +272,9 @@ public class OwlDeclarationBuffer {
 	public void writePropertyDeclarations(RdfWriter rdfWriter,
 			boolean fullStatements, boolean simpleClaims)
 			throws RDFHandlerException {
+		if (this.deferDeclarations) {
+			return;
+		}
 		for (PropertyIdValue propertyIdValue : this.objectPropertyQueue) {
 			if (!this.declaredProperties.add(propertyIdValue)) {
 				continue;
@@ -220,6 +350,7 @@ public class OwlDeclarationBuffer {
 	/**
 	 * Writes OWL declarations for classes that have been added recently.
 	 * Declared classes are stored so that duplicate declarations are avoided.
+	 * Nothing is written if declarations are deferred.
 	 *
 	 * @param rdfWriter
 	 *            the writer to write the declarations to
@@ -228,6 +359,9 @@ public class OwlDeclarationBuffer {
 	 */
 	public void writeClassDeclarations(RdfWriter rdfWriter)
 			throws RDFHandlerException {
+		if (this.deferDeclarations) {
+			return;
+		}
 		for (EntityIdValue entityIdValue : this.classEntityQueue) {
 			if (!this.declaredClassEntities.add(entityIdValue)) {
 				continue;
@@ -238,4 +372,13 @@ public class OwlDeclarationBuffer {
 		this.classEntityQueue.clear();
 	}
 
+	/**
+	 * Creates a new set that can be used by several threads.
+	 *
+	 * @return the new set
+	 */
+	static <T> Set<T> newConcurrentSet() {
+		return Collections.newSetFromMap(new ConcurrentHashMap<T, Boolean>());
+	}
+
 }
@@ -20,20 +20,28 @@ package org.wikidata.wdtk.rdf;
  * #L%
  */
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wikidata.wdtk.datamodel.helpers.Datamodel;
 import org.wikidata.wdtk.datamodel.interfaces.DatatypeIdValue;
 import org.wikidata.wdtk.datamodel.interfaces.EntityDocument;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentProcessor;
 import org.wikidata.wdtk.datamodel.interfaces.EntityIdValue;
 import org.wikidata.wdtk.datamodel.interfaces.GlobeCoordinatesValue;
+import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
 import org.wikidata.wdtk.datamodel.interfaces.MonolingualTextValue;
 import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
 import org.wikidata.wdtk.datamodel.interfaces.PropertyIdValue;
@@ -43,18 +51,30 @@ import org.wikidata.wdtk.datamodel.interfaces.StatementGroup;
 import org.wikidata.wdtk.datamodel.interfaces.StringValue;
 import org.wikidata.wdtk.datamodel.interfaces.TimeValue;
 import org.wikidata.wdtk.datamodel.interfaces.ValueSnak;
+import org.wikidata.wdtk.util.CompressionType;
+import org.wikidata.wdtk.util.DirectoryManager;
 import org.wikidata.wdtk.wikibaseapi.ApiConnection;
 import org.wikidata.wdtk.wikibaseapi.WikibaseDataFetcher;
 import org.wikidata.wdtk.wikibaseapi.apierrors.MediaWikiApiErrorException;
 
 /**
  * This class helps to manage information about Properties that has to obtained
- * by a webservice.
+ * by a webservice. One register can be used by several threads. Looking up
+ * information that is already known does not need any locks; only fetching
+ * data from the Web is synchronized.
+ * <p>
+ * To avoid Web requests, the register can be filled in advance by processing
+ * the property documents of a dump with it, since it is also an
+ * {@link EntityDocumentProcessor}. Using a prefilter that only accepts
+ * properties makes this fast. The information can be stored in a file with
+ * {@link #storeToDirectory(DirectoryManager)} and loaded again with
+ * {@link #loadFromDirectory(DirectoryManager)}. In offline mode, see
+ * {@link #setOfflineMode(boolean)}, only such local information is used.
  *
  * @author Michael Guenther
  *
  */
-public class PropertyRegister {
+public class PropertyRegister implements EntityDocumentProcessor {
 
 	static final Logger logger = LoggerFactory
 			.getLogger(PropertyRegister.class);
@@ -69,14 +89,22 @@ public class PropertyRegister {
 	 * Map that stores the datatype of properties. Properties are identified by
 	 * their Pid; dataypes are identified by their datatype IRI.
 	 */
-	final protected Map<String, String> datatypes = new HashMap<String, String>();
+	final protected Map<String, String> datatypes = new ConcurrentHashMap<String, String>();
 
 	/**
 	 * Map that stores the URI patterns of properties. Properties are identified
 	 * by their Pid; patterns are given as strings using $1 as placeholder for
 	 * the escaped value.
 	 */
-	final protected Map<String, String> uriPatterns = new HashMap<String, String>();
+	final protected Map<String, String> uriPatterns = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * Set of Pids of properties for which no datatype could be found, neither
+	 * locally nor on the Web. Such properties are not looked up again, so that
+	 * they can be answered without obtaining the lock for fetching data.
+	 */
+	final Set<String> missingProperties = Collections
+			.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
 	/**
 	 * Pid of the property used to store URI patterns, if used, or null if no
@@ -103,6 +131,20 @@ public class PropertyRegister {
 	 */
 	int smallestUnfetchedPropertyIdNumber = 1;
 
+	/**
+	 * If true, no information is fetched from the Web.
+	 */
+	volatile boolean offlineMode = false;
+
+	/**
+	 * Name of the file used to store the information of the register.
+	 */
+	public static final String REGISTER_FILE_NAME = "property-register.properties";
+
+	static final String KEY_SITE_URI = "siteUri";
+	static final String KEY_PREFIX_DATATYPE = "datatype.";
+	static final String KEY_PREFIX_URI_PATTERN = "uriPattern.";
+
 	static final PropertyRegister WIKIDATA_PROPERTY_REGISTER = new PropertyRegister(
 			"P1921", ApiConnection.getWikidataApiConnection(),
 			Datamodel.SITE_WIKIDATA);
@@ -157,10 +199,13 @@ public class PropertyRegister {
 	 *         not be determined
 	 */
 	public String getPropertyType(PropertyIdValue propertyIdValue) {
-		if (!datatypes.containsKey(propertyIdValue.getId())) {
-			fetchPropertyInformation(propertyIdValue);
+		String datatype = this.datatypes.get(propertyIdValue.getId());
+		if (datatype == null
+				&& !this.missingProperties.contains(propertyIdValue.getId())) {
+			fetchPropertyInformationIfNeeded(propertyIdValue);
+			datatype = this.datatypes.get(propertyIdValue.getId());
 		}
-		return datatypes.get(propertyIdValue.getId());
+		return datatype;
 	}
 
 	/**
@@ -169,11 +214,15 @@ public class PropertyRegister {
 	 *
 	 * @param propertyIdValue
 	 * @param datatypeIri
+	 *            the datatype IRI, or null to forget the datatype
 	 */
 	public void setPropertyType(PropertyIdValue propertyIdValue,
 			String datatypeIri) {
-		datatypes.put(propertyIdValue.getId(), datatypeIri);
-
+		if (datatypeIri == null) {
+			datatypes.remove(propertyIdValue.getId());
+		} else {
+			datatypes.put(propertyIdValue.getId(), datatypeIri);
+		}
 	}
 
 	/**
@@ -187,11 +236,118 @@ public class PropertyRegister {
 	 *         was found for the given property
 	 */
 	public String getPropertyUriPattern(PropertyIdValue propertyIdValue) {
-		if (!this.datatypes.containsKey(propertyIdValue.getId())) {
-			fetchPropertyInformation(propertyIdValue);
+		if (!this.datatypes.containsKey(propertyIdValue.getId())
+				&& !this.missingProperties.contains(propertyIdValue.getId())) {
+			fetchPropertyInformationIfNeeded(propertyIdValue);
 		}
 		return this.uriPatterns.get(propertyIdValue.getId());
+	}
+
+	/**
+	 * Disables or enables Web access. In offline mode, only information that
+	 * has been set, loaded, or processed locally is available. Properties that
+	 * could not be found are remembered until the mode is changed, so that
+	 * looking them up again is cheap.
+	 *
+	 * @param offlineModeEnabled
+	 *            if true, no information is fetched from the Web
+	 */
+	public synchronized void setOfflineMode(boolean offlineModeEnabled) {
+		if (this.offlineMode != offlineModeEnabled) {
+			this.missingProperties.clear();
+		}
+		this.offlineMode = offlineModeEnabled;
+	}
+
+	/**
+	 * Records the datatype and URI pattern of the given property.
+	 */
+	@Override
+	public void processPropertyDocument(PropertyDocument propertyDocument) {
+		registerPropertyDocument(propertyDocument.getPropertyId().getId(),
+				propertyDocument);
+	}
+
+	@Override
+	public void processItemDocument(ItemDocument itemDocument) {
+		// nothing to do
+	}
+
+	/**
+	 * Stores the known datatypes and URI patterns to a file named
+	 * {@link #REGISTER_FILE_NAME} in the given directory. An existing file is
+	 * replaced.
+	 *
+	 * @param directoryManager
+	 *            the directory to store the file in
+	 * @throws IOException
+	 *             if the file could not be written
+	 */
+	public void storeToDirectory(DirectoryManager directoryManager)
+			throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(KEY_SITE_URI, this.siteUri);
+		for (Entry<String, String> entry : this.datatypes.entrySet()) {
+			properties.setProperty(KEY_PREFIX_DATATYPE + entry.getKey(),
+					entry.getValue());
+		}
+		for (Entry<String, String> entry : this.uriPatterns.entrySet()) {
+			properties.setProperty(KEY_PREFIX_URI_PATTERN + entry.getKey(),
+					entry.getValue());
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		properties.store(out, "Wikidata Toolkit property register");
+		directoryManager.createFileAtomic(REGISTER_FILE_NAME,
+				new ByteArrayInputStream(out.toByteArray()));
+		logger.info("Stored information about " + this.datatypes.size()
+				+ " properties.");
+	}
+
+	/**
+	 * Loads datatypes and URI patterns from a file named
+	 * {@link #REGISTER_FILE_NAME} in the given directory, as written by
+	 * {@link #storeToDirectory(DirectoryManager)}. The loaded information is
+	 * added to the information that is already known.
+	 *
+	 * @param directoryManager
+	 *            the directory to load the file from
+	 * @return true if the file was found and loaded, false if there was no
+	 *         such file
+	 * @throws IOException
+	 *             if the file could not be read, or if it belongs to another
+	 *             site
+	 */
+	public boolean loadFromDirectory(DirectoryManager directoryManager)
+			throws IOException {
+		if (!directoryManager.hasFile(REGISTER_FILE_NAME)) {
+			return false;
+		}
+		Properties properties = new Properties();
+		try (InputStream in = directoryManager.getInputStreamForFile(
+				REGISTER_FILE_NAME, CompressionType.NONE)) {
+			properties.load(in);
+		}
+		if (!this.siteUri.equals(properties.getProperty(KEY_SITE_URI))) {
+			throw new IOException("Property register file is for site "
+					+ properties.getProperty(KEY_SITE_URI) + " rather than "
+					+ this.siteUri);
+		}
 
+		int count = 0;
+		for (String key : properties.stringPropertyNames()) {
+			if (key.startsWith(KEY_PREFIX_DATATYPE)) {
+				this.datatypes.put(key.substring(KEY_PREFIX_DATATYPE.length()),
+						properties.getProperty(key));
+				count++;
+			} else if (key.startsWith(KEY_PREFIX_URI_PATTERN)) {
+				this.uriPatterns.put(
+						key.substring(KEY_PREFIX_URI_PATTERN.length()),
+						properties.getProperty(key));
+			}
+		}
+		logger.info("Loaded information about " + count + " properties.");
+		return true;
 	}
 
 	/**
@@ -284,6 +440,26 @@ public class PropertyRegister {
 		return DatatypeIdValue.DT_MONOLINGUAL_TEXT;
 	}
 
+	/**
+	 * Fetches the information of the given property from the Web API, unless
+	 * it is known already or the register is in offline mode. Only one thread
+	 * can fetch data at a time. If no datatype can be found for the property,
+	 * it is recorded as missing so that it is not looked up again.
+	 *
+	 * @param property
+	 */
+	synchronized void fetchPropertyInformationIfNeeded(PropertyIdValue property) {
+		if (this.datatypes.containsKey(property.getId())) {
+			return;
+		}
+		if (!this.offlineMode) {
+			fetchPropertyInformation(property);
+		}
+		if (!this.datatypes.containsKey(property.getId())) {
+			this.missingProperties.add(property.getId());
+		}
+	}
+
 	/**
 	 * Fetches the information of the given property from the Web API. Further
 	 * properties are fetched in the same request and results cached so as to
@@ -330,42 +506,65 @@ public class PropertyRegister {
 				continue;
 			}
 
-			String datatype = ((PropertyDocument) propertyDocument)
-					.getDatatype().getIri();
-			this.datatypes.put(entry.getKey(), datatype);
+			String datatype = registerPropertyDocument(entry.getKey(),
+					(PropertyDocument) propertyDocument);
 			logger.info("Fetched type information for property "
 					+ entry.getKey() + " online: " + datatype);
+		}
 
-			if (!DatatypeIdValue.DT_STRING.equals(datatype)) {
+		if (!this.datatypes.containsKey(property.getId())) {
+			logger.error("Failed to fetch type information for property "
+					+ property.getId() + " online.");
+		}
+	}
+
+	/**
+	 * Records the datatype and URI pattern of the given property document.
+	 *
+	 * @param propertyId
+	 *            the id of the property
+	 * @param propertyDocument
+	 *            the document of the property
+	 * @return the IRI of the datatype of the property
+	 */
+	String registerPropertyDocument(String propertyId,
+			PropertyDocument propertyDocument) {
+		if (propertyDocument.getDatatype() == null
+				|| propertyDocument.getDatatype().getIri() == null) {
+			logger.warn("No datatype given for property " + propertyId + ".");
+			return null;
+		}
+		String datatype = propertyDocument.getDatatype().getIri();
+		this.datatypes.put(propertyId, datatype);
+
+		if (!DatatypeIdValue.DT_STRING.equals(datatype)) {
+			return datatype;
+		}
+
+		boolean foundUriPattern = false;
+		for (StatementGroup sg : propertyDocument.getStatementGroups()) {
+			if (!sg.getProperty().getId().equals(this.uriPatternPropertyId)) {
 				continue;
 			}
-
-			for (StatementGroup sg : ((PropertyDocument) propertyDocument)
-					.getStatementGroups()) {
-				if (!sg.getProperty().getId().equals(this.uriPatternPropertyId)) {
-					continue;
-				}
-				for (Statement statement : sg.getStatements()) {
-					if (statement.getClaim().getMainSnak() instanceof ValueSnak
-							&& ((ValueSnak) statement.getClaim().getMainSnak())
-									.getValue() instanceof StringValue) {
-						String uriPattern = ((StringValue) ((ValueSnak) statement
-								.getClaim().getMainSnak()).getValue())
-								.getString();
-						if (this.uriPatterns.containsKey(entry.getKey())) {
-							logger.info("Found multiple URI patterns for property "
-									+ entry.getKey()
-									+ " but only one is supported in current code.");
-						}
-						this.uriPatterns.put(entry.getKey(), uriPattern);
+			for (Statement statement : sg.getStatements()) {
+				if (statement.getClaim().getMainSnak() instanceof ValueSnak
+						&& ((ValueSnak) statement.getClaim().getMainSnak())
+								.getValue() instanceof StringValue) {
+					String uriPattern = ((StringValue) ((ValueSnak) statement
+							.getClaim().getMainSnak()).getValue()).getString();
+					if (uriPattern == null || uriPattern.isEmpty()) {
+						continue;
 					}
+					if (foundUriPattern) {
+						logger.info("Found multiple URI patterns for property "
+								+ propertyId
+								+ " but only one is supported in current code.");
+					}
+					this.uriPatterns.put(propertyId, uriPattern);
+					foundUriPattern = true;
 				}
 			}
 		}
-
-		if (!this.datatypes.containsKey(property.getId())) {
-			logger.error("Failed to fetch type information for property "
-					+ property.getId() + " online.");
-		}
+		return datatype;
 	}
 }
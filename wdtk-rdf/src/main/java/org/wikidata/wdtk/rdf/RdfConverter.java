@@ -74,18 +74,42 @@ public class RdfConverter {
 
 	public RdfConverter(RdfWriter rdfWriter, Sites sites,
 			PropertyRegister propertyRegister) {
+		this(rdfWriter, sites, propertyRegister, new OwlDeclarationBuffer());
+	}
+
+	/**
+	 * Constructor. The given buffer is used to record the declarations that
+	 * have been written. Converters that run in parallel and write to the same
+	 * output can use buffers that share these records to avoid duplicate
+	 * declarations, see
+	 * {@link OwlDeclarationBuffer#OwlDeclarationBuffer(OwlDeclarationBuffer)}.
+	 *
+	 * @param rdfWriter
+	 *            the writer to write triples to
+	 * @param sites
+	 *            information about site links
+	 * @param propertyRegister
+	 *            the register used to find information about properties
+	 * @param owlDeclarationBuffer
+	 *            the buffer for declarations, which must not be used by any
+	 *            other converter
+	 */
+	public RdfConverter(RdfWriter rdfWriter, Sites sites,
+			PropertyRegister propertyRegister,
+			OwlDeclarationBuffer owlDeclarationBuffer) {
 		this.sites = sites;
 		this.rdfWriter = rdfWriter;
 		this.propertyRegister = propertyRegister;
 
-		this.owlDeclarationBuffer = new OwlDeclarationBuffer();
+		this.owlDeclarationBuffer = owlDeclarationBuffer;
 		this.valueRdfConverter = new AnyValueConverter(rdfWriter,
 				this.owlDeclarationBuffer, this.propertyRegister);
 		this.snakRdfConverter = new SnakRdfConverter(rdfWriter,
 				this.owlDeclarationBuffer, this.propertyRegister,
 				this.valueRdfConverter);
 		this.referenceRdfConverter = new ReferenceRdfConverter(rdfWriter,
-				this.snakRdfConverter, this.propertyRegister.siteUri);
+				this.snakRdfConverter, this.owlDeclarationBuffer,
+				this.propertyRegister.siteUri);
 	}
 
 	/**
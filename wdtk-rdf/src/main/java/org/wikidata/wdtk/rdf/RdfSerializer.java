@@ -20,9 +20,23 @@ package org.wikidata.wdtk.rdf;
  * #L%
  */
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
 import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFHandlerException;
 import org.slf4j.Logger;
@@ -32,10 +46,29 @@ import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentDumpProcessor;
 import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
 import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
 import org.wikidata.wdtk.datamodel.interfaces.Sites;
+import org.wikidata.wdtk.util.DaemonThreadFactory;
 
 /**
  * This class implements {@link EntityDocumentDumpProcessor} to provide a RDF
  * serializer to render RDF graphs of {@link EntityDocument} objects.
+ * <p>
+ * For N-Triples output, the conversion can be done by several threads, see
+ * {@link #setParallelism(int)}. Documents are then converted in batches, each
+ * with its own {@link RdfConverter}, and the results are written to the output
+ * in the order in which the documents were given. The OWL declarations that
+ * the batches need are written by the calling thread in the same order, so
+ * that each declaration precedes the first triple that uses it. The calling
+ * thread also decides which of the triples of complex values and references
+ * are written, so that they are written with the first document that uses
+ * them, as when using one thread.
+ * <p>
+ * In streaming mode, see {@link #setStreaming(boolean)}, the triples of each
+ * document are written as one block that is grouped by subject and includes
+ * all declarations that the document needs for the first time. When using
+ * several threads, these declarations are written before the batch that
+ * contains the document instead. The output is
+ * flushed after each block, so that it can be processed while the export is
+ * still running.
  *
  * @author Michael Günther
  *
@@ -65,15 +98,97 @@ public class RdfSerializer implements EntityDocumentDumpProcessor {
 	public static final int TASK_PROPERTIES = 0x00000200;
 	public static final int TASK_ALL_ENTITIES = TASK_ITEMS | TASK_PROPERTIES;
 
+	/**
+	 * Number of documents that are converted together by one thread when
+	 * using several threads.
+	 */
+	static final int DOCUMENTS_PER_BATCH = 100;
+
+	/**
+	 * Number of batches per thread that may be waiting to be written to the
+	 * output before the calling thread waits for them.
+	 */
+	static final int PENDING_BATCHES_PER_THREAD = 4;
+
+	/**
+	 * Result of converting one batch of documents in a worker thread. The
+	 * output is split into parts: the triples of each document are followed
+	 * by one part for each auxiliary resource, such as a complex value or a
+	 * reference, that the document uses. The parts of auxiliary resources are
+	 * only written if the resource has not been written before.
+	 *
+	 * @author Markus Kroetzsch
+	 *
+	 */
+	static class ConvertedBatch {
+		final List<byte[]> parts = new ArrayList<>();
+		final List<Long> partTripleCounts = new ArrayList<>();
+		/**
+		 * The auxiliary resource of each part, or null for parts that are
+		 * always written.
+		 */
+		final List<Resource> partResources = new ArrayList<>();
+		/**
+		 * Buffer with the declarations that the batch needs, which have not
+		 * been written yet.
+		 */
+		final OwlDeclarationBuffer declarations;
+
+		ConvertedBatch(OwlDeclarationBuffer declarations) {
+			this.declarations = declarations;
+		}
+
+		/**
+		 * Adds the bytes in the given stream as a new part, unless there are
+		 * none, and resets the stream.
+		 *
+		 * @param out
+		 *            the stream with the bytes of the part
+		 * @param tripleCount
+		 *            the number of triples in the part
+		 * @param resource
+		 *            the auxiliary resource of the part, or null
+		 */
+		void addPart(ByteArrayOutputStream out, long tripleCount,
+				Resource resource) {
+			if (out.size() == 0) {
+				return;
+			}
+			this.parts.add(out.toByteArray());
+			this.partTripleCounts.add(tripleCount);
+			this.partResources.add(resource);
+			out.reset();
+		}
+	}
+
 	final OutputStream output;
-	final RdfConverter rdfConverter;
+	RdfConverter rdfConverter;
 	final RdfWriter rdfWriter;
+	final RDFFormat format;
+	final Sites sites;
+	final PropertyRegister propertyRegister;
+
+	int parallelism = 1;
+	/**
+	 * Writer that groups the triples of one document by subject in streaming
+	 * mode, or null if not streaming.
+	 */
+	SubjectGroupingRdfWriter groupingWriter = null;
+	ExecutorService workerPool = null;
+	final Deque<Future<ConvertedBatch>> pendingBatches = new ArrayDeque<>();
+	List<EntityDocument> currentBatch = new ArrayList<>();
+	/**
+	 * Number of triples that have been written by worker threads.
+	 */
+	long parallelTripleCount = 0;
 
 	/**
 	 * Creates a new RDF serializer for the specified format and output stream.
 	 *
 	 * @param format
-	 *            RDF format, such as RDFFormat.TURTLE
+	 *            RDF format, such as RDFFormat.TURTLE, or
+	 *            {@link BinaryRdfWriter#BINARY_RDF} for a compact binary
+	 *            format
 	 * @param output
 	 *            the output stream to write to
 	 * @param sites
@@ -82,7 +197,10 @@ public class RdfSerializer implements EntityDocumentDumpProcessor {
 	public RdfSerializer(RDFFormat format, OutputStream output, Sites sites,
 			PropertyRegister propertyRegister) {
 		this.output = output;
-		this.rdfWriter = new RdfWriter(format, output);
+		this.format = format;
+		this.sites = sites;
+		this.propertyRegister = propertyRegister;
+		this.rdfWriter = RdfWriter.createRdfWriter(format, output);
 		this.rdfConverter = new RdfConverter(this.rdfWriter, sites,
 				propertyRegister);
 	}
@@ -109,13 +227,107 @@ public class RdfSerializer implements EntityDocumentDumpProcessor {
 		return this.rdfConverter.getTasks();
 	}
 
+	/**
+	 * Sets the number of threads that are used to convert documents. Using
+	 * more than one thread is only supported for N-Triples, where the output
+	 * of several converters can simply be concatenated. The value must be set
+	 * before calling {@link #open()}. The default is 1, meaning that all
+	 * documents are converted in the calling thread.
+	 *
+	 * @param parallelism
+	 *            the number of threads to use
+	 * @throws IllegalArgumentException
+	 *             if the number is not positive, or if it is greater than 1
+	 *             and the output format is not N-Triples
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException(
+					"The number of threads must be a positive number.");
+		}
+		if (parallelism > 1 && !RDFFormat.NTRIPLES.equals(this.format)) {
+			throw new IllegalArgumentException(
+					"Using several threads is only supported for N-Triples, not for "
+							+ this.format.getName() + ".");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Enables or disables streaming mode. In streaming mode, the triples of
+	 * each document are grouped by subject and written as one block,
+	 * including the declarations of properties and classes that are used for
+	 * the first time. The output is flushed after each document (after each
+	 * batch of documents when using several threads), so that it can be
+	 * consumed incrementally, e.g., by a triple store that reads from a pipe.
+	 * Output written by Sesame, i.e., in formats other than N-Triples and
+	 * {@link BinaryRdfWriter#BINARY_RDF}, cannot be flushed before the end.
+	 * The value must be set before calling {@link #open()}. Streaming is
+	 * disabled by default.
+	 *
+	 * @param streaming
+	 *            true if streaming mode should be used
+	 */
+	public void setStreaming(boolean streaming) {
+		if (streaming == isStreaming()) {
+			return;
+		}
+		RdfWriter converterWriter;
+		if (streaming) {
+			this.groupingWriter = new SubjectGroupingRdfWriter(this.rdfWriter);
+			converterWriter = this.groupingWriter;
+		} else {
+			this.groupingWriter = null;
+			converterWriter = this.rdfWriter;
+		}
+		RdfConverter converter = new RdfConverter(converterWriter,
+				this.sites, this.propertyRegister,
+				this.rdfConverter.owlDeclarationBuffer);
+		converter.setTasks(this.rdfConverter.getTasks());
+		this.rdfConverter = converter;
+	}
+
+	/**
+	 * Returns true if streaming mode is used.
+	 *
+	 * @see #setStreaming(boolean)
+	 * @return true if streaming
+	 */
+	public boolean isStreaming() {
+		return this.groupingWriter != null;
+	}
+
+	/**
+	 * Sets the number of bytes that are used to remember which values and
+	 * references have been written already, so as to avoid writing them
+	 * again. This memory is allocated outside of the Java heap. If it is too
+	 * small, some triples will be written more than once. The value must be
+	 * set before calling {@link #open()}. The default is
+	 * {@link ResourceHashSet#getDefaultMemory()}.
+	 *
+	 * @param memory
+	 *            the number of bytes to use
+	 */
+	public void setDeduplicationMemory(long memory) {
+		this.rdfConverter.owlDeclarationBuffer.setResourceMemory(memory);
+	}
+
+	/**
+	 * Returns the number of threads that are used to convert documents.
+	 *
+	 * @return the number of threads
+	 */
+	public int getParallelism() {
+		return this.parallelism;
+	}
+
 	/**
 	 * Returns the number of triples that have been written so far.
 	 *
 	 * @return number of triples
 	 */
 	public long getTripleCount() {
-		return this.rdfWriter.getTripleCount();
+		return this.rdfWriter.getTripleCount() + this.parallelTripleCount;
 	}
 
 	@Override
@@ -124,15 +336,34 @@ public class RdfSerializer implements EntityDocumentDumpProcessor {
 			this.rdfWriter.start();
 			this.rdfConverter.writeNamespaceDeclarations();
 			this.rdfConverter.writeBasicDeclarations();
+			if (this.groupingWriter != null) {
+				this.groupingWriter.flush();
+			}
+			if (this.parallelism > 1) {
+				// make sure the header is written before any batch:
+				this.rdfWriter.finish();
+			}
 		} catch (RDFHandlerException e) { // we cannot recover here
 			throw new RuntimeException(e.toString(), e);
 		}
+		if (this.parallelism > 1) {
+			this.parallelTripleCount = 0;
+			this.workerPool = Executors.newFixedThreadPool(this.parallelism,
+					new DaemonThreadFactory());
+		}
 	}
 
 	@Override
 	public void processItemDocument(ItemDocument itemDocument) {
+		if (this.workerPool != null) {
+			addToBatch(itemDocument);
+			return;
+		}
 		try {
 			this.rdfConverter.writeItemDocument(itemDocument);
+			if (this.groupingWriter != null) {
+				this.groupingWriter.flush();
+			}
 		} catch (RDFHandlerException e) { // we cannot recover here
 			throw new RuntimeException(e.toString(), e);
 		}
@@ -140,8 +371,25 @@ public class RdfSerializer implements EntityDocumentDumpProcessor {
 
 	@Override
 	public void processPropertyDocument(PropertyDocument propertyDocument) {
+		if (this.workerPool != null) {
+			// register the datatype before any later batch needs it:
+			if (propertyDocument.getDatatype() != null) {
+				this.propertyRegister.setPropertyType(
+						propertyDocument.getPropertyId(), propertyDocument
+								.getDatatype().getIri());
+			} else {
+				logger.warn("Property document for "
+						+ propertyDocument.getPropertyId().getId()
+						+ " has no datatype; not registering its type.");
+			}
+			addToBatch(propertyDocument);
+			return;
+		}
 		try {
 			this.rdfConverter.writePropertyDocument(propertyDocument);
+			if (this.groupingWriter != null) {
+				this.groupingWriter.flush();
+			}
 		} catch (RDFHandlerException e) { // we cannot recover here
 			throw new RuntimeException(e.toString(), e);
 		}
@@ -149,10 +397,23 @@ public class RdfSerializer implements EntityDocumentDumpProcessor {
 
 	@Override
 	public void close() {
-		try {
-			this.rdfWriter.finish();
-		} catch (RDFHandlerException e) { // we cannot recover here
-			throw new RuntimeException(e.toString(), e);
+		if (this.workerPool != null) {
+			try {
+				submitBatch();
+				while (!this.pendingBatches.isEmpty()) {
+					writeBatch(this.pendingBatches.removeFirst());
+				}
+			} finally {
+				this.workerPool.shutdownNow();
+				this.workerPool = null;
+				this.pendingBatches.clear();
+			}
+		} else {
+			try {
+				this.rdfWriter.finish();
+			} catch (RDFHandlerException e) { // we cannot recover here
+				throw new RuntimeException(e.toString(), e);
+			}
 		}
 		try {
 			this.output.close();
@@ -161,4 +422,184 @@ public class RdfSerializer implements EntityDocumentDumpProcessor {
 		}
 	}
 
+	/**
+	 * Adds a document to the batch that is converted next, and submits the
+	 * batch if it is full.
+	 *
+	 * @param document
+	 *            the document to convert
+	 */
+	void addToBatch(EntityDocument document) {
+		this.currentBatch.add(document);
+		if (this.currentBatch.size() >= DOCUMENTS_PER_BATCH) {
+			submitBatch();
+		}
+	}
+
+	/**
+	 * Submits the current batch of documents to the worker threads. Converted
+	 * batches at the head of the queue are written to the output; if too many
+	 * batches are pending, the method waits until the oldest one is done.
+	 */
+	void submitBatch() {
+		if (!this.currentBatch.isEmpty()) {
+			final List<EntityDocument> batch = this.currentBatch;
+			this.currentBatch = new ArrayList<>();
+			this.pendingBatches.addLast(this.workerPool
+					.submit(new Callable<ConvertedBatch>() {
+						@Override
+						public ConvertedBatch call() throws Exception {
+							return convertBatch(batch);
+						}
+					}));
+		}
+
+		while (!this.pendingBatches.isEmpty()
+				&& (this.pendingBatches.size() > PENDING_BATCHES_PER_THREAD
+						* this.parallelism || this.pendingBatches.peekFirst()
+						.isDone())) {
+			writeBatch(this.pendingBatches.removeFirst());
+		}
+	}
+
+	/**
+	 * Converts a batch of documents to N-Triples. This is done in a worker
+	 * thread, using a converter of its own that shares the records of written
+	 * declarations with the main converter. The declarations are not written
+	 * here, since the batches are converted in no particular order; they are
+	 * returned with the batch instead. Likewise, the triples of auxiliary
+	 * resources that have not been written by an earlier batch are returned
+	 * as separate parts, so that {@link #writeBatch(Future)} can write them
+	 * with the first document that uses them.
+	 *
+	 * @param batch
+	 *            the documents to convert
+	 * @return the converted batch
+	 * @throws RDFHandlerException
+	 *             if there was a problem writing the RDF
+	 */
+	ConvertedBatch convertBatch(List<EntityDocument> batch)
+			throws RDFHandlerException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RdfWriter batchWriter = new NTriplesRdfWriter(out);
+		RdfWriter documentWriter = batchWriter;
+		if (this.groupingWriter != null) {
+			documentWriter = new SubjectGroupingRdfWriter(batchWriter);
+		}
+		OwlDeclarationBuffer batchDeclarations = new OwlDeclarationBuffer(
+				this.rdfConverter.owlDeclarationBuffer);
+		batchDeclarations.deferDeclarations = true;
+		DeferredResourceRdfWriter converterWriter = new DeferredResourceRdfWriter(
+				documentWriter, batchDeclarations.deferredResources);
+		RdfConverter batchConverter = new RdfConverter(converterWriter,
+				this.sites, this.propertyRegister, batchDeclarations);
+		batchConverter.setTasks(this.rdfConverter.getTasks());
+
+		ConvertedBatch convertedBatch = new ConvertedBatch(batchDeclarations);
+		long tripleCount = 0;
+		batchWriter.start();
+		for (EntityDocument document : batch) {
+			if (document instanceof ItemDocument) {
+				batchConverter.writeItemDocument((ItemDocument) document);
+			} else {
+				batchConverter
+						.writePropertyDocument((PropertyDocument) document);
+			}
+			converterWriter.flush();
+			convertedBatch.addPart(out, batchWriter.getTripleCount()
+					- tripleCount, null);
+			tripleCount = batchWriter.getTripleCount();
+
+			for (Entry<Resource, List<Value>> entry : converterWriter.resourceTriples
+					.entrySet()) {
+				List<Value> predicatesAndObjects = entry.getValue();
+				for (int i = 0; i < predicatesAndObjects.size(); i += 2) {
+					batchWriter.writeTripleValueObject(entry.getKey(),
+							(URI) predicatesAndObjects.get(i),
+							predicatesAndObjects.get(i + 1));
+				}
+				batchWriter.flush();
+				convertedBatch.addPart(out, batchWriter.getTripleCount()
+						- tripleCount, entry.getKey());
+				tripleCount = batchWriter.getTripleCount();
+			}
+			converterWriter.resourceTriples.clear();
+		}
+		batchWriter.finish();
+		convertedBatch.addPart(out, batchWriter.getTripleCount()
+				- tripleCount, null);
+		return convertedBatch;
+	}
+
+	/**
+	 * Waits for the given batch to be converted and writes the result to the
+	 * output, preceded by the declarations that it needs for the first time.
+	 * The triples of auxiliary resources are only written if they have not
+	 * been written before. Since this is decided here, in the order of the
+	 * output, the triples of each resource are written together with the
+	 * first document that uses it.
+	 *
+	 * @param future
+	 *            the pending batch
+	 */
+	void writeBatch(Future<ConvertedBatch> future) {
+		ConvertedBatch convertedBatch;
+		try {
+			convertedBatch = future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(
+					"Interrupted while waiting for RDF conversion", e);
+		} catch (ExecutionException e) { // we cannot recover here
+			throw new RuntimeException(e.getCause().toString(), e.getCause());
+		}
+
+		try {
+			writeDeclarations(convertedBatch.declarations);
+			OwlDeclarationBuffer buffer = this.rdfConverter.owlDeclarationBuffer;
+			for (int i = 0; i < convertedBatch.parts.size(); i++) {
+				Resource resource = convertedBatch.partResources.get(i);
+				if (resource == null || buffer.declareResource(resource)) {
+					this.output.write(convertedBatch.parts.get(i));
+					this.parallelTripleCount += convertedBatch.partTripleCounts
+							.get(i);
+				}
+			}
+			if (this.groupingWriter != null) {
+				this.output.flush();
+			}
+		} catch (IOException | RDFHandlerException e) {
+			throw new RuntimeException(e.toString(), e);
+		}
+	}
+
+	/**
+	 * Writes the declarations of the given buffer to the output, unless they
+	 * have been written before.
+	 *
+	 * @param declarations
+	 *            the buffer with the declarations of a converted batch
+	 * @throws IOException
+	 *             if the output could not be written
+	 * @throws RDFHandlerException
+	 *             if there was a problem writing the declarations
+	 */
+	void writeDeclarations(OwlDeclarationBuffer declarations)
+			throws IOException, RDFHandlerException {
+		OwlDeclarationBuffer buffer = this.rdfConverter.owlDeclarationBuffer;
+		buffer.takeDeclarations(declarations);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RdfWriter declarationWriter = new NTriplesRdfWriter(out);
+		declarationWriter.start();
+		buffer.writeClassDeclarations(declarationWriter);
+		buffer.writePropertyDeclarations(declarationWriter,
+				this.rdfConverter.hasTask(TASK_STATEMENTS),
+				this.rdfConverter.hasTask(TASK_SIMPLE_STATEMENTS));
+		declarationWriter.finish();
+
+		this.output.write(out.toByteArray());
+		this.parallelTripleCount += declarationWriter.getTripleCount();
+	}
+
 }
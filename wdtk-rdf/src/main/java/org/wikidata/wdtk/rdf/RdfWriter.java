@@ -145,6 +145,41 @@ public class RdfWriter {
 		this.writer = Rio.createWriter(format, output);
 	}
 
+	/**
+	 * Constructor for subclasses that write triples without using a Sesame
+	 * {@link RDFWriter}. Such subclasses must override all methods that write
+	 * data.
+	 */
+	protected RdfWriter() {
+		this.writer = null;
+	}
+
+	/**
+	 * Creates a writer for the given format and output stream. For N-Triples,
+	 * this is a {@link NTriplesRdfWriter}, which writes triples directly to
+	 * the output. For {@link BinaryRdfWriter#BINARY_RDF}, this is a
+	 * {@link BinaryRdfWriter}. For all other formats, the writing is done by
+	 * Sesame.
+	 *
+	 * @param format
+	 *            RDF format, such as RDFFormat.TURTLE
+	 * @param output
+	 *            the output stream to write to
+	 * @return the writer
+	 * @throws UnsupportedRDFormatException
+	 *             if the format is not supported
+	 */
+	public static RdfWriter createRdfWriter(RDFFormat format,
+			OutputStream output) throws UnsupportedRDFormatException {
+		if (RDFFormat.NTRIPLES.equals(format)) {
+			return new NTriplesRdfWriter(output);
+		} else if (BinaryRdfWriter.BINARY_RDF.equals(format)) {
+			return new BinaryRdfWriter(output);
+		} else {
+			return new RdfWriter(format, output);
+		}
+	}
+
 	public long getTripleCount() {
 		return this.tripleCount;
 	}
@@ -158,6 +193,19 @@ public class RdfWriter {
 		this.writer.endRDF();
 	}
 
+	/**
+	 * Writes all data that has been buffered by this writer to its output,
+	 * and flushes the output, so that it can be read by others before the
+	 * writing is finished. Writers that use Sesame cannot be flushed, so the
+	 * method does nothing in this case.
+	 *
+	 * @throws RDFHandlerException
+	 *             if the data could not be written
+	 */
+	public void flush() throws RDFHandlerException {
+		// Sesame writers do not support flushing
+	}
+
 	public BNode getFreshBNode() {
 		return factory.createBNode();
 	}
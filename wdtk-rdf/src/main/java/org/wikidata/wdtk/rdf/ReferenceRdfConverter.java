@@ -21,7 +21,6 @@ package org.wikidata.wdtk.rdf;
  */
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 
@@ -47,7 +46,7 @@ public class ReferenceRdfConverter {
 
 	final List<Reference> referenceQueue;
 	final List<Resource> referenceSubjectQueue;
-	final HashSet<Resource> declaredReferences;
+	final OwlDeclarationBuffer owlDeclarationBuffer;
 	final String siteUri;
 
 	/**
@@ -62,13 +61,31 @@ public class ReferenceRdfConverter {
 	 */
 	public ReferenceRdfConverter(RdfWriter rdfWriter,
 			SnakRdfConverter snakRdfConverter, String siteUri) {
+		this(rdfWriter, snakRdfConverter, new OwlDeclarationBuffer(), siteUri);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param rdfWriter
+	 *            object to use for constructing URI objects
+	 * @param snakRdfConverter
+	 *            object to use for writing snaks
+	 * @param owlDeclarationBuffer
+	 *            buffer used to record which references have been written
+	 * @param siteUri
+	 *            URI prefix that is used by the processed site
+	 */
+	public ReferenceRdfConverter(RdfWriter rdfWriter,
+			SnakRdfConverter snakRdfConverter,
+			OwlDeclarationBuffer owlDeclarationBuffer, String siteUri) {
 		this.rdfWriter = rdfWriter;
 		this.snakRdfConverter = snakRdfConverter;
+		this.owlDeclarationBuffer = owlDeclarationBuffer;
 		this.siteUri = siteUri;
 
 		this.referenceQueue = new ArrayList<Reference>();
 		this.referenceSubjectQueue = new ArrayList<Resource>();
-		this.declaredReferences = new HashSet<Resource>();
 	}
 
 	/**
@@ -103,7 +120,7 @@ public class ReferenceRdfConverter {
 		Iterator<Reference> referenceIterator = this.referenceQueue.iterator();
 		for (Resource resource : this.referenceSubjectQueue) {
 			final Reference reference = referenceIterator.next();
-			if (this.declaredReferences.add(resource)) {
+			if (this.owlDeclarationBuffer.declareResource(resource)) {
 				writeReference(reference, resource);
 			}
 		}
@@ -0,0 +1,390 @@
+package org.wikidata.wdtk.rdf;
+
+/*
+ * #%L
+ * Wikidata Toolkit RDF
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Set of resources, such as the URIs of values and references, that needs
+ * only a bounded amount of memory. Instead of the resources, the set stores
+ * 128 bit hashes of their string values in hash tables outside of the Java
+ * heap. The tables are split into segments, which can be used by several
+ * threads at the same time. Each segment starts small and grows when needed,
+ * until it reaches its share of the memory of the set.
+ * <p>
+ * Each segment then keeps two generations of entries. When the current
+ * generation is full, the previous one is dropped and a new one is started.
+ * Resources of the previous generation that are added again are moved to the
+ * current one, so that only resources that have not been seen for a while
+ * are forgotten. Such resources might be added again later. The set is
+ * therefore suitable for avoiding most duplicates, as needed in RDF exports,
+ * but not for exact duplicate elimination. Different resources are only
+ * mistaken for one another if their 128 bit hashes collide.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+public class ResourceHashSet {
+
+	static final Logger logger = LoggerFactory
+			.getLogger(ResourceHashSet.class);
+
+	/**
+	 * Largest default number of bytes used by the set. The actual default is
+	 * smaller if there is little direct memory; see
+	 * {@link #getDefaultMemory()}.
+	 */
+	public static final long DEFAULT_MEMORY = 256L * 1024 * 1024;
+
+	/**
+	 * Maximal number of segments.
+	 */
+	static final int MAX_SEGMENTS = 64;
+
+	/**
+	 * Minimal number of entries of one segment.
+	 */
+	static final int MIN_SEGMENT_SLOTS = 1024;
+
+	/**
+	 * Maximal number of entries of one segment, so that the tables of both
+	 * generations together do not exceed 1 GB.
+	 */
+	static final int MAX_SEGMENT_SLOTS = 1 << 26;
+
+	/**
+	 * Hashers used for hashing strings. Each thread has its own hasher.
+	 */
+	static final ThreadLocal<ValueHasher> hashers = new ThreadLocal<ValueHasher>() {
+		@Override
+		protected ValueHasher initialValue() {
+			return new ValueHasher(ValueHasher.HashFunction.MURMUR3);
+		}
+	};
+
+	/**
+	 * Open-addressing hash tables of 128 bit hashes for the current and the
+	 * previous generation of entries. An entry of two 0 values marks an empty
+	 * slot.
+	 *
+	 * @author Markus Kroetzsch
+	 *
+	 */
+	static class Segment {
+
+		/**
+		 * Largest number of slots of the table of one generation.
+		 */
+		int maxSlots;
+
+		LongBuffer table = null;
+		int slots;
+		int size = 0;
+
+		LongBuffer previousTable = null;
+		int previousSlots = 0;
+
+		/**
+		 * Number of times that a generation has been dropped.
+		 */
+		long clearCount = 0;
+
+		Segment(int slots) {
+			this.maxSlots = Math.max(slots / 2, MIN_SEGMENT_SLOTS / 2);
+			this.slots = Math.min(this.maxSlots, MIN_SEGMENT_SLOTS);
+		}
+
+		synchronized boolean add(long h1, long h2) {
+			if (this.table == null) {
+				this.table = allocate(this.slots);
+			}
+			int slot = findSlot(this.table, this.slots, h1, h2);
+			if (!isEmpty(this.table, slot)) {
+				return false;
+			}
+
+			boolean added = true;
+			if (this.previousTable != null
+					&& !isEmpty(this.previousTable, findSlot(
+							this.previousTable, this.previousSlots, h1, h2))) {
+				// keep the resource when the previous generation is dropped:
+				added = false;
+			}
+
+			if (this.size >= this.slots / 4 * 3) {
+				if (this.slots < this.maxSlots) {
+					grow();
+				} else {
+					startGeneration();
+				}
+				slot = findSlot(this.table, this.slots, h1, h2);
+			}
+			this.table.put(2 * slot, h1);
+			this.table.put(2 * slot + 1, h2);
+			this.size++;
+			return added;
+		}
+
+		synchronized boolean contains(long h1, long h2) {
+			if (this.table == null) {
+				return false;
+			}
+			return !isEmpty(this.table,
+					findSlot(this.table, this.slots, h1, h2))
+					|| (this.previousTable != null && !isEmpty(
+							this.previousTable, findSlot(this.previousTable,
+									this.previousSlots, h1, h2)));
+		}
+
+		/**
+		 * Doubles the size of the current table. If there is not enough
+		 * direct memory, the table keeps its size, which is then used as the
+		 * size of all further generations.
+		 */
+		void grow() {
+			LongBuffer newTable;
+			try {
+				newTable = allocate(2 * this.slots);
+			} catch (OutOfMemoryError e) {
+				logger.warn("Not enough direct memory for growing the set of resources to "
+						+ (32L * this.slots)
+						+ " bytes; continuing with smaller tables.");
+				this.maxSlots = this.slots;
+				startGeneration();
+				return;
+			}
+			int newSlots = 2 * this.slots;
+			for (int i = 0; i < this.slots; i++) {
+				long h1 = this.table.get(2 * i);
+				long h2 = this.table.get(2 * i + 1);
+				if (h1 != 0 || h2 != 0) {
+					int slot = findSlot(newTable, newSlots, h1, h2);
+					newTable.put(2 * slot, h1);
+					newTable.put(2 * slot + 1, h2);
+				}
+			}
+			this.table = newTable;
+			this.slots = newSlots;
+		}
+
+		/**
+		 * Drops the previous generation and makes the current generation the
+		 * previous one. The table of the dropped generation is reused if
+		 * possible.
+		 */
+		void startGeneration() {
+			LongBuffer newTable = this.previousTable;
+			if (newTable != null && this.previousSlots == this.slots) {
+				for (int i = 0; i < 2 * this.slots; i++) {
+					newTable.put(i, 0);
+				}
+			} else {
+				newTable = null;
+			}
+			this.previousTable = this.table;
+			this.previousSlots = this.slots;
+			this.table = (newTable != null) ? newTable : allocate(this.slots);
+			this.size = 0;
+			this.clearCount++;
+		}
+
+		static LongBuffer allocate(int slots) {
+			return ByteBuffer.allocateDirect(16 * slots).asLongBuffer();
+		}
+
+		static boolean isEmpty(LongBuffer table, int slot) {
+			return table.get(2 * slot) == 0 && table.get(2 * slot + 1) == 0;
+		}
+
+		/**
+		 * Returns the slot of the given table that contains the given hash,
+		 * or the empty slot where it should be stored.
+		 */
+		static int findSlot(LongBuffer table, int slots, long h1, long h2) {
+			int mask = slots - 1;
+			int slot = (int) h2 & mask;
+			while (true) {
+				long stored1 = table.get(2 * slot);
+				long stored2 = table.get(2 * slot + 1);
+				if ((stored1 == h1 && stored2 == h2)
+						|| (stored1 == 0 && stored2 == 0)) {
+					return slot;
+				}
+				slot = (slot + 1) & mask;
+			}
+		}
+	}
+
+	final Segment[] segments;
+
+	/**
+	 * Creates a set that uses at most {@link #getDefaultMemory()} bytes.
+	 */
+	public ResourceHashSet() {
+		this(getDefaultMemory());
+	}
+
+	/**
+	 * Creates a set that uses at most the given number of bytes. The memory
+	 * is allocated outside of the Java heap when needed. If the direct memory
+	 * of the JVM runs out, the set uses less memory than given.
+	 *
+	 * @param memory
+	 *            the number of bytes to use
+	 */
+	public ResourceHashSet(long memory) {
+		long slots = Long.highestOneBit(Math.max(memory / 16,
+				MIN_SEGMENT_SLOTS));
+		int segmentCount = (int) Math.min(MAX_SEGMENTS, slots
+				/ MIN_SEGMENT_SLOTS);
+		int segmentSlots = (int) Math.min(MAX_SEGMENT_SLOTS, slots
+				/ segmentCount);
+		this.segments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			this.segments[i] = new Segment(segmentSlots);
+		}
+	}
+
+	/**
+	 * Returns the default number of bytes used by a set. This is
+	 * {@link #DEFAULT_MEMORY}, or a quarter of the direct memory that the JVM
+	 * may use if this is smaller, so that the set does not use up the direct
+	 * memory that other buffers need.
+	 *
+	 * @return default number of bytes
+	 */
+	public static long getDefaultMemory() {
+		return Math.min(DEFAULT_MEMORY, getMaxDirectMemory() / 4);
+	}
+
+	/**
+	 * Returns the largest number of bytes of direct memory that the JVM may
+	 * use. This is given by the option -XX:MaxDirectMemorySize, or is the
+	 * same as the maximal heap size by default.
+	 *
+	 * @return number of bytes
+	 */
+	static long getMaxDirectMemory() {
+		try {
+			for (String argument : ManagementFactory.getRuntimeMXBean()
+					.getInputArguments()) {
+				if (argument.startsWith("-XX:MaxDirectMemorySize=")) {
+					return parseMemorySize(argument.substring(argument
+							.indexOf('=') + 1));
+				}
+			}
+		} catch (RuntimeException e) {
+			// fall back to the default below
+		}
+		return Runtime.getRuntime().maxMemory();
+	}
+
+	/**
+	 * Parses a memory size as used in JVM options, such as "512m".
+	 *
+	 * @param size
+	 *            the size, with an optional unit k, m, or g
+	 * @return number of bytes
+	 * @throws NumberFormatException
+	 *             if the size is not valid
+	 */
+	static long parseMemorySize(String size) {
+		long factor = 1;
+		switch (Character.toLowerCase(size.charAt(size.length() - 1))) {
+		case 'k':
+			factor = 1024L;
+			break;
+		case 'm':
+			factor = 1024L * 1024;
+			break;
+		case 'g':
+			factor = 1024L * 1024 * 1024;
+			break;
+		default:
+			return Long.parseLong(size);
+		}
+		return factor * Long.parseLong(size.substring(0, size.length() - 1));
+	}
+
+	/**
+	 * Adds the given resource, given by its string value.
+	 *
+	 * @param resource
+	 *            the string value of the resource
+	 * @return true if the resource was not in the set before
+	 */
+	public boolean add(String resource) {
+		long[] hash = getHash(resource);
+		return getSegment(hash).add(hash[0], hash[1]);
+	}
+
+	/**
+	 * Checks if the given resource, given by its string value, is in the
+	 * set.
+	 *
+	 * @param resource
+	 *            the string value of the resource
+	 * @return true if the resource is in the set
+	 */
+	public boolean contains(String resource) {
+		long[] hash = getHash(resource);
+		return getSegment(hash).contains(hash[0], hash[1]);
+	}
+
+	/**
+	 * Returns the number of times that a segment has dropped a generation of
+	 * entries because it was full. If this is 0 or 1, then no resource that
+	 * has been added was lost.
+	 *
+	 * @return number of dropped generations
+	 */
+	public long getClearCount() {
+		long result = 0;
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				result += segment.clearCount;
+			}
+		}
+		return result;
+	}
+
+	Segment getSegment(long[] hash) {
+		return this.segments[(int) (hash[0] >>> 32)
+				& (this.segments.length - 1)];
+	}
+
+	static long[] getHash(String resource) {
+		ValueHasher hasher = hashers.get();
+		hasher.reset();
+		hasher.updateString(resource);
+		long[] hash = hasher.getMurmur3Hash();
+		if (hash[0] == 0 && hash[1] == 0) { // reserved for empty slots
+			hash[1] = 1;
+		}
+		return hash;
+	}
+
+}
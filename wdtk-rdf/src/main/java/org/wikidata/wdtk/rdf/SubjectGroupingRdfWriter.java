@@ -0,0 +1,165 @@
+package org.wikidata.wdtk.rdf;
+
+/*
+ * #%L
+ * Wikidata Toolkit RDF
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.rio.RDFHandlerException;
+
+/**
+ * {@link RdfWriter} that holds back the triples written to it until
+ * {@link #flush()} is called, and then writes them to another writer, grouped
+ * by subject. Subjects appear in the order in which they were first used, and
+ * the triples of each subject keep their order. This is used to write the
+ * triples of one entity as a self-contained block that can be processed as
+ * soon as it has been written. Only the triples since the last call of
+ * {@link #flush()} are kept in memory.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+class SubjectGroupingRdfWriter extends RdfWriter {
+
+	final RdfWriter targetWriter;
+
+	/**
+	 * Map from subjects to the list of predicates and objects of their
+	 * triples, each predicate followed by its object.
+	 */
+	final LinkedHashMap<Resource, List<Value>> triples = new LinkedHashMap<>();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param targetWriter
+	 *            the writer to write the grouped triples to
+	 */
+	SubjectGroupingRdfWriter(RdfWriter targetWriter) {
+		this.targetWriter = targetWriter;
+	}
+
+	@Override
+	public void start() throws RDFHandlerException {
+		this.tripleCount = 0;
+		this.triples.clear();
+		this.targetWriter.start();
+	}
+
+	@Override
+	public void finish() throws RDFHandlerException {
+		writeGroupedTriples();
+		this.targetWriter.finish();
+	}
+
+	@Override
+	public void flush() throws RDFHandlerException {
+		writeGroupedTriples();
+		this.targetWriter.flush();
+	}
+
+	@Override
+	public BNode getFreshBNode() {
+		return this.targetWriter.getFreshBNode();
+	}
+
+	@Override
+	public void writeNamespaceDeclaration(String prefix, String uri)
+			throws RDFHandlerException {
+		writeGroupedTriples();
+		this.targetWriter.writeNamespaceDeclaration(prefix, uri);
+	}
+
+	@Override
+	public void writeTripleStringObject(Resource subject, URI predicate,
+			String objectLiteral) throws RDFHandlerException {
+		addTriple(subject, predicate, factory.createLiteral(objectLiteral));
+	}
+
+	@Override
+	public void writeTripleUriObject(String subjectUri, URI predicate,
+			String objectUri) throws RDFHandlerException {
+		addTriple(factory.createURI(subjectUri), predicate,
+				factory.createURI(objectUri));
+	}
+
+	@Override
+	public void writeTripleUriObject(Resource subject, URI predicate,
+			String objectUri) throws RDFHandlerException {
+		addTriple(subject, predicate, factory.createURI(objectUri));
+	}
+
+	@Override
+	public void writeTripleValueObject(String subjectUri, URI predicate,
+			Value object) throws RDFHandlerException {
+		addTriple(factory.createURI(subjectUri), predicate, object);
+	}
+
+	@Override
+	public void writeTripleValueObject(Resource subject, URI predicate,
+			Value object) throws RDFHandlerException {
+		addTriple(subject, predicate, object);
+	}
+
+	@Override
+	public void writeTripleLiteralObject(Resource subject, URI predicate,
+			String objectLexicalValue, URI datatype) throws RDFHandlerException {
+		addTriple(subject, predicate,
+				factory.createLiteral(objectLexicalValue, datatype));
+	}
+
+	void addTriple(Resource subject, URI predicate, Value object) {
+		List<Value> predicatesAndObjects = this.triples.get(subject);
+		if (predicatesAndObjects == null) {
+			predicatesAndObjects = new ArrayList<>();
+			this.triples.put(subject, predicatesAndObjects);
+		}
+		predicatesAndObjects.add(predicate);
+		predicatesAndObjects.add(object);
+		this.tripleCount++;
+	}
+
+	/**
+	 * Writes all triples that are held back to the target writer, and
+	 * forgets them.
+	 *
+	 * @throws RDFHandlerException
+	 *             if the triples could not be written
+	 */
+	void writeGroupedTriples() throws RDFHandlerException {
+		for (Entry<Resource, List<Value>> entry : this.triples.entrySet()) {
+			List<Value> predicatesAndObjects = entry.getValue();
+			for (int i = 0; i < predicatesAndObjects.size(); i += 2) {
+				this.targetWriter.writeTripleValueObject(entry.getKey(),
+						(URI) predicatesAndObjects.get(i),
+						predicatesAndObjects.get(i + 1));
+			}
+		}
+		this.triples.clear();
+	}
+
+}
@@ -0,0 +1,335 @@
+package org.wikidata.wdtk.rdf;
+
+/*
+ * #%L
+ * Wikidata Toolkit RDF
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes hashes of values and references, which are used to create their
+ * URIs. The data to be hashed is collected in a byte buffer that is reused
+ * for all hashes, so no objects need to be created except for the resulting
+ * hex string. Objects of this class are not thread-safe; each thread should
+ * use its own hasher, as done in {@link Vocabulary}.
+ * <p>
+ * Two hash functions are supported. {@link HashFunction#MD5} produces the
+ * same URIs as earlier versions of this library. {@link HashFunction#MURMUR3}
+ * uses the 128 bit variant of MurmurHash3 for x64 with seed 0, which is much
+ * faster. Its result is encoded as 32 lower-case hex digits: the first 64 bit
+ * half of the hash, followed by the second, each with the most significant
+ * digit first.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+public class ValueHasher {
+
+	/**
+	 * Hash functions that can be used for creating URIs.
+	 *
+	 * @author Markus Kroetzsch
+	 *
+	 */
+	public enum HashFunction {
+		/**
+		 * MD5, as used in earlier versions of this library.
+		 */
+		MD5,
+		/**
+		 * MurmurHash3, 128 bit variant for x64, with seed 0.
+		 */
+		MURMUR3
+	}
+
+	static final long C1 = 0x87c37b91114253d5L;
+	static final long C2 = 0x4cf5ad432745937fL;
+
+	static final char[] hexArray = "0123456789abcdef".toCharArray();
+
+	final HashFunction hashFunction;
+	final MessageDigest md;
+
+	byte[] buffer = new byte[64];
+	int length = 0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param hashFunction
+	 *            the hash function to use
+	 */
+	public ValueHasher(HashFunction hashFunction) {
+		this.hashFunction = hashFunction;
+		if (hashFunction == HashFunction.MD5) {
+			try {
+				this.md = MessageDigest.getInstance("MD5");
+			} catch (NoSuchAlgorithmException e) {
+				throw new RuntimeException(
+						"Your Java does not support MD5 hashes. You should be concerned.");
+			}
+		} else {
+			this.md = null;
+		}
+	}
+
+	/**
+	 * Returns the hash function used by this object.
+	 *
+	 * @return the hash function
+	 */
+	public HashFunction getHashFunction() {
+		return this.hashFunction;
+	}
+
+	/**
+	 * Discards all data, so that a new hash can be computed.
+	 */
+	public void reset() {
+		this.length = 0;
+	}
+
+	/**
+	 * Adds a byte to the data to be hashed.
+	 *
+	 * @param b
+	 *            the byte
+	 */
+	public void update(byte b) {
+		ensureCapacity(1);
+		this.buffer[this.length++] = b;
+	}
+
+	/**
+	 * Adds the four bytes of an integer to the data to be hashed, most
+	 * significant byte first.
+	 *
+	 * @param x
+	 *            the integer
+	 */
+	public void updateInt(int x) {
+		ensureCapacity(4);
+		for (int shift = 24; shift >= 0; shift -= 8) {
+			this.buffer[this.length++] = (byte) (x >>> shift);
+		}
+	}
+
+	/**
+	 * Adds the eight bytes of a long to the data to be hashed, most
+	 * significant byte first.
+	 *
+	 * @param x
+	 *            the long
+	 */
+	public void updateLong(long x) {
+		ensureCapacity(8);
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			this.buffer[this.length++] = (byte) (x >>> shift);
+		}
+	}
+
+	/**
+	 * Adds the UTF-8 encoding of a string to the data to be hashed. Nothing
+	 * is added if the string is null.
+	 *
+	 * @param s
+	 *            the string, or null
+	 */
+	public void updateString(String s) {
+		if (s == null) {
+			return;
+		}
+		ensureCapacity(s.length());
+		int start = this.length;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c >= 0x80) { // rare; let Java take care of the encoding
+				this.length = start;
+				byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+				ensureCapacity(bytes.length);
+				System.arraycopy(bytes, 0, this.buffer, this.length,
+						bytes.length);
+				this.length += bytes.length;
+				return;
+			}
+			this.buffer[this.length++] = (byte) c;
+		}
+	}
+
+	/**
+	 * Returns the hash of the data added since the last reset, encoded as a
+	 * string of 32 hex digits. The data is reset afterwards.
+	 *
+	 * @return the hex encoding of the hash
+	 */
+	public String getHexDigest() {
+		if (this.hashFunction == HashFunction.MD5) {
+			this.md.reset();
+			this.md.update(this.buffer, 0, this.length);
+			reset();
+			return bytesToHex(this.md.digest());
+		}
+
+		char[] hexChars = new char[32];
+		long[] hash = murmur3(this.buffer, this.length);
+		for (int j = 0; j < 16; j++) {
+			hexChars[j] = hexArray[(int) (hash[0] >>> (60 - 4 * j)) & 0x0F];
+			hexChars[16 + j] = hexArray[(int) (hash[1] >>> (60 - 4 * j)) & 0x0F];
+		}
+		reset();
+		return new String(hexChars);
+	}
+
+	/**
+	 * Encodes the given bytes as a string of lower-case hex digits, two for
+	 * each byte.
+	 *
+	 * @param bytes
+	 *            the bytes to encode
+	 * @return the hex encoding
+	 */
+	static String bytesToHex(byte[] bytes) {
+		char[] hexChars = new char[bytes.length * 2];
+		for (int j = 0; j < bytes.length; j++) {
+			int v = bytes[j] & 0xFF;
+			hexChars[j * 2] = hexArray[v >>> 4];
+			hexChars[j * 2 + 1] = hexArray[v & 0x0F];
+		}
+		return new String(hexChars);
+	}
+
+	/**
+	 * Returns the 128 bit MurmurHash3 of the data added since the last reset,
+	 * independently of the hash function of this object. The data is reset
+	 * afterwards.
+	 *
+	 * @return array with the two 64 bit halves of the hash
+	 */
+	long[] getMurmur3Hash() {
+		long[] result = murmur3(this.buffer, this.length);
+		reset();
+		return result;
+	}
+
+	/**
+	 * Makes sure that the given number of bytes can be added to the buffer.
+	 *
+	 * @param size
+	 *            the number of bytes to be added
+	 */
+	void ensureCapacity(int size) {
+		if (this.length + size > this.buffer.length) {
+			byte[] newBuffer = new byte[Math.max(2 * this.buffer.length,
+					this.length + size)];
+			System.arraycopy(this.buffer, 0, newBuffer, 0, this.length);
+			this.buffer = newBuffer;
+		}
+	}
+
+	/**
+	 * Computes the 128 bit MurmurHash3 for x64 of the given data, with seed
+	 * 0.
+	 *
+	 * @param data
+	 *            array that contains the data
+	 * @param length
+	 *            number of bytes to use from the start of the array
+	 * @return array with the two 64 bit halves of the hash
+	 */
+	static long[] murmur3(byte[] data, int length) {
+		long h1 = 0;
+		long h2 = 0;
+
+		int blocks = length / 16;
+		for (int i = 0; i < blocks; i++) {
+			long k1 = getLongLittleEndian(data, 16 * i);
+			long k2 = getLongLittleEndian(data, 16 * i + 8);
+
+			k1 *= C1;
+			k1 = Long.rotateLeft(k1, 31);
+			k1 *= C2;
+			h1 ^= k1;
+			h1 = Long.rotateLeft(h1, 27);
+			h1 += h2;
+			h1 = h1 * 5 + 0x52dce729;
+
+			k2 *= C2;
+			k2 = Long.rotateLeft(k2, 33);
+			k2 *= C1;
+			h2 ^= k2;
+			h2 = Long.rotateLeft(h2, 31);
+			h2 += h1;
+			h2 = h2 * 5 + 0x38495ab5;
+		}
+
+		int tail = 16 * blocks;
+		int rest = length - tail;
+		if (rest > 8) {
+			long k2 = 0;
+			for (int i = rest - 1; i >= 8; i--) {
+				k2 ^= (long) (data[tail + i] & 0xFF) << (8 * (i - 8));
+			}
+			k2 *= C2;
+			k2 = Long.rotateLeft(k2, 33);
+			k2 *= C1;
+			h2 ^= k2;
+		}
+		if (rest > 0) {
+			long k1 = 0;
+			for (int i = Math.min(rest, 8) - 1; i >= 0; i--) {
+				k1 ^= (long) (data[tail + i] & 0xFF) << (8 * i);
+			}
+			k1 *= C1;
+			k1 = Long.rotateLeft(k1, 31);
+			k1 *= C2;
+			h1 ^= k1;
+		}
+
+		h1 ^= length;
+		h2 ^= length;
+		h1 += h2;
+		h2 += h1;
+		h1 = fmix64(h1);
+		h2 = fmix64(h2);
+		h1 += h2;
+		h2 += h1;
+
+		return new long[] { h1, h2 };
+	}
+
+	static long getLongLittleEndian(byte[] data, int offset) {
+		long result = 0;
+		for (int i = 7; i >= 0; i--) {
+			result = (result << 8) | (data[offset + i] & 0xFF);
+		}
+		return result;
+	}
+
+	static long fmix64(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+
+}
@@ -20,10 +20,6 @@ package org.wikidata.wdtk.rdf;
  * #L%
  */
 
-import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -46,15 +42,16 @@ import org.wikidata.wdtk.datamodel.interfaces.TimeValue;
  */
 public class Vocabulary {
 
-	final static MessageDigest md;
-	static {
-		try {
-			md = MessageDigest.getInstance("MD5");
-		} catch (NoSuchAlgorithmException e) {
-			throw new RuntimeException(
-					"Your Java does not support MD5 hashes. You should be concerned.");
-		}
-	}
+	/**
+	 * Hash function used for creating URIs of values and references.
+	 */
+	static volatile ValueHasher.HashFunction valueHashFunction = ValueHasher.HashFunction.MD5;
+
+	/**
+	 * Hashers used for creating URIs of values and references. Each thread
+	 * has its own hasher, so no synchronization is needed.
+	 */
+	static final ThreadLocal<ValueHasher> valueHashers = new ThreadLocal<>();
 
 	// Prefixes
 	public static final String PREFIX_WBONTO = "http://www.wikidata.org/ontology#";
@@ -445,89 +442,114 @@ public class Vocabulary {
 		}
 	}
 
+	/**
+	 * Sets the hash function that is used for creating URIs of values and
+	 * references. The default is {@link ValueHasher.HashFunction#MD5}, which
+	 * produces the same URIs as earlier versions. Using
+	 * {@link ValueHasher.HashFunction#MURMUR3} is faster but leads to
+	 * different URIs. The setting should not be changed during an export.
+	 *
+	 * @param hashFunction
+	 *            the hash function to use
+	 */
+	public static void setValueHashFunction(
+			ValueHasher.HashFunction hashFunction) {
+		valueHashFunction = hashFunction;
+	}
+
+	/**
+	 * Returns the hash function that is used for creating URIs of values and
+	 * references.
+	 *
+	 * @return the hash function
+	 */
+	public static ValueHasher.HashFunction getValueHashFunction() {
+		return valueHashFunction;
+	}
+
 	public static String getReferenceUri(Reference reference, String uriPrefix) {
-		md.reset();
+		ValueHasher hasher = getValueHasher();
 		for (SnakGroup snakgroup : reference.getSnakGroups()) {
 			for (Snak snak : snakgroup.getSnaks()) {
-				updateMessageDigestWithInt(md, snak.hashCode());
+				hasher.updateInt(snak.hashCode());
 			}
 		}
 
-		return uriPrefix + VALUE_PREFIX_REFERENCE + bytesToHex(md.digest());
+		return uriPrefix + VALUE_PREFIX_REFERENCE + hasher.getHexDigest();
 	}
 
 	public static String getTimeValueUri(TimeValue value, String uriPrefix) {
-		md.reset();
-		updateMessageDigestWithLong(md, value.getYear());
-		md.update(value.getMonth());
-		md.update(value.getDay());
-		md.update(value.getHour());
-		md.update(value.getMinute());
-		md.update(value.getSecond());
-		updateMessageDigestWithString(md, value.getPreferredCalendarModel());
-		updateMessageDigestWithInt(md, value.getBeforeTolerance());
-		updateMessageDigestWithInt(md, value.getAfterTolerance());
-		updateMessageDigestWithInt(md, value.getTimezoneOffset());
+		ValueHasher hasher = getValueHasher();
+		hasher.updateLong(value.getYear());
+		hasher.update(value.getMonth());
+		hasher.update(value.getDay());
+		hasher.update(value.getHour());
+		hasher.update(value.getMinute());
+		hasher.update(value.getSecond());
+		hasher.updateString(value.getPreferredCalendarModel());
+		hasher.updateInt(value.getBeforeTolerance());
+		hasher.updateInt(value.getAfterTolerance());
+		hasher.updateInt(value.getTimezoneOffset());
 
-		return uriPrefix + VALUE_PREFIX_TIME + bytesToHex(md.digest());
+		return uriPrefix + VALUE_PREFIX_TIME + hasher.getHexDigest();
 	}
 
 	public static String getGlobeCoordinatesValueUri(
 			GlobeCoordinatesValue value, String uriPrefix) {
-		md.reset();
-		updateMessageDigestWithString(md, value.getGlobe());
-		updateMessageDigestWithLong(md, Double.valueOf(value.getLatitude())
-				.hashCode());
-		updateMessageDigestWithLong(md, Double.valueOf(value.getLongitude())
-				.hashCode());
-		updateMessageDigestWithLong(md, Double.valueOf(value.getPrecision())
-				.hashCode());
+		ValueHasher hasher = getValueHasher();
+		hasher.updateString(value.getGlobe());
+		hasher.updateLong(Double.valueOf(value.getLatitude()).hashCode());
+		hasher.updateLong(Double.valueOf(value.getLongitude()).hashCode());
+		hasher.updateLong(Double.valueOf(value.getPrecision()).hashCode());
 
-		return uriPrefix + VALUE_PREFIX_GLOBECOORDS + bytesToHex(md.digest());
+		return uriPrefix + VALUE_PREFIX_GLOBECOORDS + hasher.getHexDigest();
 	}
 
 	public static String getQuantityValueUri(QuantityValue value,
 			String uriPrefix) {
-		md.reset();
-		updateMessageDigestWithInt(md, value.getNumericValue().hashCode());
-		updateMessageDigestWithInt(md, value.getLowerBound().hashCode());
-		updateMessageDigestWithInt(md, value.getUpperBound().hashCode());
+		ValueHasher hasher = getValueHasher();
+		hasher.updateInt(value.getNumericValue().hashCode());
+		hasher.updateInt(value.getLowerBound().hashCode());
+		hasher.updateInt(value.getUpperBound().hashCode());
 
-		return uriPrefix + VALUE_PREFIX_QUANTITY + bytesToHex(md.digest());
+		return uriPrefix + VALUE_PREFIX_QUANTITY + hasher.getHexDigest();
 	}
 
-	static ByteBuffer longByteBuffer = ByteBuffer.allocate(Long.SIZE / 8);
-
-	static void updateMessageDigestWithLong(MessageDigest md, long x) {
-		longByteBuffer.putLong(0, x);
-		longByteBuffer.rewind(); // important!
-		md.update(longByteBuffer);
-	}
-
-	static ByteBuffer intByteBuffer = ByteBuffer.allocate(Integer.SIZE / 8);
-
-	static void updateMessageDigestWithInt(MessageDigest md, int x) {
-		intByteBuffer.putInt(0, x);
-		intByteBuffer.rewind(); // important!
-		md.update(intByteBuffer);
-	}
+	/**
+	 * Hex digits used for encoding hashes.
+	 *
+	 * @deprecated hashes are encoded by {@link ValueHasher}
+	 */
+	@Deprecated
+	final protected static char[] hexArray = ValueHasher.hexArray;
 
-	static void updateMessageDigestWithString(MessageDigest md, String s) {
-		if (s == null) {
-			return;
-		}
-		md.update(s.getBytes(StandardCharsets.UTF_8));
+	/**
+	 * Encodes the given bytes as a string of lower-case hex digits.
+	 *
+	 * @param bytes
+	 *            the bytes to encode
+	 * @return the hex encoding
+	 * @deprecated use {@link ValueHasher#getHexDigest()} for encoding hashes
+	 */
+	@Deprecated
+	static String bytesToHex(byte[] bytes) {
+		return ValueHasher.bytesToHex(bytes);
 	}
 
-	final protected static char[] hexArray = "0123456789abcdef".toCharArray();
-
-	static String bytesToHex(byte[] bytes) {
-		char[] hexChars = new char[bytes.length * 2];
-		for (int j = 0; j < bytes.length; j++) {
-			int v = bytes[j] & 0xFF;
-			hexChars[j * 2] = hexArray[v >>> 4];
-			hexChars[j * 2 + 1] = hexArray[v & 0x0F];
+	/**
+	 * Returns the hasher of the current thread for the current hash function,
+	 * ready to hash new data.
+	 *
+	 * @return the hasher
+	 */
+	static ValueHasher getValueHasher() {
+		ValueHasher hasher = valueHashers.get();
+		if (hasher == null || hasher.getHashFunction() != valueHashFunction) {
+			hasher = new ValueHasher(valueHashFunction);
+			valueHashers.set(hasher);
+		} else {
+			hasher.reset();
 		}
-		return new String(hexChars);
+		return hasher;
 	}
 }
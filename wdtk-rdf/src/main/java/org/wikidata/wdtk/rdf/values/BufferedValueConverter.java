@@ -21,7 +21,6 @@ package org.wikidata.wdtk.rdf.values;
  */
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 
@@ -36,7 +35,6 @@ public abstract class BufferedValueConverter<V extends org.wikidata.wdtk.datamod
 
 	final List<V> valueQueue;
 	final List<Resource> valueSubjectQueue;
-	final HashSet<Resource> declaredValues;
 
 	public BufferedValueConverter(RdfWriter rdfWriter,
 			PropertyRegister propertyRegister,
@@ -44,7 +42,6 @@ public abstract class BufferedValueConverter<V extends org.wikidata.wdtk.datamod
 		super(rdfWriter, propertyRegister, rdfConversionBuffer);
 		this.valueQueue = new ArrayList<V>();
 		this.valueSubjectQueue = new ArrayList<Resource>();
-		this.declaredValues = new HashSet<Resource>();
 	}
 
 	/**
@@ -65,7 +62,7 @@ public abstract class BufferedValueConverter<V extends org.wikidata.wdtk.datamod
 	public void writeAuxiliaryTriples() throws RDFHandlerException {
 		Iterator<V> valueIterator = this.valueQueue.iterator();
 		for (Resource resource : this.valueSubjectQueue) {
-			if (!this.declaredValues.add(resource)) {
+			if (!this.rdfConversionBuffer.declareResource(resource)) {
 				valueIterator.next();
 				continue;
 			}
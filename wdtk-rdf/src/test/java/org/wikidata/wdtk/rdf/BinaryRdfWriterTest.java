@@ -0,0 +1,177 @@
+package org.wikidata.wdtk.rdf;
+
+/*
+ * #%L
+ * Wikidata Toolkit RDF
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.openrdf.model.Model;
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.helpers.StatementCollector;
+import org.wikidata.wdtk.datamodel.implementation.SitesImpl;
+
+public class BinaryRdfWriterTest {
+
+	final TestObjectFactory objectFactory = new TestObjectFactory();
+
+	static Model readBinaryRdf(ByteArrayOutputStream out) throws IOException,
+			RDFHandlerException {
+		Model graph = new LinkedHashModel();
+		new BinaryRdfReader(new ByteArrayInputStream(out.toByteArray()))
+				.parse(new StatementCollector(graph));
+		return graph;
+	}
+
+	@Test
+	public void testRoundTrip() throws RDFHandlerException,
+			RDFParseException, IOException {
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		new NTriplesRdfWriterTest().writeTestTriples(new NTriplesRdfWriter(
+				expected));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryRdfWriter rdfWriter = new BinaryRdfWriter(out);
+		new NTriplesRdfWriterTest().writeTestTriples(rdfWriter);
+
+		assertEquals(8, rdfWriter.getTripleCount());
+		Model model = readBinaryRdf(out);
+		assertEquals(NTriplesRdfWriterTest.parseNTriples(expected), model);
+		assertEquals("http://www.wikidata.org/entity/", model.getNamespace("wd")
+				.getName());
+	}
+
+	@Test
+	public void testSmallDictionary() throws RDFHandlerException,
+			IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryRdfWriter rdfWriter = new BinaryRdfWriter(out, 16);
+		Model expected = new LinkedHashModel();
+		rdfWriter.start();
+		for (int i = 0; i < 200; i++) {
+			URI subject = rdfWriter.getUri("http://example.org/Q" + (i % 37));
+			URI predicate = rdfWriter.getUri("http://example.org/P" + (i % 5));
+			rdfWriter.writeTripleLiteralObject(subject, predicate, "" + i,
+					RdfWriter.XSD_INT);
+			expected.add(subject, predicate,
+					rdfWriter.getLiteral("" + i, RdfWriter.XSD_INT));
+			rdfWriter.writeTripleStringObject(subject, RdfWriter.RDFS_LABEL,
+					"Label " + (i % 23));
+			expected.add(subject, RdfWriter.RDFS_LABEL,
+					rdfWriter.getLiteral("Label " + (i % 23)));
+		}
+		rdfWriter.finish();
+
+		assertEquals(expected, readBinaryRdf(out));
+	}
+
+	@Test
+	public void testWriteItemDocument() throws RDFHandlerException,
+			RDFParseException, IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RdfWriter rdfWriter = RdfWriter.createRdfWriter(
+				BinaryRdfWriter.BINARY_RDF, out);
+		assertTrue(rdfWriter instanceof BinaryRdfWriter);
+		RdfConverter rdfConverter = new RdfConverter(rdfWriter,
+				new SitesImpl(), new MockPropertyRegister());
+		rdfWriter.start();
+		rdfConverter.writeItemDocument(this.objectFactory.createItemDocument());
+		rdfWriter.finish();
+
+		assertEquals(RdfTestHelpers.parseRdf(RdfTestHelpers
+				.getResourceFromFile("ItemDocument.rdf")), readBinaryRdf(out));
+	}
+
+	@Test
+	public void testSerializer() throws RDFHandlerException,
+			RDFParseException, IOException {
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		RdfSerializer serializer = new RdfSerializer(RDFFormat.NTRIPLES,
+				expected, new SitesImpl(), new MockPropertyRegister());
+		serializer.open();
+		serializer.processItemDocument(this.objectFactory.createItemDocument());
+		serializer.close();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		serializer = new RdfSerializer(BinaryRdfWriter.BINARY_RDF, out,
+				new SitesImpl(), new MockPropertyRegister());
+		serializer.open();
+		serializer.processItemDocument(this.objectFactory.createItemDocument());
+		serializer.close();
+
+		assertEquals(NTriplesRdfWriterTest.parseNTriples(expected),
+				readBinaryRdf(out));
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadInvalidInput() throws RDFHandlerException,
+			IOException {
+		new BinaryRdfReader(new ByteArrayInputStream(
+				"<http://example.org/> <http://example.org/> <http://example.org/> ."
+						.getBytes())).parse(new StatementCollector());
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadTruncatedInput() throws RDFHandlerException,
+			IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new NTriplesRdfWriterTest().writeTestTriples(new BinaryRdfWriter(out));
+		byte[] data = out.toByteArray();
+
+		new BinaryRdfReader(new ByteArrayInputStream(Arrays.copyOf(data,
+				data.length - 1))).parse(new StatementCollector());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidDictionarySize() {
+		new BinaryRdfWriter(new ByteArrayOutputStream(), 2);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooLargeDictionarySize() {
+		new BinaryRdfWriter(new ByteArrayOutputStream(),
+				BinaryRdfWriter.MAX_DICTIONARY_SIZE + 1);
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadTooLargeDictionarySize() throws RDFHandlerException,
+			IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(BinaryRdfWriter.MAGIC_NUMBER);
+		// Integer.MAX_VALUE as a variable-length integer:
+		out.write(new byte[] { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+				(byte) 0xFF, 0x07 });
+		out.write(BinaryRdfWriter.RECORD_END);
+
+		new BinaryRdfReader(new ByteArrayInputStream(out.toByteArray()))
+				.parse(new StatementCollector());
+	}
+
+}
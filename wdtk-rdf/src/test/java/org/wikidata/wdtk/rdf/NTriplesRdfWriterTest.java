@@ -0,0 +1,155 @@
+package org.wikidata.wdtk.rdf;
+
+/*
+ * #%L
+ * Wikidata Toolkit RDF
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Model;
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.StatementCollector;
+import org.wikidata.wdtk.datamodel.implementation.SitesImpl;
+
+public class NTriplesRdfWriterTest {
+
+	final TestObjectFactory objectFactory = new TestObjectFactory();
+
+	static Model parseNTriples(ByteArrayOutputStream out)
+			throws RDFParseException, RDFHandlerException, IOException {
+		RDFParser parser = Rio.createParser(RDFFormat.NTRIPLES);
+		Model graph = new LinkedHashModel();
+		parser.setRDFHandler(new StatementCollector(graph));
+		parser.parse(new ByteArrayInputStream(out.toByteArray()),
+				"http://test/");
+		return graph;
+	}
+
+	/**
+	 * Writes some triples that need escaping, using the given writer.
+	 */
+	void writeTestTriples(RdfWriter rdfWriter) throws RDFHandlerException {
+		rdfWriter.start();
+		rdfWriter.writeNamespaceDeclaration("wd",
+				"http://www.wikidata.org/entity/");
+		Resource subject = rdfWriter.getUri("http://example.org/Q1");
+		URI predicate = rdfWriter.getUri("http://example.org/p");
+		rdfWriter.writeTripleValueObject(subject, RdfWriter.RDF_TYPE,
+				RdfWriter.WB_ITEM);
+		rdfWriter.writeTripleStringObject(subject, RdfWriter.RDFS_LABEL,
+				"Quotes \" and \\ backslashes\nand\ttabs");
+		rdfWriter.writeTripleValueObject(subject, RdfWriter.RDFS_LABEL,
+				rdfWriter.getLiteral("K\u00F6ln \u4EAC \uD83D\uDE00", "de"));
+		rdfWriter.writeTripleLiteralObject(subject, predicate, "1.5",
+				RdfWriter.XSD_DECIMAL);
+		rdfWriter.writeTripleIntegerObject(subject, predicate, 42);
+		rdfWriter.writeTripleUriObject("http://example.org/Q2", predicate,
+				"http://example.org/a%20b?c=\u00E9");
+		BNode bnode = rdfWriter.getFreshBNode();
+		rdfWriter.writeTripleUriObject(bnode, RdfWriter.RDF_TYPE,
+				"http://example.org/Class");
+		rdfWriter.writeTripleValueObject("http://example.org/Q2", predicate,
+				bnode);
+		rdfWriter.finish();
+	}
+
+	@Test
+	public void testWriteTriples() throws RDFHandlerException,
+			RDFParseException, IOException {
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		RdfWriter sesameWriter = new RdfWriter(RDFFormat.NTRIPLES, expected);
+		writeTestTriples(sesameWriter);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		NTriplesRdfWriter rdfWriter = new NTriplesRdfWriter(out);
+		writeTestTriples(rdfWriter);
+
+		assertEquals(8, rdfWriter.getTripleCount());
+		assertEquals(parseNTriples(expected), parseNTriples(out));
+	}
+
+	@Test
+	public void testSmallBuffer() throws RDFHandlerException,
+			RDFParseException, IOException {
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		writeTestTriples(new NTriplesRdfWriter(expected));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeTestTriples(new NTriplesRdfWriter(out, 10));
+
+		assertEquals(parseNTriples(expected), parseNTriples(out));
+	}
+
+	@Test
+	public void testWriteItemDocument() throws RDFHandlerException,
+			RDFParseException, IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RdfWriter rdfWriter = RdfWriter.createRdfWriter(RDFFormat.NTRIPLES,
+				out);
+		assertTrue(rdfWriter instanceof NTriplesRdfWriter);
+		RdfConverter rdfConverter = new RdfConverter(rdfWriter,
+				new SitesImpl(), new MockPropertyRegister());
+		rdfWriter.start();
+		rdfConverter.writeItemDocument(this.objectFactory.createItemDocument());
+		rdfWriter.finish();
+
+		Model model = parseNTriples(out);
+		assertEquals(RdfTestHelpers.parseRdf(RdfTestHelpers
+				.getResourceFromFile("ItemDocument.rdf")), model);
+	}
+
+	@Test
+	public void testEncodeConstant() {
+		assertEquals("<" + Vocabulary.RDF_TYPE + ">", new String(
+				NTriplesRdfWriter.encodedConstants.get(RdfWriter.RDF_TYPE)));
+		assertEquals("<http://example.org/a\\u0020b>", new String(
+				NTriplesRdfWriter.encodeUri("http://example.org/a b")));
+	}
+
+	@Test
+	public void testEscapeDelete() throws RDFHandlerException {
+		assertEquals("<http://example.org/a\\u007Fb>", new String(
+				NTriplesRdfWriter.encodeUri("http://example.org/a\u007Fb")));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		NTriplesRdfWriter rdfWriter = new NTriplesRdfWriter(out);
+		rdfWriter.start();
+		rdfWriter.writeTripleStringObject(
+				rdfWriter.getUri("http://example.org/Q1"),
+				RdfWriter.RDFS_LABEL, "a\u007Fb");
+		rdfWriter.finish();
+		assertEquals("<http://example.org/Q1> <" + Vocabulary.RDFS_LABEL
+				+ "> \"a\\u007Fb\" .\n", out.toString());
+	}
+
+}
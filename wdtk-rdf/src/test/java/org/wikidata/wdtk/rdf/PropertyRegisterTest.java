@@ -21,9 +21,12 @@ package org.wikidata.wdtk.rdf;
  */
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -40,12 +43,14 @@ import org.wikidata.wdtk.datamodel.interfaces.DatatypeIdValue;
 import org.wikidata.wdtk.datamodel.interfaces.DocumentDataFilter;
 import org.wikidata.wdtk.datamodel.interfaces.EntityDocument;
 import org.wikidata.wdtk.datamodel.interfaces.MonolingualTextValue;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
 import org.wikidata.wdtk.datamodel.interfaces.PropertyIdValue;
 import org.wikidata.wdtk.datamodel.interfaces.Reference;
 import org.wikidata.wdtk.datamodel.interfaces.SnakGroup;
 import org.wikidata.wdtk.datamodel.interfaces.Statement;
 import org.wikidata.wdtk.datamodel.interfaces.StatementGroup;
 import org.wikidata.wdtk.datamodel.interfaces.StatementRank;
+import org.wikidata.wdtk.testing.MockDirectoryManager;
 import org.wikidata.wdtk.wikibaseapi.ApiConnection;
 import org.wikidata.wdtk.wikibaseapi.WikibaseDataFetcher;
 import org.wikidata.wdtk.wikibaseapi.apierrors.MediaWikiApiErrorException;
@@ -59,6 +64,8 @@ public class PropertyRegisterTest {
 	final TestObjectFactory objectFactory = new TestObjectFactory();
 	final DataObjectFactory dataObjectFactory = new DataObjectFactoryImpl();
 
+	PropertyDocument p434Document;
+
 	@Before
 	public void setUp() throws MediaWikiApiErrorException {
 		Map<String, EntityDocument> mockResult = new HashMap<String, EntityDocument>();
@@ -96,14 +103,14 @@ public class PropertyRegisterTest {
 		mockStatementGroups.add(dataObjectFactory.getStatementGroup(Collections
 				.singletonList(p1921Statement)));
 
-		mockResult.put("P434",
-				dataObjectFactory.getPropertyDocument(pid434, Collections
-						.<MonolingualTextValue> emptyList(), Collections
-						.<MonolingualTextValue> emptyList(), Collections
-						.<MonolingualTextValue> emptyList(),
-						mockStatementGroups, dataObjectFactory
-								.getDatatypeIdValue(DatatypeIdValue.DT_STRING),
-						0));
+		this.p434Document = dataObjectFactory.getPropertyDocument(pid434,
+				Collections.<MonolingualTextValue> emptyList(),
+				Collections.<MonolingualTextValue> emptyList(),
+				Collections.<MonolingualTextValue> emptyList(),
+				mockStatementGroups,
+				dataObjectFactory.getDatatypeIdValue(DatatypeIdValue.DT_STRING),
+				0);
+		mockResult.put("P434", this.p434Document);
 		mockResult.put("P23", dataObjectFactory.getPropertyDocument(pid23,
 				Collections.<MonolingualTextValue> emptyList(),
 				Collections.<MonolingualTextValue> emptyList(),
@@ -206,4 +213,138 @@ public class PropertyRegisterTest {
 		assertEquals("P1921", pr.uriPatternPropertyId);
 	}
 
+	@Test
+	public void testOfflineMode() {
+		this.propertyRegister.setOfflineMode(true);
+		PropertyIdValue pid = this.dataObjectFactory.getPropertyIdValue("P434",
+				this.siteIri);
+		assertNull(this.propertyRegister.getPropertyType(pid));
+		assertNull(this.propertyRegister.getPropertyUriPattern(pid));
+		assertEquals(1, this.propertyRegister.smallestUnfetchedPropertyIdNumber);
+	}
+
+	@Test
+	public void testOfflineModeMissingProperties() {
+		this.propertyRegister.setOfflineMode(true);
+		PropertyIdValue pid = this.dataObjectFactory.getPropertyIdValue("P434",
+				this.siteIri);
+		assertNull(this.propertyRegister.getPropertyType(pid));
+		assertTrue(this.propertyRegister.missingProperties.contains("P434"));
+
+		// properties registered later are still found
+		this.propertyRegister.processPropertyDocument(this.p434Document);
+		assertEquals(DatatypeIdValue.DT_STRING,
+				this.propertyRegister.getPropertyType(pid));
+
+		this.propertyRegister.setOfflineMode(false);
+		assertTrue(this.propertyRegister.missingProperties.isEmpty());
+	}
+
+	@Test
+	public void testSetNullPropertyType() {
+		PropertyIdValue pid = this.dataObjectFactory.getPropertyIdValue("P434",
+				this.siteIri);
+		this.propertyRegister.setPropertyType(pid, DatatypeIdValue.DT_ITEM);
+		this.propertyRegister.setPropertyType(pid, null);
+		assertFalse(this.propertyRegister.datatypes.containsKey("P434"));
+	}
+
+	@Test
+	public void testProcessPropertyDocument() {
+		this.propertyRegister.setOfflineMode(true);
+		this.propertyRegister.processPropertyDocument(this.p434Document);
+		this.propertyRegister.processItemDocument(this.objectFactory
+				.createItemDocument());
+		PropertyIdValue pid = this.dataObjectFactory.getPropertyIdValue("P434",
+				this.siteIri);
+		assertEquals(DatatypeIdValue.DT_STRING,
+				this.propertyRegister.getPropertyType(pid));
+		assertEquals("http://musicbrainz.org/$1/artist",
+				this.propertyRegister.getPropertyUriPattern(pid));
+		assertEquals(1, this.propertyRegister.datatypes.size());
+	}
+
+	@Test
+	public void testProcessPropertyDocumentEmptyUriPattern() {
+		this.propertyRegister.setOfflineMode(true);
+		PropertyIdValue pid10 = this.dataObjectFactory.getPropertyIdValue(
+				"P10", this.siteIri);
+		PropertyIdValue pid11 = this.dataObjectFactory.getPropertyIdValue(
+				"P11", this.siteIri);
+
+		this.propertyRegister.processPropertyDocument(getStringPropertyDocument(
+				pid10, "", "http://example.org/$1"));
+		this.propertyRegister.processPropertyDocument(getStringPropertyDocument(
+				pid11, ""));
+
+		assertEquals("http://example.org/$1",
+				this.propertyRegister.getPropertyUriPattern(pid10));
+		assertNull(this.propertyRegister.getPropertyUriPattern(pid11));
+		assertEquals(DatatypeIdValue.DT_STRING,
+				this.propertyRegister.getPropertyType(pid11));
+	}
+
+	PropertyDocument getStringPropertyDocument(PropertyIdValue pid,
+			String... uriPatterns) {
+		PropertyIdValue pid1921 = this.dataObjectFactory.getPropertyIdValue(
+				"P1921", this.siteIri);
+		List<Statement> statements = new ArrayList<Statement>();
+		for (String uriPattern : uriPatterns) {
+			statements.add(dataObjectFactory.getStatement(dataObjectFactory
+					.getClaim(pid, dataObjectFactory.getValueSnak(pid1921,
+							dataObjectFactory.getStringValue(uriPattern)),
+							Collections.<SnakGroup> emptyList()), Collections
+					.<Reference> emptyList(), StatementRank.NORMAL, "000"));
+		}
+		return dataObjectFactory.getPropertyDocument(pid,
+				Collections.<MonolingualTextValue> emptyList(),
+				Collections.<MonolingualTextValue> emptyList(),
+				Collections.<MonolingualTextValue> emptyList(),
+				Collections.singletonList(dataObjectFactory
+						.getStatementGroup(statements)),
+				dataObjectFactory.getDatatypeIdValue(DatatypeIdValue.DT_STRING),
+				0);
+	}
+
+	@Test
+	public void testStoreAndLoad() throws IOException {
+		MockDirectoryManager directoryManager = new MockDirectoryManager(
+				Paths.get(System.getProperty("user.dir")), true, false);
+		PropertyIdValue pid434 = this.dataObjectFactory.getPropertyIdValue(
+				"P434", this.siteIri);
+		PropertyIdValue pid23 = this.dataObjectFactory.getPropertyIdValue(
+				"P23", this.siteIri);
+		this.propertyRegister.getPropertyType(pid434);
+		this.propertyRegister.storeToDirectory(directoryManager);
+
+		PropertyRegister loadedRegister = new PropertyRegister("P1921",
+				new ApiConnection("http://localhost/"), this.siteIri);
+		loadedRegister.setOfflineMode(true);
+		assertTrue(loadedRegister.loadFromDirectory(directoryManager));
+		assertEquals(DatatypeIdValue.DT_STRING,
+				loadedRegister.getPropertyType(pid434));
+		assertEquals("http://musicbrainz.org/$1/artist",
+				loadedRegister.getPropertyUriPattern(pid434));
+		assertEquals(DatatypeIdValue.DT_ITEM,
+				loadedRegister.getPropertyType(pid23));
+		assertNull(loadedRegister.getPropertyUriPattern(pid23));
+	}
+
+	@Test
+	public void testLoadMissingFile() throws IOException {
+		MockDirectoryManager directoryManager = new MockDirectoryManager(
+				Paths.get(System.getProperty("user.dir")), true, false);
+		assertFalse(this.propertyRegister.loadFromDirectory(directoryManager));
+	}
+
+	@Test(expected = IOException.class)
+	public void testLoadOtherSite() throws IOException {
+		MockDirectoryManager directoryManager = new MockDirectoryManager(
+				Paths.get(System.getProperty("user.dir")), true, false);
+		this.propertyRegister.storeToDirectory(directoryManager);
+		new PropertyRegister("P1921", new ApiConnection("http://localhost/"),
+				"http://other.example.org/entity/")
+				.loadFromDirectory(directoryManager);
+	}
+
 }
@@ -21,17 +21,39 @@ package org.wikidata.wdtk.rdf;
  */
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.openrdf.model.Model;
+import org.openrdf.model.impl.LinkedHashModel;
 import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFHandlerException;
 import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.StatementCollector;
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.datamodel.helpers.ItemDocumentBuilder;
+import org.wikidata.wdtk.datamodel.helpers.ReferenceBuilder;
+import org.wikidata.wdtk.datamodel.helpers.StatementBuilder;
 import org.wikidata.wdtk.datamodel.implementation.SitesImpl;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocument;
+import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
+import org.wikidata.wdtk.datamodel.interfaces.ItemIdValue;
+import org.wikidata.wdtk.datamodel.interfaces.Reference;
+import org.wikidata.wdtk.rdf.RdfSerializer.ConvertedBatch;
 
 public class RdfSerializerTest {
 
@@ -61,4 +83,240 @@ public class RdfSerializerTest {
 				.getResourceFromFile("completeRDFDocument.rdf")), model);
 	}
 
+	ByteArrayOutputStream serializeItems(int parallelism) {
+		return serializeItems(parallelism, false);
+	}
+
+	/**
+	 * Serializes a number of items that share values and references to
+	 * N-Triples, using the given number of threads.
+	 */
+	ByteArrayOutputStream serializeItems(int parallelism, boolean streaming) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		RdfSerializer serializer = new RdfSerializer(RDFFormat.NTRIPLES,
+				output, new SitesImpl(), new MockPropertyRegister());
+		serializer.setParallelism(parallelism);
+		serializer.setStreaming(streaming);
+		serializer.open();
+		serializer.processItemDocument(this.objectFactory.createItemDocument());
+		for (int i = 1; i <= 250; i++) {
+			serializer.processItemDocument(createItemDocument(i));
+		}
+		serializer.close();
+		return output;
+	}
+
+	/**
+	 * Creates an item document with a statement that has the same value and
+	 * reference for all items.
+	 */
+	ItemDocument createItemDocument(int i) {
+		Reference reference = ReferenceBuilder
+				.newInstance()
+				.withPropertyValue(
+						Datamodel.makeWikidataPropertyIdValue("P1003"),
+						Datamodel.makeStringValue("Some source")).build();
+		ItemIdValue itemIdValue = Datamodel.makeWikidataItemIdValue("Q" + i);
+		return ItemDocumentBuilder
+				.forItemId(itemIdValue)
+				.withLabel("Item " + i, "en")
+				.withStatement(
+						StatementBuilder
+								.forSubjectAndProperty(
+										itemIdValue,
+										Datamodel
+												.makeWikidataPropertyIdValue("P569"))
+								.withValue(
+										this.objectFactory
+												.createValueSnakTimeValue(
+														"P569").getValue())
+								.withReference(reference)
+								.withId("Q" + i + "$1").build()).build();
+	}
+
+	Model parseNTriples(ByteArrayOutputStream output)
+			throws RDFParseException, RDFHandlerException, IOException {
+		RDFParser parser = Rio.createParser(RDFFormat.NTRIPLES);
+		Model graph = new LinkedHashModel();
+		parser.setRDFHandler(new StatementCollector(graph));
+		parser.parse(new ByteArrayInputStream(output.toByteArray()),
+				"http://test/");
+		return graph;
+	}
+
+	@Test
+	public void testParallelSerialization() throws RDFParseException,
+			RDFHandlerException, IOException {
+		ByteArrayOutputStream sequential = serializeItems(1);
+		ByteArrayOutputStream parallel = serializeItems(3);
+
+		Model sequentialModel = parseNTriples(sequential);
+		Model parallelModel = parseNTriples(parallel);
+		assertEquals(sequentialModel.size(), parallelModel.size());
+		assertEquals(sequentialModel, parallelModel);
+		// No triple is written twice:
+		assertEquals(sequential.toString().split("\n").length, parallel
+				.toString().split("\n").length);
+	}
+
+	@Test
+	public void testParallelTripleCount() {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		RdfSerializer serializer = new RdfSerializer(RDFFormat.NTRIPLES,
+				output, new SitesImpl(), new MockPropertyRegister());
+		serializer.setParallelism(2);
+		serializer.open();
+		serializer.processItemDocument(this.objectFactory.createItemDocument());
+		serializer.close();
+		assertEquals(output.toString().split("\n").length,
+				serializer.getTripleCount());
+	}
+
+	/**
+	 * Checks that the triples of each subject in the given N-Triples are
+	 * written without interruption.
+	 */
+	void assertGroupedBySubject(ByteArrayOutputStream output) {
+		Set<String> finishedSubjects = new HashSet<>();
+		String currentSubject = null;
+		for (String line : output.toString().split("\n")) {
+			String subject = line.substring(0, line.indexOf(' '));
+			if (!subject.equals(currentSubject)) {
+				assertTrue("Subject " + subject + " is not grouped",
+						finishedSubjects.add(subject));
+				currentSubject = subject;
+			}
+		}
+	}
+
+	@Test
+	public void testStreamingSerialization() throws RDFParseException,
+			RDFHandlerException, IOException {
+		Model expected = parseNTriples(serializeItems(1));
+
+		ByteArrayOutputStream streamed = serializeItems(1, true);
+		assertEquals(expected, parseNTriples(streamed));
+		assertGroupedBySubject(streamed);
+
+		ByteArrayOutputStream parallelStreamed = serializeItems(3, true);
+		assertEquals(expected, parseNTriples(parallelStreamed));
+		assertGroupedBySubject(parallelStreamed);
+	}
+
+	@Test
+	public void testParallelDeclarationsPrecedeUse() {
+		ByteArrayOutputStream output = serializeItems(3, true);
+		String[] lines = output.toString().split("\n");
+
+		Set<String> declared = new HashSet<>();
+		for (String line : lines) {
+			if (line.endsWith("<http://www.w3.org/2002/07/owl#ObjectProperty> .")
+					|| line.endsWith("<http://www.w3.org/2002/07/owl#DatatypeProperty> .")) {
+				declared.add(line.substring(0, line.indexOf(' ')));
+			}
+		}
+		assertTrue(declared.size() > 0);
+
+		Set<String> declaredSoFar = new HashSet<>();
+		for (String line : lines) {
+			String[] parts = line.split(" ");
+			if (declared.contains(parts[1])) {
+				assertTrue("Property " + parts[1] + " used before declaration",
+						declaredSoFar.contains(parts[1]));
+			}
+			if (declared.contains(parts[0])) {
+				declaredSoFar.add(parts[0]);
+			}
+		}
+	}
+
+	@Test
+	public void testParallelValuesWrittenWithFirstUse()
+			throws RDFHandlerException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		RdfSerializer serializer = new RdfSerializer(RDFFormat.NTRIPLES,
+				output, new SitesImpl(), new MockPropertyRegister());
+		serializer.setParallelism(2);
+		serializer.setStreaming(true);
+		serializer.open();
+
+		// the later batch finishes first:
+		List<EntityDocument> batch1 = new ArrayList<>();
+		batch1.add(createItemDocument(1));
+		List<EntityDocument> batch2 = new ArrayList<>();
+		batch2.add(createItemDocument(2));
+		ConvertedBatch converted2 = serializer.convertBatch(batch2);
+		ConvertedBatch converted1 = serializer.convertBatch(batch1);
+		serializer.writeBatch(getDoneFuture(converted1));
+		serializer.writeBatch(getDoneFuture(converted2));
+		serializer.close();
+
+		String[] lines = output.toString().split("\n");
+		int firstLineOfQ2 = -1;
+		Set<String> valueLines = new HashSet<>();
+		for (int i = 0; i < lines.length; i++) {
+			String subject = lines[i].substring(0, lines[i].indexOf(' '));
+			if (firstLineOfQ2 < 0 && subject.contains("/Q2")) {
+				firstLineOfQ2 = i;
+			}
+			if (subject.startsWith("<http://www.wikidata.org/entity/"
+					+ Vocabulary.VALUE_PREFIX_TIME)
+					|| subject.startsWith("<http://www.wikidata.org/entity/"
+							+ Vocabulary.VALUE_PREFIX_REFERENCE)) {
+				assertTrue("Value or reference written after its first use",
+						firstLineOfQ2 < 0);
+				assertTrue("Triple written twice", valueLines.add(lines[i]));
+			}
+		}
+		assertTrue(firstLineOfQ2 > 0);
+		assertTrue(valueLines.size() > 0);
+		assertEquals(lines.length, serializer.getTripleCount());
+	}
+
+	static Future<ConvertedBatch> getDoneFuture(final ConvertedBatch batch) {
+		FutureTask<ConvertedBatch> future = new FutureTask<>(
+				new Callable<ConvertedBatch>() {
+					@Override
+					public ConvertedBatch call() {
+						return batch;
+					}
+				});
+		future.run();
+		return future;
+	}
+
+	@Test
+	public void testStreamingFlushesDocuments() throws RDFParseException,
+			RDFHandlerException, IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		RdfSerializer serializer = new RdfSerializer(RDFFormat.NTRIPLES,
+				output, new SitesImpl(), new MockPropertyRegister());
+		serializer.setTasks(RdfSerializer.TASK_ALL_ENTITIES
+				| RdfSerializer.TASK_ALL_EXACT_DATA
+				| RdfSerializer.TASK_TAXONOMY);
+		serializer.setStreaming(true);
+		assertTrue(serializer.isStreaming());
+		assertEquals(RdfSerializer.TASK_ALL_ENTITIES
+				| RdfSerializer.TASK_ALL_EXACT_DATA
+				| RdfSerializer.TASK_TAXONOMY, serializer.getTasks());
+		serializer.open();
+		serializer.processItemDocument(this.objectFactory.createItemDocument());
+
+		// all triples are available before closing the serializer:
+		assertEquals(serializer.getTripleCount(),
+				output.toString().split("\n").length);
+		assertTrue(parseNTriples(output).size() > 0);
+		serializer.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidParallelism() {
+		this.rdfSerializer.setParallelism(0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParallelismUnsupportedFormat() {
+		this.rdfSerializer.setParallelism(2);
+	}
+
 }
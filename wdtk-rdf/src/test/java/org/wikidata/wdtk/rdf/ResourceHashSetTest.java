@@ -0,0 +1,145 @@
+package org.wikidata.wdtk.rdf;
+
+/*
+ * #%L
+ * Wikidata Toolkit RDF
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class ResourceHashSetTest {
+
+	@Test
+	public void testAddContains() {
+		ResourceHashSet set = new ResourceHashSet(1024 * 1024);
+		assertFalse(set.contains("http://example.org/V1"));
+		assertTrue(set.add("http://example.org/V1"));
+		assertFalse(set.add("http://example.org/V1"));
+		assertTrue(set.contains("http://example.org/V1"));
+		assertFalse(set.contains("http://example.org/V2"));
+		assertTrue(set.add(""));
+		assertTrue(set.contains(""));
+
+		for (int i = 0; i < 10000; i++) {
+			assertTrue(set.add("http://example.org/R" + i));
+		}
+		for (int i = 0; i < 10000; i++) {
+			assertTrue(set.contains("http://example.org/R" + i));
+		}
+		assertEquals(0, set.getClearCount());
+	}
+
+	@Test
+	public void testFullSegment() {
+		// smallest possible set: one segment with two generations of 512 slots
+		ResourceHashSet set = new ResourceHashSet(0);
+		assertEquals(1, set.segments.length);
+		for (int i = 0; i < 384; i++) {
+			assertTrue(set.add("http://example.org/R" + i));
+		}
+		assertEquals(0, set.getClearCount());
+		assertTrue(set.add("http://example.org/R384"));
+		assertEquals(1, set.getClearCount());
+		// the previous generation is still known:
+		assertTrue(set.contains("http://example.org/R0"));
+		assertFalse(set.add("http://example.org/R0"));
+		assertTrue(set.contains("http://example.org/R384"));
+
+		for (int i = 385; i < 768; i++) {
+			assertTrue(set.add("http://example.org/R" + i));
+		}
+		assertEquals(2, set.getClearCount());
+		// R0 has been moved to the newer generation, R1 has been dropped:
+		assertTrue(set.contains("http://example.org/R0"));
+		assertFalse(set.contains("http://example.org/R1"));
+		assertTrue(set.contains("http://example.org/R767"));
+	}
+
+	@Test
+	public void testSegmentGrows() {
+		// 64 segments with two generations of at most 2048 slots
+		ResourceHashSet set = new ResourceHashSet(4 * 1024 * 1024);
+		assertEquals(64, set.segments.length);
+		assertEquals(1024, set.segments[0].slots);
+		for (int i = 0; i < 64000; i++) {
+			assertTrue(set.add("http://example.org/R" + i));
+		}
+		assertEquals(0, set.getClearCount());
+		assertEquals(2048, set.segments[0].slots);
+		for (int i = 0; i < 64000; i++) {
+			assertTrue(set.contains("http://example.org/R" + i));
+		}
+	}
+
+	@Test
+	public void testParseMemorySize() {
+		assertEquals(1000, ResourceHashSet.parseMemorySize("1000"));
+		assertEquals(2048, ResourceHashSet.parseMemorySize("2k"));
+		assertEquals(3L * 1024 * 1024, ResourceHashSet.parseMemorySize("3M"));
+		assertEquals(4L * 1024 * 1024 * 1024,
+				ResourceHashSet.parseMemorySize("4g"));
+	}
+
+	@Test
+	public void testDefaultMemory() {
+		assertTrue(ResourceHashSet.getDefaultMemory() <= ResourceHashSet.DEFAULT_MEMORY);
+		assertTrue(ResourceHashSet.getDefaultMemory() <= ResourceHashSet
+				.getMaxDirectMemory());
+	}
+
+	@Test
+	public void testConcurrentAdd() throws InterruptedException,
+			ExecutionException {
+		final ResourceHashSet set = new ResourceHashSet();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<Integer>> results = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			results.add(executor.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() {
+					int added = 0;
+					for (int i = 0; i < 10000; i++) {
+						if (set.add("http://example.org/R" + i)) {
+							added++;
+						}
+					}
+					return added;
+				}
+			}));
+		}
+		int added = 0;
+		for (Future<Integer> result : results) {
+			added += result.get();
+		}
+		executor.shutdown();
+		assertEquals(10000, added);
+	}
+
+}
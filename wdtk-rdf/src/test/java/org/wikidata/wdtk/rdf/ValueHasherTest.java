@@ -0,0 +1,167 @@
+package org.wikidata.wdtk.rdf;
+
+/*
+ * #%L
+ * Wikidata Toolkit RDF
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Test;
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.datamodel.interfaces.TimeValue;
+
+public class ValueHasherTest {
+
+	final TestObjectFactory objectFactory = new TestObjectFactory();
+
+	@After
+	public void resetHashFunction() {
+		Vocabulary.setValueHashFunction(ValueHasher.HashFunction.MD5);
+	}
+
+	static TimeValue getTimeValue(int year) {
+		return Datamodel.makeTimeValue(year, (byte) 3, (byte) 14, (byte) 0,
+				(byte) 0, (byte) 0, TimeValue.PREC_DAY, 0, 0, 60,
+				TimeValue.CM_GREGORIAN_PRO);
+	}
+
+	@Test
+	public void testMd5Compatibility() throws NoSuchAlgorithmException {
+		TimeValue value = getTimeValue(1879);
+
+		// The way these URIs have been computed before:
+		MessageDigest md = MessageDigest.getInstance("MD5");
+		md.update(ByteBuffer.allocate(8).putLong(0, value.getYear()));
+		md.update(value.getMonth());
+		md.update(value.getDay());
+		md.update(value.getHour());
+		md.update(value.getMinute());
+		md.update(value.getSecond());
+		md.update(value.getPreferredCalendarModel().getBytes(
+				StandardCharsets.UTF_8));
+		md.update(ByteBuffer.allocate(4).putInt(0, value.getBeforeTolerance()));
+		md.update(ByteBuffer.allocate(4).putInt(0, value.getAfterTolerance()));
+		md.update(ByteBuffer.allocate(4).putInt(0, value.getTimezoneOffset()));
+		StringBuilder expected = new StringBuilder("http://test/"
+				+ Vocabulary.VALUE_PREFIX_TIME);
+		for (byte b : md.digest()) {
+			expected.append(String.format("%02x", b & 0xFF));
+		}
+
+		assertEquals(expected.toString(),
+				Vocabulary.getTimeValueUri(value, "http://test/"));
+	}
+
+	@SuppressWarnings("deprecation")
+	@Test
+	public void testBytesToHex() {
+		assertEquals("00ff7f80",
+				Vocabulary.bytesToHex(new byte[] { 0, -1, 127, -128 }));
+		assertEquals("", Vocabulary.bytesToHex(new byte[0]));
+	}
+
+	@Test
+	public void testMurmur3() {
+		ValueHasher hasher = new ValueHasher(ValueHasher.HashFunction.MURMUR3);
+		assertEquals("00000000000000000000000000000000",
+				hasher.getHexDigest());
+		hasher.updateString("hello");
+		assertEquals("cbd8a7b341bd9b025b1e906a48ae1d19", hasher.getHexDigest());
+		hasher.updateString("The quick brown fox jumps over the lazy dog");
+		String hash = hasher.getHexDigest();
+		hasher.updateString("The quick brown fox jumps over the lazy dog");
+		assertEquals(hash, hasher.getHexDigest());
+		hasher.updateString("The quick brown fox jumps over the lazy cog");
+		assertNotEquals(hash, hasher.getHexDigest());
+	}
+
+	@Test
+	public void testNonAsciiString() throws NoSuchAlgorithmException {
+		ValueHasher hasher = new ValueHasher(ValueHasher.HashFunction.MD5);
+		hasher.update((byte) 1);
+		hasher.updateString("K\u00F6ln");
+		hasher.updateString(null);
+
+		MessageDigest md = MessageDigest.getInstance("MD5");
+		md.update((byte) 1);
+		md.update("K\u00F6ln".getBytes(StandardCharsets.UTF_8));
+		StringBuilder expected = new StringBuilder();
+		for (byte b : md.digest()) {
+			expected.append(String.format("%02x", b & 0xFF));
+		}
+		assertEquals(expected.toString(), hasher.getHexDigest());
+	}
+
+	@Test
+	public void testHashFunctionSetting() {
+		TimeValue value = getTimeValue(1879);
+		String md5Uri = Vocabulary.getTimeValueUri(value, "http://test/");
+		Vocabulary.setValueHashFunction(ValueHasher.HashFunction.MURMUR3);
+		String murmurUri = Vocabulary.getTimeValueUri(value, "http://test/");
+		assertNotEquals(md5Uri, murmurUri);
+		assertEquals(md5Uri.length(), murmurUri.length());
+		assertEquals(murmurUri,
+				Vocabulary.getTimeValueUri(value, "http://test/"));
+	}
+
+	@Test
+	public void testConcurrentUse() throws InterruptedException,
+			ExecutionException {
+		final List<String> expected = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			expected.add(Vocabulary.getTimeValueUri(getTimeValue(i), ""));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<Boolean>> results = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			results.add(executor.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					for (int i = 0; i < 1000; i++) {
+						if (!expected.get(i).equals(
+								Vocabulary.getTimeValueUri(getTimeValue(i), ""))) {
+							return false;
+						}
+					}
+					return true;
+				}
+			}));
+		}
+		for (Future<Boolean> result : results) {
+			assertEquals(true, result.get());
+		}
+		executor.shutdown();
+	}
+
+}
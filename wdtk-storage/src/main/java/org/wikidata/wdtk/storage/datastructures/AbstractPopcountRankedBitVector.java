@@ -0,0 +1,301 @@
+package org.wikidata.wdtk.storage.datastructures;
+
+/*
+ * #%L
+ * Wikidata Toolkit Storage
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+
+/**
+ * Abstract base class for implementations of {@link RankedBitVector} that
+ * store their bits in 64 bit words and answer rank and select queries by
+ * counting the bits of whole words. Subclasses only need to provide access to
+ * the words; they must call {@link #invalidateIndex(long)} when bits are
+ * changed, but not when bits are appended.
+ * <p>
+ * The vector is divided into blocks of {@value #BLOCK_SIZE} bits (eight
+ * words), and blocks are grouped into superblocks of {@value #SUPERBLOCK_SIZE}
+ * bits. For every superblock, the number of <code>true</code> bits before it
+ * is stored as a long; for every block, the number of <code>true</code> bits
+ * before it within its superblock is stored as a char. This directory needs
+ * about 3% of the memory of the bit vector. A rank query reads one entry of
+ * each level and counts the bits of at most eight words. A select query
+ * performs a binary search over the superblocks and over the blocks of one
+ * superblock, counts the bits of at most eight words, and finally selects the
+ * bit within a word with a broadword method.
+ * <p>
+ * The directory is extended lazily when a query finds that new blocks have
+ * been added. Appending bits never invalidates existing entries, so that each
+ * block is only counted once in append-only workloads. Changing a bit only
+ * invalidates the entries of the blocks after the changed bit.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+abstract class AbstractPopcountRankedBitVector implements RankedBitVector {
+
+	static final int LG_WORDS_PER_BLOCK = 3;
+	static final int LG_BLOCK_SIZE = LG_WORDS_PER_BLOCK
+			+ BitVectorImpl.LG_WORD_SIZE;
+	static final int BLOCK_SIZE = 1 << LG_BLOCK_SIZE;
+	static final int LG_BLOCKS_PER_SUPERBLOCK = 7;
+	static final int BLOCKS_PER_SUPERBLOCK = 1 << LG_BLOCKS_PER_SUPERBLOCK;
+	static final int LG_SUPERBLOCK_SIZE = LG_BLOCKS_PER_SUPERBLOCK
+			+ LG_BLOCK_SIZE;
+	static final int SUPERBLOCK_SIZE = 1 << LG_SUPERBLOCK_SIZE;
+
+	static final long ONES_STEP_8 = 0x0101010101010101L;
+	static final long MSBS_STEP_8 = 0x8080808080808080L;
+
+	/**
+	 * Table for selecting bits in bytes. The entry at index
+	 * <code>(rank &lt;&lt; 8) | b</code> is the position of the bit that is
+	 * preceded by <code>rank</code> other <code>true</code> bits in byte
+	 * <code>b</code>.
+	 */
+	static final byte[] SELECT_IN_BYTE = new byte[8 * 256];
+	static {
+		for (int b = 0; b < 256; b++) {
+			int rank = 0;
+			for (int position = 0; position < 8; position++) {
+				if ((b & (1 << position)) != 0) {
+					SELECT_IN_BYTE[(rank << 8) | b] = (byte) position;
+					rank++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Number of <code>true</code> bits before each superblock.
+	 */
+	long[] superblockCounts = new long[1];
+
+	/**
+	 * Number of <code>true</code> bits before each block, counted from the
+	 * start of its superblock.
+	 */
+	char[] blockCounts = new char[1];
+
+	/**
+	 * Number of blocks for which the directory entries are up to date.
+	 */
+	int indexedBlocks = 0;
+
+	/**
+	 * Returns the word with the given index. Bits that are not part of the
+	 * vector must be <code>false</code>.
+	 *
+	 * @param index
+	 *            index of a word that contains bits of the vector
+	 * @return the word
+	 */
+	abstract long getWord(long index);
+
+	@Override
+	public long countBits(boolean bit, long position) {
+		if (position < 0) {
+			return 0;
+		}
+		long trueValues = countTrueBits(Math.min(position, size() - 1));
+		return bit ? trueValues : ((position + 1) - trueValues);
+	}
+
+	@Override
+	public long findPosition(boolean bit, long nOccurrence) {
+		if (nOccurrence <= 0) {
+			return NOT_FOUND;
+		}
+		long size = size();
+		long trueValues = countTrueBits(size - 1);
+		if (nOccurrence > (bit ? trueValues : size - trueValues)) {
+			return NOT_FOUND;
+		}
+
+		// Find the last superblock and block with fewer occurrences before:
+		int low = 0;
+		int high = (this.indexedBlocks - 1) >>> LG_BLOCKS_PER_SUPERBLOCK;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (countBeforeSuperblock(bit, middle) < nOccurrence) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		low = low << LG_BLOCKS_PER_SUPERBLOCK;
+		high = Math.min(this.indexedBlocks - 1, low + BLOCKS_PER_SUPERBLOCK
+				- 1);
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (countBeforeBlock(bit, middle) < nOccurrence) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		// Find the word, and the bit within the word:
+		long remaining = nOccurrence - countBeforeBlock(bit, low);
+		for (long i = (long) low << LG_WORDS_PER_BLOCK;; i++) {
+			long word = bit ? getWord(i) : ~getWord(i);
+			int count = Long.bitCount(word);
+			if (remaining <= count) {
+				return (i << BitVectorImpl.LG_WORD_SIZE)
+						+ selectInWord(word, (int) remaining - 1);
+			}
+			remaining -= count;
+		}
+	}
+
+	/**
+	 * Returns the position of the bit that is preceded by <i>rank</i> other
+	 * <code>true</code> bits in the given word. The method uses the broadword
+	 * algorithm of Vigna: the number of <code>true</code> bits up to each
+	 * byte is computed for all bytes in parallel, which leads to the byte that
+	 * contains the bit, and the bit is then looked up in a table.
+	 *
+	 * @param word
+	 *            the word to search
+	 * @param rank
+	 *            number of <code>true</code> bits before the bit to find;
+	 *            must be smaller than the number of <code>true</code> bits
+	 *            in the word
+	 * @return the position of the bit within the word
+	 */
+	static int selectInWord(long word, int rank) {
+		long byteSums = word - ((word >>> 1) & 0x5555555555555555L);
+		byteSums = (byteSums & 0x3333333333333333L)
+				+ ((byteSums >>> 2) & 0x3333333333333333L);
+		byteSums = ((byteSums + (byteSums >>> 4)) & 0x0F0F0F0F0F0F0F0FL)
+				* ONES_STEP_8;
+		// byte i of byteSums now holds the number of true bits in bytes 0..i
+		long rankStep8 = rank * ONES_STEP_8;
+		int place = Long
+				.bitCount(((rankStep8 | MSBS_STEP_8) - byteSums) & MSBS_STEP_8) << 3;
+		int byteRank = rank - (int) (((byteSums << 8) >>> place) & 0xFF);
+		return place
+				+ SELECT_IN_BYTE[(byteRank << 8)
+						| (int) ((word >>> place) & 0xFF)];
+	}
+
+	/**
+	 * Invalidates the directory entries that depend on the bit at the given
+	 * position. This must be called whenever a bit is changed.
+	 *
+	 * @param position
+	 *            position of the changed bit
+	 */
+	void invalidateIndex(long position) {
+		this.indexedBlocks = (int) Math.min(this.indexedBlocks,
+				(position >>> LG_BLOCK_SIZE) + 1);
+	}
+
+	/**
+	 * Returns the number of <code>true</code> bits up to the given position.
+	 *
+	 * @param position
+	 *            a position smaller than the size of the vector, or -1
+	 * @return number of <code>true</code> bits in the positions 0 to
+	 *         <i>position</i>
+	 */
+	long countTrueBits(long position) {
+		updateIndex();
+		if (position < 0) {
+			return 0;
+		}
+		int block = (int) (position >>> LG_BLOCK_SIZE);
+		long lastWord = position >>> BitVectorImpl.LG_WORD_SIZE;
+
+		long result = this.superblockCounts[block >>> LG_BLOCKS_PER_SUPERBLOCK]
+				+ this.blockCounts[block];
+		for (long i = (long) block << LG_WORDS_PER_BLOCK; i < lastWord; i++) {
+			result += Long.bitCount(getWord(i));
+		}
+		return result
+				+ Long.bitCount(getWord(lastWord)
+						& (-1L >>> (BitVectorImpl.WORD_MASK - (position & BitVectorImpl.WORD_MASK))));
+	}
+
+	/**
+	 * Returns the number of occurrences of a bit before the given superblock.
+	 */
+	long countBeforeSuperblock(boolean bit, int superblock) {
+		long trueValues = this.superblockCounts[superblock];
+		return bit ? trueValues : ((long) superblock << LG_SUPERBLOCK_SIZE)
+				- trueValues;
+	}
+
+	/**
+	 * Returns the number of occurrences of a bit before the given block.
+	 */
+	long countBeforeBlock(boolean bit, int block) {
+		long trueValues = this.superblockCounts[block >>> LG_BLOCKS_PER_SUPERBLOCK]
+				+ this.blockCounts[block];
+		return bit ? trueValues : ((long) block << LG_BLOCK_SIZE) - trueValues;
+	}
+
+	/**
+	 * Returns the number of <code>true</code> bits in the given block.
+	 */
+	int countInBlock(int block) {
+		long wordCount = (size() + BitVectorImpl.WORD_MASK) >>> BitVectorImpl.LG_WORD_SIZE;
+		long end = Math.min(wordCount, (long) (block + 1) << LG_WORDS_PER_BLOCK);
+		int result = 0;
+		for (long i = (long) block << LG_WORDS_PER_BLOCK; i < end; i++) {
+			result += Long.bitCount(getWord(i));
+		}
+		return result;
+	}
+
+	/**
+	 * Computes the directory entries of all blocks that have been added or
+	 * changed since the last update.
+	 */
+	void updateIndex() {
+		int blockCount = (int) ((size() + BLOCK_SIZE - 1) >>> LG_BLOCK_SIZE);
+		if (this.indexedBlocks >= blockCount) {
+			return;
+		}
+
+		if (this.blockCounts.length < blockCount) {
+			this.blockCounts = Arrays.copyOf(this.blockCounts,
+					Math.max(blockCount, 2 * this.blockCounts.length));
+			int superblockCount = ((this.blockCounts.length - 1) >>> LG_BLOCKS_PER_SUPERBLOCK) + 1;
+			this.superblockCounts = Arrays.copyOf(this.superblockCounts,
+					superblockCount);
+		}
+
+		int block = this.indexedBlocks;
+		long count = 0;
+		if (block > 0) {
+			count = countBeforeBlock(true, block - 1) + countInBlock(block - 1);
+		}
+		for (; block < blockCount; block++) {
+			int superblock = block >>> LG_BLOCKS_PER_SUPERBLOCK;
+			if ((block & (BLOCKS_PER_SUPERBLOCK - 1)) == 0) {
+				this.superblockCounts[superblock] = count;
+			}
+			this.blockCounts[block] = (char) (count - this.superblockCounts[superblock]);
+			count += countInBlock(block);
+		}
+		this.indexedBlocks = blockCount;
+	}
+
+}
@@ -0,0 +1,491 @@
+package org.wikidata.wdtk.storage.datastructures;
+
+/*
+ * #%L
+ * Wikidata Toolkit Storage
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Implementation of {@link BitVector} that only stores the parts of the vector
+ * that contain bits set to <code>true</code>, in the style of "roaring"
+ * bitmaps. The vector is divided into chunks of 2<sup>16</sup> bits. Chunks
+ * without any bits set are not stored at all. Chunks with few bits set store
+ * the positions of these bits in a sorted array. Chunks with more than
+ * {@link #MAX_ARRAY_CHUNK_SIZE} bits set use a plain bitmap of 8 KiB instead,
+ * which is only converted back when less than half of this number remains.
+ * <p>
+ * This is much more compact than {@link BitVectorImpl} for sparse vectors with
+ * large positions, such as sets of revision ids, and it never needs to copy
+ * the stored bits when the vector grows. Optionally, the bitmaps can be
+ * allocated outside of the Java heap, so that large vectors do not put
+ * pressure on the garbage collector.
+ * <p>
+ * Like {@link BitVectorImpl}, this bit vector is <i>flexible</i>: bits can be
+ * set at any non-negative position below {@link #MAX_SIZE}, and positions
+ * outside of the vector contain <code>false</code>. Equal bit vectors of both
+ * implementations have the same hash code.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+public class CompressedBitVectorImpl implements BitVector, Iterable<Boolean> {
+
+	static final int LG_CHUNK_SIZE = 16;
+	static final int CHUNK_MASK = 0xFFFF;
+	static final int WORDS_PER_CHUNK = 1 << (LG_CHUNK_SIZE - BitVectorImpl.LG_WORD_SIZE);
+	static final int MINIMUM_ARRAY_SIZE = 16;
+	static final int MINIMUM_ARRAY_CHUNK_SIZE = 4;
+
+	/**
+	 * Largest number of bits that are stored in a sorted array before a
+	 * bitmap is used. At this size, both representations need 8 KiB.
+	 */
+	static final int MAX_ARRAY_CHUNK_SIZE = 4096;
+
+	/**
+	 * Upper bound for the size of the bit vector.
+	 */
+	public static final long MAX_SIZE = ((long) Integer.MAX_VALUE + 1) << LG_CHUNK_SIZE;
+
+	/**
+	 * Part of the bit vector that stores 2<sup>16</sup> bits.
+	 *
+	 * @author Markus Kroetzsch
+	 *
+	 */
+	static abstract class Chunk {
+
+		/**
+		 * @param position
+		 *            position within the chunk
+		 * @return value of the bit at the given position
+		 */
+		abstract boolean getBit(int position);
+
+		/**
+		 * Sets a bit in this chunk. The chunk may change its representation
+		 * while doing so, and the chunk that should be stored in its place is
+		 * returned.
+		 *
+		 * @param position
+		 *            position within the chunk
+		 * @param bit
+		 *            value of the bit
+		 * @return the chunk that contains the result, or null if no bits are
+		 *         set anymore
+		 */
+		abstract Chunk setBit(int position, boolean bit);
+
+		/**
+		 * @param wordIndex
+		 *            index of a word within the chunk
+		 * @return the word of 64 bits at the given index, with the least
+		 *         significant bit first
+		 */
+		abstract long getWord(int wordIndex);
+
+		/**
+		 * @return number of bits that are set in this chunk
+		 */
+		abstract int getCardinality();
+
+		/**
+		 * @return sum of all words of this chunk, as used for hash codes
+		 */
+		abstract long getSumOfWords();
+	}
+
+	/**
+	 * Chunk that stores the positions of its bits in a sorted array.
+	 *
+	 * @author Markus Kroetzsch
+	 *
+	 */
+	class ArrayChunk extends Chunk {
+
+		char[] positions = new char[MINIMUM_ARRAY_CHUNK_SIZE];
+		int cardinality = 0;
+
+		@Override
+		boolean getBit(int position) {
+			return Arrays.binarySearch(this.positions, 0, this.cardinality,
+					(char) position) >= 0;
+		}
+
+		@Override
+		Chunk setBit(int position, boolean bit) {
+			int index = Arrays.binarySearch(this.positions, 0,
+					this.cardinality, (char) position);
+			if (bit && index < 0) {
+				if (this.cardinality == MAX_ARRAY_CHUNK_SIZE) {
+					return new BitmapChunk(this).setBit(position, true);
+				}
+				index = -index - 1;
+				if (this.cardinality == this.positions.length) {
+					this.positions = Arrays.copyOf(this.positions, Math.min(
+							2 * this.positions.length, MAX_ARRAY_CHUNK_SIZE));
+				}
+				System.arraycopy(this.positions, index, this.positions,
+						index + 1, this.cardinality - index);
+				this.positions[index] = (char) position;
+				this.cardinality++;
+			} else if (!bit && index >= 0) {
+				System.arraycopy(this.positions, index + 1, this.positions,
+						index, this.cardinality - index - 1);
+				this.cardinality--;
+				if (this.cardinality == 0) {
+					return null;
+				}
+			}
+			return this;
+		}
+
+		@Override
+		long getWord(int wordIndex) {
+			int index = Arrays.binarySearch(this.positions, 0,
+					this.cardinality,
+					(char) (wordIndex << BitVectorImpl.LG_WORD_SIZE));
+			if (index < 0) {
+				index = -index - 1;
+			}
+			long word = 0;
+			while (index < this.cardinality
+					&& (this.positions[index] >> BitVectorImpl.LG_WORD_SIZE) == wordIndex) {
+				word |= 1L << (this.positions[index] & BitVectorImpl.WORD_MASK);
+				index++;
+			}
+			return word;
+		}
+
+		@Override
+		int getCardinality() {
+			return this.cardinality;
+		}
+
+		@Override
+		long getSumOfWords() {
+			long sum = 0;
+			for (int i = 0; i < this.cardinality; i++) {
+				sum += 1L << (this.positions[i] & BitVectorImpl.WORD_MASK);
+			}
+			return sum;
+		}
+	}
+
+	/**
+	 * Chunk that stores its bits in a bitmap.
+	 *
+	 * @author Markus Kroetzsch
+	 *
+	 */
+	class BitmapChunk extends Chunk {
+
+		final LongBuffer words;
+		int cardinality = 0;
+
+		/**
+		 * Constructor. Creates a bitmap with the bits of the given chunk.
+		 *
+		 * @param arrayChunk
+		 *            the chunk to convert
+		 */
+		BitmapChunk(ArrayChunk arrayChunk) {
+			if (CompressedBitVectorImpl.this.offHeap) {
+				this.words = ByteBuffer.allocateDirect(8 * WORDS_PER_CHUNK)
+						.order(ByteOrder.nativeOrder()).asLongBuffer();
+			} else {
+				this.words = LongBuffer.allocate(WORDS_PER_CHUNK);
+			}
+			for (int i = 0; i < arrayChunk.cardinality; i++) {
+				setBit(arrayChunk.positions[i], true);
+			}
+		}
+
+		@Override
+		boolean getBit(int position) {
+			return ((this.words.get(position >> BitVectorImpl.LG_WORD_SIZE) >> (position & BitVectorImpl.WORD_MASK)) & 1) == 1;
+		}
+
+		@Override
+		Chunk setBit(int position, boolean bit) {
+			int wordIndex = position >> BitVectorImpl.LG_WORD_SIZE;
+			long word = this.words.get(wordIndex);
+			long mask = 1L << (position & BitVectorImpl.WORD_MASK);
+			if (bit && (word & mask) == 0) {
+				this.words.put(wordIndex, word | mask);
+				this.cardinality++;
+			} else if (!bit && (word & mask) != 0) {
+				this.words.put(wordIndex, word & ~mask);
+				this.cardinality--;
+				if (this.cardinality <= MAX_ARRAY_CHUNK_SIZE / 2) {
+					return toArrayChunk();
+				}
+			}
+			return this;
+		}
+
+		@Override
+		long getWord(int wordIndex) {
+			return this.words.get(wordIndex);
+		}
+
+		@Override
+		int getCardinality() {
+			return this.cardinality;
+		}
+
+		@Override
+		long getSumOfWords() {
+			long sum = 0;
+			for (int i = 0; i < WORDS_PER_CHUNK; i++) {
+				sum += this.words.get(i);
+			}
+			return sum;
+		}
+
+		/**
+		 * @return an array chunk with the same bits as this chunk
+		 */
+		ArrayChunk toArrayChunk() {
+			ArrayChunk result = new ArrayChunk();
+			result.positions = new char[Math.max(this.cardinality,
+					MINIMUM_ARRAY_CHUNK_SIZE)];
+			for (int i = 0; i < WORDS_PER_CHUNK; i++) {
+				long word = this.words.get(i);
+				while (word != 0) {
+					int bit = Long.numberOfTrailingZeros(word);
+					result.positions[result.cardinality++] = (char) ((i << BitVectorImpl.LG_WORD_SIZE) + bit);
+					word &= word - 1;
+				}
+			}
+			return result;
+		}
+	}
+
+	final boolean offHeap;
+
+	Chunk[] chunks = new Chunk[MINIMUM_ARRAY_SIZE];
+	long size = 0;
+	int hashCode;
+	boolean validHashCode = false;
+
+	/**
+	 * Constructor of a bit vector of size 0 that stores its data on the Java
+	 * heap.
+	 */
+	public CompressedBitVectorImpl() {
+		this(false);
+	}
+
+	/**
+	 * Constructor of a bit vector of size 0.
+	 *
+	 * @param offHeap
+	 *            if true, the bitmaps of dense chunks are stored in direct
+	 *            buffers outside of the Java heap
+	 */
+	public CompressedBitVectorImpl(boolean offHeap) {
+		this.offHeap = offHeap;
+	}
+
+	@Override
+	public boolean addBit(boolean bit) {
+		this.validHashCode = false;
+		this.size++;
+		if (bit) {
+			setBit(this.size - 1, true);
+		}
+		return true;
+	}
+
+	@Override
+	public boolean getBit(long position) {
+		assertNonNegativePosition(position);
+		if (position >= this.size) {
+			return false;
+		}
+		Chunk chunk = getChunk((int) (position >> LG_CHUNK_SIZE));
+		return chunk != null && chunk.getBit((int) position & CHUNK_MASK);
+	}
+
+	@Override
+	public void setBit(long position, boolean bit) {
+		assertNonNegativePosition(position);
+		if (position >= MAX_SIZE) {
+			throw new IndexOutOfBoundsException("Position " + position
+					+ " is out of bounds.");
+		}
+		this.validHashCode = false;
+		if (position >= this.size) {
+			this.size = position + 1;
+		}
+
+		int chunkIndex = (int) (position >> LG_CHUNK_SIZE);
+		if (chunkIndex >= this.chunks.length) {
+			if (!bit) {
+				return;
+			}
+			this.chunks = Arrays.copyOf(this.chunks, (int) Math.min(
+					Math.max(2L * this.chunks.length, chunkIndex + 1L),
+					Integer.MAX_VALUE));
+		}
+		Chunk chunk = this.chunks[chunkIndex];
+		if (chunk == null) {
+			if (!bit) {
+				return;
+			}
+			chunk = new ArrayChunk();
+		}
+		this.chunks[chunkIndex] = chunk.setBit((int) position & CHUNK_MASK,
+				bit);
+	}
+
+	@Override
+	public long size() {
+		return this.size;
+	}
+
+	@Override
+	public Iterator<Boolean> iterator() {
+		return new BitVectorIterator(this);
+	}
+
+	/**
+	 * Returns the number of bits that are set to <code>true</code>.
+	 *
+	 * @return number of bits set
+	 */
+	public long countBits() {
+		long result = 0;
+		for (Chunk chunk : this.chunks) {
+			if (chunk != null) {
+				result += chunk.getCardinality();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param position
+	 *            position
+	 * @throws IndexOutOfBoundsException
+	 *             if the position is a negative number
+	 */
+	void assertNonNegativePosition(long position)
+			throws IndexOutOfBoundsException {
+		if (position < 0) {
+			throw new IndexOutOfBoundsException("Position " + position
+					+ " is out of bounds.");
+		}
+	}
+
+	/**
+	 * @param chunkIndex
+	 *            index of a chunk
+	 * @return the chunk, or null if it does not contain any bits
+	 */
+	Chunk getChunk(int chunkIndex) {
+		return chunkIndex < this.chunks.length ? this.chunks[chunkIndex]
+				: null;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof BitVector)) {
+			return false;
+		}
+		BitVector other = (BitVector) obj;
+		if (this.size != other.size()) {
+			return false;
+		}
+
+		if (other instanceof CompressedBitVectorImpl) {
+			// compare chunks word by word, skipping chunks that are empty
+			CompressedBitVectorImpl otherCompressed = (CompressedBitVectorImpl) other;
+			int chunkCount = Math.max(this.chunks.length,
+					otherCompressed.chunks.length);
+			for (int i = 0; i < chunkCount; i++) {
+				Chunk chunk = getChunk(i);
+				Chunk otherChunk = otherCompressed.getChunk(i);
+				if (chunk == null || otherChunk == null) {
+					if (chunk != otherChunk) {
+						return false;
+					}
+					continue;
+				}
+				if (chunk.getCardinality() != otherChunk.getCardinality()) {
+					return false;
+				}
+				for (int j = 0; j < WORDS_PER_CHUNK; j++) {
+					if (chunk.getWord(j) != otherChunk.getWord(j)) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+
+		for (long i = 0; i < this.size; i++) {
+			// bit-by-bit comparison
+			if (getBit(i) != other.getBit(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Computes the hash code in the same way as {@link BitVectorImpl}, so
+	 * that equal bit vectors have equal hash codes.
+	 */
+	@Override
+	public int hashCode() {
+		if (!this.validHashCode) {
+			long sum = 0;
+			for (Chunk chunk : this.chunks) {
+				if (chunk != null) {
+					sum += chunk.getSumOfWords();
+				}
+			}
+			this.hashCode = (int) (this.size + 0x1F * sum);
+			this.validHashCode = true;
+		}
+		return this.hashCode;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (long position = 0; position < this.size;) {
+			sb.append(getBit(position) ? "1" : "0");
+			position++;
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,494 @@
+package org.wikidata.wdtk.storage.datastructures;
+
+/*
+ * #%L
+ * Wikidata Toolkit Storage
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Implementation of {@link RankedBitVector} that stores its bits in a
+ * memory-mapped file. The bits can therefore be persisted and opened again
+ * later without reading them, and the vector can be opened read-only by
+ * several processes at the same time. Since a single mapping cannot exceed 2
+ * GiB, the file is mapped in segments of fixed size (1 GiB by default), so
+ * that vectors of hundreds of billions of bits can be used. The bits do not
+ * use any memory on the Java heap; the operating system loads and writes
+ * them as needed.
+ * <p>
+ * The file starts with a header of {@value #HEADER_SIZE} bytes that contains
+ * a magic number and the size of the vector, followed by the bits as 64 bit
+ * words in little-endian byte order. The header is updated whenever the size
+ * changes, but changes are only guaranteed to reach the disk after calling
+ * {@link #flush()} or {@link #close()}. The file is enlarged in steps when bits
+ * are added, so it may be longer than needed for the bits of the vector.
+ * <p>
+ * Rank and select are implemented as in {@link PopcountRankedBitVectorImpl}.
+ * The directory that is used for this is <b>not persisted</b>: it is only kept
+ * in memory, on the Java heap, and is lost when the vector is closed. After
+ * each opening, the first rank or select query therefore counts the bits of
+ * all words of the file up to the queried position, which reads the whole
+ * file in the worst case. Applications that open large vectors often and
+ * answer only few queries should keep them open instead. Like
+ * {@link BitVectorImpl}, this bit vector is <i>flexible</i>: setting a bit
+ * beyond the end enlarges the vector, and positions outside of the vector
+ * contain <code>false</code>. Equal bit vectors of both implementations have
+ * the same hash code.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+public class MappedBitVectorImpl extends AbstractPopcountRankedBitVector
+		implements Iterable<Boolean>, Closeable {
+
+	/**
+	 * Bytes at the start of every file, the last of which is the version of
+	 * the format.
+	 */
+	static final byte[] MAGIC_NUMBER = { 'W', 'D', 'T', 'K', 'B', 'I', 'T', 1 };
+
+	/**
+	 * Number of bytes before the first word of the vector.
+	 */
+	static final int HEADER_SIZE = 16;
+
+	/**
+	 * Position of the size of the vector in the header.
+	 */
+	static final int SIZE_OFFSET = 8;
+
+	/**
+	 * Binary logarithm of the default size of segments in bytes.
+	 */
+	static final int DEFAULT_LG_SEGMENT_SIZE = 30;
+
+	/**
+	 * Number of words that are mapped at least when a file is enlarged.
+	 */
+	static final int MINIMUM_CAPACITY = 1024;
+
+	final Path path;
+	final FileChannel channel;
+	final boolean readOnly;
+
+	final int lgSegmentWords;
+	final long segmentMask;
+
+	final MappedByteBuffer header;
+	/**
+	 * Mapped segments of the file. The last segment may be shorter than the
+	 * others.
+	 */
+	MappedByteBuffer[] buffers = new MappedByteBuffer[0];
+	/**
+	 * Views of the mapped segments as words.
+	 */
+	LongBuffer[] segments = new LongBuffer[0];
+	/**
+	 * Number of words that are currently mapped.
+	 */
+	long capacity = 0;
+
+	long size;
+	int hashCode;
+	boolean validHashCode = false;
+
+	/**
+	 * Opens the bit vector stored in the given file for reading and writing.
+	 * If the file does not exist or is empty, a new bit vector of size 0 is
+	 * created in it.
+	 *
+	 * @param path
+	 *            the file that stores the bit vector
+	 * @throws IOException
+	 *             if the file could not be opened or does not contain a bit
+	 *             vector
+	 */
+	public MappedBitVectorImpl(Path path) throws IOException {
+		this(path, false);
+	}
+
+	/**
+	 * Opens the bit vector stored in the given file. If the vector is opened
+	 * read-only, the file must exist already, and all methods that modify the
+	 * vector throw an {@link UnsupportedOperationException}. Otherwise, a new
+	 * bit vector of size 0 is created if the file does not exist or is empty.
+	 *
+	 * @param path
+	 *            the file that stores the bit vector
+	 * @param readOnly
+	 *            if true, the vector cannot be changed
+	 * @throws IOException
+	 *             if the file could not be opened or does not contain a bit
+	 *             vector
+	 */
+	public MappedBitVectorImpl(Path path, boolean readOnly) throws IOException {
+		this(path, readOnly, DEFAULT_LG_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Constructor that allows to set the size of segments, so that the use of
+	 * several segments can be tested with small files.
+	 *
+	 * @param path
+	 *            the file that stores the bit vector
+	 * @param readOnly
+	 *            if true, the vector cannot be changed
+	 * @param lgSegmentSize
+	 *            binary logarithm of the size of segments in bytes; at least
+	 *            3 and at most 30
+	 * @throws IOException
+	 *             if the file could not be opened or does not contain a bit
+	 *             vector
+	 */
+	MappedBitVectorImpl(Path path, boolean readOnly, int lgSegmentSize)
+			throws IOException {
+		if (lgSegmentSize < 3 || lgSegmentSize > 30) {
+			throw new IllegalArgumentException("Invalid segment size 2^"
+					+ lgSegmentSize);
+		}
+		this.path = path;
+		this.readOnly = readOnly;
+		this.lgSegmentWords = lgSegmentSize - 3;
+		this.segmentMask = (1L << this.lgSegmentWords) - 1;
+
+		if (readOnly) {
+			this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		} else {
+			this.channel = FileChannel.open(path, StandardOpenOption.READ,
+					StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+		}
+
+		try {
+			long fileSize = this.channel.size();
+			MapMode mapMode = readOnly ? MapMode.READ_ONLY
+					: MapMode.READ_WRITE;
+			if (fileSize == 0 && !readOnly) {
+				this.header = this.channel.map(mapMode, 0, HEADER_SIZE);
+				this.header.order(ByteOrder.LITTLE_ENDIAN);
+				this.header.put(MAGIC_NUMBER);
+				this.header.putLong(SIZE_OFFSET, 0);
+				this.size = 0;
+			} else {
+				if (fileSize < HEADER_SIZE) {
+					throw new IOException("File " + path
+							+ " does not contain a bit vector");
+				}
+				this.header = this.channel.map(mapMode, 0, HEADER_SIZE);
+				this.header.order(ByteOrder.LITTLE_ENDIAN);
+				byte[] magicNumber = new byte[MAGIC_NUMBER.length];
+				this.header.get(magicNumber);
+				if (!Arrays.equals(MAGIC_NUMBER, magicNumber)) {
+					throw new IOException("File " + path
+							+ " does not contain a bit vector");
+				}
+				this.size = this.header.getLong(SIZE_OFFSET);
+				if (this.size < 0
+						|| fileSize < HEADER_SIZE + 8 * getSizeInWords(this.size)) {
+					throw new IOException("Bit vector file " + path
+							+ " is truncated");
+				}
+			}
+
+			if (readOnly) {
+				mapWords(getSizeInWords(this.size));
+			} else {
+				mapWords((fileSize - HEADER_SIZE) / 8);
+			}
+		} catch (IOException | RuntimeException e) {
+			this.channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @param sizeInBits
+	 *            size in bits
+	 * @return the number of words needed to store the given number of bits
+	 */
+	static long getSizeInWords(long sizeInBits) {
+		return (sizeInBits + BitVectorImpl.WORD_MASK) >>> BitVectorImpl.LG_WORD_SIZE;
+	}
+
+	/**
+	 * Returns the file that stores this bit vector.
+	 *
+	 * @return the path of the file
+	 */
+	public Path getPath() {
+		return this.path;
+	}
+
+	/**
+	 * Returns true if this bit vector cannot be changed.
+	 *
+	 * @return true if the vector was opened read-only
+	 */
+	public boolean isReadOnly() {
+		return this.readOnly;
+	}
+
+	@Override
+	public boolean addBit(boolean bit) {
+		assertWritable();
+		long position = this.size;
+		ensureSize(position + 1);
+		if (bit) {
+			flipBit(position);
+		}
+		// the new bit is behind all counted blocks; nothing to invalidate
+		return true;
+	}
+
+	@Override
+	public boolean getBit(long position) {
+		assertNonNegativePosition(position);
+		if (position >= this.size) {
+			return false;
+		}
+		return ((getWord(position >>> BitVectorImpl.LG_WORD_SIZE) >>> (position & BitVectorImpl.WORD_MASK)) & 1) == 1;
+	}
+
+	@Override
+	public void setBit(long position, boolean bit) {
+		assertWritable();
+		assertNonNegativePosition(position);
+		ensureSize(position + 1);
+		if (getBit(position) != bit) {
+			flipBit(position);
+			invalidateIndex(position);
+		}
+	}
+
+	@Override
+	public long size() {
+		return this.size;
+	}
+
+	@Override
+	public Iterator<Boolean> iterator() {
+		return new BitVectorIterator(this);
+	}
+
+	/**
+	 * Writes all changes of the bit vector to the file.
+	 */
+	public void flush() {
+		if (this.readOnly) {
+			return;
+		}
+		for (MappedByteBuffer buffer : this.buffers) {
+			buffer.force();
+		}
+		this.header.force();
+	}
+
+	/**
+	 * Writes all changes to the file and closes it. The bit vector must not
+	 * be used after this. The mapped memory is released by the garbage
+	 * collector.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!this.channel.isOpen()) {
+			return;
+		}
+		flush();
+		this.channel.close();
+		this.buffers = new MappedByteBuffer[0];
+		this.segments = new LongBuffer[0];
+		this.capacity = 0;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof BitVector)) {
+			return false;
+		}
+		BitVector other = (BitVector) obj;
+		if (this.size != other.size()) {
+			return false;
+		}
+
+		long comparisonFirstPos = 0;
+		if (other instanceof AbstractPopcountRankedBitVector) {
+			// compare full words; the last word is compared bit by bit
+			AbstractPopcountRankedBitVector otherBitVector = (AbstractPopcountRankedBitVector) other;
+			long fullWords = this.size >>> BitVectorImpl.LG_WORD_SIZE;
+			for (long i = 0; i < fullWords; i++) {
+				if (getWord(i) != otherBitVector.getWord(i)) {
+					return false;
+				}
+			}
+			comparisonFirstPos = fullWords << BitVectorImpl.LG_WORD_SIZE;
+		}
+
+		for (long i = comparisonFirstPos; i < this.size; i++) {
+			if (getBit(i) != other.getBit(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns a hash code that is computed like the one of
+	 * {@link BitVectorImpl}, so that equal vectors have equal hash codes.
+	 */
+	@Override
+	public int hashCode() {
+		if (!this.validHashCode) {
+			int ret = (int) this.size;
+			long fullWords = this.size >>> BitVectorImpl.LG_WORD_SIZE;
+			for (long i = 0; i < fullWords; i++) {
+				ret += (0x1F * getWord(i));
+			}
+			long remainingBits = this.size & BitVectorImpl.WORD_MASK;
+			if (remainingBits > 0) {
+				ret += (0x1F * (getWord(fullWords) & ((1L << remainingBits) - 1)));
+			}
+			this.hashCode = ret;
+			this.validHashCode = true;
+		}
+		return this.hashCode;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (long position = 0; position < this.size; position++) {
+			sb.append(getBit(position) ? "1" : "0");
+		}
+		return sb.toString();
+	}
+
+	@Override
+	long getWord(long index) {
+		return this.segments[(int) (index >>> this.lgSegmentWords)]
+				.get((int) (index & this.segmentMask));
+	}
+
+	/**
+	 * Inverts the bit at the given position, which must be within the mapped
+	 * part of the file.
+	 *
+	 * @param position
+	 *            position of the bit
+	 */
+	void flipBit(long position) {
+		long index = position >>> BitVectorImpl.LG_WORD_SIZE;
+		LongBuffer segment = this.segments[(int) (index >>> this.lgSegmentWords)];
+		int segmentIndex = (int) (index & this.segmentMask);
+		segment.put(segmentIndex, segment.get(segmentIndex)
+				^ (1L << (position & BitVectorImpl.WORD_MASK)));
+		this.validHashCode = false;
+	}
+
+	/**
+	 * Enlarges the vector to the given size, if it is smaller. New bits are
+	 * <code>false</code>.
+	 *
+	 * @param newSize
+	 *            the minimal size of the vector
+	 */
+	void ensureSize(long newSize) {
+		if (newSize <= this.size) {
+			return;
+		}
+		long words = getSizeInWords(newSize);
+		if (words > this.capacity) {
+			long newCapacity = Math.max(MINIMUM_CAPACITY, Math.min(
+					2 * this.capacity, this.capacity + this.segmentMask + 1));
+			try {
+				mapWords(Math.max(words, newCapacity));
+			} catch (IOException e) {
+				throw new RuntimeException("Could not enlarge bit vector file "
+						+ this.path + ": " + e.toString(), e);
+			}
+		}
+		this.size = newSize;
+		this.header.putLong(SIZE_OFFSET, newSize);
+		this.validHashCode = false;
+	}
+
+	/**
+	 * Maps the file so that the given number of words can be accessed. If the
+	 * file is shorter than this, it is enlarged; the new parts of the file
+	 * contain only <code>false</code> bits.
+	 *
+	 * @param words
+	 *            number of words that should be mapped
+	 * @throws IOException
+	 *             if the file could not be mapped
+	 */
+	void mapWords(long words) throws IOException {
+		if (words <= this.capacity) {
+			return;
+		}
+		MapMode mapMode = this.readOnly ? MapMode.READ_ONLY
+				: MapMode.READ_WRITE;
+		int segmentCount = (int) ((words + this.segmentMask) >>> this.lgSegmentWords);
+		int oldSegmentCount = this.segments.length;
+		this.buffers = Arrays.copyOf(this.buffers, segmentCount);
+		this.segments = Arrays.copyOf(this.segments, segmentCount);
+
+		// Remap the last segment if it is too short, and map the new ones:
+		for (int i = Math.max(0, oldSegmentCount - 1); i < segmentCount; i++) {
+			long start = (long) i << this.lgSegmentWords;
+			long length = Math.min(words - start, this.segmentMask + 1);
+			if (this.segments[i] != null
+					&& this.segments[i].capacity() >= length) {
+				continue;
+			}
+			this.buffers[i] = this.channel.map(mapMode, HEADER_SIZE + 8
+					* start, 8 * length);
+			this.segments[i] = this.buffers[i].order(ByteOrder.LITTLE_ENDIAN)
+					.asLongBuffer();
+		}
+		this.capacity = words;
+	}
+
+	void assertWritable() {
+		if (this.readOnly) {
+			throw new UnsupportedOperationException("Bit vector file "
+					+ this.path + " is opened read-only");
+		}
+	}
+
+	void assertNonNegativePosition(long position) {
+		if (position < 0) {
+			throw new IndexOutOfBoundsException("Position " + position
+					+ " is out of bounds.");
+		}
+	}
+
+}
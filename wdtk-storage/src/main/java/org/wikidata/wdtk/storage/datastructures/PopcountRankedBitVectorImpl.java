@@ -0,0 +1,124 @@
+package org.wikidata.wdtk.storage.datastructures;
+
+/*
+ * #%L
+ * Wikidata Toolkit Storage
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.Iterator;
+
+/**
+ * Implementation of {@link RankedBitVector} that answers rank and select
+ * queries by counting the bits of whole words of the underlying
+ * {@link BitVectorImpl}, rather than looking at the bits one by one. See
+ * {@link AbstractPopcountRankedBitVector} for details on the directory that
+ * is used for this purpose.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+public class PopcountRankedBitVectorImpl extends
+		AbstractPopcountRankedBitVector implements Iterable<Boolean> {
+
+	final BitVectorImpl bitVector;
+
+	/**
+	 * Constructor of a ranked bit vector of size 0.
+	 */
+	public PopcountRankedBitVectorImpl() {
+		this.bitVector = new BitVectorImpl();
+	}
+
+	/**
+	 * Copy constructor of a ranked bit vector.
+	 *
+	 * @param bitVector
+	 *            bit vector
+	 */
+	public PopcountRankedBitVectorImpl(BitVector bitVector) {
+		this.bitVector = new BitVectorImpl(bitVector);
+	}
+
+	/**
+	 * Constructor of a ranked bit vector of size <i>initialSize</i>. The bit
+	 * vector contains <code>false</code> at all indexes.
+	 *
+	 * @param initialSize
+	 *            initial size of this ranked bit vector
+	 */
+	public PopcountRankedBitVectorImpl(long initialSize) {
+		this.bitVector = new BitVectorImpl(initialSize);
+	}
+
+	@Override
+	public boolean addBit(boolean bit) {
+		// the new bit is behind all counted blocks; nothing to invalidate
+		return this.bitVector.addBit(bit);
+	}
+
+	@Override
+	public boolean getBit(long position) {
+		return this.bitVector.getBit(position);
+	}
+
+	@Override
+	public void setBit(long position, boolean bit) {
+		if (this.bitVector.getBit(position) != bit) {
+			this.bitVector.setBit(position, bit);
+			invalidateIndex(position);
+		}
+	}
+
+	@Override
+	public long size() {
+		return this.bitVector.size();
+	}
+
+	@Override
+	public Iterator<Boolean> iterator() {
+		return this.bitVector.iterator();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof BitVector)) {
+			return false;
+		}
+		return this.bitVector.equals(obj);
+	}
+
+	@Override
+	public int hashCode() {
+		return this.bitVector.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return this.bitVector.toString();
+	}
+
+	@Override
+	long getWord(long index) {
+		return this.bitVector.arrayOfBits[(int) index];
+	}
+
+}
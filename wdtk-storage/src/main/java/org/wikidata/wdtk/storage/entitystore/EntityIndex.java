@@ -0,0 +1,127 @@
+package org.wikidata.wdtk.storage.entitystore;
+
+/*
+ * #%L
+ * Wikidata Toolkit Storage
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.wikidata.wdtk.storage.datastructures.MappedBitVectorImpl;
+
+/**
+ * Dense index from the numeric ids of entities of one type to the locations
+ * of their documents in an {@link EntityStore}. A {@link MappedBitVectorImpl}
+ * has a <code>true</code> bit for every numeric id that is stored, and the
+ * locations are stored in the order of the ids in a {@link MappedLongArray}.
+ * The location of the <i>n</i>-th stored id is therefore found with a single
+ * rank query, independently of how sparse the ids are.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+class EntityIndex implements Closeable {
+
+	final MappedBitVectorImpl ids;
+	final MappedLongArray locations;
+
+	/**
+	 * Opens the index files with the given name in the given directory for
+	 * reading.
+	 *
+	 * @param directory
+	 *            the directory of the entity store
+	 * @param name
+	 *            the name of the index, used as a prefix for its files
+	 * @throws IOException
+	 *             if the files could not be opened
+	 */
+	EntityIndex(Path directory, String name) throws IOException {
+		this.ids = new MappedBitVectorImpl(getIdsPath(directory, name), true);
+		try {
+			this.locations = new MappedLongArray(getLocationsPath(directory,
+					name), this.ids.countBits(true, this.ids.size() - 1), true);
+		} catch (IOException | RuntimeException e) {
+			this.ids.close();
+			throw e;
+		}
+	}
+
+	static Path getIdsPath(Path directory, String name) {
+		return directory.resolve(name + ".ids");
+	}
+
+	static Path getLocationsPath(Path directory, String name) {
+		return directory.resolve(name + ".locations");
+	}
+
+	/**
+	 * Returns the numeric part of an entity id such as "Q42".
+	 *
+	 * @param entityId
+	 *            the id of an entity
+	 * @return the number after the first letter, or -1 if the id does not
+	 *         have this form
+	 */
+	static int getNumericId(String entityId) {
+		if (entityId.length() < 2 || entityId.length() > 11) {
+			return -1;
+		}
+		long result = 0;
+		for (int i = 1; i < entityId.length(); i++) {
+			char c = entityId.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			result = 10 * result + (c - '0');
+		}
+		return result <= Integer.MAX_VALUE ? (int) result : -1;
+	}
+
+	/**
+	 * Returns the location of the document with the given numeric id.
+	 *
+	 * @param numericId
+	 *            the numeric part of the id of the entity
+	 * @return the location, or -1 if there is no such document
+	 */
+	long getLocation(int numericId) {
+		if (numericId < 0 || !this.ids.getBit(numericId)) {
+			return -1;
+		}
+		return this.locations.get(this.ids.countBits(true, numericId) - 1);
+	}
+
+	/**
+	 * Returns the number of documents in the index.
+	 *
+	 * @return number of documents
+	 */
+	long size() {
+		return this.locations.length();
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.ids.close();
+		this.locations.close();
+	}
+
+}
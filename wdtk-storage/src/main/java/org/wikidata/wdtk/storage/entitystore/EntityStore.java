@@ -0,0 +1,434 @@
+package org.wikidata.wdtk.storage.entitystore;
+
+/*
+ * #%L
+ * Wikidata Toolkit Storage
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.wikidata.wdtk.datamodel.interfaces.DocumentDataFilter;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocument;
+import org.wikidata.wdtk.datamodel.json.jackson.JacksonTermedStatementDocument;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Compact store of entity documents on disk that provides random access by
+ * entity id. Stores are created with an {@link EntityStoreBuilder}, usually
+ * while processing a dump, and can then be used like a local replacement of
+ * the Web API for fetching the data of many entities.
+ * <p>
+ * A store is a directory with a data file and an index for items and
+ * properties. The data file consists of blocks that hold the JSON
+ * serializations of many documents and that are compressed individually. The
+ * index maps the numeric part of each entity id to the location of its
+ * document, given by the offset of its block and its number within the block
+ * (see {@link EntityIndex}). Recently used blocks are kept in a cache in
+ * decompressed form, so that looking up entities that are stored close to
+ * each other, such as entities with similar ids, only decompresses each block
+ * once.
+ * <p>
+ * The methods of this class are thread-safe, but lookups are not performed
+ * in parallel.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+public class EntityStore implements Closeable {
+
+	/**
+	 * Default number of decompressed blocks that are cached.
+	 */
+	public static final int DEFAULT_CACHE_SIZE = 256;
+
+	/**
+	 * Bytes at the start of the data file, the last of which is the version
+	 * of the format.
+	 */
+	static final byte[] MAGIC_NUMBER = { 'W', 'D', 'T', 'K', 'E', 'N', 'T', 1 };
+
+	/**
+	 * Number of bytes before the data of a block: the compressed and the
+	 * uncompressed length as ints.
+	 */
+	static final int BLOCK_HEADER_SIZE = 8;
+
+	/**
+	 * Number of bits of a location that are used for the number of the
+	 * document within its block.
+	 */
+	static final int LOCATION_DOCUMENT_BITS = 16;
+
+	static final String DATA_FILE = "entities.data";
+	static final String ITEM_INDEX = "items";
+	static final String PROPERTY_INDEX = "properties";
+
+	/**
+	 * Cache of decompressed blocks that removes the least recently used block
+	 * when it is full.
+	 *
+	 * @author Markus Kroetzsch
+	 *
+	 */
+	static class BlockCache extends LinkedHashMap<Long, byte[]> {
+
+		private static final long serialVersionUID = 2617538563286347218L;
+
+		final int capacity;
+
+		BlockCache(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+			return size() > this.capacity;
+		}
+	}
+
+	final Path directory;
+	final String siteIri;
+
+	final FileChannel dataChannel;
+	final EntityIndex itemIndex;
+	final EntityIndex propertyIndex;
+	final BlockCache blockCache;
+
+	final DocumentDataFilter filter = new DocumentDataFilter();
+	final ObjectReader documentReader;
+
+	/**
+	 * Number of blocks that have been read from disk.
+	 */
+	long blockReads = 0;
+
+	/**
+	 * Opens the entity store in the given directory, using a cache of
+	 * {@link #DEFAULT_CACHE_SIZE} blocks.
+	 *
+	 * @param directory
+	 *            the directory that contains the store
+	 * @param siteIri
+	 *            the IRI of the site that the data belongs to, such as
+	 *            {@link org.wikidata.wdtk.datamodel.helpers.Datamodel#SITE_WIKIDATA}
+	 * @throws IOException
+	 *             if the store could not be opened
+	 */
+	public EntityStore(Path directory, String siteIri) throws IOException {
+		this(directory, siteIri, DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * Opens the entity store in the given directory.
+	 *
+	 * @param directory
+	 *            the directory that contains the store
+	 * @param siteIri
+	 *            the IRI of the site that the data belongs to, such as
+	 *            {@link org.wikidata.wdtk.datamodel.helpers.Datamodel#SITE_WIKIDATA}
+	 * @param cacheSize
+	 *            the number of decompressed blocks that are cached; each
+	 *            block needs about 64 KiB of memory
+	 * @throws IOException
+	 *             if the store could not be opened
+	 */
+	public EntityStore(Path directory, String siteIri, int cacheSize)
+			throws IOException {
+		this.directory = directory;
+		this.siteIri = siteIri;
+		this.blockCache = new BlockCache(cacheSize);
+		this.documentReader = new ObjectMapper().reader(
+				JacksonTermedStatementDocument.class).withAttribute(
+				JacksonTermedStatementDocument.FILTER_ATTRIBUTE, this.filter);
+
+		this.dataChannel = FileChannel.open(directory.resolve(DATA_FILE),
+				StandardOpenOption.READ);
+		EntityIndex items = null;
+		try {
+			ByteBuffer magicNumber = ByteBuffer
+					.allocate(MAGIC_NUMBER.length);
+			readFully(magicNumber, 0);
+			if (!Arrays.equals(MAGIC_NUMBER, magicNumber.array())) {
+				throw new IOException("Directory " + directory
+						+ " does not contain an entity store");
+			}
+			items = new EntityIndex(directory, ITEM_INDEX);
+			this.itemIndex = items;
+			this.propertyIndex = new EntityIndex(directory, PROPERTY_INDEX);
+		} catch (IOException | RuntimeException e) {
+			this.dataChannel.close();
+			if (items != null) {
+				items.close();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the encoded location of a document.
+	 *
+	 * @param blockOffset
+	 *            the offset of the block in the data file
+	 * @param document
+	 *            the number of the document within the block
+	 * @return the location
+	 */
+	static long getLocation(long blockOffset, int document) {
+		return (blockOffset << LOCATION_DOCUMENT_BITS) | document;
+	}
+
+	/**
+	 * Returns the filter that is used when reading documents. Changes to the
+	 * filter affect all documents that are retrieved afterwards: data that is
+	 * not admitted by the filter is skipped when reading the JSON, which also
+	 * makes retrieval faster.
+	 *
+	 * @return the filter used by this object
+	 */
+	public DocumentDataFilter getFilter() {
+		return this.filter;
+	}
+
+	/**
+	 * Returns the number of entity documents in the store.
+	 *
+	 * @return number of documents
+	 */
+	public long getEntityCount() {
+		return this.itemIndex.size() + this.propertyIndex.size();
+	}
+
+	/**
+	 * Retrieves the document of the entity with the given id. The result is
+	 * an {@link EntityDocument} or null if the store has no such document.
+	 *
+	 * @param entityId
+	 *            string ID (e.g., "P31" or "Q42") of the requested entity
+	 * @return retrieved entity document or null
+	 * @throws IOException
+	 *             if the data could not be read
+	 */
+	public EntityDocument getEntityDocument(String entityId)
+			throws IOException {
+		return getEntityDocuments(entityId).get(entityId);
+	}
+
+	/**
+	 * Retrieves the documents of the entities with the given ids. The result
+	 * is a map from entity IDs to {@link EntityDocument} objects. If the store
+	 * has no document for an ID, this key is not set in the map.
+	 *
+	 * @param entityIds
+	 *            string IDs (e.g., "P31", "Q42") of requested entities
+	 * @return map from IDs for which data could be found to the documents that
+	 *         were retrieved
+	 * @throws IOException
+	 *             if the data could not be read
+	 */
+	public Map<String, EntityDocument> getEntityDocuments(String... entityIds)
+			throws IOException {
+		return getEntityDocuments(Arrays.asList(entityIds));
+	}
+
+	/**
+	 * Retrieves the documents of the entities with the given ids. The result
+	 * is a map from entity IDs to {@link EntityDocument} objects. If the store
+	 * has no document for an ID, this key is not set in the map. The documents
+	 * are read in the order in which they are stored, so that every block is
+	 * only read once even if the cache is small.
+	 *
+	 * @param entityIds
+	 *            list of string IDs (e.g., "P31", "Q42") of requested entities
+	 * @return map from IDs for which data could be found to the documents that
+	 *         were retrieved
+	 * @throws IOException
+	 *             if the data could not be read
+	 */
+	public synchronized Map<String, EntityDocument> getEntityDocuments(
+			List<String> entityIds) throws IOException {
+		final Map<String, Long> locations = new HashMap<>();
+		for (String entityId : entityIds) {
+			long location = findLocation(entityId);
+			if (location >= 0) {
+				locations.put(entityId, location);
+			}
+		}
+
+		List<String> foundIds = new ArrayList<>(locations.keySet());
+		Collections.sort(foundIds, new Comparator<String>() {
+			@Override
+			public int compare(String id1, String id2) {
+				long location1 = locations.get(id1);
+				long location2 = locations.get(id2);
+				return location1 < location2 ? -1
+						: (location1 == location2 ? 0 : 1);
+			}
+		});
+
+		Map<String, EntityDocument> result = new HashMap<>();
+		for (String entityId : foundIds) {
+			result.put(entityId, readDocument(locations.get(entityId)));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of blocks that have been read from disk so far,
+	 * i.e., the number of lookups that could not be answered from the cache.
+	 *
+	 * @return number of blocks read
+	 */
+	public synchronized long getBlockReadCount() {
+		return this.blockReads;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		this.dataChannel.close();
+		this.itemIndex.close();
+		this.propertyIndex.close();
+		this.blockCache.clear();
+	}
+
+	/**
+	 * Returns the location of the document of the given entity.
+	 *
+	 * @param entityId
+	 *            string ID of the entity
+	 * @return the location, or -1 if the store has no such document
+	 */
+	long findLocation(String entityId) {
+		int numericId = EntityIndex.getNumericId(entityId);
+		if (numericId < 0) {
+			return -1;
+		}
+		switch (entityId.charAt(0)) {
+		case 'Q':
+			return this.itemIndex.getLocation(numericId);
+		case 'P':
+			return this.propertyIndex.getLocation(numericId);
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * Reads the document at the given location.
+	 *
+	 * @param location
+	 *            the location of the document
+	 * @return the document
+	 * @throws IOException
+	 *             if the document could not be read
+	 */
+	EntityDocument readDocument(long location) throws IOException {
+		byte[] block = getBlock(location >>> LOCATION_DOCUMENT_BITS);
+		int document = (int) (location & ((1 << LOCATION_DOCUMENT_BITS) - 1));
+		int offset = 0;
+		for (int i = 0; i < document; i++) {
+			offset += 4 + readInt(block, offset);
+		}
+		JacksonTermedStatementDocument result = this.documentReader
+				.readValue(block, offset + 4, readInt(block, offset));
+		result.setSiteIri(this.siteIri);
+		return result;
+	}
+
+	/**
+	 * Returns the decompressed data of the block at the given offset, using
+	 * the cache if possible.
+	 *
+	 * @param blockOffset
+	 *            offset of the block in the data file
+	 * @return the data of the block
+	 * @throws IOException
+	 *             if the block could not be read
+	 */
+	byte[] getBlock(long blockOffset) throws IOException {
+		byte[] block = this.blockCache.get(blockOffset);
+		if (block != null) {
+			return block;
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+		readFully(header, blockOffset);
+		int compressedLength = header.getInt(0);
+		int length = header.getInt(4);
+		ByteBuffer compressed = ByteBuffer.allocate(compressedLength);
+		readFully(compressed, blockOffset + BLOCK_HEADER_SIZE);
+
+		block = new byte[length];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(compressed.array());
+			if (inflater.inflate(block) != length || !inflater.finished()) {
+				throw new IOException("Corrupted block at offset "
+						+ blockOffset);
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupted block at offset " + blockOffset
+					+ ": " + e.getMessage(), e);
+		} finally {
+			inflater.end();
+		}
+
+		this.blockReads++;
+		this.blockCache.put(blockOffset, block);
+		return block;
+	}
+
+	/**
+	 * Fills the given buffer with data from the given position of the data
+	 * file.
+	 */
+	void readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int count = this.dataChannel.read(buffer,
+					position + buffer.position());
+			if (count < 0) {
+				throw new IOException("Unexpected end of file "
+						+ this.directory.resolve(DATA_FILE));
+			}
+		}
+	}
+
+	static int readInt(byte[] data, int offset) {
+		return ((data[offset] & 0xFF) << 24)
+				| ((data[offset + 1] & 0xFF) << 16)
+				| ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+	}
+
+}
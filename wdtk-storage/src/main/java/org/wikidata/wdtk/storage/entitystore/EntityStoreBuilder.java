@@ -0,0 +1,362 @@
+package org.wikidata.wdtk.storage.entitystore;
+
+/*
+ * #%L
+ * Wikidata Toolkit Storage
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wikidata.wdtk.datamodel.helpers.DatamodelConverter;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocument;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentDumpProcessor;
+import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
+import org.wikidata.wdtk.datamodel.json.jackson.JacksonItemDocument;
+import org.wikidata.wdtk.datamodel.json.jackson.JacksonObjectFactory;
+import org.wikidata.wdtk.datamodel.json.jackson.JacksonPropertyDocument;
+import org.wikidata.wdtk.storage.datastructures.MappedBitVectorImpl;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Processor that writes all entity documents it receives into an
+ * {@link EntityStore}, so that they can later be retrieved by their id. It is
+ * typically registered with the dump processing controller to ingest a whole
+ * JSON dump once. An existing store in the same directory is replaced.
+ * <p>
+ * Documents are serialized in JSON and collected in blocks of about
+ * {@value #BLOCK_SIZE} bytes, which are compressed and appended to the data
+ * file. The index from ids to locations is created when {@link #close()} is
+ * called. Until then, the location of each document is recorded in a
+ * temporary file, so that the memory needed does not depend on the number of
+ * documents. If a document occurs more than once, the last version is stored.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+public class EntityStoreBuilder implements EntityDocumentDumpProcessor {
+
+	static final Logger logger = LoggerFactory
+			.getLogger(EntityStoreBuilder.class);
+
+	/**
+	 * Uncompressed size in bytes after which a block is finished.
+	 */
+	static final int BLOCK_SIZE = 64 * 1024;
+
+	/**
+	 * Largest number of documents in one block.
+	 */
+	static final int MAX_BLOCK_DOCUMENTS = 0xFFFF;
+
+	static final String PENDING_FILE = "locations.tmp";
+
+	static final byte ITEM = 0;
+	static final byte PROPERTY = 1;
+
+	static final DatamodelConverter datamodelConverter = new DatamodelConverter(
+			new JacksonObjectFactory());
+	static final ObjectMapper mapper = new ObjectMapper();
+	static {
+		mapper.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+	}
+
+	final Path directory;
+	final int compressionLevel;
+
+	OutputStream dataOutputStream;
+	Deflater deflater;
+	DataOutputStream pendingOutputStream;
+	MappedBitVectorImpl itemIds;
+	MappedBitVectorImpl propertyIds;
+
+	final ByteArrayOutputStream documentBuffer = new ByteArrayOutputStream(
+			64 * 1024);
+	final ByteArrayOutputStream blockBuffer = new ByteArrayOutputStream(
+			2 * BLOCK_SIZE);
+	final DataOutputStream block = new DataOutputStream(this.blockBuffer);
+	byte[] compressedBuffer = new byte[2 * BLOCK_SIZE];
+
+	/**
+	 * Offset of the current block in the data file.
+	 */
+	long blockOffset;
+	/**
+	 * Number of documents in the current block.
+	 */
+	int blockDocuments;
+	/**
+	 * Number of locations in the temporary file.
+	 */
+	long pendingCount;
+	/**
+	 * Number of documents that have been stored.
+	 */
+	long documentCount;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param directory
+	 *            the directory that the store is written to; it is created
+	 *            if it does not exist
+	 */
+	public EntityStoreBuilder(Path directory) {
+		this(directory, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param directory
+	 *            the directory that the store is written to; it is created
+	 *            if it does not exist
+	 * @param compressionLevel
+	 *            the level used for compressing blocks, from 0 to 9 (see
+	 *            {@link Deflater})
+	 */
+	public EntityStoreBuilder(Path directory, int compressionLevel) {
+		this.directory = directory;
+		this.compressionLevel = compressionLevel;
+	}
+
+	/**
+	 * Returns the number of documents that have been stored so far.
+	 *
+	 * @return number of documents
+	 */
+	public long getDocumentCount() {
+		return this.documentCount;
+	}
+
+	@Override
+	public void open() {
+		try {
+			Files.createDirectories(this.directory);
+			for (String name : new String[] { EntityStore.ITEM_INDEX,
+					EntityStore.PROPERTY_INDEX }) {
+				Files.deleteIfExists(EntityIndex.getIdsPath(this.directory,
+						name));
+				Files.deleteIfExists(EntityIndex.getLocationsPath(
+						this.directory, name));
+			}
+
+			this.dataOutputStream = new BufferedOutputStream(
+					Files.newOutputStream(this.directory
+							.resolve(EntityStore.DATA_FILE)), 1024 * 1024);
+			this.dataOutputStream.write(EntityStore.MAGIC_NUMBER);
+			this.blockOffset = EntityStore.MAGIC_NUMBER.length;
+			this.deflater = new Deflater(this.compressionLevel);
+			this.pendingOutputStream = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(this.directory
+							.resolve(PENDING_FILE))));
+			this.itemIds = new MappedBitVectorImpl(EntityIndex.getIdsPath(
+					this.directory, EntityStore.ITEM_INDEX));
+			this.propertyIds = new MappedBitVectorImpl(EntityIndex.getIdsPath(
+					this.directory, EntityStore.PROPERTY_INDEX));
+		} catch (IOException e) {
+			reportException(e);
+		}
+		this.blockBuffer.reset();
+		this.blockDocuments = 0;
+		this.pendingCount = 0;
+		this.documentCount = 0;
+	}
+
+	@Override
+	public void processItemDocument(ItemDocument itemDocument) {
+		if (!(itemDocument instanceof JacksonItemDocument)) {
+			itemDocument = datamodelConverter.copy(itemDocument);
+		}
+		storeDocument(itemDocument, ITEM);
+	}
+
+	@Override
+	public void processPropertyDocument(PropertyDocument propertyDocument) {
+		if (!(propertyDocument instanceof JacksonPropertyDocument)) {
+			propertyDocument = datamodelConverter.copy(propertyDocument);
+		}
+		storeDocument(propertyDocument, PROPERTY);
+	}
+
+	/**
+	 * Writes the last block and creates the index of the store.
+	 */
+	@Override
+	public void close() {
+		try {
+			finishBlock();
+			this.deflater.end();
+			this.dataOutputStream.close();
+			this.pendingOutputStream.close();
+
+			MappedLongArray itemLocations = createLocations(this.itemIds,
+					EntityStore.ITEM_INDEX);
+			MappedLongArray propertyLocations = createLocations(
+					this.propertyIds, EntityStore.PROPERTY_INDEX);
+
+			Path pendingPath = this.directory.resolve(PENDING_FILE);
+			try (DataInputStream in = new DataInputStream(
+					new BufferedInputStream(Files.newInputStream(pendingPath)))) {
+				for (long i = 0; i < this.pendingCount; i++) {
+					byte type = in.readByte();
+					int numericId = in.readInt();
+					long location = in.readLong();
+					if (type == ITEM) {
+						itemLocations.set(
+								this.itemIds.countBits(true, numericId) - 1,
+								location);
+					} else {
+						propertyLocations.set(
+								this.propertyIds.countBits(true, numericId) - 1,
+								location);
+					}
+				}
+			}
+			Files.delete(pendingPath);
+
+			itemLocations.close();
+			propertyLocations.close();
+			this.itemIds.close();
+			this.propertyIds.close();
+		} catch (IOException e) {
+			reportException(e);
+		}
+		logger.info("Stored " + this.documentCount + " entity documents in "
+				+ this.directory);
+	}
+
+	/**
+	 * Serializes the given document and adds it to the current block.
+	 *
+	 * @param document
+	 *            the document to store
+	 * @param type
+	 *            {@link #ITEM} or {@link #PROPERTY}
+	 */
+	void storeDocument(EntityDocument document, byte type) {
+		String entityId = document.getEntityId().getId();
+		int numericId = EntityIndex.getNumericId(entityId);
+		if (numericId < 0) {
+			logger.warn("Cannot store entity with unsupported id " + entityId);
+			return;
+		}
+
+		try {
+			this.documentBuffer.reset();
+			mapper.writeValue(this.documentBuffer, document);
+			this.block.writeInt(this.documentBuffer.size());
+			this.documentBuffer.writeTo(this.block);
+
+			this.pendingOutputStream.writeByte(type);
+			this.pendingOutputStream.writeInt(numericId);
+			this.pendingOutputStream.writeLong(EntityStore.getLocation(
+					this.blockOffset, this.blockDocuments));
+			this.pendingCount++;
+			if (type == ITEM) {
+				this.itemIds.setBit(numericId, true);
+			} else {
+				this.propertyIds.setBit(numericId, true);
+			}
+
+			this.blockDocuments++;
+			this.documentCount++;
+			if (this.blockBuffer.size() >= BLOCK_SIZE
+					|| this.blockDocuments == MAX_BLOCK_DOCUMENTS) {
+				finishBlock();
+			}
+		} catch (IOException e) {
+			reportException(e);
+		}
+	}
+
+	/**
+	 * Compresses the current block and appends it to the data file.
+	 *
+	 * @throws IOException
+	 *             if the block could not be written
+	 */
+	void finishBlock() throws IOException {
+		if (this.blockDocuments == 0) {
+			return;
+		}
+		byte[] data = this.blockBuffer.toByteArray();
+		this.deflater.reset();
+		this.deflater.setInput(data);
+		this.deflater.finish();
+		int compressedLength = 0;
+		while (!this.deflater.finished()) {
+			if (compressedLength == this.compressedBuffer.length) {
+				this.compressedBuffer = Arrays.copyOf(this.compressedBuffer,
+						2 * compressedLength);
+			}
+			compressedLength += this.deflater.deflate(this.compressedBuffer,
+					compressedLength, this.compressedBuffer.length
+							- compressedLength);
+		}
+
+		DataOutputStream out = new DataOutputStream(this.dataOutputStream);
+		out.writeInt(compressedLength);
+		out.writeInt(data.length);
+		out.write(this.compressedBuffer, 0, compressedLength);
+		this.blockOffset += EntityStore.BLOCK_HEADER_SIZE + compressedLength;
+
+		this.blockBuffer.reset();
+		this.blockDocuments = 0;
+	}
+
+	/**
+	 * Creates the file for the locations of the entities whose ids are set
+	 * in the given bit vector.
+	 */
+	MappedLongArray createLocations(MappedBitVectorImpl ids, String name)
+			throws IOException {
+		long count = ids.countBits(true, ids.size() - 1);
+		return new MappedLongArray(EntityIndex.getLocationsPath(
+				this.directory, name), count, false);
+	}
+
+	/**
+	 * Reports a given exception as a RuntimeException, since the interface does
+	 * not allow us to throw checked exceptions directly.
+	 *
+	 * @param e
+	 *            the exception to report
+	 * @throws RuntimeException
+	 *             in all cases
+	 */
+	void reportException(Exception e) {
+		logger.error("Failed to write entity store: " + e.toString());
+		throw new RuntimeException(e.toString(), e);
+	}
+
+}
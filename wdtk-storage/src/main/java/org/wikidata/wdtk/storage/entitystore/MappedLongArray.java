@@ -0,0 +1,136 @@
+package org.wikidata.wdtk.storage.entitystore;
+
+/*
+ * #%L
+ * Wikidata Toolkit Storage
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Array of longs of fixed length that is stored in a memory-mapped file. The
+ * file is mapped in segments of 1 GiB, so that the array can have more than
+ * 2<sup>28</sup> elements. The values are stored in little-endian byte order
+ * without any header.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+class MappedLongArray implements Closeable {
+
+	static final int LG_SEGMENT_LENGTH = 27;
+	static final long SEGMENT_MASK = (1L << LG_SEGMENT_LENGTH) - 1;
+
+	final FileChannel channel;
+	final boolean readOnly;
+	final long length;
+	final MappedByteBuffer[] buffers;
+	final LongBuffer[] segments;
+
+	/**
+	 * Opens the array stored in the given file. If the array is not opened
+	 * read-only, the file is created or enlarged if necessary.
+	 *
+	 * @param path
+	 *            the file that stores the array
+	 * @param length
+	 *            the number of elements of the array, or -1 to use the length
+	 *            of the existing file
+	 * @param readOnly
+	 *            if true, the array cannot be changed
+	 * @throws IOException
+	 *             if the file could not be opened or is too short
+	 */
+	MappedLongArray(Path path, long length, boolean readOnly)
+			throws IOException {
+		this.readOnly = readOnly;
+		if (readOnly) {
+			this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		} else {
+			this.channel = FileChannel.open(path, StandardOpenOption.READ,
+					StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+		}
+
+		try {
+			if (length < 0) {
+				length = this.channel.size() / 8;
+			} else if (readOnly && this.channel.size() < 8 * length) {
+				throw new IOException("File " + path + " is truncated");
+			}
+			this.length = length;
+
+			int segmentCount = (int) ((length + SEGMENT_MASK) >>> LG_SEGMENT_LENGTH);
+			this.buffers = new MappedByteBuffer[segmentCount];
+			this.segments = new LongBuffer[segmentCount];
+			MapMode mapMode = readOnly ? MapMode.READ_ONLY
+					: MapMode.READ_WRITE;
+			for (int i = 0; i < segmentCount; i++) {
+				long start = (long) i << LG_SEGMENT_LENGTH;
+				long segmentLength = Math.min(length - start, SEGMENT_MASK + 1);
+				this.buffers[i] = this.channel.map(mapMode, 8 * start,
+						8 * segmentLength);
+				this.segments[i] = this.buffers[i].order(
+						ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+			}
+		} catch (IOException | RuntimeException e) {
+			this.channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the number of elements of the array.
+	 *
+	 * @return length
+	 */
+	long length() {
+		return this.length;
+	}
+
+	long get(long index) {
+		return this.segments[(int) (index >>> LG_SEGMENT_LENGTH)]
+				.get((int) (index & SEGMENT_MASK));
+	}
+
+	void set(long index, long value) {
+		this.segments[(int) (index >>> LG_SEGMENT_LENGTH)].put(
+				(int) (index & SEGMENT_MASK), value);
+	}
+
+	/**
+	 * Writes all changes to the file and closes it.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!this.readOnly) {
+			for (MappedByteBuffer buffer : this.buffers) {
+				buffer.force();
+			}
+		}
+		this.channel.close();
+	}
+
+}
@@ -0,0 +1,302 @@
+package org.wikidata.wdtk.storage.statementindex;
+
+/*
+ * #%L
+ * Wikidata Toolkit Storage
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compressed list of postings, each consisting of the numeric id of a subject
+ * and a value key (see {@link StatementIndex}). Postings are sorted by
+ * subject. They are stored in blocks of {@value #BLOCK_SIZE} postings; within
+ * a block, each subject is stored as the difference to the previous subject,
+ * and both numbers are encoded as variable-length integers, which need one
+ * byte for numbers below 128. For every block, the first subject and the
+ * offset of its data are kept in arrays, so that iterators can skip over
+ * blocks when looking for a subject.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+class PostingList {
+
+	/**
+	 * Number of postings in a block.
+	 */
+	static final int BLOCK_SIZE = 128;
+
+	/**
+	 * Value returned by {@link Iterator#advance(int)} if there are no more
+	 * postings.
+	 */
+	static final int END = -1;
+
+	final ByteBuffer data;
+	final int[] blockSubjects;
+	final int[] blockOffsets;
+	final long size;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param data
+	 *            the encoded postings, starting at position 0 of the buffer
+	 * @param blockSubjects
+	 *            the first subject of every block
+	 * @param blockOffsets
+	 *            the position of every block in the data
+	 * @param size
+	 *            the number of postings
+	 */
+	PostingList(ByteBuffer data, int[] blockSubjects, int[] blockOffsets,
+			long size) {
+		this.data = data;
+		this.blockSubjects = blockSubjects;
+		this.blockOffsets = blockOffsets;
+		this.size = size;
+	}
+
+	/**
+	 * Returns the number of postings in the list.
+	 *
+	 * @return number of postings
+	 */
+	long size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns a new iterator over the postings of this list.
+	 *
+	 * @return iterator
+	 */
+	Iterator iterator() {
+		return new Iterator();
+	}
+
+	/**
+	 * Appends a number to the given array as a variable-length integer.
+	 * Numbers are treated as unsigned.
+	 *
+	 * @param value
+	 *            the number to write
+	 * @param buffer
+	 *            the array to write to
+	 * @param position
+	 *            the position to write at; there must be space for at least
+	 *            ten bytes
+	 * @return the position after the number
+	 */
+	static int writeVarLong(long value, byte[] buffer, int position) {
+		while ((value & ~0x7FL) != 0) {
+			buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[position++] = (byte) value;
+		return position;
+	}
+
+	/**
+	 * Iterator over the postings of a list. Initially, the iterator is
+	 * before the first posting; the methods {@link #next()} and
+	 * {@link #advance(int)} move it forward, after which the current posting
+	 * is found in {@link #subject} and {@link #value}.
+	 *
+	 * @author Markus Kroetzsch
+	 *
+	 */
+	class Iterator {
+
+		int subject = END;
+		long value = 0;
+
+		/**
+		 * Number of postings read so far.
+		 */
+		long index = 0;
+		int block = -1;
+		int position;
+
+		/**
+		 * Moves to the next posting.
+		 *
+		 * @return true if there was another posting
+		 */
+		boolean next() {
+			if (this.index >= size) {
+				this.subject = END;
+				return false;
+			}
+			if ((this.index & (BLOCK_SIZE - 1)) == 0) {
+				this.block++;
+				this.position = blockOffsets[this.block];
+				this.subject = blockSubjects[this.block];
+			}
+			this.subject += (int) readVarLong();
+			this.value = readVarLong();
+			this.index++;
+			return true;
+		}
+
+		/**
+		 * Moves to the first posting whose subject is not smaller than the
+		 * given one. If the current posting already has such a subject, the
+		 * iterator does not move.
+		 *
+		 * @param target
+		 *            the smallest subject to look for
+		 * @return the subject of the posting, or {@link PostingList#END} if
+		 *         there is no such posting
+		 */
+		int advance(int target) {
+			if (this.block >= 0 && (this.subject >= target || this.subject == END)) {
+				return this.subject;
+			}
+
+			// Skip to the last block that starts with a smaller subject:
+			int low = Math.max(this.block, 0);
+			int high = blockSubjects.length - 1;
+			if (low <= high && blockSubjects[low] < target) {
+				while (low < high) {
+					int middle = (low + high + 1) >>> 1;
+					if (blockSubjects[middle] < target) {
+						low = middle;
+					} else {
+						high = middle - 1;
+					}
+				}
+				if (low > this.block) {
+					this.block = low - 1;
+					this.index = (long) low * BLOCK_SIZE;
+				}
+			}
+
+			while (next()) {
+				if (this.subject >= target) {
+					return this.subject;
+				}
+			}
+			return END;
+		}
+
+		/**
+		 * Returns the list that this iterator belongs to.
+		 *
+		 * @return posting list
+		 */
+		PostingList getPostingList() {
+			return PostingList.this;
+		}
+
+		long readVarLong() {
+			long result = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = data.get(this.position++);
+				result |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			return result;
+		}
+	}
+
+	/**
+	 * Builder for posting lists. Postings must be added in the order of their
+	 * subjects.
+	 *
+	 * @author Markus Kroetzsch
+	 *
+	 */
+	static class Writer {
+
+		byte[] data = new byte[64];
+		int length = 0;
+		int[] blockSubjects = new int[1];
+		int[] blockOffsets = new int[1];
+		int blockCount = 0;
+		long size = 0;
+		int lastSubject = 0;
+
+		/**
+		 * Appends a posting.
+		 *
+		 * @param subject
+		 *            the subject, which must not be smaller than the subject
+		 *            of the previous posting
+		 * @param value
+		 *            the value key
+		 */
+		void add(int subject, long value) {
+			if (this.size > 0 && subject < this.lastSubject) {
+				throw new IllegalArgumentException(
+						"Postings must be added in the order of subjects");
+			}
+			if ((this.size & (BLOCK_SIZE - 1)) == 0) {
+				if (this.blockCount == this.blockSubjects.length) {
+					this.blockSubjects = Arrays.copyOf(this.blockSubjects,
+							2 * this.blockCount);
+					this.blockOffsets = Arrays.copyOf(this.blockOffsets,
+							2 * this.blockCount);
+				}
+				this.blockSubjects[this.blockCount] = subject;
+				this.blockOffsets[this.blockCount] = this.length;
+				this.blockCount++;
+				this.lastSubject = subject;
+			}
+
+			if (this.data.length - this.length < 20) {
+				if (this.data.length >= Integer.MAX_VALUE / 2) {
+					throw new IllegalStateException(
+							"Posting list exceeds the maximal size of 1 GiB");
+				}
+				this.data = Arrays.copyOf(this.data, 2 * this.data.length);
+			}
+			this.length = writeVarLong(subject - this.lastSubject, this.data,
+					this.length);
+			this.length = writeVarLong(value, this.data, this.length);
+			this.lastSubject = subject;
+			this.size++;
+		}
+
+		/**
+		 * Returns the number of postings added so far.
+		 *
+		 * @return number of postings
+		 */
+		long size() {
+			return this.size;
+		}
+
+		/**
+		 * Returns the list of all postings that have been added.
+		 *
+		 * @return posting list
+		 */
+		PostingList build() {
+			return new PostingList(ByteBuffer.wrap(this.data, 0, this.length)
+					.slice(), Arrays.copyOf(this.blockSubjects,
+					this.blockCount), Arrays.copyOf(this.blockOffsets,
+					this.blockCount), this.size);
+		}
+	}
+
+}
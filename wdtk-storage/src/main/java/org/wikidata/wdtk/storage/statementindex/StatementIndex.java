@@ -0,0 +1,672 @@
+package org.wikidata.wdtk.storage.statementindex;
+
+/*
+ * #%L
+ * Wikidata Toolkit Storage
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.datamodel.interfaces.DatatypeIdValue;
+import org.wikidata.wdtk.datamodel.interfaces.EntityIdValue;
+import org.wikidata.wdtk.datamodel.interfaces.GlobeCoordinatesValue;
+import org.wikidata.wdtk.datamodel.interfaces.ItemIdValue;
+import org.wikidata.wdtk.datamodel.interfaces.MonolingualTextValue;
+import org.wikidata.wdtk.datamodel.interfaces.NoValueSnak;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyIdValue;
+import org.wikidata.wdtk.datamodel.interfaces.QuantityValue;
+import org.wikidata.wdtk.datamodel.interfaces.Snak;
+import org.wikidata.wdtk.datamodel.interfaces.SomeValueSnak;
+import org.wikidata.wdtk.datamodel.interfaces.StringValue;
+import org.wikidata.wdtk.datamodel.interfaces.TimeValue;
+import org.wikidata.wdtk.datamodel.interfaces.Value;
+import org.wikidata.wdtk.datamodel.interfaces.ValueSnak;
+import org.wikidata.wdtk.datamodel.interfaces.ValueVisitor;
+
+/**
+ * Read-only index of the main snaks of all item statements in a dump, which
+ * answers conjunctive queries such as
+ * "all items with P31 = Q5 that also have a statement for P569" without
+ * looking at the documents. The index is created with a
+ * {@link StatementIndexBuilder}.
+ * <p>
+ * For every property, the index contains a {@link PostingList} with one
+ * posting for each statement, consisting of the numeric id of the subject
+ * item and a 64bit key that represents the value of the main snak. Values
+ * that are items or properties are represented by their numeric id. All
+ * other values are represented by a 62bit fingerprint of their components
+ * (such as the text and language of a monolingual text value), so that equal
+ * values have the same fingerprint no matter how they were created; in rare
+ * cases, queries for such values may therefore return items that have a
+ * different value with the same fingerprint.
+ * Queries are answered by intersecting the posting lists of all conditions,
+ * starting with the shortest one and skipping over blocks of postings that
+ * cannot contain matches.
+ * <p>
+ * The posting lists are memory-mapped when they are first used. The methods
+ * of this class are thread-safe.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+public class StatementIndex implements Closeable {
+
+	static final byte[] MAGIC_NUMBER = { 'W', 'D', 'T', 'K', 'S', 'T', 'I', 2 };
+
+	/**
+	 * Size of the header of the data of one property.
+	 */
+	static final int SECTION_HEADER_SIZE = 16;
+
+	static final long TAG_ITEM = 0;
+	static final long TAG_PROPERTY = 1;
+	static final long TAG_OTHER = 2;
+	static final long TAG_SPECIAL = 3;
+
+	static final long SOME_VALUE_KEY = (0L << 2) | TAG_SPECIAL;
+	static final long NO_VALUE_KEY = (1L << 2) | TAG_SPECIAL;
+
+	/**
+	 * Value key used in conditions that match every posting.
+	 */
+	static final long ANY_VALUE = -1;
+
+	static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	static final long FNV_PRIME = 0x100000001b3L;
+
+	final Path file;
+	final String siteIri;
+	final FileChannel channel;
+
+	/**
+	 * Offsets of the data of every property, by numeric property id.
+	 */
+	final Map<Integer, Long> sectionOffsets = new HashMap<>();
+	final Map<Integer, PostingList> postingLists = new HashMap<>();
+
+	/**
+	 * Opens the index stored in the given file.
+	 *
+	 * @param file
+	 *            the file written by a {@link StatementIndexBuilder}
+	 * @param siteIri
+	 *            the IRI of the site that the items belong to, used when
+	 *            returning {@link ItemIdValue} objects
+	 * @throws IOException
+	 *             if the file could not be read or is not a statement index
+	 */
+	public StatementIndex(Path file, String siteIri) throws IOException {
+		this.file = file;
+		this.siteIri = siteIri;
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			readDirectory();
+		} catch (IOException | RuntimeException e) {
+			this.channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the number of statements with the given property.
+	 *
+	 * @param propertyIdValue
+	 *            the property
+	 * @return number of statements
+	 * @throws IOException
+	 *             if the data could not be read
+	 */
+	public long getStatementCount(PropertyIdValue propertyIdValue)
+			throws IOException {
+		PostingList postingList = getPostingList(propertyIdValue);
+		return postingList == null ? 0 : postingList.size();
+	}
+
+	/**
+	 * Returns the properties for which there are statements in the index, in
+	 * the order of their numeric ids.
+	 *
+	 * @return list of properties
+	 */
+	public List<PropertyIdValue> getProperties() {
+		List<Integer> propertyIds = new ArrayList<>(
+				this.sectionOffsets.keySet());
+		Collections.sort(propertyIds);
+		List<PropertyIdValue> result = new ArrayList<>(propertyIds.size());
+		for (Integer propertyId : propertyIds) {
+			result.add(Datamodel.makePropertyIdValue("P" + propertyId,
+					this.siteIri));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a new query without any conditions.
+	 *
+	 * @return query
+	 */
+	public Query newQuery() {
+		return new Query();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		this.postingLists.clear();
+		this.channel.close();
+	}
+
+	/**
+	 * Query for all items that satisfy a number of conditions on their
+	 * statements. Conditions are added with the methods
+	 * {@link #withProperty(PropertyIdValue)}, {@link #withValue(PropertyIdValue, Value)}
+	 * and {@link #withSnak(Snak)}, which can be chained. An item matches
+	 * if it has a statement for each condition; different conditions can be
+	 * satisfied by different statements. A query without conditions has no
+	 * results.
+	 *
+	 * @author Markus Kroetzsch
+	 *
+	 */
+	public class Query {
+
+		final List<PropertyIdValue> properties = new ArrayList<>();
+		final List<Long> valueKeys = new ArrayList<>();
+
+		Query() {
+		}
+
+		/**
+		 * Adds the condition that items have a statement for the given
+		 * property, with any value.
+		 *
+		 * @param propertyIdValue
+		 *            the property
+		 * @return this query
+		 */
+		public Query withProperty(PropertyIdValue propertyIdValue) {
+			this.properties.add(propertyIdValue);
+			this.valueKeys.add(ANY_VALUE);
+			return this;
+		}
+
+		/**
+		 * Adds the condition that items have a statement for the given
+		 * property with the given value.
+		 *
+		 * @param propertyIdValue
+		 *            the property
+		 * @param value
+		 *            the value of the statement
+		 * @return this query
+		 */
+		public Query withValue(PropertyIdValue propertyIdValue, Value value) {
+			this.properties.add(propertyIdValue);
+			this.valueKeys.add(getValueKey(value));
+			return this;
+		}
+
+		/**
+		 * Adds the condition that items have a statement with the given
+		 * main snak. This can also be used to find statements with unknown
+		 * values or without values.
+		 *
+		 * @param snak
+		 *            the main snak of the statement
+		 * @return this query
+		 */
+		public Query withSnak(Snak snak) {
+			this.properties.add(snak.getPropertyId());
+			this.valueKeys.add(getValueKey(snak));
+			return this;
+		}
+
+		/**
+		 * Returns the numeric ids of all items that match the query, in
+		 * ascending order.
+		 *
+		 * @return array of numeric item ids
+		 * @throws IOException
+		 *             if the data could not be read
+		 */
+		public int[] getSubjectIds() throws IOException {
+			int[] result = new int[16];
+			int count = 0;
+			Condition[] conditions = getConditions();
+			if (conditions == null) {
+				return new int[0];
+			}
+
+			int candidate = conditions[0].advance(0);
+			search: while (candidate != PostingList.END) {
+				for (int i = 1; i < conditions.length; i++) {
+					int subject = conditions[i].advance(candidate);
+					if (subject == PostingList.END) {
+						break search;
+					} else if (subject != candidate) {
+						candidate = conditions[0].advance(subject);
+						continue search;
+					}
+				}
+
+				if (count == result.length) {
+					result = Arrays.copyOf(result, 2 * count);
+				}
+				result[count++] = candidate;
+				if (candidate == Integer.MAX_VALUE) {
+					break;
+				}
+				candidate = conditions[0].advance(candidate + 1);
+			}
+			return Arrays.copyOf(result, count);
+		}
+
+		/**
+		 * Returns the ids of all items that match the query, in the order of
+		 * their numeric ids.
+		 *
+		 * @return list of item ids
+		 * @throws IOException
+		 *             if the data could not be read
+		 */
+		public List<ItemIdValue> getItemIds() throws IOException {
+			int[] subjectIds = getSubjectIds();
+			List<ItemIdValue> result = new ArrayList<>(subjectIds.length);
+			for (int subjectId : subjectIds) {
+				result.add(Datamodel.makeItemIdValue("Q" + subjectId, siteIri));
+			}
+			return result;
+		}
+
+		/**
+		 * Returns the number of items that match the query.
+		 *
+		 * @return number of items
+		 * @throws IOException
+		 *             if the data could not be read
+		 */
+		public int count() throws IOException {
+			return getSubjectIds().length;
+		}
+
+		/**
+		 * Returns the conditions of the query, ordered by the size of their
+		 * posting lists, or null if the query cannot have any results.
+		 */
+		Condition[] getConditions() throws IOException {
+			if (this.properties.isEmpty()) {
+				return null;
+			}
+			Condition[] conditions = new Condition[this.properties.size()];
+			for (int i = 0; i < conditions.length; i++) {
+				PostingList postingList = getPostingList(this.properties
+						.get(i));
+				if (postingList == null) {
+					return null;
+				}
+				conditions[i] = new Condition(postingList.iterator(),
+						this.valueKeys.get(i));
+			}
+			Arrays.sort(conditions, new Comparator<Condition>() {
+				@Override
+				public int compare(Condition c1, Condition c2) {
+					return Long.compare(c1.getPostingList().size(), c2
+							.getPostingList().size());
+				}
+			});
+			return conditions;
+		}
+	}
+
+	/**
+	 * Iterator over the postings of one property that match a given value
+	 * key.
+	 *
+	 * @author Markus Kroetzsch
+	 *
+	 */
+	static class Condition {
+
+		final PostingList.Iterator iterator;
+		final long valueKey;
+
+		Condition(PostingList.Iterator iterator, long valueKey) {
+			this.iterator = iterator;
+			this.valueKey = valueKey;
+		}
+
+		PostingList getPostingList() {
+			return this.iterator.getPostingList();
+		}
+
+		/**
+		 * Moves to the first matching posting whose subject is not smaller
+		 * than the given one.
+		 *
+		 * @param target
+		 *            the smallest subject to look for
+		 * @return the subject of the posting, or {@link PostingList#END}
+		 */
+		int advance(int target) {
+			int subject = this.iterator.advance(target);
+			while (subject != PostingList.END && this.valueKey != ANY_VALUE
+					&& this.iterator.value != this.valueKey) {
+				subject = this.iterator.next() ? this.iterator.subject
+						: PostingList.END;
+			}
+			return subject;
+		}
+	}
+
+	/**
+	 * Returns the key that represents the value of the given snak in the
+	 * index.
+	 *
+	 * @param snak
+	 *            the snak
+	 * @return value key
+	 */
+	static long getValueKey(Snak snak) {
+		if (snak instanceof ValueSnak) {
+			return getValueKey(((ValueSnak) snak).getValue());
+		} else if (snak instanceof SomeValueSnak) {
+			return SOME_VALUE_KEY;
+		} else if (snak instanceof NoValueSnak) {
+			return NO_VALUE_KEY;
+		} else {
+			throw new IllegalArgumentException("Unsupported snak type "
+					+ snak.getClass());
+		}
+	}
+
+	/**
+	 * Returns the key that represents the given value in the index.
+	 *
+	 * @param value
+	 *            the value
+	 * @return value key
+	 */
+	static long getValueKey(Value value) {
+		if (value instanceof ItemIdValue) {
+			int numericId = getNumericId(((ItemIdValue) value).getId());
+			if (numericId >= 0) {
+				return ((long) numericId << 2) | TAG_ITEM;
+			}
+		} else if (value instanceof PropertyIdValue) {
+			int numericId = getNumericId(((PropertyIdValue) value).getId());
+			if (numericId >= 0) {
+				return ((long) numericId << 2) | TAG_PROPERTY;
+			}
+		}
+
+		long hash = value.accept(VALUE_FINGERPRINTER);
+		return ((hash >>> 2) << 2) | TAG_OTHER;
+	}
+
+	/**
+	 * Adds the given number to an FNV-1a hash, starting with its lowest byte.
+	 *
+	 * @param hash
+	 *            the hash so far
+	 * @param number
+	 *            the number to add
+	 * @return the new hash
+	 */
+	static long addToHash(long hash, long number) {
+		for (int i = 0; i < 8; i++) {
+			hash = (hash ^ (number & 0xFF)) * FNV_PRIME;
+			number >>>= 8;
+		}
+		return hash;
+	}
+
+	/**
+	 * Adds the given string to an FNV-1a hash. The length of the string is
+	 * added first, so that the boundaries of consecutive strings are part of
+	 * the hash. Null is distinguished from the empty string.
+	 *
+	 * @param hash
+	 *            the hash so far
+	 * @param string
+	 *            the string to add, or null
+	 * @return the new hash
+	 */
+	static long addToHash(long hash, String string) {
+		if (string == null) {
+			return addToHash(hash, -1L);
+		}
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		hash = addToHash(hash, bytes.length);
+		for (byte b : bytes) {
+			hash = (hash ^ (b & 0xFF)) * FNV_PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * Adds the given number to an FNV-1a hash. The string representation is
+	 * used, so that the hash agrees with
+	 * {@link BigDecimal#equals(Object)}, which is also used when comparing
+	 * quantities.
+	 *
+	 * @param hash
+	 *            the hash so far
+	 * @param number
+	 *            the number to add, or null
+	 * @return the new hash
+	 */
+	static long addToHash(long hash, BigDecimal number) {
+		return addToHash(hash, number == null ? null : number.toString());
+	}
+
+	/**
+	 * Computes the fingerprint of values from all of their components, so
+	 * that equal values always have the same fingerprint, independent of the
+	 * implementation of the value and of its string representation. Each
+	 * fingerprint starts with a number that identifies the type of value.
+	 */
+	static final ValueVisitor<Long> VALUE_FINGERPRINTER = new ValueVisitor<Long>() {
+
+		@Override
+		public Long visit(DatatypeIdValue value) {
+			long hash = addToHash(FNV_OFFSET_BASIS, 0L);
+			return addToHash(hash, value.getIri());
+		}
+
+		@Override
+		public Long visit(EntityIdValue value) {
+			long hash = addToHash(FNV_OFFSET_BASIS, 1L);
+			hash = addToHash(hash, value.getEntityType());
+			hash = addToHash(hash, value.getSiteIri());
+			return addToHash(hash, value.getId());
+		}
+
+		@Override
+		public Long visit(GlobeCoordinatesValue value) {
+			long hash = addToHash(FNV_OFFSET_BASIS, 2L);
+			hash = addToHash(hash, Double.doubleToLongBits(value.getLatitude()));
+			hash = addToHash(hash,
+					Double.doubleToLongBits(value.getLongitude()));
+			hash = addToHash(hash,
+					Double.doubleToLongBits(value.getPrecision()));
+			return addToHash(hash, value.getGlobe());
+		}
+
+		@Override
+		public Long visit(MonolingualTextValue value) {
+			long hash = addToHash(FNV_OFFSET_BASIS, 3L);
+			hash = addToHash(hash, value.getText());
+			return addToHash(hash, value.getLanguageCode());
+		}
+
+		@Override
+		public Long visit(QuantityValue value) {
+			long hash = addToHash(FNV_OFFSET_BASIS, 4L);
+			hash = addToHash(hash, value.getNumericValue());
+			hash = addToHash(hash, value.getLowerBound());
+			hash = addToHash(hash, value.getUpperBound());
+			return addToHash(hash, value.getUnit());
+		}
+
+		@Override
+		public Long visit(StringValue value) {
+			long hash = addToHash(FNV_OFFSET_BASIS, 5L);
+			return addToHash(hash, value.getString());
+		}
+
+		@Override
+		public Long visit(TimeValue value) {
+			long hash = addToHash(FNV_OFFSET_BASIS, 6L);
+			hash = addToHash(hash, value.getYear());
+			hash = addToHash(hash, ((long) value.getMonth() << 40)
+					| ((long) value.getDay() << 32)
+					| ((long) value.getHour() << 24)
+					| ((long) value.getMinute() << 16)
+					| ((long) value.getSecond() << 8)
+					| (value.getPrecision() & 0xFF));
+			hash = addToHash(hash, value.getBeforeTolerance());
+			hash = addToHash(hash, value.getAfterTolerance());
+			hash = addToHash(hash, value.getTimezoneOffset());
+			return addToHash(hash, value.getPreferredCalendarModel());
+		}
+	};
+
+	/**
+	 * Returns the numeric part of an entity id such as "Q42".
+	 *
+	 * @param entityId
+	 *            the id of an entity
+	 * @return the number after the first letter, or -1 if the id does not
+	 *         have this form
+	 */
+	static int getNumericId(String entityId) {
+		if (entityId.length() < 2 || entityId.length() > 11) {
+			return -1;
+		}
+		long result = 0;
+		for (int i = 1; i < entityId.length(); i++) {
+			char c = entityId.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			result = 10 * result + (c - '0');
+		}
+		return result <= Integer.MAX_VALUE ? (int) result : -1;
+	}
+
+	/**
+	 * Returns the posting list of the given property, or null if there are
+	 * no statements for this property.
+	 */
+	synchronized PostingList getPostingList(PropertyIdValue propertyIdValue)
+			throws IOException {
+		int propertyId = getNumericId(propertyIdValue.getId());
+		PostingList result = this.postingLists.get(propertyId);
+		if (result != null) {
+			return result;
+		}
+		Long offset = this.sectionOffsets.get(propertyId);
+		if (offset == null) {
+			return null;
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(SECTION_HEADER_SIZE);
+		readFully(header, offset);
+		header.flip();
+		long size = header.getLong();
+		int blockCount = header.getInt();
+		int dataLength = header.getInt();
+
+		MappedByteBuffer section = this.channel.map(
+				FileChannel.MapMode.READ_ONLY, offset + SECTION_HEADER_SIZE,
+				8L * blockCount + dataLength);
+		int[] blockSubjects = new int[blockCount];
+		int[] blockOffsets = new int[blockCount];
+		section.asIntBuffer().get(blockSubjects);
+		section.position(4 * blockCount);
+		section.asIntBuffer().get(blockOffsets);
+		section.position(8 * blockCount);
+		result = new PostingList(section.slice(), blockSubjects, blockOffsets,
+				size);
+		this.postingLists.put(propertyId, result);
+		return result;
+	}
+
+	/**
+	 * Reads the list of properties and the offsets of their data.
+	 */
+	void readDirectory() throws IOException {
+		long fileSize = this.channel.size();
+		ByteBuffer magicNumber = ByteBuffer.allocate(MAGIC_NUMBER.length);
+		if (fileSize < MAGIC_NUMBER.length + 12) {
+			throw new IOException("File " + this.file
+					+ " is not a statement index");
+		}
+		readFully(magicNumber, 0);
+		if (!Arrays.equals(MAGIC_NUMBER, magicNumber.array())) {
+			throw new IOException("File " + this.file
+					+ " is not a statement index");
+		}
+
+		ByteBuffer footer = ByteBuffer.allocate(8);
+		readFully(footer, fileSize - 8);
+		footer.flip();
+		long directoryOffset = footer.getLong();
+		if (directoryOffset < MAGIC_NUMBER.length
+				|| directoryOffset > fileSize - 12) {
+			throw new IOException("Statement index " + this.file
+					+ " is corrupted");
+		}
+
+		ByteBuffer directory = ByteBuffer
+				.allocate((int) (fileSize - 8 - directoryOffset));
+		readFully(directory, directoryOffset);
+		directory.flip();
+		int propertyCount = directory.getInt();
+		for (int i = 0; i < propertyCount; i++) {
+			int propertyId = directory.getInt();
+			this.sectionOffsets.put(propertyId, directory.getLong());
+		}
+	}
+
+	void readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int count = this.channel.read(buffer, position);
+			if (count < 0) {
+				throw new IOException("Unexpected end of file " + this.file);
+			}
+			position += count;
+		}
+	}
+
+}
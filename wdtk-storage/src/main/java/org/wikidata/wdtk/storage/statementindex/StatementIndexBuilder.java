@@ -0,0 +1,544 @@
+package org.wikidata.wdtk.storage.statementindex;
+
+/*
+ * #%L
+ * Wikidata Toolkit Storage
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocumentDumpProcessor;
+import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
+import org.wikidata.wdtk.datamodel.interfaces.Statement;
+import org.wikidata.wdtk.datamodel.interfaces.StatementGroup;
+
+/**
+ * Processor that creates a {@link StatementIndex} for the statements of all
+ * item documents it receives. It is typically registered with the dump
+ * processing controller, so that the index is built in the same pass over a
+ * dump as other processing. Property documents are ignored.
+ * <p>
+ * Postings are first collected in primitive arrays for each property. When
+ * such a buffer is full, it is sorted by subject and written to a temporary
+ * file next to the index file, so that the memory needed does not depend on
+ * the number of statements. Since the documents of a dump are mostly ordered
+ * by id, the postings of a buffer can usually continue the sorted run of the
+ * previous buffer; otherwise a new run is started. When {@link #close()} is
+ * called, the runs of every property are merged from the temporary file and
+ * written to the index file. If an item occurs more than once, all of its
+ * versions are indexed.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+public class StatementIndexBuilder implements EntityDocumentDumpProcessor {
+
+	static final Logger logger = LoggerFactory
+			.getLogger(StatementIndexBuilder.class);
+
+	/**
+	 * Default number of postings that are buffered for each property before
+	 * they are written to the temporary file.
+	 */
+	static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Initial number of postings that are buffered for each property.
+	 */
+	static final int INITIAL_BUFFER_SIZE = 16;
+
+	/**
+	 * Suffix of the name of the temporary file, which is appended to the name
+	 * of the index file.
+	 */
+	static final String PENDING_SUFFIX = ".tmp";
+
+	/**
+	 * Size of the buffer used for reading each run from the temporary file.
+	 */
+	static final int READ_BUFFER_SIZE = 8 * 1024;
+
+	/**
+	 * Sorted sequence of postings of one property in the temporary file. The
+	 * postings of a run are stored in segments, one for every buffer that was
+	 * written. Within a segment, each subject is stored as the difference to
+	 * the previous subject, and both numbers are encoded as variable-length
+	 * integers, as in {@link PostingList}.
+	 *
+	 * @author Markus Kroetzsch
+	 *
+	 */
+	static class Run {
+
+		long[] segmentOffsets = new long[1];
+		int[] segmentSizes = new int[1];
+		int segmentCount = 0;
+		int lastSubject = 0;
+
+		void addSegment(long offset, int size, int lastSubject) {
+			if (this.segmentCount == this.segmentOffsets.length) {
+				this.segmentOffsets = Arrays.copyOf(this.segmentOffsets,
+						2 * this.segmentCount);
+				this.segmentSizes = Arrays.copyOf(this.segmentSizes,
+						2 * this.segmentCount);
+			}
+			this.segmentOffsets[this.segmentCount] = offset;
+			this.segmentSizes[this.segmentCount] = size;
+			this.segmentCount++;
+			this.lastSubject = lastSubject;
+		}
+	}
+
+	/**
+	 * Reads the postings of a {@link Run} from the temporary file. Initially,
+	 * the reader is before the first posting; the method {@link #next()}
+	 * moves it forward, after which the current posting is found in
+	 * {@link #subject} and {@link #value}.
+	 *
+	 * @author Markus Kroetzsch
+	 *
+	 */
+	static class RunReader {
+
+		final FileChannel channel;
+		final Run run;
+		final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+		int subject;
+		long value;
+
+		int segment = -1;
+		int remaining = 0;
+		/**
+		 * Position in the file of the first byte that is not yet in the
+		 * buffer.
+		 */
+		long position;
+
+		RunReader(FileChannel channel, Run run) {
+			this.channel = channel;
+			this.run = run;
+			this.buffer.limit(0);
+		}
+
+		/**
+		 * Moves to the next posting.
+		 *
+		 * @return true if there was another posting
+		 * @throws IOException
+		 *             if the file could not be read
+		 */
+		boolean next() throws IOException {
+			if (this.remaining == 0) {
+				if (this.segment + 1 >= this.run.segmentCount) {
+					return false;
+				}
+				this.segment++;
+				this.remaining = this.run.segmentSizes[this.segment];
+				this.position = this.run.segmentOffsets[this.segment];
+				this.buffer.limit(0);
+				this.subject = 0;
+			}
+			this.subject += (int) readVarLong();
+			this.value = readVarLong();
+			this.remaining--;
+			return true;
+		}
+
+		long readVarLong() throws IOException {
+			long result = 0;
+			int shift = 0;
+			byte b;
+			do {
+				if (!this.buffer.hasRemaining()) {
+					this.buffer.clear();
+					int read = this.channel.read(this.buffer, this.position);
+					if (read <= 0) {
+						throw new EOFException(
+								"Unexpected end of temporary postings file");
+					}
+					this.position += read;
+					this.buffer.flip();
+				}
+				b = this.buffer.get();
+				result |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			return result;
+		}
+	}
+
+	/**
+	 * Collects the postings of one property.
+	 *
+	 * @author Markus Kroetzsch
+	 *
+	 */
+	class PropertyPostings {
+
+		int[] subjects = new int[INITIAL_BUFFER_SIZE];
+		long[] values = new long[INITIAL_BUFFER_SIZE];
+		int count = 0;
+		boolean sorted = true;
+
+		/**
+		 * Runs of postings that have already been written to the temporary
+		 * file.
+		 */
+		final List<Run> runs = new ArrayList<>();
+
+		void add(int subject, long value) throws IOException {
+			if (this.count == this.subjects.length) {
+				if (this.count >= bufferSize) {
+					flush();
+				} else {
+					int length = Math.min(2 * this.count, bufferSize);
+					this.subjects = Arrays.copyOf(this.subjects, length);
+					this.values = Arrays.copyOf(this.values, length);
+				}
+			}
+			if (this.count > 0 && subject < this.subjects[this.count - 1]) {
+				this.sorted = false;
+			}
+			this.subjects[this.count] = subject;
+			this.values[this.count] = value;
+			this.count++;
+		}
+
+		/**
+		 * Sorts the buffered postings and writes them to the temporary file.
+		 *
+		 * @throws IOException
+		 *             if the file could not be written
+		 */
+		void flush() throws IOException {
+			if (this.count == 0) {
+				return;
+			}
+
+			int[] order = null;
+			if (!this.sorted) {
+				// Sort positions by subject, keeping the order of equal
+				// subjects:
+				long[] keys = new long[this.count];
+				for (int i = 0; i < this.count; i++) {
+					keys[i] = ((long) this.subjects[i] << 32) | i;
+				}
+				Arrays.sort(keys);
+				order = new int[this.count];
+				for (int i = 0; i < this.count; i++) {
+					order[i] = (int) keys[i];
+				}
+			}
+
+			int first = order == null ? 0 : order[0];
+			int last = order == null ? this.count - 1 : order[this.count - 1];
+			Run run = null;
+			if (!this.runs.isEmpty()) {
+				run = this.runs.get(this.runs.size() - 1);
+				if (run.lastSubject > this.subjects[first]) {
+					run = null;
+				}
+			}
+			if (run == null) {
+				run = new Run();
+				this.runs.add(run);
+			}
+			run.addSegment(pendingLength, this.count, this.subjects[last]);
+
+			int previousSubject = 0;
+			for (int i = 0; i < this.count; i++) {
+				int position = order == null ? i : order[i];
+				int length = PostingList.writeVarLong(
+						this.subjects[position] - previousSubject,
+						pendingBuffer, 0);
+				length = PostingList.writeVarLong(this.values[position],
+						pendingBuffer, length);
+				pendingOutputStream.write(pendingBuffer, 0, length);
+				pendingLength += length;
+				previousSubject = this.subjects[position];
+			}
+
+			this.count = 0;
+			this.sorted = true;
+		}
+
+		/**
+		 * Returns a list of all postings of the property, merged from the
+		 * runs in the temporary file.
+		 *
+		 * @param channel
+		 *            the channel to read the temporary file from
+		 * @return posting list
+		 * @throws IOException
+		 *             if the file could not be read
+		 */
+		PostingList build(FileChannel channel) throws IOException {
+			PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(
+					this.runs.size(), 1), new Comparator<RunReader>() {
+				@Override
+				public int compare(RunReader reader1, RunReader reader2) {
+					return Integer.compare(reader1.subject, reader2.subject);
+				}
+			});
+			for (Run run : this.runs) {
+				RunReader reader = new RunReader(channel, run);
+				if (reader.next()) {
+					queue.add(reader);
+				}
+			}
+			this.runs.clear();
+
+			PostingList.Writer writer = new PostingList.Writer();
+			while (!queue.isEmpty()) {
+				RunReader reader = queue.poll();
+				writer.add(reader.subject, reader.value);
+				if (reader.next()) {
+					queue.add(reader);
+				}
+			}
+			return writer.build();
+		}
+	}
+
+	final Path file;
+	final int bufferSize;
+
+	final Map<Integer, PropertyPostings> propertyPostings = new HashMap<>();
+
+	DataOutputStream pendingOutputStream;
+	/**
+	 * Number of bytes written to the temporary file.
+	 */
+	long pendingLength;
+	final byte[] pendingBuffer = new byte[20];
+
+	/**
+	 * Number of statements that have been indexed.
+	 */
+	long statementCount;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param file
+	 *            the file that the index is written to; an existing file is
+	 *            replaced
+	 */
+	public StatementIndexBuilder(Path file) {
+		this(file, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param file
+	 *            the file that the index is written to; an existing file is
+	 *            replaced
+	 * @param bufferSize
+	 *            the number of postings that are buffered for each property
+	 *            before they are written to the temporary file
+	 */
+	StatementIndexBuilder(Path file, int bufferSize) {
+		this.file = file;
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Returns the number of statements that have been indexed so far.
+	 *
+	 * @return number of statements
+	 */
+	public long getStatementCount() {
+		return this.statementCount;
+	}
+
+	/**
+	 * Returns the path of the temporary file that postings are written to
+	 * while the index is built.
+	 *
+	 * @return path of the temporary file
+	 */
+	Path getPendingPath() {
+		return this.file.resolveSibling(this.file.getFileName()
+				+ PENDING_SUFFIX);
+	}
+
+	@Override
+	public void open() {
+		this.propertyPostings.clear();
+		this.statementCount = 0;
+		this.pendingLength = 0;
+		try {
+			this.pendingOutputStream = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(
+							getPendingPath()), 1024 * 1024));
+		} catch (IOException e) {
+			reportException(e);
+		}
+	}
+
+	@Override
+	public void processItemDocument(ItemDocument itemDocument) {
+		String itemId = itemDocument.getEntityId().getId();
+		int subject = StatementIndex.getNumericId(itemId);
+		if (subject < 0) {
+			logger.warn("Cannot index item with unsupported id " + itemId);
+			return;
+		}
+
+		for (StatementGroup statementGroup : itemDocument.getStatementGroups()) {
+			int propertyId = StatementIndex.getNumericId(statementGroup
+					.getProperty().getId());
+			if (propertyId < 0) {
+				continue;
+			}
+			PropertyPostings postings = this.propertyPostings.get(propertyId);
+			if (postings == null) {
+				postings = new PropertyPostings();
+				this.propertyPostings.put(propertyId, postings);
+			}
+			for (Statement statement : statementGroup.getStatements()) {
+				try {
+					postings.add(subject, StatementIndex.getValueKey(statement
+							.getClaim().getMainSnak()));
+				} catch (IOException e) {
+					reportException(e);
+				}
+				this.statementCount++;
+			}
+		}
+	}
+
+	@Override
+	public void processPropertyDocument(PropertyDocument propertyDocument) {
+		// property documents are not indexed
+	}
+
+	/**
+	 * Merges the postings of every property and writes the index file.
+	 */
+	@Override
+	public void close() {
+		List<Integer> propertyIds = new ArrayList<>(
+				this.propertyPostings.keySet());
+		Collections.sort(propertyIds);
+		long[] sectionOffsets = new long[propertyIds.size()];
+
+		Path pendingPath = getPendingPath();
+		try {
+			for (PropertyPostings postings : this.propertyPostings.values()) {
+				postings.flush();
+			}
+			this.pendingOutputStream.close();
+		} catch (IOException e) {
+			reportException(e);
+		}
+
+		try (FileChannel pendingChannel = FileChannel.open(pendingPath,
+				StandardOpenOption.READ);
+				DataOutputStream out = new DataOutputStream(
+						new BufferedOutputStream(
+								Files.newOutputStream(this.file), 1024 * 1024))) {
+			out.write(StatementIndex.MAGIC_NUMBER);
+			long offset = StatementIndex.MAGIC_NUMBER.length;
+			for (int i = 0; i < propertyIds.size(); i++) {
+				sectionOffsets[i] = offset;
+				PostingList postingList = this.propertyPostings.remove(
+						propertyIds.get(i)).build(pendingChannel);
+				offset += writePostingList(postingList, out);
+			}
+
+			long directoryOffset = offset;
+			out.writeInt(propertyIds.size());
+			for (int i = 0; i < propertyIds.size(); i++) {
+				out.writeInt(propertyIds.get(i));
+				out.writeLong(sectionOffsets[i]);
+			}
+			out.writeLong(directoryOffset);
+		} catch (IOException e) {
+			reportException(e);
+		}
+
+		try {
+			Files.delete(pendingPath);
+		} catch (IOException e) {
+			reportException(e);
+		}
+		logger.info("Indexed " + this.statementCount + " statements for "
+				+ propertyIds.size() + " properties in " + this.file);
+	}
+
+	/**
+	 * Writes the given posting list in the format expected by
+	 * {@link StatementIndex}.
+	 *
+	 * @return the number of bytes written
+	 */
+	long writePostingList(PostingList postingList, DataOutputStream out)
+			throws IOException {
+		ByteBuffer data = postingList.data.duplicate();
+		data.rewind();
+		out.writeLong(postingList.size());
+		out.writeInt(postingList.blockSubjects.length);
+		out.writeInt(data.remaining());
+		for (int blockSubject : postingList.blockSubjects) {
+			out.writeInt(blockSubject);
+		}
+		for (int blockOffset : postingList.blockOffsets) {
+			out.writeInt(blockOffset);
+		}
+		out.write(data.array(), data.arrayOffset(), data.remaining());
+		return StatementIndex.SECTION_HEADER_SIZE + 8L
+				* postingList.blockSubjects.length + data.remaining();
+	}
+
+	/**
+	 * Reports a given exception as a RuntimeException, since the interface does
+	 * not allow us to throw checked exceptions directly.
+	 *
+	 * @param e
+	 *            the exception to report
+	 * @throws RuntimeException
+	 *             in all cases
+	 */
+	void reportException(Exception e) {
+		logger.error("Failed to write statement index: " + e.toString());
+		throw new RuntimeException(e.toString(), e);
+	}
+
+}
@@ -0,0 +1,190 @@
+package org.wikidata.wdtk.storage.datastructures;
+
+/*
+ * #%L
+ * Wikidata Toolkit Storage
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test class for {@link CompressedBitVectorImpl}.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+public class CompressedBitVectorImplTest {
+
+	/**
+	 * Asserts that two bit vectors are equal in both directions and have the
+	 * same hash code.
+	 *
+	 * @param bv0
+	 *            one bit vector
+	 * @param bv1
+	 *            another bit vector
+	 */
+	void assertEqualsForBitVector(BitVector bv0, BitVector bv1) {
+		Assert.assertEquals(bv0, bv0);
+		Assert.assertEquals(bv0, bv1);
+		Assert.assertEquals(bv1, bv0);
+		Assert.assertEquals(bv0.hashCode(), bv1.hashCode());
+	}
+
+	@Test
+	public void testAdd() {
+		CompressedBitVectorImpl bv = new CompressedBitVectorImpl();
+		Assert.assertEquals(0, bv.size());
+
+		for (int i = 0; i < 0x1000; i++) {
+			boolean value = (i % 3) == 0;
+			bv.addBit(value);
+			Assert.assertEquals(i + 1, bv.size());
+			Assert.assertEquals(value, bv.getBit(i));
+		}
+		Assert.assertEquals(0x1000 / 3 + 1, bv.countBits());
+	}
+
+	@Test
+	public void testEqualToBitVectorImpl() {
+		PseudorandomBooleanGenerator generator = new PseudorandomBooleanGenerator(
+				0x1234);
+		CompressedBitVectorImpl bv0 = new CompressedBitVectorImpl();
+		BitVectorImpl bv1 = new BitVectorImpl();
+		for (int i = 0; i < 0x50000; i++) {
+			boolean value = generator.getPseudorandomBoolean();
+			bv0.addBit(value);
+			bv1.addBit(value);
+		}
+		assertEqualsForBitVector(bv0, bv1);
+
+		bv0.setBit(0x12345, !bv0.getBit(0x12345));
+		Assert.assertNotEquals(bv0, bv1);
+		Assert.assertNotEquals(bv1, bv0);
+
+		Assert.assertNotEquals(new CompressedBitVectorImpl(), new Object());
+		assertEqualsForBitVector(new CompressedBitVectorImpl(),
+				new BitVectorImpl());
+	}
+
+	@Test
+	public void testSparseBits() {
+		CompressedBitVectorImpl bv0 = new CompressedBitVectorImpl();
+		CompressedBitVectorImpl bv1 = new CompressedBitVectorImpl(true);
+		BitVectorImpl bv2 = new BitVectorImpl();
+		for (long i = 3; i < 0x1000000; i += 997) {
+			bv0.setBit(i, true);
+			bv1.setBit(i, true);
+			bv2.setBit(i, true);
+		}
+		assertEqualsForBitVector(bv0, bv1);
+		assertEqualsForBitVector(bv0, bv2);
+		Assert.assertTrue(bv0.getChunk(3) instanceof CompressedBitVectorImpl.ArrayChunk);
+
+		bv0.setBit(3, false);
+		Assert.assertNotEquals(bv0, bv1);
+		bv0.setBit(3, true);
+		Assert.assertEquals(bv0, bv1);
+	}
+
+	@Test
+	public void testDenseChunk() {
+		CompressedBitVectorImpl bv0 = new CompressedBitVectorImpl();
+		CompressedBitVectorImpl bv1 = new CompressedBitVectorImpl(true);
+		for (int i = 0; i < 3 * CompressedBitVectorImpl.MAX_ARRAY_CHUNK_SIZE; i++) {
+			bv0.setBit(5 * i, true);
+			bv1.setBit(5 * i, true);
+		}
+		Assert.assertTrue(bv0.getChunk(0) instanceof CompressedBitVectorImpl.BitmapChunk);
+		Assert.assertEquals(3 * CompressedBitVectorImpl.MAX_ARRAY_CHUNK_SIZE,
+				bv0.countBits());
+		assertEqualsForBitVector(bv0, bv1);
+		assertEqualsForBitVector(bv0, new BitVectorImpl(bv1));
+
+		for (int i = 0; i < 3 * CompressedBitVectorImpl.MAX_ARRAY_CHUNK_SIZE; i++) {
+			if (i % 8 != 1) {
+				bv0.setBit(5 * i, false);
+				bv0.setBit(5 * i + 1, false);
+			}
+		}
+		Assert.assertTrue(bv0.getChunk(0) instanceof CompressedBitVectorImpl.ArrayChunk);
+		for (int i = 0; i < 3 * CompressedBitVectorImpl.MAX_ARRAY_CHUNK_SIZE; i++) {
+			Assert.assertEquals(i % 8 == 1, bv0.getBit(5 * i));
+		}
+
+		for (int i = 1; i < 3 * CompressedBitVectorImpl.MAX_ARRAY_CHUNK_SIZE; i += 8) {
+			bv0.setBit(5 * i, false);
+		}
+		Assert.assertNull(bv0.getChunk(0));
+		Assert.assertEquals(0, bv0.countBits());
+	}
+
+	@Test
+	public void testHashCode() {
+		CompressedBitVectorImpl bv = new CompressedBitVectorImpl();
+		Assert.assertEquals(0, bv.hashCode());
+		bv.addBit(false);
+		Assert.assertEquals(1, bv.hashCode());
+		bv.addBit(true);
+		Assert.assertEquals(2 + 0x1F * 2, bv.hashCode());
+	}
+
+	@Test
+	public void testGetOutOfRange() {
+		Assert.assertEquals(false, new CompressedBitVectorImpl().getBit(1));
+		Assert.assertEquals(false,
+				new CompressedBitVectorImpl().getBit(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void testSetOutOfRange() {
+		CompressedBitVectorImpl bv = new CompressedBitVectorImpl();
+		bv.setBit(0x7FFFFFFFL, true);
+		Assert.assertEquals(0x80000000L, bv.size());
+		Assert.assertEquals(false, bv.getBit(0x7FFFFFFEL));
+		Assert.assertEquals(true, bv.getBit(0x7FFFFFFFL));
+		Assert.assertEquals(1, bv.countBits());
+
+		bv.setBit(0x100000000L, false);
+		Assert.assertEquals(0x100000001L, bv.size());
+		Assert.assertEquals(1, bv.countBits());
+	}
+
+	@Test
+	public void testToString() {
+		CompressedBitVectorImpl bv = new CompressedBitVectorImpl();
+		for (int i = 0; i < 0x10; i++) {
+			bv.addBit((i % 3) == 0);
+		}
+		Assert.assertEquals("1001001001001001", bv.toString());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testInvalidPositionGet() {
+		new CompressedBitVectorImpl().getBit(-1);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testInvalidPositionSet() {
+		new CompressedBitVectorImpl().setBit(
+				CompressedBitVectorImpl.MAX_SIZE, true);
+	}
+
+}
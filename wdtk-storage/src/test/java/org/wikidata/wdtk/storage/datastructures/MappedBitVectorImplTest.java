@@ -0,0 +1,207 @@
+package org.wikidata.wdtk.storage.datastructures;
+
+/*
+ * #%L
+ * Wikidata Toolkit Storage
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test class for {@link MappedBitVectorImpl}.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+public class MappedBitVectorImplTest {
+
+	/**
+	 * Small segments of 1 KiB so that the tests use many of them.
+	 */
+	static final int LG_SEGMENT_SIZE = 10;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Asserts that the given vectors are equal and answer some rank and
+	 * select queries in the same way.
+	 */
+	void assertSameBits(PopcountRankedBitVectorImpl expected,
+			MappedBitVectorImpl bv) {
+		Assert.assertEquals(expected.size(), bv.size());
+		Assert.assertEquals(expected, bv);
+		Assert.assertEquals(bv, expected);
+		Assert.assertEquals(expected.hashCode(), bv.hashCode());
+		for (long position = 0; position < bv.size(); position += 97) {
+			Assert.assertEquals(expected.getBit(position), bv.getBit(position));
+			Assert.assertEquals(expected.countBits(true, position),
+					bv.countBits(true, position));
+			Assert.assertEquals(expected.findPosition(true, position),
+					bv.findPosition(true, position));
+			Assert.assertEquals(expected.findPosition(false, position),
+					bv.findPosition(false, position));
+		}
+		long trueValues = expected.countBits(true, expected.size() - 1);
+		Assert.assertEquals(RankedBitVector.NOT_FOUND,
+				bv.findPosition(true, trueValues + 1));
+	}
+
+	void addRandomBits(int count, Random random, RankedBitVector... bvs) {
+		for (int i = 0; i < count; i++) {
+			boolean bit = random.nextInt(3) == 0;
+			for (RankedBitVector bv : bvs) {
+				bv.addBit(bit);
+			}
+		}
+	}
+
+	@Test
+	public void testPersistence() throws IOException {
+		Path path = this.folder.getRoot().toPath().resolve("bits");
+		Random random = new Random(42);
+		PopcountRankedBitVectorImpl expected = new PopcountRankedBitVectorImpl();
+
+		MappedBitVectorImpl bv = new MappedBitVectorImpl(path, false,
+				LG_SEGMENT_SIZE);
+		addRandomBits(0x12345, random, expected, bv);
+		assertSameBits(expected, bv);
+		bv.close();
+
+		bv = new MappedBitVectorImpl(path, false, LG_SEGMENT_SIZE);
+		assertSameBits(expected, bv);
+		addRandomBits(0x4321, random, expected, bv);
+		for (int i = 0; i < 100; i++) {
+			long position = random.nextInt(0x16666);
+			boolean bit = random.nextBoolean();
+			expected.setBit(position, bit);
+			bv.setBit(position, bit);
+		}
+		assertSameBits(expected, bv);
+		bv.close();
+
+		bv = new MappedBitVectorImpl(path, true, LG_SEGMENT_SIZE);
+		Assert.assertTrue(bv.isReadOnly());
+		assertSameBits(expected, bv);
+		bv.close();
+
+		// files do not depend on the segment size:
+		bv = new MappedBitVectorImpl(path, true);
+		assertSameBits(expected, bv);
+		bv.close();
+	}
+
+	@Test
+	public void testSetBitBeyondEnd() throws IOException {
+		MappedBitVectorImpl bv = new MappedBitVectorImpl(this.folder
+				.newFile().toPath(), false, LG_SEGMENT_SIZE);
+		Assert.assertEquals(0, bv.size());
+		Assert.assertEquals(RankedBitVector.NOT_FOUND,
+				bv.findPosition(true, 1));
+		Assert.assertFalse(bv.getBit(100));
+
+		bv.setBit(100000, true);
+		Assert.assertEquals(100001, bv.size());
+		Assert.assertTrue(bv.getBit(100000));
+		Assert.assertEquals(1, bv.countBits(true, 100000));
+		Assert.assertEquals(100000, bv.countBits(false, 100000));
+		Assert.assertEquals(100000, bv.findPosition(true, 1));
+
+		bv.setBit(200000, false);
+		Assert.assertEquals(200001, bv.size());
+		Assert.assertEquals(1, bv.countBits(true, 200000));
+
+		BitVectorImpl expected = new BitVectorImpl();
+		expected.setBit(100000, true);
+		expected.setBit(200000, false);
+		Assert.assertEquals(expected, bv);
+		Assert.assertEquals(expected.hashCode(), bv.hashCode());
+		bv.close();
+	}
+
+	@Test
+	public void testEmptyVector() throws IOException {
+		Path path = this.folder.getRoot().toPath().resolve("empty");
+		new MappedBitVectorImpl(path).close();
+
+		MappedBitVectorImpl bv = new MappedBitVectorImpl(path, true);
+		Assert.assertEquals(0, bv.size());
+		Assert.assertEquals(0, bv.countBits(true, 10));
+		Assert.assertEquals(11, bv.countBits(false, 10));
+		Assert.assertEquals(new BitVectorImpl(), bv);
+		Assert.assertEquals("", bv.toString());
+		bv.close();
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testReadOnly() throws IOException {
+		Path path = this.folder.getRoot().toPath().resolve("bits");
+		MappedBitVectorImpl bv = new MappedBitVectorImpl(path);
+		bv.addBit(true);
+		bv.close();
+
+		bv = new MappedBitVectorImpl(path, true);
+		Assert.assertTrue(bv.getBit(0));
+		bv.addBit(true);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testNegativePosition() throws IOException {
+		new MappedBitVectorImpl(this.folder.newFile().toPath()).getBit(-1);
+	}
+
+	@Test(expected = IOException.class)
+	public void testMissingFileReadOnly() throws IOException {
+		new MappedBitVectorImpl(this.folder.getRoot().toPath()
+				.resolve("missing"), true);
+	}
+
+	@Test(expected = IOException.class)
+	public void testInvalidFile() throws IOException {
+		Path path = this.folder.newFile().toPath();
+		Files.write(path, "This is not a bit vector."
+				.getBytes(StandardCharsets.UTF_8));
+		new MappedBitVectorImpl(path);
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedFile() throws IOException {
+		Path path = this.folder.getRoot().toPath().resolve("bits");
+		MappedBitVectorImpl bv = new MappedBitVectorImpl(path);
+		for (int i = 0; i < 1000; i++) {
+			bv.addBit(true);
+		}
+		bv.close();
+
+		byte[] contents = Files.readAllBytes(path);
+		Files.write(path, Arrays.copyOf(contents,
+				MappedBitVectorImpl.HEADER_SIZE + 64));
+		new MappedBitVectorImpl(path, true);
+	}
+
+}
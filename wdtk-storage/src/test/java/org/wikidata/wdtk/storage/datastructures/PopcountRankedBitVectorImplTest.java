@@ -0,0 +1,213 @@
+package org.wikidata.wdtk.storage.datastructures;
+
+/*
+ * #%L
+ * Wikidata Toolkit Storage
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test class for {@link PopcountRankedBitVectorImpl}.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+public class PopcountRankedBitVectorImplTest {
+
+	/**
+	 * Asserts that rank and select of the given vector agree with a naive
+	 * computation for all positions and occurrences.
+	 *
+	 * @param bv
+	 *            bit vector
+	 */
+	void assertCorrectRankAndSelect(RankedBitVector bv) {
+		long trueValues = 0;
+		for (long position = 0; position < bv.size(); position++) {
+			if (bv.getBit(position)) {
+				trueValues++;
+				Assert.assertEquals(position,
+						bv.findPosition(true, trueValues));
+			} else {
+				Assert.assertEquals(position,
+						bv.findPosition(false, position + 1 - trueValues));
+			}
+			Assert.assertEquals(trueValues, bv.countBits(true, position));
+			Assert.assertEquals(position + 1 - trueValues,
+					bv.countBits(false, position));
+		}
+		long falseValues = bv.size() - trueValues;
+		Assert.assertEquals(RankedBitVector.NOT_FOUND,
+				bv.findPosition(true, trueValues + 1));
+		Assert.assertEquals(RankedBitVector.NOT_FOUND,
+				bv.findPosition(false, falseValues + 1));
+		Assert.assertEquals(RankedBitVector.NOT_FOUND,
+				bv.findPosition(true, 0));
+		Assert.assertEquals(RankedBitVector.NOT_FOUND,
+				bv.findPosition(false, 0));
+	}
+
+	/**
+	 * Creates a vector where runs of mostly <code>true</code> and mostly
+	 * <code>false</code> bits alternate, so that blocks of very different
+	 * density occur.
+	 */
+	PopcountRankedBitVectorImpl createBitVector(int size, int seed) {
+		Random random = new Random(seed);
+		PopcountRankedBitVectorImpl bv = new PopcountRankedBitVectorImpl();
+		int density = 50;
+		for (int i = 0; i < size; i++) {
+			if (i % 1000 == 0) {
+				density = random.nextInt(101);
+			}
+			bv.addBit(random.nextInt(100) < density);
+		}
+		return bv;
+	}
+
+	@Test
+	public void testRankAndSelect() {
+		// spans several superblocks:
+		assertCorrectRankAndSelect(createBitVector(0x30123, 42));
+	}
+
+	@Test
+	public void testAgreesWithRankedBitVectorImpl() {
+		PseudorandomBooleanGenerator generator = new PseudorandomBooleanGenerator(
+				0x1234);
+		PopcountRankedBitVectorImpl bv0 = new PopcountRankedBitVectorImpl();
+		RankedBitVectorImpl bv1 = new RankedBitVectorImpl();
+		for (int i = 0; i < 0x3000; i++) {
+			boolean value = generator.getPseudorandomBoolean();
+			bv0.addBit(value);
+			bv1.addBit(value);
+		}
+
+		Assert.assertEquals(bv0, bv1);
+		Assert.assertEquals(bv1, bv0);
+		Assert.assertEquals(bv1.hashCode(), bv0.hashCode());
+		Assert.assertEquals(bv1.toString(), bv0.toString());
+		for (int i = 0; i < 0x3000; i += 7) {
+			Assert.assertEquals(bv1.countBits(true, i), bv0.countBits(true, i));
+			Assert.assertEquals(bv1.findPosition(true, i),
+					bv0.findPosition(true, i));
+			Assert.assertEquals(bv1.findPosition(false, i),
+					bv0.findPosition(false, i));
+		}
+	}
+
+	@Test
+	public void testAdd() {
+		PopcountRankedBitVectorImpl bv = new PopcountRankedBitVectorImpl();
+		long trueValues = 0;
+		for (int i = 0; i < 0x11000; i++) {
+			boolean value = (i % 3) == 0;
+			bv.addBit(value);
+			if (value) {
+				trueValues++;
+			}
+			// queries in between must not break the incremental index:
+			if (i % 0x111 == 0) {
+				Assert.assertEquals(trueValues, bv.countBits(true, i));
+				Assert.assertEquals(i, bv.findPosition(true, trueValues));
+			}
+		}
+		Assert.assertEquals(0x11000, bv.size());
+		assertCorrectRankAndSelect(bv);
+	}
+
+	@Test
+	public void testSetBit() {
+		PopcountRankedBitVectorImpl bv = createBitVector(0x21000, 7);
+		assertCorrectRankAndSelect(bv);
+
+		Random random = new Random(3);
+		for (int i = 0; i < 100; i++) {
+			long position = random.nextInt(0x21000);
+			bv.setBit(position, !bv.getBit(position));
+			long trueValues = 0;
+			for (long j = 0; j <= position; j++) {
+				trueValues += bv.getBit(j) ? 1 : 0;
+			}
+			Assert.assertEquals(trueValues, bv.countBits(true, position));
+		}
+		assertCorrectRankAndSelect(bv);
+
+		// setting bits beyond the end enlarges the vector:
+		bv.setBit(0x22000, true);
+		Assert.assertEquals(0x22001, bv.size());
+		assertCorrectRankAndSelect(bv);
+	}
+
+	@Test
+	public void testInitialSizeAndCopy() {
+		PopcountRankedBitVectorImpl bv0 = new PopcountRankedBitVectorImpl(
+				0x500);
+		Assert.assertEquals(0x500, bv0.size());
+		Assert.assertEquals(0, bv0.countBits(true, 0x4FF));
+		Assert.assertEquals(0x500, bv0.countBits(false, 0x4FF));
+		Assert.assertEquals(0x4FF, bv0.findPosition(false, 0x500));
+		Assert.assertEquals(RankedBitVector.NOT_FOUND,
+				bv0.findPosition(true, 1));
+
+		PopcountRankedBitVectorImpl bv1 = createBitVector(0x1234, 1);
+		PopcountRankedBitVectorImpl bv2 = new PopcountRankedBitVectorImpl(bv1);
+		Assert.assertEquals(bv1, bv2);
+		assertCorrectRankAndSelect(bv2);
+	}
+
+	@Test
+	public void testEmptyBitVector() {
+		PopcountRankedBitVectorImpl bv = new PopcountRankedBitVectorImpl();
+		Assert.assertEquals(0, bv.size());
+		Assert.assertEquals(0, bv.countBits(true, -1));
+		Assert.assertEquals(0, bv.countBits(true, 10));
+		Assert.assertEquals(11, bv.countBits(false, 10));
+		assertCorrectRankAndSelect(bv);
+		Assert.assertEquals(new BitVectorImpl(), bv);
+	}
+
+	@Test
+	public void testSelectInWord() {
+		Random random = new Random(5);
+		for (int i = 0; i < 1000; i++) {
+			long word = random.nextLong();
+			if (i % 3 == 0) {
+				word &= random.nextLong(); // sparser words
+			}
+			if (i == 0) {
+				word = -1L;
+			}
+			int rank = 0;
+			for (int position = 0; position < 64; position++) {
+				if ((word & (1L << position)) != 0) {
+					Assert.assertEquals(position,
+							PopcountRankedBitVectorImpl.selectInWord(word,
+									rank));
+					rank++;
+				}
+			}
+		}
+	}
+
+}
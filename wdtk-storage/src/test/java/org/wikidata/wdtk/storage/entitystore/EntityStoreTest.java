@@ -0,0 +1,179 @@
+package org.wikidata.wdtk.storage.entitystore;
+
+/*
+ * #%L
+ * Wikidata Toolkit Storage
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.datamodel.helpers.ItemDocumentBuilder;
+import org.wikidata.wdtk.datamodel.helpers.PropertyDocumentBuilder;
+import org.wikidata.wdtk.datamodel.helpers.StatementBuilder;
+import org.wikidata.wdtk.datamodel.interfaces.DatatypeIdValue;
+import org.wikidata.wdtk.datamodel.interfaces.EntityDocument;
+import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
+import org.wikidata.wdtk.datamodel.interfaces.ItemIdValue;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyDocument;
+
+public class EntityStoreTest {
+
+	/**
+	 * Number of items in the test store; enough to fill several blocks.
+	 */
+	static final int ITEM_COUNT = 3000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Returns the item with the given number. Items have sparse ids, and
+	 * their labels are long enough to fill several blocks.
+	 */
+	static ItemDocument getItemDocument(int i, String label) {
+		ItemIdValue itemIdValue = Datamodel.makeWikidataItemIdValue("Q"
+				+ (7 * i + 1));
+		return ItemDocumentBuilder
+				.forItemId(itemIdValue)
+				.withLabel(label + " " + i, "en")
+				.withDescription("Test item number " + i, "en")
+				.withStatement(
+						StatementBuilder
+								.forSubjectAndProperty(itemIdValue,
+										Datamodel.makeWikidataPropertyIdValue("P31"))
+								.withId(itemIdValue.getId() + "$1")
+								.withValue(Datamodel.makeWikidataItemIdValue("Q5"))
+								.build()).withRevisionId(i).build();
+	}
+
+	static PropertyDocument getPropertyDocument() {
+		return PropertyDocumentBuilder
+				.forPropertyIdAndDatatype(
+						Datamodel.makeWikidataPropertyIdValue("P31"),
+						DatatypeIdValue.DT_ITEM).withLabel("instance of", "en")
+				.build();
+	}
+
+	Path createStore() {
+		Path directory = this.folder.getRoot().toPath().resolve("store");
+		EntityStoreBuilder builder = new EntityStoreBuilder(directory);
+		builder.open();
+		// replaced by a later version:
+		builder.processItemDocument(getItemDocument(10, "Old label"));
+		for (int i = ITEM_COUNT - 1; i >= 0; i--) {
+			builder.processItemDocument(getItemDocument(i, "Label"));
+		}
+		builder.processPropertyDocument(getPropertyDocument());
+		builder.close();
+		assertEquals(ITEM_COUNT + 2, builder.getDocumentCount());
+		return directory;
+	}
+
+	@Test
+	public void testLookup() throws IOException {
+		try (EntityStore store = new EntityStore(createStore(),
+				Datamodel.SITE_WIKIDATA)) {
+			assertEquals(ITEM_COUNT + 1, store.getEntityCount());
+			for (int i = 0; i < ITEM_COUNT; i += 13) {
+				assertEquals(getItemDocument(i, "Label"),
+						store.getEntityDocument("Q" + (7 * i + 1)));
+			}
+			assertEquals(getPropertyDocument(),
+					store.getEntityDocument("P31"));
+
+			assertNull(store.getEntityDocument("Q2"));
+			assertNull(store.getEntityDocument("Q123456789"));
+			assertNull(store.getEntityDocument("P32"));
+			assertNull(store.getEntityDocument("X1"));
+			assertNull(store.getEntityDocument("Qfoo"));
+			assertNull(store.getEntityDocument("Q"));
+		}
+	}
+
+	@Test
+	public void testMultipleLookups() throws IOException {
+		try (EntityStore store = new EntityStore(createStore(),
+				Datamodel.SITE_WIKIDATA, 1)) {
+			List<String> ids = new ArrayList<>();
+			for (int i = 0; i < ITEM_COUNT; i++) {
+				ids.add("Q" + (7 * i + 1));
+			}
+			ids.add("Q3");
+			Collections.shuffle(ids);
+
+			Map<String, EntityDocument> documents = store
+					.getEntityDocuments(ids);
+			assertEquals(ITEM_COUNT, documents.size());
+			assertEquals(getItemDocument(42, "Label"), documents.get("Q295"));
+
+			// documents are read in the order of blocks:
+			long blockReads = store.getBlockReadCount();
+			assertTrue(blockReads > 3);
+			assertTrue(blockReads < 50);
+			store.getEntityDocuments(ids);
+			assertEquals(2 * blockReads, store.getBlockReadCount());
+		}
+	}
+
+	@Test
+	public void testFilter() throws IOException {
+		try (EntityStore store = new EntityStore(createStore(),
+				Datamodel.SITE_WIKIDATA)) {
+			store.getFilter().setLanguageFilter(
+					Collections.<String> emptySet());
+			ItemDocument document = (ItemDocument) store
+					.getEntityDocument("Q8");
+			assertTrue(document.getLabels().isEmpty());
+			assertEquals(1, document.getStatementGroups().size());
+		}
+	}
+
+	@Test
+	public void testEmptyStore() throws IOException {
+		Path directory = this.folder.getRoot().toPath();
+		EntityStoreBuilder builder = new EntityStoreBuilder(directory);
+		builder.open();
+		builder.close();
+
+		try (EntityStore store = new EntityStore(directory,
+				Datamodel.SITE_WIKIDATA)) {
+			assertEquals(0, store.getEntityCount());
+			assertNull(store.getEntityDocument("Q1"));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testMissingStore() throws IOException {
+		new EntityStore(this.folder.getRoot().toPath(),
+				Datamodel.SITE_WIKIDATA);
+	}
+
+}
@@ -0,0 +1,283 @@
+package org.wikidata.wdtk.storage.statementindex;
+
+/*
+ * #%L
+ * Wikidata Toolkit Storage
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wikidata.wdtk.datamodel.helpers.Datamodel;
+import org.wikidata.wdtk.datamodel.helpers.Equality;
+import org.wikidata.wdtk.datamodel.helpers.Hash;
+import org.wikidata.wdtk.datamodel.helpers.ItemDocumentBuilder;
+import org.wikidata.wdtk.datamodel.helpers.StatementBuilder;
+import org.wikidata.wdtk.datamodel.interfaces.ItemDocument;
+import org.wikidata.wdtk.datamodel.interfaces.ItemIdValue;
+import org.wikidata.wdtk.datamodel.interfaces.MonolingualTextValue;
+import org.wikidata.wdtk.datamodel.interfaces.PropertyIdValue;
+import org.wikidata.wdtk.datamodel.interfaces.Value;
+import org.wikidata.wdtk.datamodel.interfaces.ValueVisitor;
+
+public class StatementIndexTest {
+
+	static final int ITEM_COUNT = 1000;
+
+	static final PropertyIdValue P31 = Datamodel
+			.makeWikidataPropertyIdValue("P31");
+	static final PropertyIdValue P569 = Datamodel
+			.makeWikidataPropertyIdValue("P569");
+	static final PropertyIdValue P1476 = Datamodel
+			.makeWikidataPropertyIdValue("P1476");
+	static final ItemIdValue Q5 = Datamodel.makeWikidataItemIdValue("Q5");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	static Value getInstanceOf(int i) {
+		return i % 3 == 0 ? Q5 : Datamodel.makeWikidataItemIdValue("Q"
+				+ (10 + i % 7));
+	}
+
+	static Value getTitle(int i) {
+		return Datamodel.makeStringValue("Title " + (i % 11));
+	}
+
+	/**
+	 * Returns an item with some statements. Item Q<i>i</i> has two values
+	 * for P31, unknown values for P569 if <i>i</i> is divisible by 4, and a
+	 * string value for P1476 if <i>i</i> is even.
+	 */
+	static ItemDocument getItemDocument(int i) {
+		ItemIdValue itemIdValue = Datamodel.makeWikidataItemIdValue("Q" + i);
+		ItemDocumentBuilder builder = ItemDocumentBuilder
+				.forItemId(itemIdValue)
+				.withStatement(
+						StatementBuilder.forSubjectAndProperty(itemIdValue, P31)
+								.withValue(getInstanceOf(i)).build())
+				.withStatement(
+						StatementBuilder.forSubjectAndProperty(itemIdValue, P31)
+								.withValue(getInstanceOf(i + 1)).build());
+		if (i % 4 == 0) {
+			builder.withStatement(StatementBuilder
+					.forSubjectAndProperty(itemIdValue, P569).withSomeValue()
+					.build());
+		}
+		if (i % 2 == 0) {
+			builder.withStatement(StatementBuilder
+					.forSubjectAndProperty(itemIdValue, P1476)
+					.withValue(getTitle(i)).build());
+		}
+		return builder.build();
+	}
+
+	Path createIndex(boolean sorted) {
+		Path file = this.folder.getRoot().toPath().resolve("statements.idx");
+		// a small buffer size to test the merging of postings:
+		StatementIndexBuilder builder = new StatementIndexBuilder(file, 50);
+		builder.open();
+		for (int i = 0; i < ITEM_COUNT; i++) {
+			builder.processItemDocument(getItemDocument(sorted ? i + 1
+					: (389 * i) % ITEM_COUNT + 1));
+		}
+		builder.close();
+		assertFalse(Files.exists(builder.getPendingPath()));
+		assertEquals(2 * ITEM_COUNT + ITEM_COUNT / 4 + ITEM_COUNT / 2,
+				builder.getStatementCount());
+		return file;
+	}
+
+	static int[] toArray(List<Integer> list) {
+		int[] result = new int[list.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = list.get(i);
+		}
+		return result;
+	}
+
+	void checkQueries(Path file) throws IOException {
+		List<Integer> humans = new ArrayList<>();
+		List<Integer> humansWithBirthDate = new ArrayList<>();
+		List<Integer> titles = new ArrayList<>();
+		for (int i = 1; i <= ITEM_COUNT; i++) {
+			if (i % 3 == 0 || (i + 1) % 3 == 0) {
+				humans.add(i);
+				if (i % 4 == 0) {
+					humansWithBirthDate.add(i);
+				}
+				if (i % 2 == 0 && getTitle(i).equals(getTitle(4))) {
+					titles.add(i);
+				}
+			}
+		}
+
+		try (StatementIndex index = new StatementIndex(file,
+				Datamodel.SITE_WIKIDATA)) {
+			assertEquals(Arrays.asList(P31, P569, P1476),
+					index.getProperties());
+			assertEquals(2 * ITEM_COUNT, index.getStatementCount(P31));
+			assertEquals(0, index.getStatementCount(Datamodel
+					.makeWikidataPropertyIdValue("P18")));
+
+			assertArrayEquals(toArray(humans), index.newQuery()
+					.withValue(P31, Q5).getSubjectIds());
+			assertArrayEquals(toArray(humansWithBirthDate), index.newQuery()
+					.withValue(P31, Q5).withProperty(P569).getSubjectIds());
+			assertArrayEquals(toArray(humansWithBirthDate), index.newQuery()
+					.withProperty(P569).withValue(P31, Q5).getSubjectIds());
+			assertArrayEquals(toArray(humansWithBirthDate), index.newQuery()
+					.withValue(P31, Q5)
+					.withSnak(Datamodel.makeSomeValueSnak(P569))
+					.getSubjectIds());
+			assertArrayEquals(toArray(titles), index.newQuery()
+					.withValue(P1476, Datamodel.makeStringValue("Title 4"))
+					.withValue(P31, Q5).getSubjectIds());
+			assertEquals(Datamodel.makeWikidataItemIdValue("Q"
+					+ titles.get(0)),
+					index.newQuery()
+							.withValue(P31, Q5)
+							.withValue(P1476,
+									Datamodel.makeStringValue("Title 4"))
+							.getItemIds().get(0));
+
+			assertEquals(0, index.newQuery()
+					.withSnak(Datamodel.makeNoValueSnak(P569)).count());
+			assertEquals(0, index.newQuery().withValue(P31, Q5)
+					.withProperty(Datamodel.makeWikidataPropertyIdValue("P18"))
+					.count());
+			assertEquals(0, index.newQuery().count());
+		}
+	}
+
+	@Test
+	public void testQueries() throws IOException {
+		checkQueries(createIndex(false));
+	}
+
+	@Test
+	public void testQueriesSortedInput() throws IOException {
+		checkQueries(createIndex(true));
+	}
+
+	@Test
+	public void testValueKeysIgnoreImplementation() {
+		MonolingualTextValue value = new MonolingualTextValue() {
+
+			@Override
+			public <T> T accept(ValueVisitor<T> valueVisitor) {
+				return valueVisitor.visit(this);
+			}
+
+			@Override
+			public String getText() {
+				return "Douglas Adams";
+			}
+
+			@Override
+			public String getLanguageCode() {
+				return "en";
+			}
+
+			@Override
+			public int hashCode() {
+				return Hash.hashCode(this);
+			}
+
+			@Override
+			public boolean equals(Object obj) {
+				return Equality.equalsMonolingualTextValue(this, obj);
+			}
+		};
+		MonolingualTextValue other = Datamodel.makeMonolingualTextValue(
+				"Douglas Adams", "en");
+		assertEquals(other, value);
+		assertNotEquals(other.toString(), value.toString());
+		assertEquals(StatementIndex.getValueKey(other),
+				StatementIndex.getValueKey(value));
+	}
+
+	@Test
+	public void testValueKeysOfDifferentValues() {
+		assertNotEquals(StatementIndex.getValueKey(Datamodel
+				.makeMonolingualTextValue("ab", "c")),
+				StatementIndex.getValueKey(Datamodel.makeMonolingualTextValue(
+						"a", "bc")));
+		assertNotEquals(StatementIndex.getValueKey(Datamodel
+				.makeStringValue("Q5")), StatementIndex.getValueKey(Q5));
+		assertNotEquals(StatementIndex.getValueKey(Datamodel
+				.makeQuantityValue(new BigDecimal("1"), new BigDecimal("0"),
+						new BigDecimal("2"))),
+				StatementIndex.getValueKey(Datamodel.makeQuantityValue(
+						new BigDecimal("1"), new BigDecimal("1"),
+						new BigDecimal("1"))));
+	}
+
+	@Test
+	public void testPostingListAdvance() {
+		PostingList.Writer writer = new PostingList.Writer();
+		for (int i = 0; i < 1000; i++) {
+			writer.add(3 * (i / 2), i);
+		}
+		PostingList postingList = writer.build();
+		assertEquals(1000, postingList.size());
+		assertTrue(postingList.blockSubjects.length > 5);
+
+		PostingList.Iterator iterator = postingList.iterator();
+		assertEquals(0, iterator.advance(0));
+		assertEquals(0, iterator.value);
+		assertEquals(3, iterator.advance(1));
+		assertEquals(2, iterator.value);
+		assertEquals(1200, iterator.advance(1199));
+		assertEquals(800, iterator.value);
+		assertEquals(1200, iterator.advance(1200));
+		assertTrue(iterator.next());
+		assertEquals(801, iterator.value);
+		assertEquals(1497, iterator.advance(1496));
+		assertEquals(PostingList.END, iterator.advance(1498));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsortedPostings() {
+		PostingList.Writer writer = new PostingList.Writer();
+		writer.add(5, 0);
+		writer.add(4, 0);
+	}
+
+	@Test(expected = IOException.class)
+	public void testInvalidFile() throws IOException {
+		Path file = this.folder.newFile("invalid").toPath();
+		Files.write(file, new byte[100]);
+		new StatementIndex(file, Datamodel.SITE_WIKIDATA).close();
+	}
+
+}
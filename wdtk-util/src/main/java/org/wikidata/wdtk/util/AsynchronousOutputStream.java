@@ -0,0 +1,342 @@
+package org.wikidata.wdtk.util;
+
+/*
+ * #%L
+ * Wikidata Toolkit Utilities
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Output stream that writes to another output stream in a separate thread.
+ * This is useful if writing to the other stream is expensive, e.g., since it
+ * compresses data, so that this work can be done while new data is being
+ * created. It is the counterpart of {@link PipelinedInputStream}.
+ * <p>
+ * Data is passed between the two threads in a ring of reusable buffers. Each
+ * buffer is owned either by the writing thread or by the output thread, and
+ * ownership is handed over by advancing two counters, without any locks. A
+ * thread that has to wait for the other is parked and woken up as soon as a
+ * buffer has been handed over, so that there are no polling delays. The
+ * stream records how long each side had to wait (see
+ * {@link #getProducerWaitTime()} and {@link #getConsumerWaitTime()}), which
+ * shows whether creating the data or writing it is the bottleneck.
+ * <p>
+ * The stream must only be used by one thread at a time. Errors of the output
+ * thread are reported when writing, flushing, or closing this stream.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+public class AsynchronousOutputStream extends OutputStream {
+
+	/**
+	 * Default size of the buffers used to pass data between the threads.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+	/**
+	 * Default number of buffers used to pass data between the threads.
+	 */
+	public static final int DEFAULT_BUFFER_COUNT = 8;
+
+	/**
+	 * A buffer together with the number of bytes it holds.
+	 *
+	 * @author Markus Kroetzsch
+	 *
+	 */
+	static class Chunk {
+		final byte[] data;
+		int length = 0;
+		/**
+		 * True if the output should be flushed after writing this chunk.
+		 */
+		boolean flush = false;
+
+		Chunk(int size) {
+			this.data = new byte[size];
+		}
+	}
+
+	final OutputStream out;
+	final Thread outputThread;
+	final Chunk[] chunks;
+
+	/**
+	 * Number of chunks that have been handed over to the output thread. Only
+	 * changed by the writing thread.
+	 */
+	volatile long filledCount = 0;
+	/**
+	 * Number of chunks that have been written by the output thread. Only
+	 * changed by the output thread.
+	 */
+	volatile long writtenCount = 0;
+	/**
+	 * True if no more chunks will be handed over.
+	 */
+	volatile boolean finished = false;
+	/**
+	 * The writing thread if it is waiting for a free chunk, or null.
+	 */
+	volatile Thread waitingProducer = null;
+
+	/**
+	 * Exception that occurred while writing the output, if any.
+	 */
+	volatile IOException outputException = null;
+
+	volatile long producerWaitTime = 0;
+	volatile long consumerWaitTime = 0;
+
+	Chunk currentChunk;
+	boolean closed = false;
+
+	/**
+	 * Constructor. Creates a stream that uses {@link #DEFAULT_BUFFER_COUNT}
+	 * buffers of size {@link #DEFAULT_BUFFER_SIZE}.
+	 *
+	 * @param out
+	 *            the stream to write to in a separate thread
+	 */
+	public AsynchronousOutputStream(OutputStream out) {
+		this(out, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_COUNT);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param out
+	 *            the stream to write to in a separate thread
+	 * @param bufferSize
+	 *            the size of the buffers used to pass data between the
+	 *            threads
+	 * @param bufferCount
+	 *            the number of buffers; the writing thread waits if all of
+	 *            them are filled
+	 */
+	public AsynchronousOutputStream(OutputStream out, int bufferSize,
+			int bufferCount) {
+		if (bufferSize <= 0 || bufferCount <= 0) {
+			throw new IllegalArgumentException(
+					"Buffer size and count must be positive numbers.");
+		}
+		this.out = out;
+		this.chunks = new Chunk[bufferCount];
+		for (int i = 0; i < bufferCount; i++) {
+			this.chunks[i] = new Chunk(bufferSize);
+		}
+		this.currentChunk = this.chunks[0];
+
+		this.outputThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					writeChunks();
+				} catch (IOException e) {
+					outputException = e;
+				} catch (RuntimeException e) {
+					outputException = new IOException(e.toString(), e);
+				} finally {
+					// make sure that the writing thread does not wait forever:
+					LockSupport.unpark(waitingProducer);
+				}
+			}
+		}, "asynchronous-output-stream");
+		this.outputThread.setDaemon(true);
+		this.outputThread.start();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+		if (this.currentChunk.length == this.currentChunk.data.length) {
+			handOverChunk(false);
+		}
+		this.currentChunk.data[this.currentChunk.length++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		while (len > 0) {
+			if (this.currentChunk.length == this.currentChunk.data.length) {
+				handOverChunk(false);
+			}
+			int count = Math.min(len, this.currentChunk.data.length
+					- this.currentChunk.length);
+			System.arraycopy(b, off, this.currentChunk.data,
+					this.currentChunk.length, count);
+			this.currentChunk.length += count;
+			off += count;
+			len -= count;
+		}
+	}
+
+	/**
+	 * Hands over all data written so far to the output thread, which flushes
+	 * the underlying stream after writing it. The method does not wait for
+	 * this to happen.
+	 */
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		handOverChunk(true);
+	}
+
+	/**
+	 * Waits until all data has been written and closes the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		try {
+			if (this.outputException == null
+					&& this.currentChunk.length > 0) {
+				handOverChunk(false);
+			}
+		} finally {
+			this.finished = true;
+			LockSupport.unpark(this.outputThread);
+			try {
+				this.outputThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				InterruptedIOException result = new InterruptedIOException(
+						"Interrupted while waiting for output to finish");
+				result.initCause(e);
+				throw result;
+			}
+			this.out.close();
+		}
+		checkOutputException();
+	}
+
+	/**
+	 * Returns the total time that the thread writing to this stream had to
+	 * wait for the output thread, because all buffers were full. If this is
+	 * large, writing the output is the bottleneck.
+	 *
+	 * @return waiting time in nanoseconds
+	 */
+	public long getProducerWaitTime() {
+		return this.producerWaitTime;
+	}
+
+	/**
+	 * Returns the total time that the output thread had to wait for new data.
+	 * If this is large, creating the data is the bottleneck.
+	 *
+	 * @return waiting time in nanoseconds
+	 */
+	public long getConsumerWaitTime() {
+		return this.consumerWaitTime;
+	}
+
+	/**
+	 * Hands over the current chunk to the output thread, and waits until the
+	 * next chunk is free.
+	 *
+	 * @param flush
+	 *            true if the output should be flushed after writing the chunk
+	 * @throws IOException
+	 *             if the output thread failed or the stream is closed
+	 */
+	void handOverChunk(boolean flush) throws IOException {
+		checkOutputException();
+
+		this.currentChunk.flush = flush;
+		long filled = this.filledCount + 1;
+		this.filledCount = filled;
+		LockSupport.unpark(this.outputThread);
+
+		if (filled - this.writtenCount >= this.chunks.length) {
+			long waitStart = System.nanoTime();
+			this.waitingProducer = Thread.currentThread();
+			while (filled - this.writtenCount >= this.chunks.length
+					&& this.outputException == null) {
+				LockSupport.park(this);
+				if (Thread.interrupted()) {
+					this.waitingProducer = null;
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException(
+							"Interrupted while waiting for output");
+				}
+			}
+			this.waitingProducer = null;
+			this.producerWaitTime += System.nanoTime() - waitStart;
+			checkOutputException();
+		}
+
+		this.currentChunk = this.chunks[(int) (filled % this.chunks.length)];
+		this.currentChunk.length = 0;
+	}
+
+	/**
+	 * Writes chunks to the output as they are handed over, until the stream
+	 * is closed. This is done in the output thread.
+	 *
+	 * @throws IOException
+	 *             if there was a problem writing the output
+	 */
+	void writeChunks() throws IOException {
+		long written = 0;
+		while (true) {
+			if (written == this.filledCount) {
+				long waitStart = System.nanoTime();
+				while (written == this.filledCount && !this.finished) {
+					LockSupport.park(this);
+				}
+				this.consumerWaitTime += System.nanoTime() - waitStart;
+				if (written == this.filledCount) {
+					// finished is only set after the last chunk was filled
+					return;
+				}
+			}
+
+			Chunk chunk = this.chunks[(int) (written % this.chunks.length)];
+			this.out.write(chunk.data, 0, chunk.length);
+			if (chunk.flush) {
+				this.out.flush();
+			}
+			written++;
+			this.writtenCount = written;
+			LockSupport.unpark(this.waitingProducer);
+		}
+	}
+
+	void ensureOpen() throws IOException {
+		if (this.closed) {
+			throw new IOException("Stream closed");
+		}
+	}
+
+	void checkOutputException() throws IOException {
+		if (this.outputException != null) {
+			throw this.outputException;
+		}
+	}
+
+}
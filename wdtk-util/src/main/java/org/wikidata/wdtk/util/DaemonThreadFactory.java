@@ -0,0 +1,72 @@
+package org.wikidata.wdtk.util;
+
+/*
+ * #%L
+ * Wikidata Toolkit Utilities
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factory that creates daemon threads, so that worker threads of
+ * streams or processors that are not closed properly do not prevent the JVM
+ * from exiting. Threads are otherwise created as by
+ * {@link Executors#defaultThreadFactory()}. Optionally, threads can be named
+ * with a common prefix followed by a number, starting at 0.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+
+	final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+	final String namePrefix;
+	final AtomicInteger threadCount = new AtomicInteger();
+
+	/**
+	 * Constructor. Threads get the names of the default thread factory.
+	 */
+	public DaemonThreadFactory() {
+		this(null);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param namePrefix
+	 *            the prefix of the names of all threads, or null to use the
+	 *            names of the default thread factory
+	 */
+	public DaemonThreadFactory(String namePrefix) {
+		this.namePrefix = namePrefix;
+	}
+
+	@Override
+	public Thread newThread(Runnable runnable) {
+		Thread thread = this.defaultFactory.newThread(runnable);
+		if (this.namePrefix != null) {
+			thread.setName(this.namePrefix + "-"
+					+ this.threadCount.getAndIncrement());
+		}
+		thread.setDaemon(true);
+		return thread;
+	}
+
+}
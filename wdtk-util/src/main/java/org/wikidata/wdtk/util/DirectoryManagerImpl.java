@@ -49,6 +49,12 @@ import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
  */
 public class DirectoryManagerImpl implements DirectoryManager {
 
+	/**
+	 * The number of threads used for decompressing files. If this is 1, all
+	 * decompression happens in the thread that reads the data.
+	 */
+	int decompressionThreads = 1;
+
 	/**
 	 * The directory that this object is managing.
 	 */
@@ -79,6 +85,37 @@ public class DirectoryManagerImpl implements DirectoryManager {
 		createDirectory(this.directory);
 	}
 
+	/**
+	 * Sets the number of threads that should be used for decompressing files
+	 * that are read by this directory manager. The default is 1, meaning that
+	 * data is decompressed in the thread that reads it. For larger values,
+	 * bzip2 files are decompressed block by block using the given number of
+	 * threads (see {@link ParallelBZip2InputStream}), and gzip files are
+	 * decompressed in a separate thread (see {@link PipelinedInputStream}).
+	 * Managers for subdirectories that are created later use the same
+	 * setting.
+	 *
+	 * @param threadCount
+	 *            the number of threads to use for decompression
+	 */
+	public void setDecompressionThreads(int threadCount) {
+		if (threadCount <= 0) {
+			throw new IllegalArgumentException(
+					"The number of threads must be a positive number.");
+		}
+		this.decompressionThreads = threadCount;
+	}
+
+	/**
+	 * Returns the number of threads that are used for decompressing files.
+	 *
+	 * @see #setDecompressionThreads(int)
+	 * @return the number of threads
+	 */
+	public int getDecompressionThreads() {
+		return this.decompressionThreads;
+	}
+
 	@Override
 	public String toString() {
 		return this.directory.toString();
@@ -87,8 +124,10 @@ public class DirectoryManagerImpl implements DirectoryManager {
 	@Override
 	public DirectoryManager getSubdirectoryManager(String subdirectoryName)
 			throws IOException {
-		return new DirectoryManagerImpl(directory.resolve(subdirectoryName),
-				this.readOnly);
+		DirectoryManagerImpl result = new DirectoryManagerImpl(
+				directory.resolve(subdirectoryName), this.readOnly);
+		result.decompressionThreads = this.decompressionThreads;
+		return result;
 	}
 
 	@Override
@@ -194,8 +233,16 @@ public class DirectoryManagerImpl implements DirectoryManager {
 		case NONE:
 			return inputStream;
 		case GZIP:
+			if (this.decompressionThreads > 1) {
+				return new PipelinedInputStream(new GZIPInputStream(
+						inputStream));
+			}
 			return new GZIPInputStream(inputStream);
 		case BZ2:
+			if (this.decompressionThreads > 1) {
+				return new ParallelBZip2InputStream(inputStream,
+						this.decompressionThreads);
+			}
 			return new BZip2CompressorInputStream(new BufferedInputStream(
 					inputStream));
 		default:
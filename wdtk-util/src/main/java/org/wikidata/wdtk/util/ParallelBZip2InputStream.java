@@ -0,0 +1,797 @@
+package org.wikidata.wdtk.util;
+
+/*
+ * #%L
+ * Wikidata Toolkit Utilities
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+/**
+ * Input stream that decompresses bzip2 data using several threads. One thread
+ * scans the compressed input for the (bit-aligned) magic numbers that start
+ * each bzip2 block. Every block is then turned into a self-contained bzip2
+ * stream of its own and decompressed by a pool of worker threads. The
+ * decompressed blocks are returned in their original order, so the stream can
+ * be used as a drop-in replacement for {@link BZip2CompressorInputStream}.
+ * <p>
+ * The block magic number might occasionally occur within the compressed data
+ * by chance. Blocks that cannot be decompressed are therefore merged with
+ * (a limited number of) their successors before giving up. Input that consists of several
+ * concatenated bzip2 streams (as created by tools like pbzip2) is
+ * decompressed completely. Data that follows the last stream and that does
+ * not start a new stream, such as padding, is ignored.
+ * <p>
+ * The stream can report the position of the compressed block whose data is
+ * currently being read (see {@link #getCurrentBlockOffset()}), and it can be
+ * created to start decompressing at such a block boundary. This allows
+ * resuming the processing of large files without decompressing all data
+ * that comes before.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+public class ParallelBZip2InputStream extends InputStream {
+
+	/**
+	 * The 48 bit magic number that starts a compressed block.
+	 */
+	static final long BLOCK_MAGIC = 0x314159265359L;
+	/**
+	 * The 48 bit magic number that marks the end of a bzip2 stream.
+	 */
+	static final long END_OF_STREAM_MAGIC = 0x177245385090L;
+	static final long MAGIC_MASK = 0xffffffffffffL;
+
+	/**
+	 * Number of bytes read from the underlying stream at once.
+	 */
+	static final int READ_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Maximal number of blocks that are merged when trying to decompress a
+	 * block that failed. A false block magic number is very rare, so real
+	 * blocks are almost never split more than once; blocks that still fail
+	 * after this many merges are considered to be corrupted.
+	 */
+	static final int MAX_MERGED_BLOCKS = 4;
+
+	/**
+	 * One compressed bzip2 block, given as a sequence of bits in a byte array.
+	 * The bits start with the block magic number.
+	 *
+	 * @author Markus Kroetzsch
+	 *
+	 */
+	static class CompressedBlock {
+		final byte[] data;
+		final int bitOffset;
+		final long bitLength;
+		/**
+		 * The block size character ('1' to '9') of the stream header.
+		 */
+		final byte blockSize;
+		/**
+		 * True if this is the last block of a bzip2 stream.
+		 */
+		final boolean endOfStream;
+
+		CompressedBlock(byte[] data, int bitOffset, long bitLength,
+				byte blockSize, boolean endOfStream) {
+			this.data = data;
+			this.bitOffset = bitOffset;
+			this.bitLength = bitLength;
+			this.blockSize = blockSize;
+			this.endOfStream = endOfStream;
+		}
+
+		/**
+		 * Returns a complete bzip2 stream that consists only of this block.
+		 * The stream CRC of a single-block stream equals the CRC of the block,
+		 * which is stored in the 32 bits after the block magic number.
+		 *
+		 * @return the bytes of a bzip2 stream
+		 */
+		byte[] toStream() {
+			long streamBits = 32 + this.bitLength + 48 + 32;
+			byte[] result = new byte[(int) ((streamBits + 7) / 8)];
+			result[0] = 'B';
+			result[1] = 'Z';
+			result[2] = 'h';
+			result[3] = this.blockSize;
+			copyBits(this.data, this.bitOffset, result, 32, this.bitLength);
+			long position = 32 + this.bitLength;
+			writeBits(result, position, END_OF_STREAM_MAGIC, 48);
+			writeBits(result, position + 48,
+					readBits(this.data, this.bitOffset + 48, 32), 32);
+			return result;
+		}
+
+		/**
+		 * Returns a block that consists of the bits of the first block
+		 * followed by the bits of the second block.
+		 *
+		 * @param first
+		 *            the first block
+		 * @param second
+		 *            the block that follows
+		 * @return the merged block
+		 */
+		static CompressedBlock merge(CompressedBlock first,
+				CompressedBlock second) {
+			long bitLength = first.bitLength + second.bitLength;
+			byte[] data = new byte[(int) ((bitLength + 7) / 8)];
+			copyBits(first.data, first.bitOffset, data, 0, first.bitLength);
+			copyBits(second.data, second.bitOffset, data, first.bitLength,
+					second.bitLength);
+			return new CompressedBlock(data, 0, bitLength, first.blockSize,
+					second.endOfStream);
+		}
+	}
+
+	/**
+	 * A block that is being decompressed.
+	 *
+	 * @author Markus Kroetzsch
+	 *
+	 */
+	static class PendingBlock {
+		final CompressedBlock block;
+		final Future<byte[]> result;
+		/**
+		 * Bit offset of the block in the underlying input.
+		 */
+		final long offset;
+
+		PendingBlock(CompressedBlock block, Future<byte[]> result, long offset) {
+			this.block = block;
+			this.result = result;
+			this.offset = offset;
+		}
+	}
+
+	/**
+	 * Marker that is put into the queue after the last block.
+	 */
+	static final PendingBlock END_OF_INPUT = new PendingBlock(null, null, -1);
+
+	final InputStream in;
+	final ExecutorService scannerThread;
+	final ExecutorService workerPool;
+	final BlockingQueue<PendingBlock> pendingBlocks;
+
+	/**
+	 * Block size character of the first stream header.
+	 */
+	final byte firstBlockSize;
+
+	/**
+	 * Byte offset in the underlying input at which scanning for blocks starts.
+	 */
+	final long scanStart;
+
+	/**
+	 * Bit offset of the block whose data is currently being read, or -1 if no
+	 * data has been read yet.
+	 */
+	volatile long currentBlockOffset = -1;
+
+	/**
+	 * Exception that occurred while reading the compressed input, if any.
+	 */
+	volatile IOException scannerException = null;
+
+	byte[] currentBlock = null;
+	int currentPosition = 0;
+	boolean finished = false;
+	boolean closed = false;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param in
+	 *            the stream to read compressed data from
+	 * @param threadCount
+	 *            the number of threads to use for decompression
+	 * @throws IOException
+	 *             if the input does not start with a bzip2 header or could
+	 *             not be read
+	 */
+	public ParallelBZip2InputStream(InputStream in, int threadCount)
+			throws IOException {
+		this(in, threadCount, 32);
+	}
+
+	/**
+	 * Constructor for a stream that starts decompressing at the block that
+	 * begins at the given bit offset of the input. The offset should have
+	 * been obtained from {@link #getCurrentBlockOffset()} when reading the
+	 * same data before. The input is read from its beginning, so that the
+	 * header of the first bzip2 stream can be checked; the data up to the
+	 * block is then skipped without decompressing it. For inputs that consist
+	 * of several concatenated bzip2 streams, all streams are assumed to use
+	 * the block size of the first stream.
+	 *
+	 * @param in
+	 *            the stream to read compressed data from, positioned at the
+	 *            start of the compressed data
+	 * @param threadCount
+	 *            the number of threads to use for decompression
+	 * @param blockOffset
+	 *            the bit offset of the first block to decompress
+	 * @throws IOException
+	 *             if the input does not start with a bzip2 header or could
+	 *             not be read
+	 */
+	public ParallelBZip2InputStream(InputStream in, int threadCount,
+			long blockOffset) throws IOException {
+		if (threadCount <= 0) {
+			throw new IllegalArgumentException(
+					"The number of threads must be a positive number.");
+		}
+		if (blockOffset < 32) {
+			throw new IllegalArgumentException(
+					"The first block cannot start before bit 32.");
+		}
+		this.in = in;
+
+		byte[] header = new byte[4];
+		int read = 0;
+		while (read < 4) {
+			int count = in.read(header, read, 4 - read);
+			if (count < 0) {
+				break;
+			}
+			read += count;
+		}
+		if (read < 4 || !isStreamHeader(header, 0)) {
+			throw new IOException("Stream is not in the BZip2 format");
+		}
+		this.firstBlockSize = header[3];
+
+		this.scanStart = blockOffset / 8;
+		long position = 4;
+		while (position < this.scanStart) {
+			long count = in.skip(this.scanStart - position);
+			if (count <= 0) {
+				if (in.read() < 0) {
+					throw new IOException("Unexpected end of BZip2 stream");
+				}
+				count = 1;
+			}
+			position += count;
+		}
+
+		this.pendingBlocks = new ArrayBlockingQueue<>(2 * threadCount);
+		this.scannerThread = Executors
+				.newSingleThreadExecutor(new DaemonThreadFactory());
+		this.workerPool = Executors.newFixedThreadPool(threadCount,
+				new DaemonThreadFactory());
+
+		this.scannerThread.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					scanBlocks();
+				} catch (IOException e) {
+					scannerException = e;
+				} catch (InterruptedException e) {
+					return;
+				} catch (RuntimeException e) {
+					scannerException = new IOException(e.toString(), e);
+				}
+				try {
+					pendingBlocks.put(END_OF_INPUT);
+				} catch (InterruptedException e) {
+					// stream was closed; nobody is waiting for more data
+				}
+			}
+		});
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!fillCurrentBlock()) {
+			return -1;
+		}
+		return this.currentBlock[this.currentPosition++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!fillCurrentBlock()) {
+			return -1;
+		}
+		int count = Math.min(len, this.currentBlock.length
+				- this.currentPosition);
+		System.arraycopy(this.currentBlock, this.currentPosition, b, off,
+				count);
+		this.currentPosition += count;
+		return count;
+	}
+
+	/**
+	 * Returns the bit offset in the underlying input of the compressed block
+	 * whose data is currently being read. A new stream that starts at this
+	 * offset (see
+	 * {@link #ParallelBZip2InputStream(InputStream, int, long)}) returns
+	 * the data of this block again, followed by the data of all later blocks.
+	 * This method can be called from any thread.
+	 *
+	 * @return bit offset of the current block, or -1 if no data has been
+	 *         read yet
+	 */
+	public long getCurrentBlockOffset() {
+		return this.currentBlockOffset;
+	}
+
+	@Override
+	public int available() throws IOException {
+		if (this.currentBlock == null) {
+			return 0;
+		}
+		return this.currentBlock.length - this.currentPosition;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		this.finished = true;
+		this.scannerThread.shutdownNow();
+		this.workerPool.shutdownNow();
+		this.in.close();
+	}
+
+	/**
+	 * Makes sure that there is unread data in the current block, fetching the
+	 * next decompressed block if needed.
+	 *
+	 * @return false if the end of the data has been reached
+	 * @throws IOException
+	 *             if the data could not be read or decompressed
+	 */
+	boolean fillCurrentBlock() throws IOException {
+		if (this.closed) {
+			throw new IOException("Stream closed");
+		}
+		while (this.currentBlock == null
+				|| this.currentPosition >= this.currentBlock.length) {
+			if (this.finished) {
+				return false;
+			}
+			PendingBlock pendingBlock = takePendingBlock();
+			if (pendingBlock == END_OF_INPUT) {
+				this.finished = true;
+				this.scannerThread.shutdown();
+				this.workerPool.shutdown();
+				if (this.scannerException != null) {
+					throw this.scannerException;
+				}
+				return false;
+			}
+			this.currentBlock = getDecompressedData(pendingBlock);
+			this.currentPosition = 0;
+			this.currentBlockOffset = pendingBlock.offset;
+		}
+		return true;
+	}
+
+	/**
+	 * Waits for the decompression of the given block to finish and returns
+	 * the result. If decompression failed, the block is merged with the
+	 * blocks that follow it in the same stream, since the boundary between
+	 * them might have been found in error. At most {@link #MAX_MERGED_BLOCKS}
+	 * blocks are merged, so that corrupted data does not lead to ever larger
+	 * blocks being decompressed again.
+	 *
+	 * @param pendingBlock
+	 *            the block to get the data for
+	 * @return decompressed data
+	 * @throws IOException
+	 *             if the block could not be decompressed
+	 */
+	byte[] getDecompressedData(PendingBlock pendingBlock) throws IOException {
+		IOException error;
+		try {
+			return pendingBlock.result.get();
+		} catch (InterruptedException e) {
+			throw getInterruptedIOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				error = (IOException) e.getCause();
+			} else {
+				error = new IOException(e.getCause().toString(), e.getCause());
+			}
+		}
+
+		CompressedBlock block = pendingBlock.block;
+		int mergedBlocks = 1;
+		while (!block.endOfStream && mergedBlocks < MAX_MERGED_BLOCKS) {
+			PendingBlock nextBlock = takePendingBlock();
+			if (nextBlock == END_OF_INPUT) {
+				this.finished = true;
+				break;
+			}
+			block = CompressedBlock.merge(block, nextBlock.block);
+			mergedBlocks++;
+			try {
+				return decompress(block);
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+		if (mergedBlocks == MAX_MERGED_BLOCKS) {
+			throw new IOException("Could not decompress BZip2 block at bit "
+					+ pendingBlock.offset + " even when merging it with "
+					+ (MAX_MERGED_BLOCKS - 1) + " following blocks", error);
+		}
+		throw error;
+	}
+
+	PendingBlock takePendingBlock() throws IOException {
+		try {
+			return this.pendingBlocks.take();
+		} catch (InterruptedException e) {
+			throw getInterruptedIOException(e);
+		}
+	}
+
+	/**
+	 * Reads the compressed input and splits it into blocks, which are passed
+	 * on to the worker pool for decompression.
+	 *
+	 * @throws IOException
+	 *             if there was a problem reading the data, or if the data
+	 *             ended unexpectedly
+	 * @throws InterruptedException
+	 *             if the thread was interrupted while waiting for space in
+	 *             the queue
+	 */
+	void scanBlocks() throws IOException, InterruptedException {
+		byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+		byte[] buffer = new byte[4 * READ_BUFFER_SIZE];
+		int length = 0;
+		// byte offset of buffer[0] in the input:
+		long bufferOffset = this.scanStart;
+		long window = 0;
+		byte blockSize = this.firstBlockSize;
+		// bit positions within buffer; -1 if not set:
+		int blockStart = -1;
+		int endOfStreamMagicEnd = -1;
+		// last end-of-stream magic number that was not followed by a new
+		// stream; it ends the data if no further block follows:
+		int lastEndOfStreamMagicEnd = -1;
+
+		// bit position up to which the data has been scanned:
+		int scanned = 0;
+
+		int count;
+		while ((count = this.in.read(readBuffer)) != -1) {
+			if (length + count > buffer.length) {
+				buffer = Arrays.copyOf(buffer,
+						Math.max(2 * buffer.length, length + count));
+			}
+			System.arraycopy(readBuffer, 0, buffer, length, count);
+			length += count;
+
+			while (scanned < 8 * length) {
+				if (endOfStreamMagicEnd >= 0) {
+					// Check if the stream really ends here, that is, if the
+					// stream CRC and padding are followed by a new header:
+					int headerEnd = getPaddedCrcEnd(endOfStreamMagicEnd) + 32;
+					if (8 * length < headerEnd) {
+						break; // wait for more data
+					}
+					if (isStreamHeader(buffer, headerEnd / 8 - 4)) {
+						submitBlock(buffer, bufferOffset, blockStart,
+								endOfStreamMagicEnd - 48, blockSize, true);
+						blockSize = buffer[headerEnd / 8 - 1];
+						blockStart = -1;
+						window = 0;
+						scanned = headerEnd;
+						lastEndOfStreamMagicEnd = -1;
+					} else {
+						// Either the magic number occurred in the block data
+						// by chance, or the stream is followed by data that
+						// is not bzip2. Scanning continues to find out.
+						lastEndOfStreamMagicEnd = endOfStreamMagicEnd;
+					}
+					endOfStreamMagicEnd = -1;
+					continue;
+				}
+
+				int bit = (buffer[scanned >>> 3] >>> (7 - (scanned & 7))) & 1;
+				window = ((window << 1) | bit) & MAGIC_MASK;
+				scanned++;
+				if (window == BLOCK_MAGIC) {
+					int magicStart = scanned - 48;
+					submitBlock(buffer, bufferOffset, blockStart, magicStart,
+							blockSize, false);
+					blockStart = magicStart;
+					lastEndOfStreamMagicEnd = -1;
+				} else if (window == END_OF_STREAM_MAGIC) {
+					endOfStreamMagicEnd = scanned;
+				}
+			}
+
+			if (lastEndOfStreamMagicEnd >= 0
+					&& scanned - lastEndOfStreamMagicEnd > getMaxBlockBits(
+							blockSize)) {
+				// No block could be this long, so the stream really ended at
+				// the last end-of-stream magic number; ignore the rest:
+				submitBlock(buffer, bufferOffset, blockStart,
+						lastEndOfStreamMagicEnd - 48, blockSize, true);
+				return;
+			}
+
+			// Drop data that is no longer needed, but keep the bits that are
+			// in the window, since they might start a magic number:
+			int drop = Math.max(0, blockStart >= 0 ? blockStart
+					: scanned - 48) / 8;
+			if (endOfStreamMagicEnd >= 0) {
+				drop = Math.min(drop, (endOfStreamMagicEnd - 48) / 8);
+			}
+			if (lastEndOfStreamMagicEnd >= 0) {
+				drop = Math.min(drop, (lastEndOfStreamMagicEnd - 48) / 8);
+			}
+			if (drop > 0) {
+				System.arraycopy(buffer, drop, buffer, 0, length - drop);
+				length -= drop;
+				bufferOffset += drop;
+				scanned -= 8 * drop;
+				if (blockStart >= 0) {
+					blockStart -= 8 * drop;
+				}
+				if (endOfStreamMagicEnd >= 0) {
+					endOfStreamMagicEnd -= 8 * drop;
+				}
+				if (lastEndOfStreamMagicEnd >= 0) {
+					lastEndOfStreamMagicEnd -= 8 * drop;
+				}
+			}
+		}
+
+		if (endOfStreamMagicEnd >= 0
+				&& 8 * length >= getPaddedCrcEnd(endOfStreamMagicEnd)) {
+			submitBlock(buffer, bufferOffset, blockStart,
+					endOfStreamMagicEnd - 48, blockSize, true);
+		} else if (lastEndOfStreamMagicEnd >= 0) {
+			// the data after the last stream is not bzip2 data
+			submitBlock(buffer, bufferOffset, blockStart,
+					lastEndOfStreamMagicEnd - 48, blockSize, true);
+		} else if (blockStart >= 0 || endOfStreamMagicEnd >= 0) {
+			throw new IOException("Unexpected end of BZip2 stream");
+		}
+	}
+
+	/**
+	 * Creates a compressed block from the given bits of the buffer and
+	 * submits it for decompression. Nothing happens if the start position is
+	 * negative, i.e., if no block has been started yet.
+	 *
+	 * @param buffer
+	 *            the buffer that holds the compressed data
+	 * @param bufferOffset
+	 *            the byte offset of the buffer in the input
+	 * @param start
+	 *            the bit position where the block starts
+	 * @param end
+	 *            the bit position after the last bit of the block
+	 * @param blockSize
+	 *            the block size character of the current stream
+	 * @param endOfStream
+	 *            true if this block is the last of its stream
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for space in the queue
+	 */
+	void submitBlock(byte[] buffer, long bufferOffset, int start, int end,
+			byte blockSize, boolean endOfStream) throws InterruptedException {
+		if (start < 0) {
+			return;
+		}
+		final CompressedBlock block = new CompressedBlock(Arrays.copyOfRange(
+				buffer, start / 8, (end + 7) / 8), start % 8, end - start,
+				blockSize, endOfStream);
+		Future<byte[]> result = this.workerPool.submit(new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws IOException {
+				return decompress(block);
+			}
+		});
+		this.pendingBlocks.put(new PendingBlock(block, result, 8
+				* bufferOffset + start));
+	}
+
+	/**
+	 * Decompresses a single block.
+	 *
+	 * @param block
+	 *            the block to decompress
+	 * @return the decompressed data
+	 * @throws IOException
+	 *             if the block is not valid
+	 */
+	static byte[] decompress(CompressedBlock block) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(
+				(block.blockSize - '0') * 100000);
+		byte[] buffer = new byte[READ_BUFFER_SIZE];
+		try (InputStream blockStream = new BZip2CompressorInputStream(
+				new ByteArrayInputStream(block.toStream()))) {
+			int count;
+			while ((count = blockStream.read(buffer)) != -1) {
+				out.write(buffer, 0, count);
+			}
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Returns an upper bound for the number of bits of a compressed block in
+	 * a stream with the given block size. Blocks hold at most 100000 bytes
+	 * per unit of block size, and bzip2 expands incompressible data by only
+	 * about one percent.
+	 *
+	 * @param blockSize
+	 *            the block size character ('1' to '9') of the stream
+	 * @return maximal number of bits of a block
+	 */
+	static int getMaxBlockBits(byte blockSize) {
+		return (blockSize - '0') * 125000 * 8;
+	}
+
+	/**
+	 * Returns the bit position after the stream CRC (and the padding to the
+	 * next full byte) that follows the end-of-stream magic number.
+	 *
+	 * @param endOfStreamMagicEnd
+	 *            the bit position after the end-of-stream magic number
+	 * @return the bit position where the next stream would start
+	 */
+	static int getPaddedCrcEnd(int endOfStreamMagicEnd) {
+		return ((endOfStreamMagicEnd + 32 + 7) / 8) * 8;
+	}
+
+	/**
+	 * Checks if the bytes at the given position form a bzip2 stream header.
+	 *
+	 * @param data
+	 *            the data to check
+	 * @param position
+	 *            the position of the first header byte
+	 * @return true if there is a header at this position
+	 */
+	static boolean isStreamHeader(byte[] data, int position) {
+		return data[position] == 'B' && data[position + 1] == 'Z'
+				&& data[position + 2] == 'h' && data[position + 3] >= '1'
+				&& data[position + 3] <= '9';
+	}
+
+	/**
+	 * Reads up to 64 bits, starting at the given bit position (counting from
+	 * the most significant bit of the first byte).
+	 *
+	 * @param data
+	 *            the data to read from
+	 * @param position
+	 *            the position of the first bit to read
+	 * @param count
+	 *            the number of bits to read
+	 * @return the bits, right-aligned
+	 */
+	static long readBits(byte[] data, long position, int count) {
+		long result = 0;
+		for (long i = position; i < position + count; i++) {
+			result = (result << 1)
+					| ((data[(int) (i >>> 3)] >>> (7 - (i & 7))) & 1);
+		}
+		return result;
+	}
+
+	/**
+	 * Writes up to 64 bits, starting at the given bit position (counting from
+	 * the most significant bit of the first byte).
+	 *
+	 * @param data
+	 *            the data to write to
+	 * @param position
+	 *            the position of the first bit to write
+	 * @param value
+	 *            the bits to write, right-aligned
+	 * @param count
+	 *            the number of bits to write
+	 */
+	static void writeBits(byte[] data, long position, long value, int count) {
+		for (int i = 0; i < count; i++) {
+			long bitPosition = position + i;
+			int index = (int) (bitPosition >>> 3);
+			int mask = 1 << (7 - (bitPosition & 7));
+			if (((value >>> (count - 1 - i)) & 1) != 0) {
+				data[index] |= mask;
+			} else {
+				data[index] &= ~mask;
+			}
+		}
+	}
+
+	/**
+	 * Copies a number of bits from one array to another. Copying is
+	 * byte-wise if the target position is at the start of a byte.
+	 *
+	 * @param source
+	 *            the data to read from
+	 * @param sourcePosition
+	 *            the position of the first bit to read
+	 * @param target
+	 *            the data to write to
+	 * @param targetPosition
+	 *            the position of the first bit to write
+	 * @param count
+	 *            the number of bits to copy
+	 */
+	static void copyBits(byte[] source, long sourcePosition, byte[] target,
+			long targetPosition, long count) {
+		long copied = 0;
+		if ((targetPosition & 7) == 0) {
+			int shift = (int) (sourcePosition & 7);
+			int sourceIndex = (int) (sourcePosition >>> 3);
+			int targetIndex = (int) (targetPosition >>> 3);
+			for (; copied + 8 <= count; copied += 8) {
+				int high = (source[sourceIndex] & 0xff) << shift;
+				int low = (shift == 0) ? 0
+						: (source[sourceIndex + 1] & 0xff) >>> (8 - shift);
+				target[targetIndex] = (byte) (high | low);
+				sourceIndex++;
+				targetIndex++;
+			}
+		}
+		for (; copied < count; copied++) {
+			writeBits(target, targetPosition + copied,
+					readBits(source, sourcePosition + copied, 1), 1);
+		}
+	}
+
+	static InterruptedIOException getInterruptedIOException(
+			InterruptedException e) {
+		Thread.currentThread().interrupt();
+		InterruptedIOException result = new InterruptedIOException(
+				"Interrupted while waiting for decompressed data");
+		result.initCause(e);
+		return result;
+	}
+
+}
@@ -0,0 +1,86 @@
+package org.wikidata.wdtk.util;
+
+/*
+ * #%L
+ * Wikidata Toolkit Utilities
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+
+/**
+ * Output stream that compresses data to bzip2 using several threads, in the
+ * style of pbzip2. Each block of input is compressed to a bzip2 stream of its
+ * own, and the streams are concatenated. Such files can be read by all common
+ * bzip2 tools, by {@link ParallelBZip2InputStream}, and by
+ * {@link org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream}
+ * when creating it with the option to decompress concatenated streams.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+public class ParallelBZip2OutputStream extends ParallelCompressorOutputStream {
+
+	/**
+	 * Number of uncompressed bytes per block, which matches the block size
+	 * of bzip2 with the (default) compression level 9.
+	 */
+	public static final int BLOCK_SIZE = 900000;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param out
+	 *            the stream to write compressed data to
+	 * @param threadCount
+	 *            the number of threads to use for compression
+	 */
+	public ParallelBZip2OutputStream(OutputStream out, int threadCount) {
+		this(out, threadCount, BLOCK_SIZE);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param out
+	 *            the stream to write compressed data to
+	 * @param threadCount
+	 *            the number of threads to use for compression
+	 * @param blockSize
+	 *            the number of uncompressed bytes in each block
+	 */
+	ParallelBZip2OutputStream(OutputStream out, int threadCount, int blockSize) {
+		super(out, threadCount, blockSize);
+	}
+
+	@Override
+	byte[] compressBlock(byte[] data, int length, byte[] previousData)
+			throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream(
+				length / 4 + 64);
+		try (BZip2CompressorOutputStream bzOut = new BZip2CompressorOutputStream(
+				result, BZip2CompressorOutputStream.MAX_BLOCKSIZE)) {
+			bzOut.write(data, 0, length);
+		}
+		return result.toByteArray();
+	}
+
+}
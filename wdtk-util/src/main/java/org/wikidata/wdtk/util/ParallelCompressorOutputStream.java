@@ -0,0 +1,267 @@
+package org.wikidata.wdtk.util;
+
+/*
+ * #%L
+ * Wikidata Toolkit Utilities
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Abstract base class for output streams that compress data using several
+ * threads. The data is cut into blocks of fixed size, which are compressed
+ * independently by a pool of worker threads. The compressed blocks are written
+ * to the underlying stream in their original order by the thread that writes
+ * to this stream. The number of blocks that are waiting to be compressed or
+ * written is bounded, so that the writing thread waits if the compression
+ * cannot keep up.
+ * <p>
+ * Subclasses define how a block is compressed, and may write data before the
+ * first and after the last block. The underlying stream is closed when this
+ * stream is closed. Flushing does not end the current block, so the output
+ * does not depend on how often the stream is flushed.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+abstract class ParallelCompressorOutputStream extends OutputStream {
+
+	/**
+	 * Number of blocks per thread that may be waiting to be compressed or
+	 * written before the writing thread waits for them.
+	 */
+	static final int PENDING_BLOCKS_PER_THREAD = 2;
+
+	final OutputStream out;
+	final ExecutorService workerPool;
+	final int maxPendingBlocks;
+	final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+
+	byte[] currentBlock;
+	int currentPosition = 0;
+	/**
+	 * The previous block that has been submitted for compression, or null if
+	 * there was none.
+	 */
+	byte[] previousBlock = null;
+	/**
+	 * True if at least one block has been submitted for compression.
+	 */
+	boolean blockSubmitted = false;
+	boolean closed = false;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param out
+	 *            the stream to write compressed data to
+	 * @param threadCount
+	 *            the number of threads to use for compression
+	 * @param blockSize
+	 *            the number of uncompressed bytes in each block
+	 */
+	ParallelCompressorOutputStream(OutputStream out, int threadCount,
+			int blockSize) {
+		if (threadCount <= 0) {
+			throw new IllegalArgumentException(
+					"The number of threads must be a positive number.");
+		}
+		this.out = out;
+		this.currentBlock = new byte[blockSize];
+		this.maxPendingBlocks = PENDING_BLOCKS_PER_THREAD * threadCount;
+		this.workerPool = Executors.newFixedThreadPool(threadCount,
+				new DaemonThreadFactory());
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (this.currentPosition == this.currentBlock.length) {
+			submitBlock();
+		}
+		this.currentBlock[this.currentPosition++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if (this.currentPosition == this.currentBlock.length) {
+				submitBlock();
+			}
+			int count = Math.min(len, this.currentBlock.length
+					- this.currentPosition);
+			System.arraycopy(b, off, this.currentBlock, this.currentPosition,
+					count);
+			this.currentPosition += count;
+			off += count;
+			len -= count;
+		}
+	}
+
+	/**
+	 * Writes the blocks that have already been compressed to the underlying
+	 * stream, which is then flushed. Blocks are only cut when they are full,
+	 * so data of the current block is not written yet, and neither are
+	 * blocks that are still being compressed. This method does not wait, so
+	 * that callers that flush often, e.g., after each record, do not lose
+	 * compression or parallelism. All data is written when the stream is
+	 * closed.
+	 */
+	@Override
+	public void flush() throws IOException {
+		while (!this.pendingBlocks.isEmpty()
+				&& this.pendingBlocks.peekFirst().isDone()) {
+			writeBlock(this.pendingBlocks.removeFirst());
+		}
+		this.out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		try {
+			// an empty stream still needs one (empty) block:
+			if (this.currentPosition > 0 || !this.blockSubmitted) {
+				submitBlock();
+			}
+			while (!this.pendingBlocks.isEmpty()) {
+				writeBlock(this.pendingBlocks.removeFirst());
+			}
+			writeTrailer(this.out);
+		} finally {
+			this.workerPool.shutdownNow();
+			this.out.close();
+		}
+	}
+
+	/**
+	 * Compresses one block of data. This is called in a worker thread. The
+	 * results of all calls, in the order of the blocks, make up the
+	 * compressed data.
+	 *
+	 * @param data
+	 *            array that contains the data of the block
+	 * @param length
+	 *            the number of bytes of the block, starting at index 0
+	 * @param previousData
+	 *            the complete data of the previous block, or null if this is
+	 *            the first block or if the previous block was not complete
+	 * @return the compressed data
+	 * @throws IOException
+	 *             if the data could not be compressed
+	 */
+	abstract byte[] compressBlock(byte[] data, int length,
+			byte[] previousData) throws IOException;
+
+	/**
+	 * Called in the writing thread for every block before it is submitted
+	 * for compression. Does nothing by default.
+	 *
+	 * @param data
+	 *            array that contains the data of the block
+	 * @param length
+	 *            the number of bytes of the block, starting at index 0
+	 */
+	void processUncompressedBlock(byte[] data, int length) {
+	}
+
+	/**
+	 * Writes data that follows all compressed blocks. Does nothing by
+	 * default.
+	 *
+	 * @param out
+	 *            the stream to write to
+	 * @throws IOException
+	 *             if the data could not be written
+	 */
+	void writeTrailer(OutputStream out) throws IOException {
+	}
+
+	/**
+	 * Submits the current block for compression, and writes compressed blocks
+	 * that are done to the output. If too many blocks are pending, the method
+	 * waits until the oldest one is done.
+	 *
+	 * @throws IOException
+	 *             if a compressed block could not be written
+	 */
+	void submitBlock() throws IOException {
+		final byte[] data = this.currentBlock;
+		final int length = this.currentPosition;
+		final byte[] previousData = this.previousBlock;
+		processUncompressedBlock(data, length);
+		this.pendingBlocks.addLast(this.workerPool
+				.submit(new Callable<byte[]>() {
+					@Override
+					public byte[] call() throws Exception {
+						return compressBlock(data, length, previousData);
+					}
+				}));
+
+		this.blockSubmitted = true;
+		// blocks are not reused, since the next block might need them:
+		this.previousBlock = (length == data.length) ? data : null;
+		this.currentBlock = new byte[data.length];
+		this.currentPosition = 0;
+
+		while (!this.pendingBlocks.isEmpty()
+				&& (this.pendingBlocks.size() > this.maxPendingBlocks || this.pendingBlocks
+						.peekFirst().isDone())) {
+			writeBlock(this.pendingBlocks.removeFirst());
+		}
+	}
+
+	/**
+	 * Waits for the given block to be compressed and writes the result to the
+	 * underlying stream.
+	 *
+	 * @param future
+	 *            the pending block
+	 * @throws IOException
+	 *             if the block could not be compressed or written
+	 */
+	void writeBlock(Future<byte[]> future) throws IOException {
+		try {
+			this.out.write(future.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			InterruptedIOException result = new InterruptedIOException(
+					"Interrupted while waiting for compressed data");
+			result.initCause(e);
+			throw result;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			} else {
+				throw new IOException(e.getCause().toString(), e.getCause());
+			}
+		}
+	}
+
+}
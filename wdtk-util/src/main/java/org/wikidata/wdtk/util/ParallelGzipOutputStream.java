@@ -0,0 +1,161 @@
+package org.wikidata.wdtk.util;
+
+/*
+ * #%L
+ * Wikidata Toolkit Utilities
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Output stream that compresses data to gzip using several threads, in the
+ * style of pigz. Each block of input is deflated independently, using the
+ * last 32KB of the previous block as a preset dictionary so that little
+ * compression is lost at block boundaries. The blocks are ended with a sync
+ * flush, so that their concatenation is a single deflate stream. The result
+ * is an ordinary gzip file with a single member that can be read by any gzip
+ * implementation.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+public class ParallelGzipOutputStream extends ParallelCompressorOutputStream {
+
+	/**
+	 * Number of uncompressed bytes per block.
+	 */
+	public static final int BLOCK_SIZE = 1024 * 1024;
+
+	/**
+	 * Default compression level.
+	 */
+	public static final int DEFAULT_LEVEL = 7;
+
+	/**
+	 * Size of the deflate window, which is the largest useful dictionary.
+	 */
+	static final int DICTIONARY_SIZE = 32 * 1024;
+
+	/**
+	 * Header of a gzip member without file name, time stamp, or other
+	 * optional fields.
+	 */
+	static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED,
+			0, 0, 0, 0, 0, 0, 0 };
+
+	/**
+	 * An empty deflate block with fixed Huffman codes that is marked as the
+	 * final block of the stream.
+	 */
+	static final byte[] FINAL_DEFLATE_BLOCK = { 3, 0 };
+
+	final int level;
+	final CRC32 crc = new CRC32();
+	long uncompressedSize = 0;
+
+	/**
+	 * Constructor. Creates a stream that uses compression level
+	 * {@link #DEFAULT_LEVEL}.
+	 *
+	 * @param out
+	 *            the stream to write compressed data to
+	 * @param threadCount
+	 *            the number of threads to use for compression
+	 * @throws IOException
+	 *             if the gzip header could not be written
+	 */
+	public ParallelGzipOutputStream(OutputStream out, int threadCount)
+			throws IOException {
+		this(out, threadCount, DEFAULT_LEVEL, BLOCK_SIZE);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param out
+	 *            the stream to write compressed data to
+	 * @param threadCount
+	 *            the number of threads to use for compression
+	 * @param level
+	 *            the compression level from 1 to 9
+	 * @param blockSize
+	 *            the number of uncompressed bytes in each block
+	 * @throws IOException
+	 *             if the gzip header could not be written
+	 */
+	ParallelGzipOutputStream(OutputStream out, int threadCount, int level,
+			int blockSize) throws IOException {
+		super(out, threadCount, blockSize);
+		this.level = level;
+		out.write(GZIP_HEADER);
+	}
+
+	@Override
+	byte[] compressBlock(byte[] data, int length, byte[] previousData)
+			throws IOException {
+		Deflater deflater = new Deflater(this.level, true);
+		try {
+			if (previousData != null) {
+				int dictionaryLength = Math.min(DICTIONARY_SIZE,
+						previousData.length);
+				deflater.setDictionary(previousData, previousData.length
+						- dictionaryLength, dictionaryLength);
+			}
+			deflater.setInput(data, 0, length);
+
+			ByteArrayOutputStream result = new ByteArrayOutputStream(
+					length / 3 + 64);
+			byte[] buffer = new byte[64 * 1024];
+			int count;
+			do {
+				count = deflater.deflate(buffer, 0, buffer.length,
+						Deflater.SYNC_FLUSH);
+				result.write(buffer, 0, count);
+			} while (count == buffer.length);
+			return result.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	@Override
+	void processUncompressedBlock(byte[] data, int length) {
+		this.crc.update(data, 0, length);
+		this.uncompressedSize += length;
+	}
+
+	@Override
+	void writeTrailer(OutputStream out) throws IOException {
+		out.write(FINAL_DEFLATE_BLOCK);
+		writeIntLittleEndian(out, (int) this.crc.getValue());
+		writeIntLittleEndian(out, (int) this.uncompressedSize);
+	}
+
+	static void writeIntLittleEndian(OutputStream out, int value)
+			throws IOException {
+		out.write(value & 0xff);
+		out.write((value >>> 8) & 0xff);
+		out.write((value >>> 16) & 0xff);
+		out.write((value >>> 24) & 0xff);
+	}
+
+}
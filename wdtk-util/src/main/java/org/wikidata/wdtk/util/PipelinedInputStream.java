@@ -0,0 +1,254 @@
+package org.wikidata.wdtk.util;
+
+/*
+ * #%L
+ * Wikidata Toolkit Utilities
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Input stream that reads another input stream in a separate thread. This is
+ * useful if reading the other stream is expensive, e.g., since it decompresses
+ * data, so that this work can be done while the data is being processed. A
+ * fixed number of buffers is reused to pass data between the threads.
+ *
+ * @author Markus Kroetzsch
+ *
+ */
+public class PipelinedInputStream extends InputStream {
+
+	/**
+	 * Default size of the buffers used to pass data between the threads.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+	/**
+	 * Default number of buffers used to pass data between the threads.
+	 */
+	public static final int DEFAULT_BUFFER_COUNT = 4;
+
+	/**
+	 * A buffer together with the number of bytes it holds.
+	 *
+	 * @author Markus Kroetzsch
+	 *
+	 */
+	static class Chunk {
+		final byte[] data;
+		int length;
+
+		Chunk(int size) {
+			this.data = new byte[size];
+		}
+	}
+
+	/**
+	 * Marker that is put into the queue after the last chunk of data.
+	 */
+	static final Chunk END_OF_INPUT = new Chunk(0);
+
+	final InputStream in;
+	final Thread readerThread;
+	final BlockingQueue<Chunk> filledChunks;
+	final BlockingQueue<Chunk> freeChunks;
+
+	/**
+	 * Exception that occurred while reading the input, if any.
+	 */
+	volatile IOException readerException = null;
+
+	Chunk currentChunk = null;
+	int currentPosition = 0;
+	boolean finished = false;
+	boolean closed = false;
+
+	/**
+	 * Constructor. Creates a pipelined stream that uses
+	 * {@link #DEFAULT_BUFFER_COUNT} buffers of size
+	 * {@link #DEFAULT_BUFFER_SIZE}.
+	 *
+	 * @param in
+	 *            the stream to read in a separate thread
+	 */
+	public PipelinedInputStream(InputStream in) {
+		this(in, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_COUNT);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param in
+	 *            the stream to read in a separate thread
+	 * @param bufferSize
+	 *            the size of the buffers used to pass data between the
+	 *            threads
+	 * @param bufferCount
+	 *            the number of buffers; the reader thread blocks if all of
+	 *            them are filled
+	 */
+	public PipelinedInputStream(InputStream in, int bufferSize,
+			int bufferCount) {
+		if (bufferSize <= 0 || bufferCount <= 0) {
+			throw new IllegalArgumentException(
+					"Buffer size and count must be positive numbers.");
+		}
+		this.in = in;
+		this.filledChunks = new ArrayBlockingQueue<>(bufferCount + 1);
+		this.freeChunks = new ArrayBlockingQueue<>(bufferCount);
+		for (int i = 0; i < bufferCount; i++) {
+			this.freeChunks.add(new Chunk(bufferSize));
+		}
+
+		this.readerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					readChunks();
+				} catch (IOException e) {
+					readerException = e;
+				} catch (InterruptedException e) {
+					return;
+				} catch (RuntimeException e) {
+					readerException = new IOException(e.toString(), e);
+				}
+				try {
+					filledChunks.put(END_OF_INPUT);
+				} catch (InterruptedException e) {
+					// stream was closed; nobody is waiting for more data
+				}
+			}
+		}, "pipelined-input-stream");
+		this.readerThread.setDaemon(true);
+		this.readerThread.start();
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!fillCurrentChunk()) {
+			return -1;
+		}
+		return this.currentChunk.data[this.currentPosition++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!fillCurrentChunk()) {
+			return -1;
+		}
+		int count = Math.min(len, this.currentChunk.length
+				- this.currentPosition);
+		System.arraycopy(this.currentChunk.data, this.currentPosition, b, off,
+				count);
+		this.currentPosition += count;
+		return count;
+	}
+
+	@Override
+	public int available() throws IOException {
+		if (this.currentChunk == null) {
+			return 0;
+		}
+		return this.currentChunk.length - this.currentPosition;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		this.finished = true;
+		this.readerThread.interrupt();
+		this.in.close();
+	}
+
+	/**
+	 * Makes sure that there is unread data in the current chunk, fetching the
+	 * next chunk if needed.
+	 *
+	 * @return false if the end of the data has been reached
+	 * @throws IOException
+	 *             if the data could not be read
+	 */
+	boolean fillCurrentChunk() throws IOException {
+		if (this.closed) {
+			throw new IOException("Stream closed");
+		}
+		while (this.currentChunk == null
+				|| this.currentPosition >= this.currentChunk.length) {
+			if (this.finished) {
+				return false;
+			}
+			if (this.currentChunk != null) {
+				this.freeChunks.add(this.currentChunk);
+			}
+			try {
+				this.currentChunk = this.filledChunks.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for data", e);
+			}
+			this.currentPosition = 0;
+			if (this.currentChunk == END_OF_INPUT) {
+				this.currentChunk = null;
+				this.finished = true;
+				if (this.readerException != null) {
+					throw this.readerException;
+				}
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the input into free chunks and passes them on until the end of
+	 * the input is reached.
+	 *
+	 * @throws IOException
+	 *             if there was a problem reading the input
+	 * @throws InterruptedException
+	 *             if the thread was interrupted while waiting for a free chunk
+	 */
+	void readChunks() throws IOException, InterruptedException {
+		while (true) {
+			Chunk chunk = this.freeChunks.take();
+			chunk.length = 0;
+			while (chunk.length < chunk.data.length) {
+				int count = this.in.read(chunk.data, chunk.length,
+						chunk.data.length - chunk.length);
+				if (count < 0) {
+					if (chunk.length > 0) {
+						this.filledChunks.put(chunk);
+					}
+					return;
+				}
+				chunk.length += count;
+			}
+			this.filledChunks.put(chunk);
+		}
+	}
+
+}
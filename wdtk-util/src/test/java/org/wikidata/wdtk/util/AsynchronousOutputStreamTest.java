@@ -0,0 +1,151 @@
+package org.wikidata.wdtk.util;
+
+/*
+ * #%L
+ * Wikidata Toolkit Utilities
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.Test;
+
+public class AsynchronousOutputStreamTest {
+
+	/**
+	 * Output stream that records its data slowly, so that the writing thread
+	 * has to wait.
+	 */
+	static class SlowOutputStream extends ByteArrayOutputStream {
+		int flushCount = 0;
+		boolean closed = false;
+
+		@Override
+		public synchronized void write(byte[] b, int off, int len) {
+			try {
+				Thread.sleep(1);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			super.write(b, off, len);
+		}
+
+		@Override
+		public void flush() {
+			this.flushCount++;
+		}
+
+		@Override
+		public void close() {
+			this.closed = true;
+		}
+	}
+
+	@Test
+	public void testWriteAll() throws IOException {
+		byte[] data = ParallelBZip2InputStreamTest.getTestData(100000);
+		SlowOutputStream target = new SlowOutputStream();
+
+		AsynchronousOutputStream out = new AsynchronousOutputStream(target,
+				1000, 3);
+		for (int i = 0; i < data.length; i += 777) {
+			out.write(data, i, Math.min(777, data.length - i));
+		}
+		out.close();
+
+		assertArrayEquals(data, target.toByteArray());
+		assertTrue(target.closed);
+		// the slow output was the bottleneck:
+		assertTrue(out.getProducerWaitTime() > 0);
+	}
+
+	@Test
+	public void testSingleByteWrites() throws IOException {
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+
+		OutputStream out = new AsynchronousOutputStream(target, 2, 1);
+		out.write(1);
+		out.write(2);
+		out.write(255);
+		out.close();
+		out.close();
+
+		assertArrayEquals(new byte[] { 1, 2, (byte) 255 },
+				target.toByteArray());
+	}
+
+	@Test
+	public void testFlush() throws IOException {
+		SlowOutputStream target = new SlowOutputStream();
+
+		OutputStream out = new AsynchronousOutputStream(target);
+		out.write(new byte[] { 1, 2, 3 });
+		out.flush();
+		out.close();
+
+		assertArrayEquals(new byte[] { 1, 2, 3 }, target.toByteArray());
+		assertEquals(1, target.flushCount);
+	}
+
+	@Test
+	public void testEmptyOutput() throws IOException {
+		SlowOutputStream target = new SlowOutputStream();
+
+		AsynchronousOutputStream out = new AsynchronousOutputStream(target);
+		out.close();
+
+		assertEquals(0, target.size());
+		assertTrue(target.closed);
+		assertTrue(out.getConsumerWaitTime() >= 0);
+	}
+
+	@Test(expected = IOException.class)
+	public void testWriteFailure() throws IOException {
+		OutputStream failing = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw new IOException("Failure");
+			}
+		};
+
+		OutputStream out = new AsynchronousOutputStream(failing, 10, 2);
+		for (int i = 0; i < 1000; i++) {
+			out.write(i);
+		}
+		out.close();
+	}
+
+	@Test(expected = IOException.class)
+	public void testWriteAfterClose() throws IOException {
+		OutputStream out = new AsynchronousOutputStream(
+				new ByteArrayOutputStream());
+		out.close();
+		out.write(1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidBufferCount() {
+		new AsynchronousOutputStream(new ByteArrayOutputStream(), 10, 0);
+	}
+
+}
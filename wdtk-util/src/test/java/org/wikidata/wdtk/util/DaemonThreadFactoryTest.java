@@ -0,0 +1,51 @@
+package org.wikidata.wdtk.util;
+
+/*
+ * #%L
+ * Wikidata Toolkit utilities
+ * %%
+ * Copyright (C) 2014 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DaemonThreadFactoryTest {
+
+	static final Runnable NOTHING = new Runnable() {
+		@Override
+		public void run() {
+		}
+	};
+
+	@Test
+	public void testDaemonThreads() {
+		Thread thread = new DaemonThreadFactory().newThread(NOTHING);
+		assertTrue(thread.isDaemon());
+	}
+
+	@Test
+	public void testThreadNames() {
+		DaemonThreadFactory threadFactory = new DaemonThreadFactory("worker");
+		assertEquals("worker-0", threadFactory.newThread(NOTHING).getName());
+		Thread thread = threadFactory.newThread(NOTHING);
+		assertEquals("worker-1", thread.getName());
+		assertTrue(thread.isDaemon());
+	}
+
+}
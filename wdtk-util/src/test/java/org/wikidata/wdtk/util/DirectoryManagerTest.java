@@ -21,6 +21,7 @@ package org.wikidata.wdtk.util;
  */
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
@@ -126,4 +127,51 @@ public class DirectoryManagerTest {
 		assertEquals("Test data",
 				new BufferedReader(new InputStreamReader(cin)).readLine());
 	}
+
+	@Test
+	public void getParallelCompressionInputStreamGzip() throws IOException {
+		dm.setDecompressionThreads(2);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		OutputStreamWriter ow = new OutputStreamWriter(
+				new GzipCompressorOutputStream(out), StandardCharsets.UTF_8);
+		ow.write("Test data");
+		ow.close();
+
+		ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+		InputStream cin = dm.getCompressorInputStream(in, CompressionType.GZIP);
+
+		assertTrue(cin instanceof PipelinedInputStream);
+		assertEquals("Test data",
+				new BufferedReader(new InputStreamReader(cin)).readLine());
+	}
+
+	@Test
+	public void getParallelCompressionInputStreamBz2() throws IOException {
+		dm.setDecompressionThreads(2);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		OutputStreamWriter ow = new OutputStreamWriter(
+				new BZip2CompressorOutputStream(out), StandardCharsets.UTF_8);
+		ow.write("Test data");
+		ow.close();
+
+		ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+		InputStream cin = dm.getCompressorInputStream(in, CompressionType.BZ2);
+
+		assertTrue(cin instanceof ParallelBZip2InputStream);
+		assertEquals("Test data",
+				new BufferedReader(new InputStreamReader(cin)).readLine());
+	}
+
+	@Test
+	public void testSubdirectoryDecompressionThreads() throws IOException {
+		dm.setDecompressionThreads(3);
+		DirectoryManagerImpl subdirectoryManager = (DirectoryManagerImpl) dm
+				.getSubdirectoryManager("src");
+		assertEquals(3, subdirectoryManager.getDecompressionThreads());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void setInvalidDecompressionThreads() {
+		dm.setDecompressionThreads(0);
+	}
 }
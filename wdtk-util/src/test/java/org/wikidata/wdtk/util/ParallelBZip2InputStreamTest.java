@@ -0,0 +1,333 @@
+package org.wikidata.wdtk.util;
+
+/*
+ * #%L
+ * Wikidata Toolkit Utilities
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.Test;
+import org.wikidata.wdtk.util.ParallelBZip2InputStream.CompressedBlock;
+
+public class ParallelBZip2InputStreamTest {
+
+	/**
+	 * Creates some pseudo-random text that does not compress too well, so
+	 * that several bzip2 blocks are needed.
+	 *
+	 * @param size
+	 *            number of bytes to create
+	 * @return the data
+	 */
+	static byte[] getTestData(int size) {
+		Random random = new Random(42);
+		byte[] result = new byte[size];
+		for (int i = 0; i < size; i++) {
+			if (i % 80 == 79) {
+				result[i] = '\n';
+			} else {
+				result[i] = (byte) ('a' + random.nextInt(26));
+			}
+		}
+		return result;
+	}
+
+	static byte[] compress(byte[] data, int blockSize) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (BZip2CompressorOutputStream bzOut = new BZip2CompressorOutputStream(
+				out, blockSize)) {
+			bzOut.write(data);
+		}
+		return out.toByteArray();
+	}
+
+	static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[5000];
+		int count;
+		while ((count = in.read(buffer)) != -1) {
+			out.write(buffer, 0, count);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testMultipleBlocks() throws IOException {
+		byte[] data = getTestData(1000000);
+		byte[] compressed = compress(data, 1);
+
+		InputStream in = new ParallelBZip2InputStream(new ByteArrayInputStream(
+				compressed), 3);
+		assertArrayEquals(data, readAll(in));
+	}
+
+	@Test
+	public void testSingleThread() throws IOException {
+		byte[] data = getTestData(250000);
+		byte[] compressed = compress(data, 1);
+
+		InputStream in = new ParallelBZip2InputStream(new ByteArrayInputStream(
+				compressed), 1);
+		assertArrayEquals(data, readAll(in));
+	}
+
+	@Test
+	public void testSingleByteReads() throws IOException {
+		byte[] data = "Test data".getBytes(StandardCharsets.UTF_8);
+		byte[] compressed = compress(data, 9);
+
+		InputStream in = new ParallelBZip2InputStream(new ByteArrayInputStream(
+				compressed), 2);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int b;
+		while ((b = in.read()) != -1) {
+			out.write(b);
+		}
+		in.close();
+		assertArrayEquals(data, out.toByteArray());
+	}
+
+	@Test
+	public void testConcatenatedStreams() throws IOException {
+		byte[] data1 = getTestData(150000);
+		byte[] data2 = "Some more data\n".getBytes(StandardCharsets.UTF_8);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		compressed.write(compress(data1, 1));
+		compressed.write(compress(data2, 5));
+
+		InputStream in = new ParallelBZip2InputStream(new ByteArrayInputStream(
+				compressed.toByteArray()), 2);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		expected.write(data1);
+		expected.write(data2);
+		assertArrayEquals(expected.toByteArray(), readAll(in));
+	}
+
+	@Test
+	public void testEmptyStream() throws IOException {
+		byte[] compressed = compress(new byte[0], 9);
+
+		InputStream in = new ParallelBZip2InputStream(new ByteArrayInputStream(
+				compressed), 2);
+		assertEquals(0, readAll(in).length);
+	}
+
+	@Test
+	public void testTrailingData() throws IOException {
+		byte[] data = getTestData(250000);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		compressed.write(compress(data, 1));
+		compressed.write(new byte[1000]);
+		compressed.write("Not compressed".getBytes(StandardCharsets.UTF_8));
+
+		InputStream in = new ParallelBZip2InputStream(new ByteArrayInputStream(
+				compressed.toByteArray()), 2);
+		assertArrayEquals(data, readAll(in));
+	}
+
+	@Test
+	public void testLongTrailingData() throws IOException {
+		byte[] data = "Test data".getBytes(StandardCharsets.UTF_8);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		compressed.write(compress(data, 1));
+		compressed.write(new byte[3 * ParallelBZip2InputStream
+				.getMaxBlockBits((byte) '1') / 8]);
+
+		InputStream in = new ParallelBZip2InputStream(new ByteArrayInputStream(
+				compressed.toByteArray()), 2);
+		assertArrayEquals(data, readAll(in));
+	}
+
+	@Test(expected = IOException.class)
+	public void testNoBzip2Data() throws IOException {
+		new ParallelBZip2InputStream(new ByteArrayInputStream(
+				"Not compressed".getBytes(StandardCharsets.UTF_8)), 2);
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedData() throws IOException {
+		byte[] compressed = compress(getTestData(250000), 1);
+
+		InputStream in = new ParallelBZip2InputStream(new ByteArrayInputStream(
+				Arrays.copyOf(compressed, compressed.length / 2)), 2);
+		readAll(in);
+	}
+
+	@Test
+	public void testResumeAtBlock() throws IOException {
+		byte[] data = getTestData(1000000);
+		byte[] compressed = compress(data, 1);
+
+		// Find the block offsets and where their data starts:
+		List<Long> blockOffsets = new ArrayList<>();
+		List<Integer> dataOffsets = new ArrayList<>();
+		ParallelBZip2InputStream in = new ParallelBZip2InputStream(
+				new ByteArrayInputStream(compressed), 2);
+		assertEquals(-1, in.getCurrentBlockOffset());
+		byte[] buffer = new byte[5000];
+		int position = 0;
+		int count;
+		while ((count = in.read(buffer)) != -1) {
+			long blockOffset = in.getCurrentBlockOffset();
+			if (blockOffsets.isEmpty()
+					|| blockOffsets.get(blockOffsets.size() - 1) != blockOffset) {
+				blockOffsets.add(blockOffset);
+				dataOffsets.add(position);
+			}
+			position += count;
+		}
+		in.close();
+		assertEquals(Long.valueOf(32), blockOffsets.get(0));
+		assertTrue(blockOffsets.size() > 5);
+
+		for (int i = 0; i < blockOffsets.size(); i += 3) {
+			in = new ParallelBZip2InputStream(new ByteArrayInputStream(
+					compressed), 2, blockOffsets.get(i));
+			assertArrayEquals(
+					Arrays.copyOfRange(data, dataOffsets.get(i), data.length),
+					readAll(in));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidBlockOffset() throws IOException {
+		new ParallelBZip2InputStream(new ByteArrayInputStream(compress(
+				new byte[0], 9)), 2, 8);
+	}
+
+	@Test
+	public void testMergeSplitBlock() throws IOException {
+		byte[] data = getTestData(1000);
+		byte[] compressed = compress(data, 9);
+		// The only block starts after the 32 bit header and ends before the
+		// 48 bit end-of-stream marker, the 32 bit CRC, and padding:
+		long blockBits = 8 * compressed.length - 32 - 80;
+		while (ParallelBZip2InputStream.readBits(compressed, 32 + blockBits,
+				48) != ParallelBZip2InputStream.END_OF_STREAM_MAGIC) {
+			blockBits--;
+		}
+		CompressedBlock block = new CompressedBlock(compressed, 32, blockBits,
+				(byte) '9', true);
+		assertArrayEquals(data, ParallelBZip2InputStream.decompress(block));
+
+		long split = 1235;
+		CompressedBlock first = new CompressedBlock(compressed, 32, split,
+				(byte) '9', false);
+		CompressedBlock second = new CompressedBlock(Arrays.copyOfRange(compressed,
+				(int) (32 + split) / 8, compressed.length),
+				(int) (32 + split) % 8, blockBits - split, (byte) '9', true);
+
+		CompressedBlock merged = CompressedBlock.merge(first, second);
+		assertEquals(blockBits, merged.bitLength);
+		assertArrayEquals(data, ParallelBZip2InputStream.decompress(merged));
+	}
+
+	/**
+	 * Creates the bits of a bzip2 stream whose blocks start at the given bit
+	 * positions. The block contents are not valid compressed data.
+	 *
+	 * @param blockStarts
+	 *            the bit positions of the block magic numbers
+	 * @param endOfStream
+	 *            the bit position of the end-of-stream magic number
+	 * @return the data
+	 */
+	static byte[] getFakeStream(long[] blockStarts, long endOfStream) {
+		byte[] data = new byte[(int) ((endOfStream + 48 + 32 + 7) / 8)];
+		data[0] = 'B';
+		data[1] = 'Z';
+		data[2] = 'h';
+		data[3] = '9';
+		for (long blockStart : blockStarts) {
+			ParallelBZip2InputStream.writeBits(data, blockStart,
+					ParallelBZip2InputStream.BLOCK_MAGIC, 48);
+		}
+		ParallelBZip2InputStream.writeBits(data, endOfStream,
+				ParallelBZip2InputStream.END_OF_STREAM_MAGIC, 48);
+		return data;
+	}
+
+	@Test
+	public void testBlockAfterFalseEndOfStreamMagic() throws IOException {
+		// End-of-stream magic number within the data of the first block,
+		// followed by a block magic number before the next header could
+		// start:
+		byte[] data = getFakeStream(new long[] { 32, 213 }, 400);
+		ParallelBZip2InputStream.writeBits(data, 150,
+				ParallelBZip2InputStream.END_OF_STREAM_MAGIC, 48);
+
+		ParallelBZip2InputStream in = new ParallelBZip2InputStream(
+				new ByteArrayInputStream(data), 1);
+		assertEquals(32, in.takePendingBlock().offset);
+		assertEquals(213, in.takePendingBlock().offset);
+		assertEquals(ParallelBZip2InputStream.END_OF_INPUT,
+				in.takePendingBlock());
+		in.close();
+	}
+
+	@Test
+	public void testMergeLimit() throws IOException {
+		long[] blockStarts = new long[10];
+		for (int i = 0; i < blockStarts.length; i++) {
+			blockStarts[i] = 32 + 100 * i;
+		}
+		byte[] data = getFakeStream(blockStarts, 32 + 100 * blockStarts.length);
+
+		ParallelBZip2InputStream in = new ParallelBZip2InputStream(
+				new ByteArrayInputStream(data), 2);
+		try {
+			in.read();
+			fail("Corrupted data should not be decompressed");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains(
+					(ParallelBZip2InputStream.MAX_MERGED_BLOCKS - 1)
+							+ " following blocks"));
+		}
+		in.close();
+	}
+
+	@Test
+	public void testBitOperations() {
+		byte[] data = new byte[4];
+		ParallelBZip2InputStream.writeBits(data, 5, 0x1abcL, 13);
+		assertEquals(0x1abcL, ParallelBZip2InputStream.readBits(data, 5, 13));
+
+		byte[] copy = new byte[4];
+		ParallelBZip2InputStream.copyBits(data, 5, copy, 0, 13);
+		assertEquals(0x1abcL, ParallelBZip2InputStream.readBits(copy, 0, 13));
+		ParallelBZip2InputStream.copyBits(data, 5, copy, 3, 13);
+		assertEquals(0x1abcL, ParallelBZip2InputStream.readBits(copy, 3, 13));
+	}
+
+}
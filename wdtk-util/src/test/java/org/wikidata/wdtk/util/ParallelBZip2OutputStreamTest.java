@@ -0,0 +1,87 @@
+package org.wikidata.wdtk.util;
+
+/*
+ * #%L
+ * Wikidata Toolkit Utilities
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.junit.Test;
+
+public class ParallelBZip2OutputStreamTest {
+
+	static byte[] compress(byte[] data, int threadCount, int blockSize)
+			throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (OutputStream bzOut = new ParallelBZip2OutputStream(out,
+				threadCount, blockSize)) {
+			bzOut.write(data);
+		}
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testMultipleBlocks() throws IOException {
+		byte[] data = ParallelBZip2InputStreamTest.getTestData(1000000);
+		byte[] compressed = compress(data, 3, 150000);
+
+		assertArrayEquals(data,
+				ParallelBZip2InputStreamTest
+						.readAll(new BZip2CompressorInputStream(
+								new ByteArrayInputStream(compressed), true)));
+		assertArrayEquals(data,
+				ParallelBZip2InputStreamTest
+						.readAll(new ParallelBZip2InputStream(
+								new ByteArrayInputStream(compressed), 2)));
+	}
+
+	@Test
+	public void testFlush() throws IOException {
+		byte[] data = ParallelBZip2InputStreamTest.getTestData(3000);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (OutputStream bzOut = new ParallelBZip2OutputStream(out, 2, 1000)) {
+			bzOut.write(data, 0, 1500);
+			bzOut.flush();
+			bzOut.write(data, 1500, 1500);
+		}
+
+		assertArrayEquals(data,
+				ParallelBZip2InputStreamTest
+						.readAll(new BZip2CompressorInputStream(
+								new ByteArrayInputStream(out.toByteArray()),
+								true)));
+	}
+
+	@Test
+	public void testEmptyStream() throws IOException {
+		byte[] compressed = compress(new byte[0], 2, 1000);
+
+		assertArrayEquals(new byte[0],
+				ParallelBZip2InputStreamTest
+						.readAll(new BZip2CompressorInputStream(
+								new ByteArrayInputStream(compressed), true)));
+	}
+
+}
@@ -0,0 +1,125 @@
+package org.wikidata.wdtk.util;
+
+/*
+ * #%L
+ * Wikidata Toolkit Utilities
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.junit.Test;
+
+public class ParallelGzipOutputStreamTest {
+
+	static byte[] compress(byte[] data, int threadCount, int blockSize)
+			throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (OutputStream gzOut = new ParallelGzipOutputStream(out,
+				threadCount, ParallelGzipOutputStream.DEFAULT_LEVEL, blockSize)) {
+			gzOut.write(data);
+		}
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testMultipleBlocks() throws IOException {
+		byte[] data = ParallelBZip2InputStreamTest.getTestData(1000000);
+		byte[] compressed = compress(data, 3, 100000);
+
+		assertArrayEquals(data,
+				ParallelBZip2InputStreamTest.readAll(new GZIPInputStream(
+						new ByteArrayInputStream(compressed))));
+		// a single gzip member that is read completely without special
+		// options:
+		assertArrayEquals(data,
+				ParallelBZip2InputStreamTest
+						.readAll(new GzipCompressorInputStream(
+								new ByteArrayInputStream(compressed))));
+	}
+
+	@Test
+	public void testRepetitiveData() throws IOException {
+		// back references across block boundaries use the dictionary:
+		byte[] pattern = ParallelBZip2InputStreamTest.getTestData(5000);
+		byte[] data = new byte[200000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = pattern[i % pattern.length];
+		}
+		byte[] compressed = compress(data, 2, 12345);
+
+		assertArrayEquals(data,
+				ParallelBZip2InputStreamTest.readAll(new GZIPInputStream(
+						new ByteArrayInputStream(compressed))));
+	}
+
+	@Test
+	public void testSingleByteWritesAndFlush() throws IOException {
+		byte[] data = ParallelBZip2InputStreamTest.getTestData(3000);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (OutputStream gzOut = new ParallelGzipOutputStream(out, 2,
+				ParallelGzipOutputStream.DEFAULT_LEVEL, 1000)) {
+			for (int i = 0; i < data.length; i++) {
+				gzOut.write(data[i]);
+				if (i % 700 == 0) {
+					gzOut.flush();
+				}
+			}
+		}
+
+		assertArrayEquals(data,
+				ParallelBZip2InputStreamTest.readAll(new GZIPInputStream(
+						new ByteArrayInputStream(out.toByteArray()))));
+	}
+
+	@Test
+	public void testFlushKeepsBlocks() throws IOException {
+		byte[] data = ParallelBZip2InputStreamTest.getTestData(3000);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (OutputStream gzOut = new ParallelGzipOutputStream(out, 2,
+				ParallelGzipOutputStream.DEFAULT_LEVEL, 1000)) {
+			for (int i = 0; i < data.length; i += 10) {
+				gzOut.write(data, i, 10);
+				gzOut.flush();
+			}
+		}
+
+		assertArrayEquals(compress(data, 2, 1000), out.toByteArray());
+	}
+
+	@Test
+	public void testEmptyStream() throws IOException {
+		byte[] compressed = compress(new byte[0], 2, 1000);
+
+		assertArrayEquals(new byte[0],
+				ParallelBZip2InputStreamTest.readAll(new GZIPInputStream(
+						new ByteArrayInputStream(compressed))));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidThreadCount() throws IOException {
+		new ParallelGzipOutputStream(new ByteArrayOutputStream(), 0);
+	}
+
+}
@@ -0,0 +1,86 @@
+package org.wikidata.wdtk.util;
+
+/*
+ * #%L
+ * Wikidata Toolkit Utilities
+ * %%
+ * Copyright (C) 2014 - 2015 Wikidata Toolkit Developers
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+public class PipelinedInputStreamTest {
+
+	@Test
+	public void testReadAll() throws IOException {
+		byte[] data = ParallelBZip2InputStreamTest.getTestData(100000);
+
+		InputStream in = new PipelinedInputStream(new ByteArrayInputStream(
+				data), 1000, 3);
+		assertArrayEquals(data, ParallelBZip2InputStreamTest.readAll(in));
+	}
+
+	@Test
+	public void testSingleByteReads() throws IOException {
+		byte[] data = { 1, 2, (byte) 255 };
+
+		InputStream in = new PipelinedInputStream(new ByteArrayInputStream(
+				data), 2, 1);
+		assertEquals(1, in.read());
+		assertEquals(2, in.read());
+		assertEquals(255, in.read());
+		assertEquals(-1, in.read());
+		assertEquals(-1, in.read());
+		in.close();
+	}
+
+	@Test
+	public void testEmptyInput() throws IOException {
+		InputStream in = new PipelinedInputStream(new ByteArrayInputStream(
+				new byte[0]));
+		assertEquals(-1, in.read());
+		in.close();
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadFailure() throws IOException {
+		InputStream failing = new InputStream() {
+			@Override
+			public int read() throws IOException {
+				throw new IOException("Failure");
+			}
+		};
+
+		InputStream in = new PipelinedInputStream(failing);
+		in.read();
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadAfterClose() throws IOException {
+		InputStream in = new PipelinedInputStream(new ByteArrayInputStream(
+				new byte[10]));
+		in.close();
+		in.read();
+	}
+
+}